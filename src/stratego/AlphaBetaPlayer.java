@@ -0,0 +1,427 @@
+package stratego;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import stratego.Piece.PieceType;
+
+/**
+ * AlphaBetaPlayer is a {@link ComputerPlayer} that runs an iterative
+ * deepening alpha-beta search on the position it is given.
+ * </p> Notes:
+ * 		-every search thread works on its own copy of the model with
+ * 			{@link StrategoModel#makeMove(int)} and
+ * 			{@link StrategoModel#unmakeMove()}
+ * 		-all threads share one {@link TranspositionTable}; helper threads
+ * 			start at staggered depths and fill the table with results the
+ * 			main thread then finds instead of searching those subtrees again
+ * 		-the search sees the piece types in the model, so the caller decides
+ * 			what the opponent's hidden pieces are assumed to be; only pieces
+ * 			the model does not know ({@link PieceType#UNKNOWN}, in a refereed
+ * 			game) get a random arrangement of the missing types
+ * 		-positions are scored by material; capturing the flag wins and a side
+ * 			without a legal move loses
+ * 		-a win or loss is scored by its distance from the root, and is kept
+ * 			in the table by its distance from the stored position instead, so
+ * 			it holds wherever the position is found again
+ * 		-a repeated position scores a draw only on the path that repeated
+ * 			it, so a result that saw one is not kept in the table
+ */
+public class AlphaBetaPlayer implements ComputerPlayer
+{
+	private static final int MAX_DEPTH = 64;
+	private static final int WIN = 1000000;
+	private static final int INFINITY = WIN + MAX_DEPTH + 1;
+	private static final int MATE = WIN - MAX_DEPTH; // scores past this are wins or losses
+	private static final int CHECK_TIME_NODES = 1024; // nodes between clock checks
+
+	// material value by PieceType ordinal
+	private static final int[] VALUES = new int[PieceType.values().length];
+	static
+	{
+		VALUES[PieceType.MARSHAL.ordinal()] = 400;
+		VALUES[PieceType.GENERAL.ordinal()] = 300;
+		VALUES[PieceType.COLONEL.ordinal()] = 175;
+		VALUES[PieceType.MAJOR.ordinal()] = 140;
+		VALUES[PieceType.CAPTAIN.ordinal()] = 100;
+		VALUES[PieceType.LIEUTENANT.ordinal()] = 50;
+		VALUES[PieceType.SERGEANT.ordinal()] = 25;
+		VALUES[PieceType.MINER.ordinal()] = 100;
+		VALUES[PieceType.SCOUT.ordinal()] = 30;
+		VALUES[PieceType.BOMB.ordinal()] = 20;
+		VALUES[PieceType.SPY.ordinal()] = 150;
+		VALUES[PieceType.FLAG.ordinal()] = 0; // losing it is scored as a loss
+	}
+
+	private final TranspositionTable table;
+	private final int threads;
+	private final ExecutorService helpers;
+	private final SplittableRandom random = new SplittableRandom();
+
+	/**
+	 * Constructor.
+	 * @param threads number of search threads (at least 1)
+	 * @param tableMegabytes size of the shared transposition table
+	 */
+	public AlphaBetaPlayer(int threads, int tableMegabytes)
+	{
+		this.threads = Math.max(1, threads);
+		this.table = new TranspositionTable(tableMegabytes);
+		this.helpers = (this.threads > 1)
+				? Executors.newFixedThreadPool(this.threads - 1, r ->
+				{
+					Thread thread = new Thread(r, "alpha-beta-helper");
+					thread.setDaemon(true);
+					return thread;
+				})
+				: null;
+	}
+
+	/**
+	 * Searches the position until the time budget runs out and returns the
+	 * best move of the deepest completed iteration.
+	 */
+	@Override
+	public int chooseMove(StrategoModel model, int color, long budgetMillis)
+	{
+		long deadline = System.nanoTime() + Math.max(1, budgetMillis) * 1000000L;
+		AtomicBoolean stop = new AtomicBoolean(false);
+
+		StrategoModel known = new StrategoModel(model);
+		if (MonteCarloPlayer.fillUnknown(known, color))
+		{
+			MonteCarloPlayer.determinize(known, color, new boolean[StrategoModel.SQUARES], random,
+					new int[StrategoModel.SQUARES], new byte[StrategoModel.SQUARES]);
+			model = known;
+		}
+
+		List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+		for (int i = 1; i < threads; i++)
+		{
+			Search helper = new Search(model, color, deadline, stop, 1 + i % 2);
+			futures.add(helpers.submit(helper::run));
+		}
+
+		int best = new Search(model, color, deadline, stop, 0).run();
+
+		stop.set(true);
+		for (Future<Integer> future : futures)
+		{
+			try
+			{
+				future.get();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+			catch (ExecutionException e)
+			{
+				// a failed helper only loses its table entries
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Stops the helper threads. The player can not be used afterwards.
+	 */
+	@Override
+	public void shutdown()
+	{
+		if (helpers != null)
+			helpers.shutdownNow();
+	}
+
+	/**
+	 * Scores a position by material for the side to move.
+	 * @param model position
+	 * @param color side to move
+	 * @return material balance
+	 */
+	static int evaluate(StrategoModel model, int color)
+	{
+		int score = 0;
+		for (int i = 0; i < StrategoModel.SQUARES; i++)
+		{
+			byte code = model.getSquare(i);
+			int pieceColor = PieceCode.color(code);
+			if (pieceColor == color)
+				score += VALUES[PieceCode.typeOrdinal(code)];
+			else if (pieceColor != Piece.NONE)
+				score -= VALUES[PieceCode.typeOrdinal(code)];
+		}
+		return score;
+	}
+
+	/**
+	 * Converts a score to its table form: a win or loss counted from the
+	 * root becomes one counted from the position at the ply.
+	 * @param score score from the search
+	 * @param ply distance of the position from the root
+	 * @return score to store
+	 */
+	static int toTable(int score, int ply)
+	{
+		if (score >= MATE)
+			return score + ply;
+		if (score <= -MATE)
+			return score - ply;
+		return score;
+	}
+
+	/**
+	 * Converts a stored score back to one counted from the root, the
+	 * reverse of {@link #toTable(int, int)}.
+	 * @param score stored score
+	 * @param ply distance of the position from the root
+	 * @return score for the search
+	 */
+	static int fromTable(int score, int ply)
+	{
+		if (score >= MATE)
+			return score - ply;
+		if (score <= -MATE)
+			return score + ply;
+		return score;
+	}
+
+	/**
+	 * Gets the material value of the piece on a square.
+	 * @param code square code
+	 * @return value, 0 for empty squares
+	 */
+	static int value(byte code)
+	{
+		return VALUES[PieceCode.typeOrdinal(code)];
+	}
+
+	/**
+	 * One search thread: a private model copy, per-ply move buffers and the
+	 * shared stop flag.
+	 */
+	private class Search
+	{
+		private final StrategoModel model;
+		private final int color;
+		private final long deadline;
+		private final AtomicBoolean stop;
+		private final int depthOffset;
+		private final int[][] moves = new int[MAX_DEPTH + 1][MoveGenerator.MAX_MOVES];
+		private long nodes;
+		private boolean repeated; // a repetition was scored below the current node
+
+		/**
+		 * Constructor.
+		 * @param model position to search, copied
+		 * @param color side to move at the root
+		 * @param deadline System.nanoTime() deadline
+		 * @param stop shared stop flag
+		 * @param depthOffset added to the first iteration's depth
+		 */
+		Search(StrategoModel model, int color, long deadline, AtomicBoolean stop, int depthOffset)
+		{
+			this.model = new StrategoModel(model);
+			this.model.setSideToMove(color);
+			this.color = color;
+			this.deadline = deadline;
+			this.stop = stop;
+			this.depthOffset = depthOffset;
+		}
+
+		/**
+		 * Iterative deepening at the root.
+		 * @return best move of the deepest completed iteration, or -1
+		 */
+		int run()
+		{
+			int[] rootMoves = moves[0];
+			int count = MoveGenerator.generate(model, color, rootMoves);
+			if (count == 0)
+				return -1;
+
+			int best = rootMoves[0];
+			for (int depth = 1 + depthOffset; depth <= MAX_DEPTH; depth++)
+			{
+				int alpha = -INFINITY;
+				int iterationBest = -1;
+				repeated = false;
+				orderMoves(rootMoves, count, best);
+				for (int i = 0; i < count; i++)
+				{
+					int score = searchMove(rootMoves[i], depth, alpha, INFINITY, 0);
+					if (depth > 1 && stop.get())
+						return best;
+					if (score > alpha)
+					{
+						alpha = score;
+						iterationBest = rootMoves[i];
+					}
+				}
+				best = iterationBest;
+				if (!repeated)
+					table.store(model.getHash(), depth, alpha, TranspositionTable.EXACT, best);
+				if (alpha >= WIN || alpha <= -WIN || timeUp())
+					break;
+			}
+			return best;
+		}
+
+		/**
+		 * Plays a move, scores it from the mover's point of view and takes it
+		 * back.
+		 * @param move packed move
+		 * @param depth remaining depth including this move
+		 * @param alpha lower bound
+		 * @param beta upper bound
+		 * @param ply distance from the root
+		 * @return score of the move
+		 */
+		private int searchMove(int move, int depth, int alpha, int beta, int ply)
+		{
+			byte target = model.getSquare(MoveGenerator.to(move));
+			boolean flagAttacked = PieceCode.type(target) == PieceType.FLAG;
+
+			model.makeMove(move);
+			int score;
+			if (flagAttacked) // nothing defeats a flag
+				score = WIN - ply;
+			else
+				score = -negamax(depth - 1, -beta, -alpha, ply + 1);
+			model.unmakeMove();
+			return score;
+		}
+
+		/**
+		 * Negamax alpha-beta search with transposition table cutoffs.
+		 * @param depth remaining depth
+		 * @param alpha lower bound
+		 * @param beta upper bound
+		 * @param ply distance from the root
+		 * @return score for the side to move
+		 */
+		private int negamax(int depth, int alpha, int beta, int ply)
+		{
+			if (++nodes % CHECK_TIME_NODES == 0 && timeUp())
+				stop.set(true);
+			if (stop.get())
+				return 0;
+
+			if (model.getRepetitions() > 0)
+			{
+				repeated = true;
+				return 0; // treat repeated positions as a draw
+			}
+
+			int side = model.getSideToMove();
+			long hash = model.getHash();
+			int ttMove = 0;
+			long entry = table.probe(hash);
+			if (entry != TranspositionTable.MISS)
+			{
+				ttMove = TranspositionTable.move(entry);
+				if (TranspositionTable.depth(entry) >= depth)
+				{
+					int score = fromTable(TranspositionTable.score(entry), ply);
+					int bound = TranspositionTable.bound(entry);
+					if (bound == TranspositionTable.EXACT
+							|| (bound == TranspositionTable.LOWER_BOUND && score >= beta)
+							|| (bound == TranspositionTable.UPPER_BOUND && score <= alpha))
+						return score;
+				}
+			}
+
+			if (depth <= 0 || ply >= MAX_DEPTH)
+				return evaluate(model, side);
+
+			int[] plyMoves = moves[ply];
+			int count = MoveGenerator.generate(model, side, plyMoves);
+			if (count == 0)
+				return -WIN + ply; // no legal move loses
+
+			orderMoves(plyMoves, count, ttMove);
+			boolean repeatedAbove = repeated;
+			repeated = false;
+			int originalAlpha = alpha;
+			int best = -INFINITY;
+			int bestMove = 0;
+			for (int i = 0; i < count; i++)
+			{
+				int score = searchMove(plyMoves[i], depth, alpha, beta, ply);
+				if (stop.get())
+					return 0;
+				if (score > best)
+				{
+					best = score;
+					bestMove = plyMoves[i];
+				}
+				if (score > alpha)
+					alpha = score;
+				if (alpha >= beta)
+					break;
+			}
+
+			int bound = TranspositionTable.EXACT;
+			if (best <= originalAlpha)
+				bound = TranspositionTable.UPPER_BOUND;
+			else if (best >= beta)
+				bound = TranspositionTable.LOWER_BOUND;
+			if (!repeated)
+				table.store(hash, depth, toTable(best, ply), bound, bestMove);
+			repeated |= repeatedAbove;
+			return best;
+		}
+
+		/**
+		 * Moves the preferred move to the front, followed by captures ordered
+		 * by the value of the captured piece.
+		 * @param list moves
+		 * @param count number of moves
+		 * @param first preferred move, or 0
+		 */
+		private void orderMoves(int[] list, int count, int first)
+		{
+			// insertion sort on a key: preferred move, then victim value
+			for (int i = 1; i < count; i++)
+			{
+				int move = list[i];
+				int key = orderKey(move, first);
+				int j = i - 1;
+				while (j >= 0 && orderKey(list[j], first) < key)
+				{
+					list[j + 1] = list[j];
+					j--;
+				}
+				list[j + 1] = move;
+			}
+		}
+
+		/**
+		 * Sort key for move ordering.
+		 * @param move packed move
+		 * @param first preferred move
+		 * @return larger keys are searched first
+		 */
+		private int orderKey(int move, int first)
+		{
+			if (move == first)
+				return Integer.MAX_VALUE;
+			return value(model.getSquare(MoveGenerator.to(move)));
+		}
+
+		/**
+		 * Checks the clock.
+		 * @return true if the deadline has passed
+		 */
+		private boolean timeUp()
+		{
+			return System.nanoTime() - deadline >= 0;
+		}
+	}
+}
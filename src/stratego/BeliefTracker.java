@@ -0,0 +1,363 @@
+package stratego;
+
+import java.util.Arrays;
+import java.util.Observable;
+import java.util.Observer;
+
+import stratego.Piece.PieceType;
+
+/**
+ * BeliefTracker keeps what one player has learned about the opponent's
+ * pieces: which have been revealed by a battle or a scout's multi-square
+ * move, and which have moved (a moved piece is not a bomb or the flag).
+ * From that it gives a probability for every {@link PieceType} of every
+ * opponent piece.
+ * </p> Notes:
+ * 		-each update is O(1): the tracker only keeps a piece id per square,
+ * 			per-piece moved/revealed flags and counts of the opponent's pieces
+ * 			that are still on the board and unrevealed
+ * 		-probabilities are computed on request from those counts, assuming
+ * 			every arrangement of the unrevealed pieces that agrees with what
+ * 			has been seen is equally likely
+ * 		-updates come from the same messages the {@link StrategoView}
+ * 			receives (a {@link MoveMessage} per move) or from
+ * 			{@link #onMove(int, int, byte, byte, int)} for a model played with
+ * 			{@link StrategoModel#makeMove(int)}
+ * 		-in a refereed game (see {@link GameServer}) the opponent's setup
+ * 			arrives as {@link PieceType#UNKNOWN} and plain moves without
+ * 			the moving piece, which changes nothing above
+ */
+public class BeliefTracker implements Observer
+{
+	private static final int TYPES = PieceType.values().length;
+	private static final int BOMB = PieceType.BOMB.ordinal();
+	private static final int FLAG = PieceType.FLAG.ordinal();
+	private static final int SCOUT = PieceType.SCOUT.ordinal();
+	private static final int MAX_PIECES = StrategoModel.SQUARES; // no more than the board holds
+
+	private final int color; // color holding the beliefs
+	private final int enemy;
+
+	private final int[] ids = new int[StrategoModel.SQUARES]; // opponent piece id per square, -1 if none
+	private final int[] colors = new int[StrategoModel.SQUARES]; // color per square, both sides
+
+	// per opponent piece id
+	private final int[] revealedType = new int[MAX_PIECES]; // ordinal, -1 while hidden
+	private final boolean[] moved = new boolean[MAX_PIECES];
+	private int pieceCount;
+
+	// opponent pieces on the board and not revealed
+	private final int[] unknownCounts = new int[TYPES];
+	private int unknown;
+	private int unknownMoved;
+
+	/**
+	 * Constructor. Nothing is tracked until a setup or position is given.
+	 * @param color color of the player holding the beliefs
+	 */
+	public BeliefTracker(int color)
+	{
+		this.color = color;
+		this.enemy = (color == Piece.RED) ? Piece.BLUE : Piece.RED;
+		clear();
+	}
+
+	/**
+	 * Forgets everything.
+	 */
+	public void clear()
+	{
+		Arrays.fill(ids, -1);
+		Arrays.fill(colors, Piece.NONE);
+		Arrays.fill(unknownCounts, 0);
+		pieceCount = 0;
+		unknown = 0;
+		unknownMoved = 0;
+	}
+
+	/**
+	 * Starts tracking from a position: every opponent piece without the
+	 * revealed bit is unknown and assumed not to have moved. The unknown
+	 * counts are the model's piece counts less the revealed pieces.
+	 * @param model position
+	 */
+	public void reset(StrategoModel model)
+	{
+		clear();
+		for (PieceType type : PieceType.values())
+		{
+			int count = model.getPieceCount(enemy, type);
+			unknownCounts[type.ordinal()] = count;
+			unknown += count;
+		}
+
+		for (int i = 0; i < StrategoModel.SQUARES; i++)
+		{
+			byte code = model.getSquare(i);
+			colors[i] = PieceCode.color(code);
+			if (colors[i] == enemy)
+			{
+				int id = addPiece(i);
+				if (PieceCode.isRevealed(code))
+					reveal(id, PieceCode.typeOrdinal(code));
+			}
+		}
+	}
+
+	/**
+	 * Records one side's initial setup.
+	 * @param setupColor color of the setup
+	 * @param setupGrid setup, as in {@link StrategoModel#setBoard}
+	 */
+	public void setup(int setupColor, PieceType[][] setupGrid)
+	{
+		int startRow = (setupColor == Piece.RED) ? 6 : 0;
+		for (int row = 0; row < setupGrid.length; row++)
+		{
+			for (int col = 0; col < setupGrid[row].length; col++)
+			{
+				int square = StrategoModel.squareIndex(row + startRow, col);
+				PieceType type = setupGrid[row][col];
+				if (type == null || type == PieceType.EMPTY)
+					continue;
+				colors[square] = setupColor;
+				if (setupColor == enemy)
+				{
+					addPiece(square);
+					if (type == PieceType.UNKNOWN)
+						continue;
+					unknownCounts[type.ordinal()]++;
+					unknown++;
+				}
+			}
+		}
+		
+		// a refereed setup hides every type, but the army is still the usual one
+		if (setupColor == enemy && setupGrid[0][0] == PieceType.UNKNOWN)
+		{
+			int[] army = StrategoModel.initialCounts();
+			for (int t = 0; t < TYPES; t++)
+			{
+				unknownCounts[t] += army[t];
+				unknown += army[t];
+			}
+		}
+	}
+
+	/**
+	 * Records a move made with {@link StrategoModel#makeMove(int)}. Call with
+	 * the squares' codes from before the move.
+	 * @param from source square index
+	 * @param to destination square index
+	 * @param attacker code of the moving piece
+	 * @param defender code of the destination square
+	 * @param result value returned by {@link StrategoModel#makeMove(int)}
+	 */
+	public void onMove(int from, int to, byte attacker, byte defender, int result)
+	{
+		apply(from, to, PieceCode.typeOrdinal(attacker), PieceCode.color(attacker),
+				PieceCode.typeOrdinal(defender), defender != PieceCode.EMPTY, result);
+	}
+
+	/**
+	 * Follows the game from model notifications.
+	 * @param o - the {@link StrategoModel} being observed
+	 * @param arg - {@link BoardSetupMessage}, {@link MoveMessage} or
+	 * {@link GameSnapshot}
+	 */
+	@Override
+	public void update(Observable o, Object arg)
+	{
+		if (arg instanceof BoardSetupMessage)
+		{
+			BoardSetupMessage msg = (BoardSetupMessage) arg;
+			setup(msg.getColor(), msg.getInitialSetup());
+		}
+		else if (arg instanceof MoveMessage)
+		{
+			MoveMessage msg = (MoveMessage) arg;
+			Piece attacker = msg.getAttacker();
+			if (attacker == null) // a plain move the server did not reveal
+				apply(msg.getFrom(), msg.getTo(), PieceType.UNKNOWN.ordinal(), colors[msg.getFrom()],
+						PieceType.EMPTY.ordinal(), false, msg.getResult());
+			else
+				onMove(msg.getFrom(), msg.getTo(), PieceCode.encode(attacker),
+						PieceCode.encode(msg.getDefender()), msg.getResult());
+		}
+		else if (arg instanceof GameSnapshot && o instanceof StrategoModel)
+			reset((StrategoModel) o); // a saved game resumed
+	}
+
+	/**
+	 * Gets the probability that the opponent piece on a square is a type.
+	 * @param square square index
+	 * @param type piece type
+	 * @return probability, 0 if there is no opponent piece on the square
+	 */
+	public double probability(int square, PieceType type)
+	{
+		int id = ids[square];
+		if (id < 0)
+			return 0.0;
+		int t = type.ordinal();
+		if (revealedType[id] >= 0)
+			return (revealedType[id] == t) ? 1.0 : 0.0;
+
+		int immovable = unknownCounts[BOMB] + unknownCounts[FLAG];
+		int movableSlots = unknown - immovable;
+		int unmovedSlots = unknown - unknownMoved;
+		boolean isImmovable = (t == BOMB || t == FLAG);
+
+		if (moved[id])
+		{
+			if (isImmovable || movableSlots <= 0)
+				return 0.0;
+			return (double) unknownCounts[t] / movableSlots;
+		}
+		if (unmovedSlots <= 0)
+			return 0.0;
+		if (isImmovable)
+			return (double) unknownCounts[t] / unmovedSlots;
+		if (movableSlots <= 0)
+			return 0.0;
+		// an unmoved piece is movable with probability (unmoved - immovable) / unmoved
+		return (double) unknownCounts[t] / movableSlots * Math.max(0, unmovedSlots - immovable) / unmovedSlots;
+	}
+
+	/**
+	 * Writes the probability of every type for the opponent piece on a
+	 * square.
+	 * @param square square index
+	 * @param out buffer indexed by {@link PieceType} ordinal
+	 */
+	public void probabilities(int square, double[] out)
+	{
+		PieceType[] types = PieceType.values();
+		for (int t = 0; t < TYPES; t++)
+			out[t] = probability(square, types[t]);
+	}
+
+	/**
+	 * Indicates if the opponent piece on a square has moved.
+	 * @param square square index
+	 * @return true if there is an opponent piece that has moved
+	 */
+	public boolean hasMoved(int square)
+	{
+		int id = ids[square];
+		return id >= 0 && moved[id];
+	}
+
+	/**
+	 * Indicates if the opponent piece on a square has been revealed.
+	 * @param square square index
+	 * @return true if there is an opponent piece that has been revealed
+	 */
+	public boolean isRevealed(int square)
+	{
+		int id = ids[square];
+		return id >= 0 && revealedType[id] >= 0;
+	}
+
+	/**
+	 * Gets the number of opponent pieces of a type on the board that have
+	 * not been revealed.
+	 * @param type piece type
+	 * @return count
+	 */
+	public int getUnknownCount(PieceType type)
+	{
+		return unknownCounts[type.ordinal()];
+	}
+
+	/**
+	 * Gets the color of the player holding the beliefs.
+	 * @return {@link Piece#BLUE} or {@link Piece#RED}
+	 */
+	public int getColor()
+	{
+		return color;
+	}
+
+	/**
+	 * Updates the tracked squares and pieces for one move.
+	 * @param from source square index
+	 * @param to destination square index
+	 * @param attacker attacker type ordinal
+	 * @param attackerColor attacker color
+	 * @param defender defender type ordinal (only used for opponent pieces)
+	 * @param battle true if the destination was occupied
+	 * @param result 0 both removed, 1 attacker remains, 2 defender remains
+	 */
+	private void apply(int from, int to, int attacker, int attackerColor, int defender, boolean battle, int result)
+	{
+		int attackerId = ids[from];
+		int defenderId = ids[to];
+		ids[from] = -1;
+		colors[from] = Piece.NONE;
+
+		if (attackerId >= 0)
+		{
+			if (!moved[attackerId])
+			{
+				moved[attackerId] = true;
+				if (revealedType[attackerId] < 0)
+					unknownMoved++;
+			}
+			boolean scoutSlide = Math.abs(from - to) != 1 && Math.abs(from - to) != StrategoModel.COLUMNS;
+			if (battle)
+				reveal(attackerId, attacker);
+			else if (scoutSlide)
+				reveal(attackerId, SCOUT);
+		}
+		if (battle && defenderId >= 0)
+			reveal(defenderId, defender);
+
+		if (result == 0)
+		{
+			ids[to] = -1;
+			colors[to] = Piece.NONE;
+		}
+		else if (result == 1)
+		{
+			ids[to] = attackerId;
+			colors[to] = attackerColor;
+		}
+		// result == 2: the defender stays
+	}
+
+	/**
+	 * Adds an opponent piece.
+	 * @param square square index
+	 * @return piece id
+	 * @throws IllegalStateException if more pieces are added than fit on
+	 * the board without clearing the tracker
+	 */
+	private int addPiece(int square)
+	{
+		if (pieceCount == MAX_PIECES)
+			throw new IllegalStateException("more than " + MAX_PIECES + " opponent pieces");
+		int id = pieceCount++;
+		ids[square] = id;
+		revealedType[id] = -1;
+		moved[id] = false;
+		return id;
+	}
+
+	/**
+	 * Marks an opponent piece as revealed, taking it out of the unknown
+	 * counts.
+	 * @param id piece id
+	 * @param type revealed type ordinal
+	 */
+	private void reveal(int id, int type)
+	{
+		if (revealedType[id] >= 0)
+			return;
+		revealedType[id] = type;
+		unknownCounts[type]--;
+		unknown--;
+		if (moved[id])
+			unknownMoved--;
+	}
+}
@@ -0,0 +1,223 @@
+package stratego;
+
+import java.util.Observable;
+import java.util.Observer;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ComputerOpponent plays one side of a networked game with a
+ * {@link ComputerPlayer} instead of a {@link StrategoView}. It drives its own
+ * {@link StrategoController}, so its moves are checked and sent exactly like
+ * a human player's moves made with
+ * {@link StrategoController#movePiece(int, int, int, int)}.
+ * </p> Notes:
+ * 		-the setup is random, with the flag somewhere on the back row
+ * 		-a {@link BeliefTracker} follows the same notifications and is given
+ * 			to the player
+ * 		-every model update, network or local, runs on one executor thread;
+ * 			the turn passes after each {@link MoveMessage}, the same as in
+ * 			{@link StrategoView#update(Observable, Object)}
+ * 		-the opponent stops when the game is won or the other player ends it
+ */
+public class ComputerOpponent implements Observer
+{
+	public static final long DEFAULT_BUDGET_MILLIS = 1000;
+
+	private static final int CONNECT_ATTEMPTS = 50;
+	private static final long CONNECT_RETRY_MILLIS = 100;
+
+	private final ComputerPlayer player;
+	private final long budgetMillis;
+	private final ExecutorService executor;
+	private final StrategoController controller;
+	private final SplittableRandom random;
+
+	private int color;
+	private BeliefTracker beliefs;
+	private boolean sentSetup;
+	private boolean recvOtherSetup;
+	private boolean myTurn;
+	private boolean gameOver;
+
+	/**
+	 * Constructor.
+	 * @param player chooses the moves
+	 * @param budgetMillis time allowed for each move in milliseconds
+	 */
+	public ComputerOpponent(ComputerPlayer player, long budgetMillis)
+	{
+		this.player = player;
+		this.budgetMillis = budgetMillis;
+		this.executor = Executors.newSingleThreadExecutor(r ->
+		{
+			Thread thread = new Thread(r, "computer-opponent");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.controller = new StrategoController(executor);
+		this.random = new SplittableRandom();
+		controller.setModelObserver(this);
+	}
+
+	/**
+	 * Connects to the other player and sends the setup. As a server (red) this
+	 * blocks until the other player connects; as a client (blue) the
+	 * connection is retried for a few seconds so a server started at the same
+	 * time has a chance to listen first. A {@link GameServer} gives its
+	 * clients either color.
+	 * @param isServer true to wait for the other player, false to connect
+	 * @param server the server to connect to (if it's a client)
+	 * @param port the port to connect to
+	 * @return true if connected, false otherwise
+	 */
+	public boolean start(boolean isServer, String server, int port)
+	{
+		boolean error = controller.buildNetwork(isServer, server, port);
+		for (int attempt = 1; error && !isServer && attempt < CONNECT_ATTEMPTS; attempt++)
+		{
+			try
+			{
+				Thread.sleep(CONNECT_RETRY_MILLIS);
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				break;
+			}
+			error = controller.buildNetwork(isServer, server, port);
+		}
+		if (error)
+		{
+			System.out.println(controller.getGameNetworkError());
+			finish();
+			return false;
+		}
+
+		color = controller.getNetworkColor(); // a game server may pick either color
+		myTurn = color == Piece.RED; // red moves first
+		beliefs = new BeliefTracker(color);
+		player.setBeliefs(beliefs);
+
+		controller.initiateGameListening();
+		executor.execute(this::sendSetup);
+		return true;
+	}
+
+	/**
+	 * Waits until the game is over.
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public void awaitGameOver() throws InterruptedException
+	{
+		executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Sends a random setup with the flag on the back row.
+	 */
+	private void sendSetup()
+	{
+		controller.randomSetup(color, random);
+		controller.setBoard(color);
+	}
+
+	/**
+	 * Chooses and plays a move.
+	 */
+	private void playTurn()
+	{
+		if (gameOver)
+			return;
+
+		int move = player.chooseMove(controller.getModel(), color, budgetMillis);
+		if (move == -1)
+		{
+			finish();
+			return;
+		}
+		int from = MoveGenerator.from(move);
+		int to = MoveGenerator.to(move);
+		if (!controller.movePiece(from / StrategoModel.COLUMNS, from % StrategoModel.COLUMNS,
+				to / StrategoModel.COLUMNS, to % StrategoModel.COLUMNS))
+			finish();
+	}
+
+	/**
+	 * Closes the connection and stops the player.
+	 */
+	private void finish()
+	{
+		gameOver = true;
+		controller.closeNetwork();
+		player.shutdown();
+		executor.shutdown();
+	}
+
+	/**
+	 * Follows the game from the model's notifications: starts play once both
+	 * setups are known and moves whenever the turn passes to this player.
+	 * @param o - the {@link StrategoModel} being observed
+	 * @param arg - {@link BoardSetupMessage}, {@link MoveMessage} or the game
+	 * over {@link SinglePositionMessage}
+	 */
+	@Override
+	public void update(Observable o, Object arg)
+	{
+		if (gameOver)
+			return;
+		beliefs.update(o, arg);
+
+		if (arg instanceof BoardSetupMessage)
+		{
+			boolean ready = sentSetup && recvOtherSetup;
+			if (((BoardSetupMessage) arg).getColor() == color)
+				sentSetup = true;
+			else
+				recvOtherSetup = true;
+
+			if (!ready && sentSetup && recvOtherSetup && myTurn)
+				executor.execute(this::playTurn);
+		}
+		else if (arg instanceof SinglePositionMessage)
+		{
+			SinglePositionMessage msg = (SinglePositionMessage) arg;
+			if (msg.getRow() == -1 && msg.getCol() == -1) // ended by the other player
+				finish();
+		}
+		else if (arg instanceof MoveMessage)
+		{
+			myTurn = !myTurn;
+			// both run after the current update returns: a local move is
+			// notified from inside movePiece
+			if (controller.winner() != Piece.NONE)
+				executor.execute(this::finish);
+			else if (myTurn)
+				executor.execute(this::playTurn);
+		}
+	}
+
+	/**
+	 * Runs a computer opponent from the command line.
+	 * <p> Arguments: <code>server|client host port [budgetMillis]</code>
+	 * @param args command line arguments
+	 * @throws InterruptedException if interrupted while playing
+	 */
+	public static void main(String[] args) throws InterruptedException
+	{
+		if (args.length < 3)
+		{
+			System.out.println("usage: ComputerOpponent server|client host port [budgetMillis]");
+			return;
+		}
+		boolean isServer = args[0].equals("server");
+		int port = Integer.parseInt(args[2]);
+		long budget = (args.length > 3) ? Long.parseLong(args[3]) : DEFAULT_BUDGET_MILLIS;
+
+		ComputerOpponent opponent = new ComputerOpponent(new MonteCarloPlayer(), budget);
+		if (opponent.start(isServer, args[1], port))
+			opponent.awaitGameOver();
+	}
+}
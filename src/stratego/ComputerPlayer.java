@@ -0,0 +1,32 @@
+package stratego;
+
+/**
+ * ComputerPlayer chooses moves for one side of a {@link StrategoModel} in
+ * place of a human dragging pieces in the {@link StrategoView}.
+ */
+public interface ComputerPlayer
+{
+	/**
+	 * Chooses a move for a color. The model is not modified.
+	 * @param model current position
+	 * @param color color to move, {@link Piece#BLUE} or {@link Piece#RED}
+	 * @param budgetMillis time allowed for the decision in milliseconds
+	 * @return packed move (see {@link MoveGenerator#encode(int, int)}), or -1
+	 * if the color has no legal move
+	 */
+	int chooseMove(StrategoModel model, int color, long budgetMillis);
+	
+	/**
+	 * Gives the player what its side has learned about the opponent's
+	 * pieces. Players that search the model's piece types as they are
+	 * ignore it.
+	 * @param beliefs beliefs of the side the player moves for, or null
+	 */
+	default void setBeliefs(BeliefTracker beliefs) {}
+	
+	/**
+	 * Releases the player's search threads. The player can not be used
+	 * afterwards.
+	 */
+	void shutdown();
+}
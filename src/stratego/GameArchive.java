@@ -0,0 +1,560 @@
+package stratego;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This class reads an archive of recorded games, memory mapped, so any
+ * position of any game can be rebuilt in a {@link StrategoModel} without
+ * reading the games before it.
+ *
+ * <p>An archive is built from a {@link GameLog} by
+ * {@link #build(Path, Path)}. It holds a header, the games, then an index.
+ * The header is a four byte magic number, a four byte format version, the
+ * eight byte number of games and the eight byte offset of the index. A
+ * game is the {@value #BOARD_LENGTH} {@link PieceCode} bytes of the board
+ * once both players have set up, then two bytes per ply, the source and
+ * destination squares. The index has one {@value #ENTRY_LENGTH} byte
+ * entry per game, sorted by game id: the game id, the offset of the game,
+ * its number of plies, the winner and whether the game ended before the
+ * log did.</p>
+ * <p>Plies have a fixed width, so the offset of a ply is the offset of
+ * its game plus arithmetic. Battles are not stored: both armies are known
+ * from the start, so applying the squares with
+ * {@link StrategoModel#makeMove(int)} resolves every battle again.</p>
+ * <p>Notes:</p>
+ * <ul>
+ *   <li>the games are mapped in segments of at most 1 GiB, and no game
+ *       crosses a segment, so an archive may be larger than one
+ *       {@link MappedByteBuffer}</li>
+ *   <li>reading uses absolute gets on the mapped buffers only, so games
+ *       are read from the page cache without being copied, and an archive
+ *       may be read from any number of threads at once, each with a model
+ *       of its own</li>
+ *   <li>{@link #replay(int, int, StrategoModel)} and
+ *       {@link #scan(StrategoModel, PlyVisitor)} allocate nothing per ply
+ *       or per game, once the model's undo stack has grown to the longest
+ *       game</li>
+ * </ul>
+ */
+public final class GameArchive {
+
+    public static final int MAGIC = 0x53544741; // "STGA"
+    public static final int FORMAT = 1;
+    public static final int BOARD_LENGTH = StrategoModel.SQUARES;
+    public static final int ENTRY_LENGTH = 24;
+
+    private static final int HEADER_LENGTH = 24;
+    private static final int PLY_LENGTH = 2;
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT = 1L << SEGMENT_SHIFT; // bytes mapped at most at once
+    private static final int MAX_PLIES = (int) ((SEGMENT - BOARD_LENGTH) / PLY_LENGTH);
+    private static final int WRITE_BUFFER = 1 << 16;
+    // index entry: id, offset, plies, winner, finished
+    private static final int ENTRY_OFFSET = 8;
+    private static final int ENTRY_PLIES = 16;
+    private static final int ENTRY_WINNER = 20;
+    private static final int ENTRY_FINISHED = 21;
+    // an empty board with full counts; only ever copied from
+    private static final StrategoModel START = new StrategoModel();
+
+    /**
+     * Called by {@link GameArchive#scan(StrategoModel, PlyVisitor)} for
+     * every ply of every game.
+     */
+    @FunctionalInterface
+    public interface PlyVisitor {
+        /**
+         * Visits a ply, after it is applied.
+         *
+         * @param game - the index of the game in the archive
+         * @param ply - the ply of the game, 0 for the first move
+         * @param move - the move, see {@link MoveGenerator#encode(int, int)}
+         * @param result - the result {@link StrategoModel#makeMove(int)} gave
+         * @param model - the position after the move, only valid during the
+         *                call
+         */
+        void ply(int game, int ply, int move, int result, StrategoModel model);
+    }
+
+    private final MappedByteBuffer[] segments;
+    private final MappedByteBuffer index;
+    private final int games;
+
+    /**
+     * Constructor.
+     * <p>Maps an archive built by {@link #build(Path, Path)}. The mapping
+     * outlives the file being open, so nothing needs closing.
+     *
+     * @param file - the archive file
+     * @throws IOException if the file can not be read or is not an archive
+     */
+    public GameArchive(Path file) throws IOException {
+        try(FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            while(header.hasRemaining() && in.read(header, header.position()) >= 0) {
+                // read it all
+            }
+            if(header.hasRemaining() || header.getInt(0) != MAGIC) {
+                throw new ProtocolException("not a game archive");
+            }
+            if(header.getInt(4) != FORMAT) {
+                throw new ProtocolException("game archive format " + header.getInt(4) + ", this is format " + FORMAT);
+            }
+            long count = header.getLong(8);
+            long indexOffset = header.getLong(16);
+            if(count < 0 || count > Integer.MAX_VALUE / ENTRY_LENGTH || indexOffset < HEADER_LENGTH
+                    || indexOffset + count * ENTRY_LENGTH > in.size()) {
+                throw new ProtocolException("game archive header does not match its size");
+            }
+            games = (int) count;
+            index = in.map(FileChannel.MapMode.READ_ONLY, indexOffset, count * ENTRY_LENGTH);
+            segments = new MappedByteBuffer[(int) ((indexOffset + SEGMENT - 1) >>> SEGMENT_SHIFT)];
+            for(int i = 0; i < segments.length; i++) {
+                long start = (long) i << SEGMENT_SHIFT;
+                segments[i] = in.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT, indexOffset - start));
+            }
+        }
+    }
+
+    /**
+     * <ul><b><i>getGameCount</i></b></ul>
+     * <ul><ul><p><code>public int getGameCount () </code></p></ul>
+     *
+     * Returns the number of games in the archive. Games are numbered from
+     * 0 in the order of their ids.
+     *
+     * @return the number of games
+     */
+    public int getGameCount() {
+        return games;
+    }
+
+    /**
+     * <ul><b><i>find</i></b></ul>
+     * <ul><ul><p><code>public int find (long id) </code></p></ul>
+     *
+     * Finds a game by the id its {@link GameServer} gave it.
+     *
+     * @param id - the game id
+     * @return the index of the game, or -1 if it is not archived
+     */
+    public int find(long id) {
+        int low = 0;
+        int high = games - 1;
+        while(low <= high) {
+            int middle = (low + high) >>> 1;
+            long found = getGameId(middle);
+            if(found < id) {
+                low = middle + 1;
+            }else if(found > id) {
+                high = middle - 1;
+            }else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * <ul><b><i>getGameId</i></b></ul>
+     * <ul><ul><p><code>public long getGameId (int game) </code></p></ul>
+     *
+     * Returns the id of a game.
+     *
+     * @param game - the index of the game
+     * @return the game id
+     */
+    public long getGameId(int game) {
+        return index.getLong(entry(game));
+    }
+
+    /**
+     * <ul><b><i>getPlyCount</i></b></ul>
+     * <ul><ul><p><code>public int getPlyCount (int game) </code></p></ul>
+     *
+     * Returns the number of plies of a game.
+     *
+     * @param game - the index of the game
+     * @return the number of moves made
+     */
+    public int getPlyCount(int game) {
+        return index.getInt(entry(game) + ENTRY_PLIES);
+    }
+
+    /**
+     * <ul><b><i>getWinner</i></b></ul>
+     * <ul><ul><p><code>public int getWinner (int game) </code></p></ul>
+     *
+     * Returns the winner of a game, by {@link StrategoModel#winner()} after
+     * its last ply.
+     *
+     * @param game - the index of the game
+     * @return {@link Piece#RED} or {@link Piece#BLUE}, or {@link Piece#NONE}
+     *         for a game a player left or that was not finished
+     */
+    public int getWinner(int game) {
+        return index.get(entry(game) + ENTRY_WINNER);
+    }
+
+    /**
+     * <ul><b><i>isFinished</i></b></ul>
+     * <ul><ul><p><code>public boolean isFinished (int game) </code></p></ul>
+     *
+     * Returns whether a game ended before the log it was built from did.
+     *
+     * @param game - the index of the game
+     * @return false for a game still being played when the log was read
+     */
+    public boolean isFinished(int game) {
+        return index.get(entry(game) + ENTRY_FINISHED) != 0;
+    }
+
+    /**
+     * <ul><b><i>getMove</i></b></ul>
+     * <ul><ul><p><code>public int getMove (int game, int ply) </code></p></ul>
+     *
+     * Returns one move of a game.
+     *
+     * @param game - the index of the game
+     * @param ply - the ply, 0 for the first move
+     * @return the move, see {@link MoveGenerator#encode(int, int)}
+     */
+    public int getMove(int game, int ply) {
+        if(ply < 0 || ply >= getPlyCount(game)) {
+            throw new IndexOutOfBoundsException("ply " + ply + " of " + getPlyCount(game));
+        }
+        long offset = index.getLong(entry(game) + ENTRY_OFFSET);
+        MappedByteBuffer segment = segments[(int) (offset >>> SEGMENT_SHIFT)];
+        int at = (int) (offset & (SEGMENT - 1)) + BOARD_LENGTH + ply * PLY_LENGTH;
+        return MoveGenerator.encode(segment.get(at) & 0xFF, segment.get(at + 1) & 0xFF);
+    }
+
+    /**
+     * <ul><b><i>replay</i></b></ul>
+     * <ul><ul><p><code>public void replay (int game, int plies, StrategoModel model) </code></p></ul>
+     *
+     * Sets a model to a position of a game: the board once both players
+     * set up, then the first plies applied with
+     * {@link StrategoModel#makeMove(int)}. The model's observers are not
+     * notified, and the plies may be taken back with
+     * {@link StrategoModel#unmakeMove()}.
+     *
+     * @param game - the index of the game
+     * @param plies - how many plies to apply, up to
+     *                {@link #getPlyCount(int)}
+     * @param model - the model to set
+     */
+    public void replay(int game, int plies, StrategoModel model) {
+        if(plies < 0 || plies > getPlyCount(game)) {
+            throw new IndexOutOfBoundsException("ply " + plies + " of " + getPlyCount(game));
+        }
+        long offset = index.getLong(entry(game) + ENTRY_OFFSET);
+        MappedByteBuffer segment = segments[(int) (offset >>> SEGMENT_SHIFT)];
+        int at = start(segment, (int) (offset & (SEGMENT - 1)), model);
+        for(int ply = 0; ply < plies; ply++, at += PLY_LENGTH) {
+            model.makeMove(MoveGenerator.encode(segment.get(at) & 0xFF, segment.get(at + 1) & 0xFF));
+        }
+    }
+
+    /**
+     * <ul><b><i>scan</i></b></ul>
+     * <ul><ul><p><code>public void scan (StrategoModel model, PlyVisitor visitor) </code></p></ul>
+     *
+     * Replays every game in the archive, in index order, calling a visitor
+     * after each ply. The model is reused for every game.
+     *
+     * @param model - the model the games are replayed in
+     * @param visitor - called for every ply
+     */
+    public void scan(StrategoModel model, PlyVisitor visitor) {
+        for(int game = 0; game < games; game++) {
+            int entry = entry(game);
+            long offset = index.getLong(entry + ENTRY_OFFSET);
+            int plies = index.getInt(entry + ENTRY_PLIES);
+            MappedByteBuffer segment = segments[(int) (offset >>> SEGMENT_SHIFT)];
+            int at = start(segment, (int) (offset & (SEGMENT - 1)), model);
+            for(int ply = 0; ply < plies; ply++, at += PLY_LENGTH) {
+                int move = MoveGenerator.encode(segment.get(at) & 0xFF, segment.get(at + 1) & 0xFF);
+                int result = model.makeMove(move);
+                visitor.ply(game, ply, move, result, model);
+            }
+        }
+    }
+
+    /**
+     * <ul><b><i>build</i></b></ul>
+     * <ul><ul><p><code>public static int build (Path log, Path archive) </code></p></ul>
+     *
+     * Builds an archive of the games in a {@link GameLog}, replacing the
+     * archive file if there is one. Each move is replayed to check that it
+     * resolves as the log says. Games still being played when the log ends
+     * are archived as far as they went; games whose players did not both
+     * set up are left out.
+     *
+     * @param log - the log file
+     * @param archive - the archive file to write
+     * @return the number of games archived
+     * @throws IOException if a file can not be read or written, or the log
+     *                     holds a game that does not replay
+     */
+    public static int build(Path log, Path archive) throws IOException {
+        try(FileChannel out = FileChannel.open(archive, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            Builder builder = new Builder(out);
+            try {
+                GameLog.read(log, builder::record);
+            }catch(UncheckedIOException e) {
+                throw e.getCause();
+            }
+            return builder.finish();
+        }
+    }
+
+    /**
+     * Gets the offset of a game's entry in the index.
+     *
+     * @param game - the index of the game
+     * @return byte offset
+     */
+    private int entry(int game) {
+        if(game < 0 || game >= games) {
+            throw new IndexOutOfBoundsException("game " + game + " of " + games);
+        }
+        return game * ENTRY_LENGTH;
+    }
+
+    /**
+     * Sets a model to the start of a game, square by square from the
+     * mapped board.
+     *
+     * @param segment - the segment holding the game
+     * @param at - the offset of the game in the segment
+     * @param model - the model to set
+     * @return the offset of the game's first ply
+     */
+    private static int start(MappedByteBuffer segment, int at, StrategoModel model) {
+        model.copyFrom(START);
+        for(int square = 0; square < BOARD_LENGTH; square++) {
+            model.setSquare(square, segment.get(at + square));
+        }
+        return at + BOARD_LENGTH;
+    }
+
+    /**
+     * Writes an archive while a log is read: games are kept in memory while
+     * they are played and written as each ends.
+     */
+    private static final class Builder {
+        private final FileChannel out;
+        private final ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER);
+        private final Map<Long, Game> playing = new HashMap<Long, Game>();
+        private final ArrayList<long[]> entries = new ArrayList<long[]>(); // id, offset, plies, winner, finished
+        private long position; // in the file, of the buffer's start
+
+        Builder(FileChannel out) {
+            this.out = out;
+            buffer.position(HEADER_LENGTH); // written last
+        }
+
+        /**
+         * Takes one record of the log.
+         *
+         * @param id - the game id
+         * @param message - the record's message
+         */
+        void record(Long id, Object message) {
+            try {
+                Game game = playing.computeIfAbsent(id, Game::new);
+                if(message instanceof BoardSetupMessage) {
+                    game.setup((BoardSetupMessage) message);
+                }else if(message instanceof MoveMessage) {
+                    game.move((MoveMessage) message);
+                }else if(message instanceof SinglePositionMessage) {
+                    playing.remove(id);
+                    write(game, true);
+                }else {
+                    throw new ProtocolException("unexpected " + message.getClass().getSimpleName() + " in the log");
+                }
+            }catch(IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Writes the games not ended, the index and the header.
+         *
+         * @return the number of games archived
+         * @throws IOException if the file can not be written
+         */
+        int finish() throws IOException {
+            for(Game game : playing.values()) {
+                write(game, false);
+            }
+            playing.clear();
+
+            entries.sort(Comparator.comparingLong(e -> e[0]));
+            long indexOffset = position + buffer.position();
+            for(long[] entry : entries) {
+                room(ENTRY_LENGTH);
+                buffer.putLong(entry[0]).putLong(entry[1]).putInt((int) entry[2])
+                        .put((byte) entry[3]).put((byte) entry[4]).putShort((short) 0);
+            }
+            flush();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            header.putInt(MAGIC).putInt(FORMAT).putLong(entries.size()).putLong(indexOffset);
+            header.flip();
+            while(header.hasRemaining()) {
+                out.write(header, header.position());
+            }
+            out.force(true);
+            return entries.size();
+        }
+
+        /**
+         * Writes a game and its index entry, starting a new segment if the
+         * game does not fit in what is left of this one.
+         *
+         * @param game - the game
+         * @param finished - true if the game ended in the log
+         * @throws IOException if the file can not be written
+         */
+        private void write(Game game, boolean finished) throws IOException {
+            if(game.board == null) {
+                return; // never started
+            }
+            int length = BOARD_LENGTH + game.plyCount * PLY_LENGTH;
+            long left = SEGMENT - ((position + buffer.position()) & (SEGMENT - 1));
+            if(length > left) {
+                flush();
+                position += left; // the gap reads as zeros
+            }
+            entries.add(new long[] { game.id, position + buffer.position(), game.plyCount,
+                    game.model.winner(), finished ? 1 : 0 });
+            put(game.board, BOARD_LENGTH);
+            put(game.plies, game.plyCount * PLY_LENGTH);
+        }
+
+        /**
+         * Buffers bytes for the file.
+         *
+         * @param bytes - the bytes
+         * @param length - how many to write
+         * @throws IOException if the file can not be written
+         */
+        private void put(byte[] bytes, int length) throws IOException {
+            for(int done = 0; done < length;) {
+                room(1);
+                int chunk = Math.min(length - done, buffer.remaining());
+                buffer.put(bytes, done, chunk);
+                done += chunk;
+            }
+        }
+
+        /**
+         * Makes room in the buffer.
+         *
+         * @param bytes - bytes needed, at most the buffer's size
+         * @throws IOException if the file can not be written
+         */
+        private void room(int bytes) throws IOException {
+            if(buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        /**
+         * Writes the buffer to the file.
+         *
+         * @throws IOException if the file can not be written
+         */
+        private void flush() throws IOException {
+            buffer.flip();
+            while(buffer.hasRemaining()) {
+                out.write(buffer, position + buffer.position());
+            }
+            position += buffer.limit();
+            buffer.clear();
+        }
+    }
+
+    /**
+     * A game of the log being archived.
+     */
+    private static final class Game {
+        final long id;
+        final StrategoModel model = new StrategoModel();
+        byte[] board; // once both players set up
+        byte[] plies = new byte[64];
+        int plyCount;
+        boolean redSetUp;
+        boolean blueSetUp;
+
+        Game(long id) {
+            this.id = id;
+        }
+
+        /**
+         * Places a player's setup, and keeps the board once both have.
+         *
+         * @param setup - the setup
+         * @throws ProtocolException if the player set up already
+         */
+        void setup(BoardSetupMessage setup) throws ProtocolException {
+            boolean red = setup.getColor() == Piece.RED;
+            if(red ? redSetUp : blueSetUp) {
+                throw new ProtocolException("game " + id + " set up twice");
+            }
+            model.setBoard(setup.getInitialSetup(), setup.getColor(), false);
+            if(red) {
+                redSetUp = true;
+            }else {
+                blueSetUp = true;
+            }
+            if(redSetUp && blueSetUp) {
+                board = new byte[BOARD_LENGTH];
+                for(int square = 0; square < BOARD_LENGTH; square++) {
+                    board[square] = model.getSquare(square);
+                }
+            }
+        }
+
+        /**
+         * Replays a move and keeps its squares.
+         *
+         * @param move - the move as the log has it
+         * @throws ProtocolException if the game has not started, or the move
+         *                           does not resolve as the log says
+         */
+        void move(MoveMessage move) throws ProtocolException {
+            if(board == null) {
+                throw new ProtocolException("game " + id + " moves before both setups");
+            }
+            if(plyCount == MAX_PLIES) {
+                throw new ProtocolException("game " + id + " is too long to archive");
+            }
+            int result = model.makeMove(MoveGenerator.encode(move.getFrom(), move.getTo()));
+            if(result != move.getResult()) {
+                throw new ProtocolException("game " + id + " ply " + plyCount + " does not replay");
+            }
+            if(plies.length < (plyCount + 1) * PLY_LENGTH) {
+                plies = Arrays.copyOf(plies, plies.length * 2);
+            }
+            plies[plyCount * PLY_LENGTH] = (byte) move.getFrom();
+            plies[plyCount * PLY_LENGTH + 1] = (byte) move.getTo();
+            plyCount++;
+        }
+    }
+}
@@ -0,0 +1,377 @@
+package stratego;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32C;
+
+/**
+ * This class appends the setups and moves of games to a binary log file,
+ * so a {@link GameServer} keeps a record of every game it hosts.
+ *
+ * <p>The file starts with a four byte magic number and the
+ * {@link WireProtocol#VERSION} its records are encoded with. Each record
+ * is then a four byte length, a CRC-32C of the rest of the record, the
+ * eight byte id of the game, and a {@link WireProtocol} frame without its
+ * own length: a {@link BoardSetupMessage}, a {@link MoveMessage}, or the
+ * game over message when the game ends.</p>
+ * <p>Records are written by a thread of the log's own with group commit:
+ * whatever was appended while the last batch was being forced to disk is
+ * written as the next batch, with one gathering write and one
+ * {@link FileChannel#force(boolean)}. Appending never waits for the disk,
+ * and a crash loses at most the batches not forced yet. A record torn by
+ * a crash fails its length or checksum; opening the log again cuts the
+ * file back to the last whole record.</p>
+ * <p>Notes:</p>
+ * <ul>
+ *   <li>records of different games are interleaved in the order they were
+ *       appended; those of one game are in the order it was played</li>
+ *   <li>if a write fails, the log stops taking records and
+ *       {@link #sync()} and {@link #close()} report the failure</li>
+ *   <li>may be used from any thread</li>
+ * </ul>
+ */
+public final class GameLog implements Closeable {
+
+    public static final int MAGIC = 0x53544C47; // "STLG"
+
+    private static final int HEADER_LENGTH = 5; // magic and protocol version
+    private static final int RECORD_HEADER = 8; // length and checksum
+    private static final int GAME_LENGTH = 8;
+    private static final int MAX_RECORD = GAME_LENGTH + 0xFFFF;
+    private static final int READ_BUFFER = 1 << 17; // holds the largest record
+
+    private final FileChannel channel;
+    private final Thread writer;
+    private ArrayList<ByteBuffer> pending = new ArrayList<ByteBuffer>(); // guarded by this
+    private long appended; // records appended, guarded by this
+    private long committed; // records forced to disk, guarded by this
+    private long batches; // forced batches, guarded by this
+    private boolean closing; // guarded by this
+    private IOException failure; // guarded by this
+
+    /**
+     * Constructor.
+     * <p>Opens a log to append to, creating it if it does not exist. A
+     * record torn by a crash at the end of the file is cut off.
+     *
+     * @param file - the log file
+     * @throws IOException if the file can not be opened or is not a log of
+     *                     this protocol version
+     */
+    public GameLog(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            long end;
+            if(channel.size() == 0) {
+                ByteBuffer header = header();
+                while(header.hasRemaining()) {
+                    channel.write(header);
+                }
+                channel.force(true);
+                end = HEADER_LENGTH;
+            }else {
+                end = scan(channel, null);
+                channel.truncate(end);
+            }
+            channel.position(end);
+        }catch(IOException e) {
+            channel.close();
+            throw e;
+        }
+        writer = new Thread(this::write, "game-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * <ul><b><i>append</i></b></ul>
+     * <ul><ul><p><code>public void append (long game, byte[] frame) </code></p></ul>
+     *
+     * Queues a record for the next batch. Returns at once; see
+     * {@link #sync()}. Records appended after the log is closed or has
+     * failed are dropped.
+     *
+     * @param game - the id of the game
+     * @param frame - a {@link WireProtocol} frame, length included
+     */
+    public void append(long game, byte[] frame) {
+        int length = GAME_LENGTH + frame.length - 2;
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER + length);
+        record.putInt(length).putInt(0).putLong(game).put(frame, 2, frame.length - 2);
+        CRC32C crc = new CRC32C();
+        crc.update(record.array(), RECORD_HEADER, length);
+        record.putInt(4, (int) crc.getValue());
+        record.flip();
+        synchronized(this) {
+            if(closing || failure != null) {
+                return;
+            }
+            pending.add(record);
+            appended++;
+            if(pending.size() == 1) {
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * <ul><b><i>sync</i></b></ul>
+     * <ul><ul><p><code>public void sync () </code></p></ul>
+     *
+     * Waits until every record appended so far is on disk.
+     *
+     * @throws IOException if a write failed or the wait is interrupted
+     */
+    public synchronized void sync() throws IOException {
+        long target = appended;
+        while(committed < target && failure == null) {
+            try {
+                wait();
+            }catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted waiting for the game log");
+            }
+        }
+        if(failure != null) {
+            throw new IOException("game log failed", failure);
+        }
+    }
+
+    /**
+     * <ul><b><i>getCommittedCount</i></b></ul>
+     * <ul><ul><p><code>public long getCommittedCount () </code></p></ul>
+     *
+     * Returns the number of records this log has forced to disk.
+     *
+     * @return the count, not including records there before it was opened
+     */
+    public synchronized long getCommittedCount() {
+        return committed;
+    }
+
+    /**
+     * <ul><b><i>getBatchCount</i></b></ul>
+     * <ul><ul><p><code>public long getBatchCount () </code></p></ul>
+     *
+     * Returns the number of batches this log has forced to disk, which is
+     * the number of times it has waited for the disk.
+     *
+     * @return the count
+     */
+    public synchronized long getBatchCount() {
+        return batches;
+    }
+
+    /**
+     * <ul><b><i>close</i></b></ul>
+     * <ul><ul><p><code>public void close () </code></p></ul>
+     *
+     * Writes the records still queued, then closes the file.
+     *
+     * @throws IOException if a write failed or the wait is interrupted
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized(this) {
+            closing = true;
+            notifyAll();
+        }
+        try {
+            writer.join();
+        }catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted closing the game log");
+        }finally {
+            channel.close();
+        }
+        synchronized(this) {
+            if(failure != null) {
+                throw new IOException("game log failed", failure);
+            }
+        }
+    }
+
+    /**
+     * <ul><b><i>read</i></b></ul>
+     * <ul><ul><p><code>public static long read (Path file, BiConsumer&lt;Long, Object&gt; records) </code></p></ul>
+     *
+     * Reads every whole record of a log, in the order they were appended.
+     * A record torn at the end of the file is ignored.
+     *
+     * @param file - the log file
+     * @param records - given the game id and the decoded message of each
+     *                  record
+     * @return the number of records
+     * @throws IOException if the file can not be read, is not a log of this
+     *                     protocol version, or holds a malformed frame
+     */
+    public static long read(Path file, BiConsumer<Long, Object> records) throws IOException {
+        long[] count = new long[1];
+        try(FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            scan(in, (game, message) -> {
+                count[0]++;
+                records.accept(game, message);
+            });
+        }
+        return count[0];
+    }
+
+    /**
+     * Writes batches until the log is closed, forcing each to disk.
+     */
+    private void write() {
+        ArrayList<ByteBuffer> batch = new ArrayList<ByteBuffer>();
+        while(true) {
+            synchronized(this) {
+                while(pending.isEmpty() && !closing) {
+                    try {
+                        wait();
+                    }catch(InterruptedException e) {
+                        return;
+                    }
+                }
+                if(pending.isEmpty()) {
+                    return; // closing, and everything is written
+                }
+                ArrayList<ByteBuffer> appendedSince = pending;
+                pending = batch;
+                batch = appendedSince;
+            }
+            IOException failed = null;
+            try {
+                ByteBuffer[] buffers = batch.toArray(new ByteBuffer[batch.size()]);
+                ByteBuffer last = buffers[buffers.length - 1];
+                while(last.hasRemaining()) {
+                    channel.write(buffers);
+                }
+                channel.force(false);
+            }catch(IOException e) {
+                failed = e;
+            }
+            synchronized(this) {
+                if(failed != null) {
+                    failure = failed;
+                    pending.clear();
+                    notifyAll();
+                    return;
+                }
+                committed += batch.size();
+                batches++;
+                notifyAll();
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Gets the header a new log starts with.
+     *
+     * @return the header, ready to write
+     */
+    private static ByteBuffer header() {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        header.putInt(MAGIC).put((byte) WireProtocol.VERSION);
+        header.flip();
+        return header;
+    }
+
+    /**
+     * Checks a log's header and reads its records up to the first one not
+     * whole.
+     *
+     * @param in - the log, read from the start whatever its position
+     * @param records - given each record, or null to only find the end
+     * @return the offset just past the last whole record
+     * @throws IOException if the file can not be read, is not a log of this
+     *                     protocol version, or holds a malformed frame
+     */
+    private static long scan(FileChannel in, BiConsumer<Long, Object> records) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER);
+        buffer.flip();
+        long offset = 0; // of the buffer's first byte in the file
+        long end = in.size();
+        if(!fill(in, buffer, offset, HEADER_LENGTH)) {
+            throw new ProtocolException("not a game log");
+        }
+        if(buffer.getInt(0) != MAGIC) {
+            throw new ProtocolException("not a game log");
+        }
+        if((buffer.get(4) & 0xFF) != WireProtocol.VERSION) {
+            throw new ProtocolException("game log of protocol version " + (buffer.get(4) & 0xFF)
+                    + ", this is version " + WireProtocol.VERSION);
+        }
+        buffer.position(HEADER_LENGTH);
+        CRC32C crc = new CRC32C();
+        while(true) {
+            long start = offset + buffer.position();
+            if(end - start < RECORD_HEADER) {
+                return start;
+            }
+            if(buffer.remaining() < RECORD_HEADER) {
+                offset = start;
+                buffer.compact().flip();
+                fill(in, buffer, offset, RECORD_HEADER);
+            }
+            int length = buffer.getInt(buffer.position());
+            if(length <= GAME_LENGTH || length > MAX_RECORD || end - start < RECORD_HEADER + length) {
+                return start; // torn
+            }
+            if(buffer.remaining() < RECORD_HEADER + length) {
+                offset = start;
+                buffer.compact().flip();
+                fill(in, buffer, offset, RECORD_HEADER + length);
+            }
+            int at = buffer.position();
+            crc.reset();
+            crc.update(buffer.array(), at + RECORD_HEADER, length);
+            if((int) crc.getValue() != buffer.getInt(at + 4)) {
+                return start; // torn
+            }
+            if(records != null) {
+                long game = buffer.getLong(at + RECORD_HEADER);
+                int frame = at + RECORD_HEADER + GAME_LENGTH;
+                records.accept(game, WireProtocol.decode(buffer.array(), frame, length - GAME_LENGTH));
+            }
+            buffer.position(at + RECORD_HEADER + length);
+        }
+    }
+
+    /**
+     * Reads from a file into a buffer until it holds at least some bytes,
+     * or the file ends. The buffer is left flipped, its bytes starting at
+     * its position.
+     *
+     * @param in - the file
+     * @param buffer - a flipped buffer whose first byte is at an offset in
+     *                 the file
+     * @param offset - the offset in the file of the buffer's position
+     * @param needed - bytes wanted past the position
+     * @return true if the buffer holds them
+     * @throws IOException if the file can not be read
+     */
+    private static boolean fill(FileChannel in, ByteBuffer buffer, long offset, int needed) throws IOException {
+        int position = buffer.position();
+        long next = offset + buffer.remaining();
+        buffer.position(buffer.limit());
+        buffer.limit(buffer.capacity());
+        while(buffer.position() - position < needed) {
+            int read = in.read(buffer, next);
+            if(read < 0) {
+                break;
+            }
+            next += read;
+        }
+        buffer.limit(buffer.position());
+        buffer.position(position);
+        return buffer.remaining() >= needed;
+    }
+}
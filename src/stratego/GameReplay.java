@@ -0,0 +1,155 @@
+package stratego;
+
+/**
+ * GameReplay steps through a game of a {@link GameArchive}, forwards and
+ * backwards, and seeks to any ply.
+ * </p> Notes:
+ * 		-a copy of the model is kept every {@value #KEYFRAME_INTERVAL}
+ * 			plies, made in one pass over the game when it is loaded, so a
+ * 			seek restores the keyframe at or before the ply and applies at
+ * 			most {@value #KEYFRAME_INTERVAL} - 1 moves, wherever the ply is
+ * 		-a step back takes the last move back with
+ * 			{@link StrategoModel#unmakeMove()} while the moves since the
+ * 			last restore are on the model's undo stack, and seeks otherwise
+ * 		-every piece is shown: the archive knows both armies
+ * 		-methods are synchronized, so a thread playing the game forwards
+ * 			and the UI thread drawing it may share a replay
+ */
+public class GameReplay
+{
+	public static final int KEYFRAME_INTERVAL = 32;
+
+	private final GameArchive archive;
+	private final int game;
+	private final int plyCount;
+	private final StrategoModel[] keyframes; // position at ply k * KEYFRAME_INTERVAL
+	private final StrategoModel position = new StrategoModel();
+	private int ply;
+
+	/**
+	 * GameReplay constructor. The replay starts at ply 0, once both players
+	 * have set up.
+	 * @param archive archive holding the game
+	 * @param game index of the game in the archive
+	 */
+	public GameReplay(GameArchive archive, int game)
+	{
+		this.archive = archive;
+		this.game = game;
+		this.plyCount = archive.getPlyCount(game);
+
+		keyframes = new StrategoModel[plyCount / KEYFRAME_INTERVAL + 1];
+		archive.replay(game, 0, position);
+		for (int p = 0; ; p++)
+		{
+			if (p % KEYFRAME_INTERVAL == 0)
+				keyframes[p / KEYFRAME_INTERVAL] = new StrategoModel(position);
+			if (p == plyCount)
+				break;
+			position.makeMove(archive.getMove(game, p));
+		}
+		position.copyFrom(keyframes[0]);
+		ply = 0;
+	}
+
+	/**
+	 * Gets the index of the game in its archive.
+	 * @return game index
+	 */
+	public int getGame()
+	{
+		return game;
+	}
+
+	/**
+	 * Gets the number of plies of the game.
+	 * @return number of moves made in the game
+	 */
+	public int getPlyCount()
+	{
+		return plyCount;
+	}
+
+	/**
+	 * Gets the current ply: the number of moves applied.
+	 * @return ply, 0 to {@link #getPlyCount()}
+	 */
+	public synchronized int getPly()
+	{
+		return ply;
+	}
+
+	/**
+	 * Applies the next move.
+	 * @return false if the game has no more moves
+	 */
+	public synchronized boolean forward()
+	{
+		if (ply == plyCount)
+			return false;
+		position.makeMove(archive.getMove(game, ply));
+		ply++;
+		return true;
+	}
+
+	/**
+	 * Takes back the last move.
+	 * @return false at the start of the game
+	 */
+	public synchronized boolean backward()
+	{
+		if (ply == 0)
+			return false;
+		if (position.getUndoDepth() > 0)
+		{
+			position.unmakeMove();
+			ply--;
+		}
+		else
+			seek(ply - 1);
+		return true;
+	}
+
+	/**
+	 * Moves to a ply: forwards a few moves if it is just ahead, otherwise
+	 * from the nearest keyframe at or before it.
+	 * @param target ply to move to, clamped to 0 to {@link #getPlyCount()}
+	 */
+	public synchronized void seek(int target)
+	{
+		target = Math.max(0, Math.min(plyCount, target));
+		int keyframe = target / KEYFRAME_INTERVAL;
+		if (target < ply || keyframe > ply / KEYFRAME_INTERVAL)
+		{
+			position.copyFrom(keyframes[keyframe]);
+			ply = keyframe * KEYFRAME_INTERVAL;
+		}
+		while (ply < target)
+		{
+			position.makeMove(archive.getMove(game, ply));
+			ply++;
+		}
+	}
+
+	/**
+	 * Copies the current position, one {@link PieceCode} per square, so it
+	 * can be drawn while the replay moves on.
+	 * @param squares array of at least {@link StrategoModel#SQUARES}
+	 * @return the ply of the position copied
+	 */
+	public synchronized int copySquares(byte[] squares)
+	{
+		for (int i = 0; i < StrategoModel.SQUARES; i++)
+			squares[i] = position.getSquare(i);
+		return ply;
+	}
+
+	/**
+	 * Gets the winner of the game so far, at the current ply.
+	 * @return {@link Piece#RED}, {@link Piece#BLUE} or {@link Piece#NONE}
+	 */
+	public synchronized int winner()
+	{
+		return position.winner();
+	}
+}
@@ -0,0 +1,1148 @@
+package stratego;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import stratego.Piece.PieceType;
+
+/**
+ * This class hosts many games at once for clients connecting with
+ * {@link StrategoNetwork}.
+ *
+ * <p>One thread runs a {@link Selector} over every socket, so there is no
+ * thread per connection or per game. Clients are paired in the order their
+ * game sockets join: the first of a pair plays red, the second blue. Each
+ * pair is a session with its own {@link StrategoModel}.</p>
+ * <p>A client joining with a player name waits in the lobby instead, and
+ * is paired by rating with a {@link Matchmaker}; it is welcomed once it
+ * has an opponent. Ratings are kept in memory by name and updated by the
+ * Elo formula when a game between two named players ends: the winner is
+ * the side {@link StrategoModel#winner()} gives, as for
+ * {@link StrategoController#winner()}, or the other player of one that
+ * leaves.</p>
+ * <p>The server referees every game. A setup must hold exactly the pieces
+ * of an army, and the other player is sent only where the pieces are, as
+ * {@link PieceType#UNKNOWN}. A move must be legal for the side to move by
+ * {@link MoveGenerator#isLegal}; the server resolves it on its model and
+ * sends it to both players, the moving piece hidden from the other player
+ * unless a battle or a scout's slide reveals it.</p>
+ * <p>Notes:</p>
+ * <ul>
+ *   <li>frames are decoded with {@link WireProtocol} to check them; chat
+ *       and game over frames are relayed unchanged</li>
+ *   <li>a {@link PingMessage} from any socket is answered on that socket</li>
+ *   <li>checking and resolving a move is a few array reads and writes, so
+ *       it runs on the selector thread with the rest</li>
+ *   <li>a player's chat may come on its game socket or on a socket of its
+ *       own; queued frames are written alternating between the game and
+ *       chat channels, so chat can not hold up a move</li>
+ *   <li>every game frame sent to a player is kept in the player's log, so
+ *       a player that has not joined yet gets them when it does</li>
+ *   <li>a player leaves by sending the game over message: the other
+ *       player gets it and the session ends</li>
+ *   <li>when a player's game socket closes or fails otherwise, the player
+ *       has a grace period to join again with its token and the number of
+ *       game frames it received; it is sent only the frames of its log
+ *       after those, and told how many of its own frames arrived. The
+ *       other player waits meanwhile, and gets the game over message if
+ *       the grace period runs out.</li>
+ *   <li>a peer that sends a malformed or unexpected frame, an illegal
+ *       setup or move, or does not read what it is sent, is
+ *       disconnected</li>
+ * </ul>
+ * <p>Any number of spectators may watch a game, joining with the game id
+ * its players are welcomed with. Spectators are sent what a player is sent
+ * of the other's pieces, for both sides: every piece is
+ * {@link PieceType#UNKNOWN} until a battle or a scout's slide reveals it.
+ * Each frame of this stream is encoded once, the same frame the player
+ * not moving gets, and every spectator's queue holds a view of the same
+ * bytes. The stream may be held back by a delay, so spectators can not
+ * pass on moves while they matter; a spectator joining late is sent the
+ * stream so far, delay included.</p>
+ * <p>Given a {@link GameLog}, the server records every game it hosts:
+ * both setups as the players sent them, each move as resolved, with both
+ * pieces, and the end of the game. Recording only queues the record, so
+ * the selector thread never waits for the disk.</p>
+ */
+public class GameServer implements Runnable {
+
+    public static final long DEFAULT_GRACE_MILLIS = 30000;
+
+    private static final int READ_BUFFER = 512;
+    private static final int GATHER = 16; // frames per write
+    private static final int MAX_QUEUED_BYTES = 1 << 20;
+    private static final int HANDSHAKE_LENGTH = 3;
+    private static final byte[] GAME_OVER = WireProtocol.encode(new SinglePositionMessage(-1, -1, null));
+    private static final int[] ARMY = StrategoModel.initialCounts();
+    private static final int SETUP_ROWS = 4;
+    private static final long MATCH_NANOS = 1000000000L; // between lobby sweeps
+    private static final int K_FACTOR = 32; // most a rating changes by in one game
+    // what a player is sent of the other's setup, indexed by color
+    private static final byte[][] HIDDEN_SETUP = new byte[Piece.RED + 1][];
+    static {
+        PieceType[][] hidden = new PieceType[SETUP_ROWS][StrategoModel.COLUMNS];
+        for(PieceType[] row : hidden) {
+            Arrays.fill(row, PieceType.UNKNOWN);
+        }
+        HIDDEN_SETUP[Piece.BLUE] = WireProtocol.encode(new BoardSetupMessage(Piece.BLUE, hidden));
+        HIDDEN_SETUP[Piece.RED] = WireProtocol.encode(new BoardSetupMessage(Piece.RED, hidden));
+    }
+
+    private final Selector selector;
+    private final ServerSocketChannel listener;
+    private final Map<Long, Player> players = new HashMap<Long, Player>(); // by token
+    private final Map<Long, Session> games = new HashMap<Long, Session>(); // by game id, while watchable
+    private final ArrayDeque<Player> dropped = new ArrayDeque<Player>(); // by deadline
+    private final ArrayDeque<Broadcast> delayed = new ArrayDeque<Broadcast>(); // by due time
+    private final Matchmaker<Connection> lobby = new Matchmaker<Connection>();
+    private final Map<String, Integer> ratings = new ConcurrentHashMap<String, Integer>(); // by name
+    private final long graceNanos;
+    private final long delayNanos;
+    private final GameLog log; // null if games are not recorded
+    private Session waiting; // session whose red player waits for blue
+    private long nextMatch; // System.nanoTime() of the next lobby sweep
+
+    private volatile boolean running;
+    private volatile int sessionCount;
+    private volatile int lobbySize;
+
+    /**
+     * Constructor.
+     * <p>Opens the listening socket. Games are hosted once {@link #run()} is
+     * called. A player whose connection fails has
+     * {@value #DEFAULT_GRACE_MILLIS} milliseconds to resume.
+     *
+     * @param port - the port to listen on, 0 for any free port
+     * @throws IOException if the port can not be opened
+     */
+    public GameServer(int port) throws IOException {
+        this(port, DEFAULT_GRACE_MILLIS);
+    }
+
+    /**
+     * Constructor.
+     * <p>Opens the listening socket. Games are hosted once {@link #run()} is
+     * called.
+     *
+     * @param port - the port to listen on, 0 for any free port
+     * @param graceMillis - how long a player whose connection fails may take
+     *                      to resume, 0 to end its game at once
+     * @throws IOException if the port can not be opened
+     */
+    public GameServer(int port, long graceMillis) throws IOException {
+        this(port, graceMillis, 0);
+    }
+
+    /**
+     * Constructor.
+     * <p>Opens the listening socket. Games are hosted once {@link #run()} is
+     * called.
+     *
+     * @param port - the port to listen on, 0 for any free port
+     * @param graceMillis - how long a player whose connection fails may take
+     *                      to resume, 0 to end its game at once
+     * @param spectatorDelayMillis - how long spectators are kept behind the
+     *                               game, 0 for no delay
+     * @throws IOException if the port can not be opened
+     */
+    public GameServer(int port, long graceMillis, long spectatorDelayMillis) throws IOException {
+        this(port, graceMillis, spectatorDelayMillis, null);
+    }
+
+    /**
+     * Constructor.
+     * <p>Opens the listening socket. Games are hosted once {@link #run()} is
+     * called. The log is not closed by the server.
+     *
+     * @param port - the port to listen on, 0 for any free port
+     * @param graceMillis - how long a player whose connection fails may take
+     *                      to resume, 0 to end its game at once
+     * @param spectatorDelayMillis - how long spectators are kept behind the
+     *                               game, 0 for no delay
+     * @param log - the log games are recorded in, or null
+     * @throws IOException if the port can not be opened
+     */
+    public GameServer(int port, long graceMillis, long spectatorDelayMillis, GameLog log) throws IOException {
+        this.log = log;
+        graceNanos = graceMillis * 1000000L;
+        delayNanos = spectatorDelayMillis * 1000000L;
+        selector = Selector.open();
+        listener = ServerSocketChannel.open();
+        listener.bind(new InetSocketAddress(port));
+        listener.configureBlocking(false);
+        listener.register(selector, SelectionKey.OP_ACCEPT);
+        running = true;
+    }
+
+    /**
+     * <ul><b><i>getPort</i></b></ul>
+     * <ul><ul><p><code>public int getPort () </code></p></ul>
+     *
+     * Returns the port the server listens on.
+     *
+     * @return the port number
+     */
+    public int getPort() {
+        return listener.socket().getLocalPort();
+    }
+
+    /**
+     * <ul><b><i>getSessionCount</i></b></ul>
+     * <ul><ul><p><code>public int getSessionCount () </code></p></ul>
+     *
+     * Returns the number of sessions in progress, including one waiting for
+     * its second player.
+     *
+     * @return the number of sessions
+     */
+    public int getSessionCount() {
+        return sessionCount;
+    }
+
+    /**
+     * <ul><b><i>getLobbySize</i></b></ul>
+     * <ul><ul><p><code>public int getLobbySize () </code></p></ul>
+     *
+     * Returns the number of players waiting in the lobby.
+     *
+     * @return the number of players waiting
+     */
+    public int getLobbySize() {
+        return lobbySize;
+    }
+
+    /**
+     * <ul><b><i>getRating</i></b></ul>
+     * <ul><ul><p><code>public int getRating (String name) </code></p></ul>
+     *
+     * Returns a player's rating. May be called from any thread.
+     *
+     * @param name - the player name
+     * @return the rating, {@link Matchmaker#DEFAULT_RATING} for a player
+     *         that has not finished a rated game
+     */
+    public int getRating(String name) {
+        return ratings.getOrDefault(name, Matchmaker.DEFAULT_RATING);
+    }
+
+    /**
+     * <ul><b><i>run</i></b></ul>
+     * <ul><ul><p><code>public void run () </code></p></ul>
+     *
+     * Hosts games until {@link #stop()} is called, then closes every socket.
+     */
+    @Override
+    public void run() {
+        try {
+            while(running) {
+                selector.select(selectTimeout());
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while(keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if(!key.isValid()) {
+                        continue;
+                    }
+                    if(key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Connection connection = (Connection) key.attachment();
+                    try {
+                        if(key.isReadable()) {
+                            read(connection);
+                        }
+                        if(key.isValid() && key.isWritable()) {
+                            flush(connection);
+                        }
+                    }catch(ProtocolException e) {
+                        close(connection);
+                    }catch(IOException e) {
+                        drop(connection);
+                    }
+                }
+                expireDropped();
+                releaseDelayed();
+                matchLobby();
+            }
+        }catch(IOException e) {
+            System.out.println("game server stopped: " + e.getMessage());
+        }finally {
+            for(SelectionKey key : selector.keys()) {
+                closeQuietly(key);
+            }
+            closeQuietly(selector);
+        }
+    }
+
+    /**
+     * <ul><b><i>stop</i></b></ul>
+     * <ul><ul><p><code>public void stop () </code></p></ul>
+     *
+     * Stops {@link #run()}. May be called from any thread.
+     */
+    public void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    /**
+     * Accepts a new socket and queues the server's handshake.
+     *
+     * @throws IOException if the socket can not be set up
+     */
+    private void accept() throws IOException {
+        SocketChannel channel = listener.accept();
+        if(channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        Connection connection = new Connection(channel);
+        connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+        send(connection, WireProtocol.handshake(), WireProtocol.GAME_CHANNEL);
+    }
+
+    /**
+     * Reads what a socket has and handles every complete frame.
+     *
+     * @param connection - a readable connection
+     * @throws IOException if the socket fails or breaks the protocol
+     */
+    private void read(Connection connection) throws IOException {
+        if(connection.channel.read(connection.in) < 0) {
+            drop(connection); // a player leaving sends the game over message first
+            return;
+        }
+        ByteBuffer in = connection.in;
+        in.flip();
+        if(!connection.handshaken) {
+            if(in.remaining() < HANDSHAKE_LENGTH) {
+                in.compact();
+                return;
+            }
+            WireProtocol.checkHandshake(in.getShort() & 0xFFFF, in.get() & 0xFF);
+            connection.handshaken = true;
+        }
+        while(in.remaining() >= 2 && connection.key.isValid()) {
+            int length = in.getShort(in.position()) & 0xFFFF;
+            if(in.remaining() < 2 + length) {
+                break;
+            }
+            int start = in.position();
+            Object message = WireProtocol.decode(in.array(), start + 2, length);
+            byte[] frame = new byte[2 + length];
+            in.get(frame);
+            handle(connection, message, frame);
+        }
+        if(!connection.key.isValid()) {
+            return;
+        }
+        in.compact();
+        if(in.position() >= 2 && in.capacity() < 2 + (in.getShort(0) & 0xFFFF)) {
+            // grow for a frame larger than the buffer
+            ByteBuffer larger = ByteBuffer.allocate(2 + (in.getShort(0) & 0xFFFF));
+            in.flip();
+            larger.put(in);
+            connection.in = larger;
+        }
+    }
+
+    /**
+     * Handles one frame from a connection.
+     *
+     * @param connection - the connection the frame came from
+     * @param message - the decoded frame
+     * @param frame - the frame, length included, for relaying
+     * @throws ProtocolException if the message is not expected now
+     */
+    private void handle(Connection connection, Object message, byte[] frame) throws ProtocolException {
+        if(message instanceof PingMessage) {
+            // answered by whoever sends it, and neither logged nor counted
+            PingMessage ping = (PingMessage) message;
+            if(!ping.isReply()) {
+                send(connection, WireProtocol.encode(ping.reply()), WireProtocol.GAME_CHANNEL);
+            }
+            return;
+        }
+        Player player = connection.player;
+        if(player == null) {
+            if(connection.watching != null) {
+                throw new ProtocolException("spectators do not send");
+            }
+            if(connection.lobbyJoin != null) {
+                throw new ProtocolException("waiting in the lobby");
+            }
+            if(!(message instanceof JoinMessage)) {
+                throw new ProtocolException("expected JoinMessage");
+            }
+            join(connection, (JoinMessage) message);
+            return;
+        }
+
+        Session session = player.session;
+        Player other = session.players[player.opponent()];
+        if(message instanceof ChatMessage) {
+            if(!connection.carriesChat) {
+                throw new ProtocolException("chat on the game socket");
+            }
+            if(!session.over) {
+                other.sendChat(this, frame);
+            }
+            return;
+        }
+        if(!connection.carriesGame) {
+            throw new ProtocolException("expected ChatMessage");
+        }
+        player.received++;
+
+        if(message instanceof BoardSetupMessage) {
+            setup(player, (BoardSetupMessage) message, frame);
+        }else if(message instanceof MoveMessage) {
+            move(player, (MoveMessage) message);
+        }else if(message instanceof SinglePositionMessage) {
+            // the only position message sent is the game over message
+            if(!session.over) {
+                session.winner = other.color; // leaving forfeits
+                end(session);
+                other.sendGame(this, frame);
+            }
+        }else {
+            throw new ProtocolException("unexpected " + message.getClass().getSimpleName());
+        }
+    }
+
+    /**
+     * Places a player's setup on the session's model and tells the other
+     * player where the pieces are, but not what they are.
+     *
+     * @param player - the player sending the setup
+     * @param setup - the setup
+     * @param frame - the setup's frame, for the log
+     * @throws ProtocolException if the setup is sent twice, is for the other
+     *                           color or is not exactly one army
+     */
+    private void setup(Player player, BoardSetupMessage setup, byte[] frame) throws ProtocolException {
+        if(player.setUp || setup.getColor() != player.color) {
+            throw new ProtocolException("unexpected setup");
+        }
+        int[] counts = new int[ARMY.length];
+        for(PieceType[] row : setup.getInitialSetup()) {
+            for(PieceType type : row) {
+                if(type != null) {
+                    counts[type.ordinal()]++;
+                }
+            }
+        }
+        if(!Arrays.equals(counts, ARMY)) {
+            throw new ProtocolException("setup is not one army");
+        }
+
+        Session session = player.session;
+        player.setUp = true;
+        session.model.setBoard(setup.getInitialSetup(), player.color, false);
+        if(!session.over) {
+            record(session, frame);
+            session.players[player.opponent()].sendGame(this, HIDDEN_SETUP[player.color]);
+            broadcast(session, HIDDEN_SETUP[player.color]);
+        }
+    }
+
+    /**
+     * Checks and resolves a move on the session's model, then sends it to
+     * both players and the spectators. The mover is told the defender's
+     * type; the other player and the spectators are told the mover's type
+     * only if it is revealed.
+     * <p>The pieces and result in the message are ignored; only the squares
+     * are used.
+     *
+     * @param player - the player moving
+     * @param request - the move
+     * @throws ProtocolException if it is not the player's turn or the move
+     *                           is not legal
+     */
+    private void move(Player player, MoveMessage request) throws ProtocolException {
+        Session session = player.session;
+        StrategoModel model = session.model;
+        Player other = session.players[player.opponent()];
+        int from = request.getFrom();
+        int to = request.getTo();
+        if(session.over) {
+            return; // crossed with the end of the game
+        }
+        if(!player.setUp || !other.setUp || model.getSideToMove() != player.color
+                || PieceCode.color(model.getSquare(from)) != player.color
+                || !MoveGenerator.isLegal(model, from, to)) {
+            throw new ProtocolException("illegal move " + from + " to " + to);
+        }
+
+        byte attacker = model.getSquare(from);
+        byte defender = model.getSquare(to);
+        int result = model.makeMove(MoveGenerator.encode(from, to));
+        Piece attackerPiece = PieceCode.toPiece(attacker);
+        Piece defenderPiece = PieceCode.toPiece(defender);
+
+        // the mover's piece is known once it battles or slides like a scout
+        boolean revealed = defender != PieceCode.EMPTY || PieceCode.isRevealed(model.getSquare(to));
+        byte[] resolved = WireProtocol.encode(new MoveMessage(from, to, attackerPiece, defenderPiece, result));
+        record(session, resolved);
+        player.sendGame(this, resolved);
+        // a defender is the other player's own piece, or revealed by the battle
+        byte[] hidden = WireProtocol.encode(new MoveMessage(from, to, revealed ? attackerPiece : null, defenderPiece, result));
+        other.sendGame(this, hidden);
+        broadcast(session, hidden);
+
+        int winner = model.winner();
+        if(winner != Piece.NONE) {
+            session.winner = winner;
+            end(session);
+        }
+    }
+
+    /**
+     * Joins a game or shared socket to a session, a chat socket to its
+     * player, or a spectator to a game.
+     *
+     * @param connection - the joining connection
+     * @param join - the join message
+     * @throws ProtocolException if a chat socket's token or a spectator's
+     *                           game id is unknown
+     */
+    private void join(Connection connection, JoinMessage join) throws ProtocolException {
+        if(join.isWatch()) {
+            watch(connection, join.getToken());
+            return;
+        }
+        if(join.isChat()) {
+            Player player = players.get(join.getToken());
+            if(player == null) {
+                throw new ProtocolException("unknown chat token");
+            }
+            if(player.chat != null && player.chat == player.game) {
+                throw new ProtocolException("chat is on the game socket");
+            }
+            if(player.chat != null) { // replaced after a failure not seen here yet
+                close(player.chat);
+            }
+            connection.player = player;
+            attachChat(connection, player);
+            return;
+        }
+        if(join.isResume()) {
+            resume(connection, join);
+            return;
+        }
+        if(join.isLobby()) {
+            connection.lobbyJoin = join;
+            Connection opponent = lobby.add(connection, getRating(join.getName()), System.nanoTime());
+            lobbySize = lobby.size();
+            if(opponent != null) {
+                start(opponent, connection);
+            }
+            return;
+        }
+
+        Session session = waiting;
+        int color = Piece.BLUE;
+        if(session == null) {
+            session = new Session();
+            waiting = session;
+            games.put(session.id, session);
+            sessionCount++;
+            color = Piece.RED;
+        }else {
+            waiting = null;
+        }
+        seat(connection, join, session.players[color]);
+    }
+
+    /**
+     * Starts a session for two players paired in the lobby.
+     *
+     * @param red - the player that waited longer, which plays red
+     * @param blue - the other player
+     */
+    private void start(Connection red, Connection blue) {
+        Session session = new Session();
+        games.put(session.id, session);
+        sessionCount++;
+        lobbySize = lobby.size(); // counted before either is welcomed
+        seat(red, red.lobbyJoin, session.players[Piece.RED]);
+        seat(blue, blue.lobbyJoin, session.players[Piece.BLUE]);
+    }
+
+    /**
+     * Pairs the players in the lobby whose rating gaps have widened enough,
+     * once every {@value #MATCH_NANOS} nanoseconds.
+     */
+    private void matchLobby() {
+        long now = System.nanoTime();
+        if(lobby.size() < 2 || now - nextMatch < 0) {
+            return;
+        }
+        nextMatch = now + MATCH_NANOS;
+        lobby.match(now, this::start);
+    }
+
+    /**
+     * Makes a game or shared socket a player's, and welcomes it.
+     *
+     * @param connection - the joining connection
+     * @param join - its join message
+     * @param player - the player it plays
+     */
+    private void seat(Connection connection, JoinMessage join, Player player) {
+        connection.lobbyJoin = null;
+        player.name = join.getName();
+        player.token = StrategoNetwork.newToken();
+        player.game = connection;
+        players.put(player.token, player);
+        connection.player = player;
+        connection.carriesGame = true;
+        send(connection, WireProtocol.encode(new WelcomeMessage(player.color, player.token, true, 0, player.session.id)),
+                WireProtocol.GAME_CHANNEL);
+        for(byte[] frame : player.log) {
+            send(connection, frame, WireProtocol.GAME_CHANNEL);
+        }
+        if(join.isShared()) {
+            attachChat(connection, player);
+        }
+    }
+
+    /**
+     * Joins a game or shared socket to the player it used to be, after its
+     * connection failed. The player is told how many of its game frames
+     * arrived and is sent the ones it missed.
+     *
+     * @param connection - the joining connection
+     * @param join - the join message, with the player's token
+     * @throws ProtocolException if the token is not of a game in progress
+     *                           or the count is more than was sent
+     */
+    private void resume(Connection connection, JoinMessage join) throws ProtocolException {
+        Player player = players.get(join.getToken());
+        if(player == null || join.getReceived() > player.log.size()) {
+            throw new ProtocolException("no game to resume");
+        }
+        if(player.game != null) { // failed without the server noticing
+            Connection old = player.game;
+            player.game = null;
+            closeQuietly(old.key);
+            if(player.chat == old) {
+                player.chat = null;
+            }
+        }
+        dropped.remove(player); // no longer waiting out a grace period
+        player.game = connection;
+        connection.player = player;
+        connection.carriesGame = true;
+        send(connection, WireProtocol.encode(
+                new WelcomeMessage(player.color, player.token, true, player.received, player.session.id)),
+                WireProtocol.GAME_CHANNEL);
+        for(int i = join.getReceived(); i < player.log.size(); i++) {
+            send(connection, player.log.get(i), WireProtocol.GAME_CHANNEL);
+        }
+        if(join.isShared()) {
+            attachChat(connection, player);
+        }
+    }
+
+    /**
+     * Joins a spectator to a game and sends it the game's broadcast so far.
+     *
+     * @param connection - the joining connection
+     * @param game - the game id
+     * @throws ProtocolException if the game is not known or its broadcast
+     *                           has ended
+     */
+    private void watch(Connection connection, long game) throws ProtocolException {
+        Session session = games.get(game);
+        if(session == null) {
+            throw new ProtocolException("unknown game");
+        }
+        connection.watching = session;
+        session.spectators.add(connection);
+        send(connection, WireProtocol.encode(new WelcomeMessage(Piece.NONE, 0, true, 0, session.id)),
+                WireProtocol.GAME_CHANNEL);
+        for(ByteBuffer frame : session.broadcast) {
+            send(connection, frame.duplicate(), WireProtocol.GAME_CHANNEL);
+        }
+    }
+
+    /**
+     * Sends a frame to a session's spectators, once the delay is over.
+     *
+     * @param session - the session the frame is from
+     * @param frame - the frame, as sent to the player not moving
+     */
+    private void broadcast(Session session, byte[] frame) {
+        ByteBuffer shared = ByteBuffer.wrap(frame).asReadOnlyBuffer();
+        if(delayNanos <= 0) {
+            release(session, shared);
+        }else {
+            delayed.add(new Broadcast(session, shared, System.nanoTime() + delayNanos));
+        }
+    }
+
+    /**
+     * Sends every broadcast frame whose delay is over.
+     */
+    private void releaseDelayed() {
+        long now = System.nanoTime();
+        while(!delayed.isEmpty() && now - delayed.peek().due >= 0) {
+            Broadcast broadcast = delayed.poll();
+            release(broadcast.session, broadcast.frame);
+        }
+    }
+
+    /**
+     * Adds a frame to a session's broadcast and queues it for each spectator.
+     * After the game over message the game can no longer be joined.
+     *
+     * @param session - the session the frame is from
+     * @param frame - the frame, shared by every spectator
+     */
+    private void release(Session session, ByteBuffer frame) {
+        session.broadcast.add(frame);
+        // copied, since a spectator that is not reading is closed and removed
+        for(Connection spectator : session.spectators.toArray(new Connection[0])) {
+            send(spectator, frame.duplicate(), WireProtocol.GAME_CHANNEL);
+        }
+        if(frame.get(2) == WireProtocol.POSITION) { // the game over message ends the broadcast
+            games.remove(session.id);
+        }
+    }
+
+    /**
+     * Makes a connection the player's chat socket and sends it the chat
+     * held while the player had none.
+     *
+     * @param connection - a shared or chat socket
+     * @param player - the player it belongs to
+     */
+    private void attachChat(Connection connection, Player player) {
+        connection.carriesChat = true;
+        player.chat = connection;
+        while(!player.pendingChat.isEmpty()) {
+            send(connection, player.pendingChat.poll(), WireProtocol.CHAT_CHANNEL);
+        }
+    }
+
+    /**
+     * Queues a frame on a connection and writes as much as the socket takes.
+     *
+     * @param connection - the connection to write to
+     * @param frame - the bytes to write
+     * @param channel - the channel of the frame
+     */
+    private void send(Connection connection, byte[] frame, int channel) {
+        send(connection, ByteBuffer.wrap(frame), channel);
+    }
+
+    /**
+     * Queues a frame on a connection and writes as much as the socket takes.
+     *
+     * @param connection - the connection to write to
+     * @param frame - the bytes to write, from its position to its limit;
+     *                the buffer is owned by the connection from now on
+     * @param channel - the channel of the frame
+     */
+    private void send(Connection connection, ByteBuffer frame, int channel) {
+        if(!connection.key.isValid()) {
+            return;
+        }
+        connection.out.get(channel).add(frame);
+        connection.queued += frame.remaining();
+        if(connection.queued > MAX_QUEUED_BYTES) {
+            close(connection); // the peer is not reading
+            return;
+        }
+        try {
+            flush(connection);
+        }catch(IOException e) {
+            drop(connection);
+        }
+    }
+
+    /**
+     * Writes queued frames, one per channel in turn, until the socket would
+     * block, and asks for a write event if some are left. Up to
+     * {@value #GATHER} frames go to the socket in one gathering write.
+     *
+     * @param connection - the connection to write to
+     * @throws IOException if the write fails
+     */
+    private void flush(Connection connection) throws IOException {
+        ByteBuffer[] writing = connection.writing;
+        while(true) {
+            if(connection.writingStart == connection.writingEnd) {
+                connection.writingStart = 0;
+                connection.writingEnd = 0;
+                ByteBuffer frame;
+                while(connection.writingEnd < GATHER && (frame = connection.nextFrame()) != null) {
+                    writing[connection.writingEnd++] = frame;
+                }
+                if(connection.writingEnd == 0) {
+                    connection.key.interestOps(SelectionKey.OP_READ);
+                    return;
+                }
+            }
+            connection.queued -= connection.channel.write(writing, connection.writingStart,
+                    connection.writingEnd - connection.writingStart);
+            while(connection.writingStart < connection.writingEnd && !writing[connection.writingStart].hasRemaining()) {
+                writing[connection.writingStart++] = null;
+            }
+            if(connection.writingStart < connection.writingEnd) {
+                connection.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Closes a connection. Closing a game socket ends its session and
+     * closes the player's chat socket, if it has its own.
+     *
+     * @param connection - the connection to close
+     */
+    private void close(Connection connection) {
+        closeQuietly(connection.key);
+        if(connection.watching != null) {
+            connection.watching.spectators.remove(connection);
+            return;
+        }
+        if(connection.lobbyJoin != null) {
+            lobby.remove(connection);
+            lobbySize = lobby.size();
+            return;
+        }
+        Player player = connection.player;
+        if(player == null) {
+            return;
+        }
+        if(player.chat == connection) {
+            player.chat = null;
+        }
+        if(player.game != connection) { // a chat socket, or replaced by a resumed one
+            return;
+        }
+        player.game = null;
+        leave(player);
+    }
+
+    /**
+     * Closes a connection that failed. A game socket's player is given the
+     * grace period to resume; until then its game frames are only logged
+     * and chat to it is held.
+     *
+     * @param connection - the connection that failed
+     */
+    private void drop(Connection connection) {
+        Player player = connection.player;
+        if(player == null || player.game != connection || player.session.over || graceNanos <= 0) {
+            close(connection);
+            return;
+        }
+        closeQuietly(connection.key);
+        player.game = null;
+        if(player.chat == connection) {
+            player.chat = null;
+        }
+        player.deadline = System.nanoTime() + graceNanos;
+        dropped.add(player);
+    }
+
+    /**
+     * Ends the game of every dropped player whose grace period is over.
+     */
+    private void expireDropped() {
+        long now = System.nanoTime();
+        while(!dropped.isEmpty() && now - dropped.peek().deadline >= 0) {
+            Player player = dropped.poll();
+            if(player.game == null) {
+                leave(player);
+            }
+        }
+    }
+
+    /**
+     * Gets how long the selector may wait before a grace period or a
+     * broadcast delay is over, or the lobby is next swept.
+     *
+     * @return milliseconds, 0 for no limit
+     */
+    private long selectTimeout() {
+        if(dropped.isEmpty() && delayed.isEmpty() && lobby.size() < 2) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        long wait = Long.MAX_VALUE;
+        if(!dropped.isEmpty()) {
+            wait = dropped.peek().deadline - now;
+        }
+        if(!delayed.isEmpty()) {
+            wait = Math.min(wait, delayed.peek().due - now);
+        }
+        if(lobby.size() >= 2) {
+            wait = Math.min(wait, nextMatch - now);
+        }
+        return Math.max(1, wait / 1000000 + 1);
+    }
+
+    /**
+     * Ends the game of a player without a game socket: the other player
+     * wins and gets the game over message, and the player's own chat
+     * socket is closed.
+     *
+     * @param player - the player leaving
+     */
+    private void leave(Player player) {
+        Session session = player.session;
+        if(!session.over) {
+            session.winner = player.opponent();
+            end(session);
+            session.players[player.opponent()].sendGame(this, GAME_OVER);
+        }
+        if(player.chat != null) {
+            closeQuietly(player.chat.key);
+            player.chat = null;
+        }
+    }
+
+    /**
+     * Ends a session: its tokens stop working, it is no longer counted, its
+     * players are rated and its spectators are sent the game over message.
+     *
+     * @param session - the session to end
+     */
+    private void end(Session session) {
+        if(session.over) {
+            return;
+        }
+        session.over = true;
+        sessionCount--;
+        if(waiting == session) {
+            waiting = null;
+        }
+        for(int color = Piece.BLUE; color <= Piece.RED; color++) {
+            players.remove(session.players[color].token);
+        }
+        rate(session);
+        if(session.players[Piece.RED].setUp || session.players[Piece.BLUE].setUp) {
+            record(session, GAME_OVER);
+        }
+        broadcast(session, GAME_OVER);
+    }
+
+    /**
+     * Queues a frame of a game for the log, if games are recorded.
+     *
+     * @param session - the game
+     * @param frame - a setup, resolved move or game over frame
+     */
+    private void record(Session session, byte[] frame) {
+        if(log != null) {
+            log.append(session.id, frame);
+        }
+    }
+
+    /**
+     * Updates the ratings of a session's players by the Elo formula, if both
+     * are named, both set up and there is a winner.
+     *
+     * @param session - a session that has ended
+     */
+    private void rate(Session session) {
+        Player red = session.players[Piece.RED];
+        Player blue = session.players[Piece.BLUE];
+        if(session.winner == Piece.NONE || red.name == null || blue.name == null || red.name.equals(blue.name)
+                || !red.setUp || !blue.setUp) {
+            return;
+        }
+        int redRating = getRating(red.name);
+        int blueRating = getRating(blue.name);
+        double expected = 1 / (1 + Math.pow(10, (blueRating - redRating) / 400.0)); // red's expected score
+        double score = (session.winner == Piece.RED) ? 1 : 0;
+        int change = (int) Math.round(K_FACTOR * (score - expected));
+        ratings.put(red.name, redRating + change);
+        ratings.put(blue.name, blueRating - change);
+    }
+
+    /**
+     * Cancels a key and closes its channel, ignoring errors.
+     *
+     * @param key - the key to close
+     */
+    private static void closeQuietly(SelectionKey key) {
+        key.cancel();
+        closeQuietly(key.channel());
+    }
+
+    /**
+     * Closes a channel or selector, ignoring errors.
+     *
+     * @param closeable - the thing to close
+     */
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        }catch(IOException e) {
+            // already closed
+        }
+    }
+
+    /**
+     * One socket: its buffers, and the player it belongs to or the session
+     * it watches once joined.
+     */
+    private static final class Connection {
+        final SocketChannel channel;
+        SelectionKey key;
+        ByteBuffer in = ByteBuffer.allocate(READ_BUFFER);
+        final List<ArrayDeque<ByteBuffer>> out = List.of(new ArrayDeque<ByteBuffer>(),
+                new ArrayDeque<ByteBuffer>()); // by channel
+        final ByteBuffer[] writing = new ByteBuffer[GATHER]; // frames of a gathering write
+        int writingStart; // first frame not yet written
+        int writingEnd;
+        int nextChannel;
+        long queued; // bytes in out and writing
+        boolean handshaken;
+        boolean carriesGame;
+        boolean carriesChat;
+        Player player;
+        Session watching; // for a spectator
+        JoinMessage lobbyJoin; // while waiting in the lobby
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Takes the next frame to write, alternating between the channels.
+         *
+         * @return frame, or null if none is queued
+         */
+        ByteBuffer nextFrame() {
+            ByteBuffer frame = out.get(nextChannel).poll();
+            if(frame == null) {
+                nextChannel = 1 - nextChannel;
+                frame = out.get(nextChannel).poll();
+            }
+            nextChannel = 1 - nextChannel;
+            return frame;
+        }
+    }
+
+    /**
+     * One side of a session, with its sockets once they join.
+     */
+    private static final class Player {
+        final Session session;
+        final int color;
+        String name; // rated under, null if not from the lobby
+        long token;
+        boolean setUp;
+        Connection game;
+        Connection chat;
+        // every game frame sent, for joining late or resuming
+        final ArrayList<byte[]> log = new ArrayList<byte[]>();
+        int received; // game frames handled
+        long deadline; // System.nanoTime() the grace period ends, once dropped
+        // chat while the player has no chat socket
+        final ArrayDeque<byte[]> pendingChat = new ArrayDeque<byte[]>();
+
+        Player(Session session, int color) {
+            this.session = session;
+            this.color = color;
+        }
+
+        int opponent() {
+            return (color == Piece.RED) ? Piece.BLUE : Piece.RED;
+        }
+
+        void sendGame(GameServer server, byte[] frame) {
+            log.add(frame);
+            if(game != null) {
+                server.send(game, frame, WireProtocol.GAME_CHANNEL);
+            }
+        }
+
+        void sendChat(GameServer server, byte[] frame) {
+            if(chat != null) {
+                server.send(chat, frame, WireProtocol.CHAT_CHANNEL);
+            }else {
+                pendingChat.add(frame);
+            }
+        }
+    }
+
+    /**
+     * A game between two players, red joining first, and its spectators.
+     */
+    private static final class Session {
+        final long id = StrategoNetwork.newToken(); // game id spectators join with
+        final StrategoModel model = new StrategoModel();
+        final Player[] players = new Player[Piece.RED + 1]; // by color
+        final ArrayList<Connection> spectators = new ArrayList<Connection>();
+        // every spectator frame released so far, for spectators joining late
+        final ArrayList<ByteBuffer> broadcast = new ArrayList<ByteBuffer>();
+        boolean over;
+        int winner = Piece.NONE;
+
+        Session() {
+            players[Piece.BLUE] = new Player(this, Piece.BLUE);
+            players[Piece.RED] = new Player(this, Piece.RED);
+        }
+    }
+
+    /**
+     * A spectator frame held back until its delay is over.
+     */
+    private static final class Broadcast {
+        final Session session;
+        final ByteBuffer frame;
+        final long due; // System.nanoTime() it is released
+
+        Broadcast(Session session, ByteBuffer frame, long due) {
+            this.session = session;
+            this.frame = frame;
+            this.due = due;
+        }
+    }
+
+    /**
+     * <ul><b><i>main</i></b></ul>
+     * <ul><ul><p><code>public static void main (String[] args) </code></p></ul>
+     *
+     * Runs a game server from the command line.
+     * <p> Arguments: <code>port [spectator delay in seconds] [game log file]</code>
+     *
+     * @param args - command line arguments
+     * @throws IOException if the port can not be opened
+     */
+    public static void main(String[] args) throws IOException {
+        int port = (args.length > 0) ? Integer.parseInt(args[0]) : 4567;
+        long delaySeconds = (args.length > 1) ? Long.parseLong(args[1]) : 0;
+        try(GameLog log = (args.length > 2) ? new GameLog(Paths.get(args[2])) : null) {
+            GameServer server = new GameServer(port, DEFAULT_GRACE_MILLIS, delaySeconds * 1000, log);
+            System.out.println("hosting games on port " + server.getPort());
+            server.run();
+        }
+    }
+}
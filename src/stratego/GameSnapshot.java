@@ -0,0 +1,236 @@
+package stratego;
+
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32C;
+
+import stratego.Piece.PieceType;
+
+/**
+ * GameSnapshot is a compact copy of a game in progress, as one player sees
+ * it, so the game can be saved when the window closes and resumed later.
+ * </p> Layout of a snapshot file, {@value #LENGTH} bytes:
+ * 		-four byte magic number {@link #MAGIC} and a format byte
+ * 		-the player's color and the side to move, one byte each; the side
+ * 			to move is {@link Piece#NONE} while the player is still setting
+ * 			up
+ * 		-the milliseconds left on the setup {@link Timer}
+ * 		-the board, one {@link PieceCode} byte per square without the
+ * 			revealed bit
+ * 		-the reveal mask, a bit per square set where
+ * 			{@link PieceCode#REVEALED} is, as two longs: squares 0-63, then
+ * 			64-99 (the same bit order as {@link StrategoModel#LAKE_MASK})
+ * 		-the piece counts, a byte per {@link PieceType} for blue then red
+ * 		-a CRC-32C of everything before it
+ * </p> Notes:
+ * 		-a snapshot is written to a temporary file that is then renamed
+ * 			over the old one, so a crash leaves the old or the new snapshot,
+ * 			never a mix; it is not forced to disk, which keeps saving well
+ * 			under a millisecond
+ * 		-during setup the board holds only the player's own placed pieces
+ * 		-the piece counts are kept rather than counted from the board,
+ * 			since a model's counts start from a full army, see
+ * 			{@link StrategoModel#winner()}
+ */
+public final class GameSnapshot
+{
+	public static final int MAGIC = 0x53544753; // "STGS"
+	public static final int FORMAT = 1;
+
+	private static final int TYPES = PieceType.values().length;
+	private static final int HEADER = 4 + 1 + 1 + 1 + 4; // magic, format, colors, time left
+	private static final int MASKS = 16; // two longs
+	private static final int BODY = HEADER + StrategoModel.SQUARES + MASKS + 2 * TYPES;
+	public static final int LENGTH = BODY + 4; // and the checksum
+
+	private final int color;
+	private final int sideToMove;
+	private final int timeLeft;
+	private final byte[] board; // square codes without the revealed bit
+	private final long revealedLow; // squares 0-63
+	private final long revealedHigh; // squares 64-99
+	private final byte[] counts; // blue then red, by PieceType ordinal
+
+	/**
+	 * GameSnapshot constructor. Copies a model's board, piece counts and,
+	 * once the game is in play, side to move.
+	 * @param model position to copy
+	 * @param color the player's color, {@link Piece#BLUE} or
+	 * {@link Piece#RED}
+	 * @param setup true if the player is still setting up
+	 * @param timeLeft milliseconds left on the setup clock
+	 */
+	public GameSnapshot(StrategoModel model, int color, boolean setup, int timeLeft)
+	{
+		this.color = color;
+		this.sideToMove = setup ? Piece.NONE : model.getSideToMove();
+		this.timeLeft = timeLeft;
+
+		board = new byte[StrategoModel.SQUARES];
+		long low = 0;
+		long high = 0;
+		for (int i = 0; i < StrategoModel.SQUARES; i++)
+		{
+			byte code = model.getSquare(i);
+			board[i] = (byte) (code & ~PieceCode.REVEALED);
+			if (!PieceCode.isRevealed(code))
+				continue;
+			if (i < 64)
+				low |= 1L << i;
+			else
+				high |= 1L << (i - 64);
+		}
+		revealedLow = low;
+		revealedHigh = high;
+
+		counts = new byte[2 * TYPES];
+		for (PieceType type : PieceType.values())
+		{
+			counts[type.ordinal()] = (byte) model.getPieceCount(Piece.BLUE, type);
+			counts[TYPES + type.ordinal()] = (byte) model.getPieceCount(Piece.RED, type);
+		}
+	}
+
+	/**
+	 * Reads a snapshot from its encoding.
+	 * @param in buffer holding {@link #LENGTH} bytes from its position
+	 * @throws ProtocolException if the bytes are not a snapshot of this
+	 * format, or fail their checksum
+	 */
+	private GameSnapshot(ByteBuffer in) throws ProtocolException
+	{
+		int start = in.position();
+		if (in.remaining() != LENGTH || in.getInt() != MAGIC)
+			throw new ProtocolException("not a saved game");
+		int format = in.get() & 0xFF;
+		if (format != FORMAT)
+			throw new ProtocolException("saved game of format " + format + ", this is format " + FORMAT);
+		CRC32C crc = new CRC32C();
+		crc.update(in.array(), in.arrayOffset() + start, BODY);
+		if ((int) crc.getValue() != in.getInt(start + BODY))
+			throw new ProtocolException("saved game is damaged");
+
+		color = in.get();
+		sideToMove = in.get();
+		timeLeft = in.getInt();
+		board = new byte[StrategoModel.SQUARES];
+		in.get(board);
+		revealedLow = in.getLong();
+		revealedHigh = in.getLong();
+		counts = new byte[2 * TYPES];
+		in.get(counts);
+		if ((color != Piece.BLUE && color != Piece.RED)
+				|| (sideToMove != Piece.NONE && sideToMove != Piece.BLUE && sideToMove != Piece.RED))
+			throw new ProtocolException("saved game has no such color");
+	}
+
+	/**
+	 * Writes the snapshot to a file, replacing it whole.
+	 * @param file file to write
+	 * @throws IOException if the file can not be written
+	 */
+	public void write(Path file) throws IOException
+	{
+		ByteBuffer out = ByteBuffer.allocate(LENGTH);
+		out.putInt(MAGIC).put((byte) FORMAT).put((byte) color).put((byte) sideToMove).putInt(timeLeft);
+		out.put(board).putLong(revealedLow).putLong(revealedHigh).put(counts);
+		CRC32C crc = new CRC32C();
+		crc.update(out.array(), 0, BODY);
+		out.putInt((int) crc.getValue());
+
+		Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+		Files.write(temp, out.array());
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Reads a snapshot written by {@link #write(Path)}.
+	 * @param file file to read
+	 * @return the snapshot
+	 * @throws IOException if the file can not be read, or is not a whole
+	 * snapshot of this format
+	 */
+	public static GameSnapshot read(Path file) throws IOException
+	{
+		return new GameSnapshot(ByteBuffer.wrap(Files.readAllBytes(file)));
+	}
+
+	/**
+	 * Gets the color of the player the snapshot was taken for.
+	 * @return {@link Piece#BLUE} or {@link Piece#RED}
+	 */
+	public int getColor()
+	{
+		return color;
+	}
+
+	/**
+	 * Gets the color whose turn it is.
+	 * @return {@link Piece#BLUE} or {@link Piece#RED}, or {@link Piece#NONE}
+	 * during setup
+	 */
+	public int getSideToMove()
+	{
+		return sideToMove;
+	}
+
+	/**
+	 * Indicates if the snapshot was taken while the player was setting up.
+	 * @return true during setup, false once the game is in play
+	 */
+	public boolean isSetup()
+	{
+		return sideToMove == Piece.NONE;
+	}
+
+	/**
+	 * Gets the time that was left on the setup clock.
+	 * @return milliseconds
+	 */
+	public int getTimeLeft()
+	{
+		return timeLeft;
+	}
+
+	/**
+	 * Gets the {@link PieceCode} of a square, with the revealed bit of the
+	 * reveal mask.
+	 * @param index square index, row * {@link StrategoModel#COLUMNS} + col
+	 * @return square code
+	 */
+	public byte getSquare(int index)
+	{
+		return isRevealed(index) ? PieceCode.reveal(board[index]) : board[index];
+	}
+
+	/**
+	 * Indicates if the piece on a square had been revealed.
+	 * @param index square index
+	 * @return true if revealed, false otherwise
+	 */
+	public boolean isRevealed(int index)
+	{
+		if (index < 64)
+			return (revealedLow >>> index & 1L) != 0;
+		return (revealedHigh >>> (index - 64) & 1L) != 0;
+	}
+
+	/**
+	 * Gets the number of pieces of a type and color that were on the board.
+	 * @param color {@link Piece#BLUE} or {@link Piece#RED}
+	 * @param type piece type
+	 * @return count, 0 for any other color
+	 */
+	public int getPieceCount(int color, PieceType type)
+	{
+		if (color == Piece.BLUE)
+			return counts[type.ordinal()];
+		else if (color == Piece.RED)
+			return counts[TYPES + type.ordinal()];
+		return 0;
+	}
+}
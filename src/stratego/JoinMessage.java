@@ -0,0 +1,177 @@
+package stratego;
+
+import java.io.Serializable;
+
+/**
+ * JoinMessage is the first message a client sends on each of its sockets,
+ * telling the server whether the socket carries the game, the chat or both.
+ * </p> Notes:
+ * 		-the game socket, or the one shared socket, joins with token 0 and
+ * 			is answered with a {@link WelcomeMessage}
+ * 		-a separate chat socket joins with the token from that welcome,
+ * 			which ties it to the same player
+ * 		-a game or shared socket that joins with the token instead resumes
+ * 			that player's game after a dropped connection, giving the number
+ * 			of game messages it has already received
+ * 		-a game or shared socket that joins with a player name waits in the
+ * 			server's lobby to be paired by rating, and is welcomed once it
+ * 			is; without a name it plays the next player to join
+ * 		-a spectator's socket joins with {@link #WATCH} and the game id
+ * 			from a player's welcome, and is sent the game as the server
+ * 			broadcasts it
+ */
+public class JoinMessage implements Serializable
+{
+	private static final long serialVersionUID = 5L;
+
+	public static final int GAME = 0;
+	public static final int CHAT = 1;
+	public static final int SHARED = 2;
+	public static final int WATCH = 3;
+
+	public static final int MAX_NAME_BYTES = 32; // in UTF-8
+
+	private final int role;
+	private final long token;
+	private final int received;
+	private final String name;
+
+	/**
+	 * JoinMessage constructor.
+	 * @param role {@link #GAME} for the game socket, {@link #CHAT} for the
+	 * chat socket, {@link #SHARED} for one socket carrying both or
+	 * {@link #WATCH} for a spectator
+	 * @param token token from the {@link WelcomeMessage} for the chat socket,
+	 * the game id for a spectator, 0 otherwise
+	 */
+	public JoinMessage(int role, long token)
+	{
+		this(role, token, 0);
+	}
+
+	/**
+	 * JoinMessage constructor.
+	 * @param role {@link #GAME} for the game socket, {@link #CHAT} for the
+	 * chat socket, {@link #SHARED} for one socket carrying both or
+	 * {@link #WATCH} for a spectator
+	 * @param token token from the {@link WelcomeMessage}, the game id for a
+	 * spectator, 0 for a new game socket
+	 * @param received game messages received before the connection dropped,
+	 * when resuming
+	 */
+	public JoinMessage(int role, long token, int received)
+	{
+		this(role, token, received, null);
+	}
+
+	/**
+	 * JoinMessage constructor, for a game or shared socket joining the
+	 * lobby.
+	 * @param role {@link #GAME} or {@link #SHARED}
+	 * @param name player name ratings are kept under, at most
+	 * {@value #MAX_NAME_BYTES} bytes in UTF-8
+	 */
+	public JoinMessage(int role, String name)
+	{
+		this(role, 0, 0, name);
+	}
+
+	/**
+	 * JoinMessage constructor.
+	 * @param role what the joining socket carries
+	 * @param token token from the {@link WelcomeMessage}, or game id
+	 * @param received game messages received, when resuming
+	 * @param name player name, or null
+	 */
+	private JoinMessage(int role, long token, int received, String name)
+	{
+		this.role = role;
+		this.token = token;
+		this.received = received;
+		this.name = name;
+	}
+
+	/**
+	 * Gets what the joining socket carries.
+	 * @return {@link #GAME}, {@link #CHAT}, {@link #SHARED} or {@link #WATCH}
+	 */
+	public int getRole()
+	{
+		return role;
+	}
+
+	/**
+	 * Indicates if the joining socket carries only the chat.
+	 * @return true for the chat socket
+	 */
+	public boolean isChat()
+	{
+		return role == CHAT;
+	}
+
+	/**
+	 * Indicates if the joining socket carries both the game and the chat.
+	 * @return true for a shared socket
+	 */
+	public boolean isShared()
+	{
+		return role == SHARED;
+	}
+
+	/**
+	 * Indicates if the joining socket is a spectator's.
+	 * @return true for a spectator socket
+	 */
+	public boolean isWatch()
+	{
+		return role == WATCH;
+	}
+
+	/**
+	 * Indicates if the joining socket waits in the lobby to be paired by
+	 * rating.
+	 * @return true for a game or shared socket with a player name
+	 */
+	public boolean isLobby()
+	{
+		return name != null;
+	}
+
+	/**
+	 * Indicates if the joining socket resumes a game whose connection
+	 * dropped.
+	 * @return true for a game or shared socket with a token
+	 */
+	public boolean isResume()
+	{
+		return (role == GAME || role == SHARED) && token != 0;
+	}
+
+	/**
+	 * Gets the player's token, or the game id for a spectator.
+	 * @return token, 0 for a new game socket
+	 */
+	public long getToken()
+	{
+		return token;
+	}
+
+	/**
+	 * Gets the number of game messages the client received before its
+	 * connection dropped.
+	 * @return count, 0 unless resuming
+	 */
+	public int getReceived()
+	{
+		return received;
+	}
+
+	/**
+	 * Gets the player name of a socket joining the lobby.
+	 * @return name, or null
+	 */
+	public String getName()
+	{
+		return name;
+	}
+}
@@ -0,0 +1,142 @@
+package stratego;
+
+/**
+ * This class keeps a rolling window of round trip times measured with
+ * {@link PingMessage} on a {@link StrategoNetwork}.
+ *
+ * <p>The last {@value #WINDOW} round trips are kept in a ring buffer; the
+ * mean, minimum and maximum are over those. Times are in nanoseconds.
+ * Every method is synchronized, so the statistics may be read from any
+ * thread while the connection's reader records.</p>
+ */
+public final class LatencyStats {
+
+    public static final int WINDOW = 32;
+
+    private final long[] samples = new long[WINDOW];
+    private long count; // round trips recorded in all
+
+    /**
+     * <ul><b><i>record</i></b></ul>
+     * <ul><ul><p><code>public synchronized void record (long nanos) </code></p></ul>
+     *
+     * Adds a round trip, replacing the oldest once the window is full.
+     *
+     * @param nanos - the round trip time
+     */
+    public synchronized void record(long nanos) {
+        samples[(int) (count % WINDOW)] = nanos;
+        count++;
+    }
+
+    /**
+     * <ul><b><i>getCount</i></b></ul>
+     * <ul><ul><p><code>public synchronized long getCount () </code></p></ul>
+     *
+     * Returns the number of round trips recorded, including those no
+     * longer in the window.
+     *
+     * @return the count
+     */
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * <ul><b><i>getLastNanos</i></b></ul>
+     * <ul><ul><p><code>public synchronized long getLastNanos () </code></p></ul>
+     *
+     * Returns the latest round trip.
+     *
+     * @return nanoseconds, -1 if none was recorded
+     */
+    public synchronized long getLastNanos() {
+        return (count == 0) ? -1 : samples[(int) ((count - 1) % WINDOW)];
+    }
+
+    /**
+     * <ul><b><i>getMeanNanos</i></b></ul>
+     * <ul><ul><p><code>public synchronized long getMeanNanos () </code></p></ul>
+     *
+     * Returns the mean round trip over the window.
+     *
+     * @return nanoseconds, -1 if none was recorded
+     */
+    public synchronized long getMeanNanos() {
+        int size = size();
+        if(size == 0) {
+            return -1;
+        }
+        long sum = 0;
+        for(int i = 0; i < size; i++) {
+            sum += samples[i];
+        }
+        return sum / size;
+    }
+
+    /**
+     * <ul><b><i>getMinNanos</i></b></ul>
+     * <ul><ul><p><code>public synchronized long getMinNanos () </code></p></ul>
+     *
+     * Returns the shortest round trip in the window.
+     *
+     * @return nanoseconds, -1 if none was recorded
+     */
+    public synchronized long getMinNanos() {
+        int size = size();
+        if(size == 0) {
+            return -1;
+        }
+        long min = Long.MAX_VALUE;
+        for(int i = 0; i < size; i++) {
+            min = Math.min(min, samples[i]);
+        }
+        return min;
+    }
+
+    /**
+     * <ul><b><i>getMaxNanos</i></b></ul>
+     * <ul><ul><p><code>public synchronized long getMaxNanos () </code></p></ul>
+     *
+     * Returns the longest round trip in the window.
+     *
+     * @return nanoseconds, -1 if none was recorded
+     */
+    public synchronized long getMaxNanos() {
+        int size = size();
+        if(size == 0) {
+            return -1;
+        }
+        long max = 0;
+        for(int i = 0; i < size; i++) {
+            max = Math.max(max, samples[i]);
+        }
+        return max;
+    }
+
+    /**
+     * <ul><b><i>toString</i></b></ul>
+     * <ul><ul><p><code>public synchronized String toString () </code></p></ul>
+     *
+     * Describes the window in milliseconds, for logging or display.
+     *
+     * @return e.g. <code>"rtt 1.2 ms (min 0.9, max 3.4)"</code>
+     */
+    @Override
+    public synchronized String toString() {
+        if(count == 0) {
+            return "rtt unknown";
+        }
+        return String.format("rtt %.1f ms (min %.1f, max %.1f)",
+                getMeanNanos() / 1e6, getMinNanos() / 1e6, getMaxNanos() / 1e6);
+    }
+
+    /**
+     * Gets the number of round trips in the window.
+     *
+     * @return at most {@value #WINDOW}
+     */
+    private int size() {
+        return (int) Math.min(count, WINDOW);
+    }
+}
@@ -0,0 +1,242 @@
+package stratego;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+
+/**
+ * This class pairs players waiting in the lobby of a {@link GameServer} by
+ * rating.
+ *
+ * <p>Waiting players are indexed by rating bucket in a sorted map, each
+ * bucket a queue oldest first. A player is paired with the closest rated
+ * of the players it may play, so pairing only looks at the buckets within
+ * the widest gap. The rating gap a player accepts starts small and widens
+ * the longer it waits, and two players may play when their ratings are
+ * within the wider of their gaps;
+ * {@link #match(long, BiConsumer)} pairs players whose gaps have widened
+ * since they joined.</p>
+ * <p>Notes:</p>
+ * <ul>
+ *   <li>of a pair, the player waiting longer is given first, and plays
+ *       red</li>
+ *   <li>a player leaving is only marked, and dropped from its bucket when
+ *       the bucket is next looked at</li>
+ *   <li>not thread safe; a {@link GameServer} uses it from its selector
+ *       thread</li>
+ * </ul>
+ *
+ * @param <T> what a waiting player is known by
+ */
+public final class Matchmaker<T> {
+
+    public static final int DEFAULT_RATING = 1500;
+    public static final int DEFAULT_GAP = 100;
+    public static final int DEFAULT_GAP_PER_SECOND = 25;
+    public static final int DEFAULT_MAX_GAP = 400;
+
+    private static final int BUCKET = 25; // rating points per bucket
+
+    private final int gap;
+    private final int gapPerSecond;
+    private final int maxGap;
+    private final TreeMap<Integer, ArrayDeque<Entry<T>>> buckets = new TreeMap<Integer, ArrayDeque<Entry<T>>>();
+    private final ArrayDeque<Entry<T>> arrivals = new ArrayDeque<Entry<T>>(); // oldest first
+    private final Map<T, Entry<T>> entries = new HashMap<T, Entry<T>>();
+
+    /**
+     * Constructor, with the default rating gaps.
+     */
+    public Matchmaker() {
+        this(DEFAULT_GAP, DEFAULT_GAP_PER_SECOND, DEFAULT_MAX_GAP);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param gap - rating gap a player accepts when it joins
+     * @param gapPerSecond - how much the gap widens each second of waiting
+     * @param maxGap - widest gap accepted
+     */
+    public Matchmaker(int gap, int gapPerSecond, int maxGap) {
+        if(gap < 0 || gapPerSecond < 0 || maxGap < gap) {
+            throw new IllegalArgumentException("bad rating gaps " + gap + ", " + gapPerSecond + ", " + maxGap);
+        }
+        this.gap = gap;
+        this.gapPerSecond = gapPerSecond;
+        this.maxGap = maxGap;
+    }
+
+    /**
+     * <ul><b><i>add</i></b></ul>
+     * <ul><ul><p><code>public T add (T player, int rating, long now) </code></p></ul>
+     *
+     * Pairs a player joining the lobby with the closest rated player it may
+     * play, or queues it if there is none.
+     *
+     * @param player - the player joining, not already waiting
+     * @param rating - its rating
+     * @param now - {@link System#nanoTime()}
+     * @return the player it is paired with, which waited longer, or null if
+     *         it waits
+     */
+    public T add(T player, int rating, long now) {
+        if(entries.containsKey(player)) {
+            throw new IllegalArgumentException("already waiting");
+        }
+        Entry<T> entry = new Entry<T>(player, rating, now);
+        Entry<T> opponent = closest(entry, now);
+        if(opponent != null) {
+            remove(opponent.player);
+            return opponent.player;
+        }
+        entries.put(player, entry);
+        arrivals.add(entry);
+        buckets.computeIfAbsent(bucket(rating), b -> new ArrayDeque<Entry<T>>()).add(entry);
+        return null;
+    }
+
+    /**
+     * <ul><b><i>remove</i></b></ul>
+     * <ul><ul><p><code>public boolean remove (T player) </code></p></ul>
+     *
+     * Takes a player out of the lobby.
+     *
+     * @param player - the player leaving
+     * @return true if it was waiting
+     */
+    public boolean remove(T player) {
+        Entry<T> entry = entries.remove(player);
+        if(entry == null) {
+            return false;
+        }
+        entry.removed = true;
+        return true;
+    }
+
+    /**
+     * <ul><b><i>match</i></b></ul>
+     * <ul><ul><p><code>public void match (long now, BiConsumer&lt;T, T&gt; paired) </code></p></ul>
+     *
+     * Pairs waiting players whose rating gaps have widened enough, the
+     * longest waiting first.
+     *
+     * @param now - {@link System#nanoTime()}
+     * @param paired - given each pair, the player waiting longer first
+     */
+    public void match(long now, BiConsumer<T, T> paired) {
+        // snapshot, since pairing marks entries further on
+        ArrayList<Entry<T>> waiting = new ArrayList<Entry<T>>(arrivals);
+        for(Entry<T> entry : waiting) {
+            if(entry.removed) {
+                continue;
+            }
+            Entry<T> opponent = closest(entry, now);
+            if(opponent != null) {
+                remove(entry.player);
+                remove(opponent.player);
+                if(entry.since - opponent.since <= 0) {
+                    paired.accept(entry.player, opponent.player);
+                }else {
+                    paired.accept(opponent.player, entry.player);
+                }
+            }
+        }
+        arrivals.removeIf(e -> e.removed);
+    }
+
+    /**
+     * <ul><b><i>size</i></b></ul>
+     * <ul><ul><p><code>public int size () </code></p></ul>
+     *
+     * Returns the number of players waiting.
+     *
+     * @return players in the lobby
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Finds the waiting player closest in rating to a player, within the
+     * wider of their gaps. Every player of a bucket is looked at, since a
+     * newer one may be closer than an older one that accepts a wider gap.
+     *
+     * @param entry - the player to pair, which may itself be waiting
+     * @param now - {@link System#nanoTime()}
+     * @return the opponent, or null if none
+     */
+    private Entry<T> closest(Entry<T> entry, long now) {
+        // no player accepts a gap wider than maxGap
+        NavigableMap<Integer, ArrayDeque<Entry<T>>> near = buckets.subMap(
+                bucket(entry.rating - maxGap), true, bucket(entry.rating + maxGap), true);
+        Entry<T> best = null;
+        int bestGap = Integer.MAX_VALUE;
+        for(Iterator<Map.Entry<Integer, ArrayDeque<Entry<T>>>> it = near.entrySet().iterator(); it.hasNext();) {
+            ArrayDeque<Entry<T>> bucket = it.next().getValue();
+            for(Iterator<Entry<T>> candidates = bucket.iterator(); candidates.hasNext();) {
+                Entry<T> candidate = candidates.next();
+                if(candidate.removed) {
+                    candidates.remove();
+                    continue;
+                }
+                if(candidate == entry) {
+                    continue;
+                }
+                int ratingGap = Math.abs(candidate.rating - entry.rating);
+                if(ratingGap < bestGap
+                        && ratingGap <= Math.max(gap(entry, now), gap(candidate, now))) {
+                    best = candidate;
+                    bestGap = ratingGap;
+                }
+            }
+            if(bucket.isEmpty()) {
+                it.remove();
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Gets the rating gap a player accepts after waiting.
+     *
+     * @param entry - the player
+     * @param now - {@link System#nanoTime()}
+     * @return rating gap
+     */
+    private int gap(Entry<T> entry, long now) {
+        long seconds = (now - entry.since) / 1000000000L;
+        return (int) Math.min(maxGap, gap + seconds * gapPerSecond);
+    }
+
+    /**
+     * Gets the bucket of a rating.
+     *
+     * @param rating - a rating
+     * @return bucket key
+     */
+    private static int bucket(int rating) {
+        return Math.floorDiv(rating, BUCKET);
+    }
+
+    /**
+     * A waiting player.
+     */
+    private static final class Entry<T> {
+        final T player;
+        final int rating;
+        final long since; // System.nanoTime() it joined
+        boolean removed;
+
+        Entry(T player, int rating, long since) {
+            this.player = player;
+            this.rating = rating;
+            this.since = since;
+        }
+    }
+}
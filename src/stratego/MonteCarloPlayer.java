@@ -0,0 +1,509 @@
+package stratego;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import stratego.Piece.PieceType;
+
+/**
+ * MonteCarloPlayer is a {@link ComputerPlayer} that runs a Monte Carlo tree
+ * search over the moves it can see, without looking at the identities of
+ * the opponent's hidden pieces.
+ * </p> Notes:
+ * 		-every iteration starts from a determinization: the opponent's
+ * 			unrevealed pieces are shuffled among the squares they occupy, so
+ * 			the search only relies on what a player at the board knows; with
+ * 			a {@link BeliefTracker} bombs and the flag are only placed on
+ * 			squares of pieces that have not moved
+ * 		-in a refereed game the hidden pieces are {@link PieceType#UNKNOWN}
+ * 			and are first given the types of the pieces still missing
+ * 		-because the legal moves change between determinizations, children
+ * 			are picked by UCB over the number of iterations in which they were
+ * 			available rather than the visits of their parent
+ * 		-each worker of a {@link ForkJoinPool} grows its own tree from the same
+ * 			root (root parallelization); the root visit counts are summed and
+ * 			the most visited move is played
+ * 		-playouts are random and stop after {@value #PLAYOUT_PLIES} plies,
+ * 			where the position is scored by material
+ */
+public class MonteCarloPlayer implements ComputerPlayer
+{
+	private static final int PLAYOUT_PLIES = 40;
+	private static final double EXPLORATION = 0.7;
+	private static final double MATERIAL_SCALE = 200.0; // material difference worth ~73% wins
+	private static final int MOVE_SLOTS = 1 << 15; // packed moves are below 100 << 8
+
+	private static final int FLAG = PieceType.FLAG.ordinal();
+	private static final int BOMB = PieceType.BOMB.ordinal();
+
+	private final ForkJoinPool pool;
+	private final int workers;
+	private final SplittableRandom seeds;
+	private volatile BeliefTracker beliefs;
+
+	/**
+	 * Constructor. Uses one worker per available processor.
+	 */
+	public MonteCarloPlayer()
+	{
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Constructor.
+	 * @param workers number of search trees grown in parallel (at least 1)
+	 */
+	public MonteCarloPlayer(int workers)
+	{
+		this.workers = Math.max(1, workers);
+		this.pool = new ForkJoinPool(this.workers);
+		this.seeds = new SplittableRandom();
+	}
+
+	/**
+	 * Searches until the time budget runs out and returns the root move
+	 * visited most often over all workers.
+	 */
+	@Override
+	public int chooseMove(StrategoModel model, int color, long budgetMillis)
+	{
+		int[] rootMoves = new int[MoveGenerator.MAX_MOVES];
+		int count = MoveGenerator.generate(model, color, rootMoves);
+		if (count == 0)
+			return -1;
+		if (count == 1)
+			return rootMoves[0];
+
+		// which opponent pieces have moved, read once in the caller's thread
+		boolean[] moved = new boolean[StrategoModel.SQUARES];
+		BeliefTracker tracker = beliefs;
+		if (tracker != null)
+			for (int i = 0; i < StrategoModel.SQUARES; i++)
+				moved[i] = tracker.hasMoved(i);
+
+		long deadline = System.nanoTime() + Math.max(1, budgetMillis) * 1000000L;
+		List<Callable<Node>> trees = new ArrayList<Callable<Node>>(workers);
+		for (int i = 0; i < workers; i++)
+			trees.add(new Worker(model, color, moved, deadline, seeds.split()));
+
+		int[] visits = new int[MOVE_SLOTS];
+		try
+		{
+			for (Future<Node> future : pool.invokeAll(trees))
+			{
+				Node root = future.get();
+				for (int i = 0; i < root.childCount; i++)
+					visits[root.children[i].move] += root.children[i].visits;
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		catch (ExecutionException e)
+		{
+			// fall through with whatever visits were merged
+		}
+
+		int best = rootMoves[0];
+		for (int i = 1; i < count; i++)
+			if (visits[rootMoves[i]] > visits[best])
+				best = rootMoves[i];
+		return best;
+	}
+
+	/**
+	 * Uses the tracker's moved pieces in every determinization. The tracker
+	 * is read at the start of {@link #chooseMove}, in the caller's thread.
+	 */
+	@Override
+	public void setBeliefs(BeliefTracker beliefs)
+	{
+		this.beliefs = beliefs;
+	}
+
+	/**
+	 * Stops the worker pool. The player can not be used afterwards.
+	 */
+	@Override
+	public void shutdown()
+	{
+		pool.shutdownNow();
+	}
+
+	/**
+	 * Replaces the opponent's unrevealed pieces with a random arrangement of
+	 * the same pieces in which bombs and the flag only sit on squares of
+	 * pieces that have not moved. Revealed pieces, the color's own pieces and
+	 * the piece counts are unchanged.
+	 * @param model position to change
+	 * @param color color the position is seen by
+	 * @param moved squares of opponent pieces known to have moved
+	 * @param random source of randomness
+	 * @param squares scratch buffer of {@link StrategoModel#SQUARES} entries
+	 * @param codes scratch buffer of {@link StrategoModel#SQUARES} entries
+	 */
+	static void determinize(StrategoModel model, int color, boolean[] moved, SplittableRandom random,
+			int[] squares, byte[] codes)
+	{
+		// squares: unmoved hidden squares from the front, moved ones from the back
+		// codes: immovable codes from the front, movable ones from the back
+		int unmoved = 0;
+		int hidden = 0;
+		int immovable = 0;
+		int movable = 0;
+		for (int i = 0; i < StrategoModel.SQUARES; i++)
+		{
+			byte code = model.getSquare(i);
+			int pieceColor = PieceCode.color(code);
+			if (pieceColor == color || pieceColor == Piece.NONE || PieceCode.isRevealed(code))
+				continue;
+
+			hidden++;
+			if (moved[i])
+				squares[StrategoModel.SQUARES - hidden + unmoved] = i;
+			else
+				squares[unmoved++] = i;
+
+			int type = PieceCode.typeOrdinal(code);
+			if (type == BOMB || type == FLAG)
+				codes[immovable++] = code;
+			else
+				codes[StrategoModel.SQUARES - ++movable] = code;
+		}
+		if (immovable > unmoved)
+			return; // the moved squares disagree with the position, leave it as is
+
+		// close the gaps so both lists are contiguous
+		System.arraycopy(squares, StrategoModel.SQUARES - (hidden - unmoved), squares, unmoved, hidden - unmoved);
+		System.arraycopy(codes, StrategoModel.SQUARES - movable, codes, immovable, movable);
+
+		// pick random unmoved squares for the immovable pieces (partial Fisher-Yates)
+		for (int i = 0; i < immovable; i++)
+			swap(squares, i, i + random.nextInt(unmoved - i));
+		// shuffle the movable pieces over the other squares
+		for (int i = hidden - 1; i > immovable; i--)
+		{
+			int j = immovable + random.nextInt(i - immovable + 1);
+			byte swap = codes[i];
+			codes[i] = codes[j];
+			codes[j] = swap;
+		}
+		for (int i = 0; i < hidden; i++)
+			model.setSquare(squares[i], codes[i]);
+	}
+
+	/**
+	 * Gives the opponent's {@link PieceType#UNKNOWN} pieces, as sent in a
+	 * refereed game, types from the opponent's pieces that are not on the
+	 * board with a known type. Which unknown piece gets which type is left
+	 * to {@link #determinize}.
+	 * @param model position to change
+	 * @param color color the position is seen by
+	 * @return true if any piece was unknown
+	 */
+	static boolean fillUnknown(StrategoModel model, int color)
+	{
+		int enemy = opponent(color);
+		PieceType[] types = PieceType.values();
+		int[] hidden = new int[types.length];
+		for (PieceType type : types)
+			hidden[type.ordinal()] = model.getPieceCount(enemy, type);
+		boolean unknown = false;
+		for (int i = 0; i < StrategoModel.SQUARES; i++)
+		{
+			byte code = model.getSquare(i);
+			if (PieceCode.color(code) != enemy)
+				continue;
+			if (PieceCode.typeOrdinal(code) == PieceType.UNKNOWN.ordinal())
+				unknown = true;
+			else
+				hidden[PieceCode.typeOrdinal(code)]--;
+		}
+		if (!unknown)
+			return false;
+
+		int type = 0;
+		for (int i = 0; i < StrategoModel.SQUARES; i++)
+		{
+			byte code = model.getSquare(i);
+			if (PieceCode.color(code) != enemy || PieceCode.typeOrdinal(code) != PieceType.UNKNOWN.ordinal())
+				continue;
+			while (type < types.length && hidden[type] <= 0)
+				type++;
+			if (type == types.length)
+				break; // more unknown pieces than counted, leave the rest
+			hidden[type]--;
+			model.setSquare(i, PieceCode.encode(types[type], enemy));
+		}
+		return true;
+	}
+
+	/**
+	 * Swaps two entries of an array.
+	 * @param array array
+	 * @param i first index
+	 * @param j second index
+	 */
+	private static void swap(int[] array, int i, int j)
+	{
+		int swap = array[i];
+		array[i] = array[j];
+		array[j] = swap;
+	}
+
+	/**
+	 * Scores a position for a color between 0 (lost) and 1 (won).
+	 * @param model position
+	 * @param color color to score for
+	 * @return estimated chance of winning
+	 */
+	private static double score(StrategoModel model, int color)
+	{
+		return 1.0 / (1.0 + Math.exp(-AlphaBetaPlayer.evaluate(model, color) / MATERIAL_SCALE));
+	}
+
+	/**
+	 * Gets the other side's color.
+	 * @param color {@link Piece#BLUE} or {@link Piece#RED}
+	 * @return opposing color
+	 */
+	private static int opponent(int color)
+	{
+		return (color == Piece.RED) ? Piece.BLUE : Piece.RED;
+	}
+
+	/**
+	 * A search tree node, reached by playing {@link #move} as {@link #mover}.
+	 */
+	private static final class Node
+	{
+		final int move;
+		final int mover;
+		final Node parent;
+		Node[] children = new Node[8];
+		int childCount;
+		int visits;
+		int availability = 1;
+		double reward; // total reward from the mover's point of view
+
+		/**
+		 * Constructor.
+		 * @param move packed move leading to the node
+		 * @param mover color that played the move
+		 * @param parent parent node, or null for the root
+		 */
+		Node(int move, int mover, Node parent)
+		{
+			this.move = move;
+			this.mover = mover;
+			this.parent = parent;
+		}
+
+		/**
+		 * Adds a child node.
+		 * @param move packed move
+		 * @param mover color playing the move
+		 * @return the new child
+		 */
+		Node addChild(int move, int mover)
+		{
+			if (childCount == children.length)
+			{
+				Node[] grown = new Node[children.length * 2];
+				System.arraycopy(children, 0, grown, 0, childCount);
+				children = grown;
+			}
+			Node child = new Node(move, mover, this);
+			children[childCount++] = child;
+			return child;
+		}
+	}
+
+	/**
+	 * One tree of the search: a private model copy that is reset and
+	 * determinized at the start of every iteration.
+	 */
+	private static final class Worker implements Callable<Node>
+	{
+		private final StrategoModel source;
+		private final StrategoModel model;
+		private final int color;
+		private final boolean[] moved;
+		private final long deadline;
+		private final SplittableRandom random;
+
+		private final int[] moves = new int[MoveGenerator.MAX_MOVES];
+		private final int[] untried = new int[MoveGenerator.MAX_MOVES];
+		private final int[] legal = new int[MOVE_SLOTS]; // stamp of the iteration a move was legal in
+		private final int[] expanded = new int[MOVE_SLOTS]; // stamp of the node a move has a child in
+		private final int[] squares = new int[StrategoModel.SQUARES];
+		private final byte[] codes = new byte[StrategoModel.SQUARES];
+		private int stamp;
+
+		/**
+		 * Constructor.
+		 * @param model position to search, copied
+		 * @param color color to move at the root
+		 * @param moved squares of opponent pieces known to have moved
+		 * @param deadline System.nanoTime() deadline
+		 * @param random source of randomness for this tree
+		 */
+		Worker(StrategoModel model, int color, boolean[] moved, long deadline, SplittableRandom random)
+		{
+			this.source = new StrategoModel(model);
+			fillUnknown(source, color);
+			this.model = new StrategoModel(model);
+			this.color = color;
+			this.moved = moved;
+			this.deadline = deadline;
+			this.random = random;
+		}
+
+		/**
+		 * Runs iterations until the deadline.
+		 * @return root of the tree
+		 */
+		@Override
+		public Node call()
+		{
+			Node root = new Node(0, opponent(color), null);
+			do
+			{
+				iterate(root);
+			}
+			while (System.nanoTime() - deadline < 0 && !Thread.currentThread().isInterrupted());
+			return root;
+		}
+
+		/**
+		 * Selection, expansion, playout and backpropagation for one
+		 * determinization.
+		 * @param root root of the tree
+		 */
+		private void iterate(Node root)
+		{
+			model.copyFrom(source);
+			model.setSideToMove(color);
+			determinize(model, color, moved, random, squares, codes);
+
+			Node node = root;
+			while (true)
+			{
+				int side = model.getSideToMove();
+				int count = MoveGenerator.generate(model, side, moves);
+				if (count == 0) // no legal move loses
+				{
+					backpropagate(node, (side == color) ? 0.0 : 1.0);
+					return;
+				}
+
+				stamp++;
+				for (int i = 0; i < count; i++)
+					legal[moves[i]] = stamp;
+				for (int i = 0; i < node.childCount; i++)
+					expanded[node.children[i].move] = stamp;
+
+				int untriedCount = 0;
+				for (int i = 0; i < count; i++)
+					if (expanded[moves[i]] != stamp)
+						untried[untriedCount++] = moves[i];
+
+				Node next;
+				if (untriedCount > 0)
+					next = node.addChild(untried[random.nextInt(untriedCount)], side);
+				else
+					next = select(node);
+
+				if (play(next.move)) // flag captured
+				{
+					backpropagate(next, (side == color) ? 1.0 : 0.0);
+					return;
+				}
+				if (untriedCount > 0)
+				{
+					backpropagate(next, playout());
+					return;
+				}
+				node = next;
+			}
+		}
+
+		/**
+		 * Picks the child with the highest UCB value among the children whose
+		 * move is legal in this determinization.
+		 * @param node fully expanded node
+		 * @return selected child
+		 */
+		private Node select(Node node)
+		{
+			Node best = null;
+			double bestValue = Double.NEGATIVE_INFINITY;
+			for (int i = 0; i < node.childCount; i++)
+			{
+				Node child = node.children[i];
+				if (legal[child.move] != stamp)
+					continue;
+				child.availability++;
+				double value = child.reward / child.visits
+						+ EXPLORATION * Math.sqrt(Math.log(child.availability) / child.visits);
+				if (value > bestValue)
+				{
+					bestValue = value;
+					best = child;
+				}
+			}
+			return best;
+		}
+
+		/**
+		 * Plays random moves until a flag is captured, a side can not move or
+		 * {@value MonteCarloPlayer#PLAYOUT_PLIES} plies have been played.
+		 * @return reward for {@link #color}
+		 */
+		private double playout()
+		{
+			for (int ply = 0; ply < PLAYOUT_PLIES; ply++)
+			{
+				int side = model.getSideToMove();
+				int count = MoveGenerator.generate(model, side, moves);
+				if (count == 0)
+					return (side == color) ? 0.0 : 1.0;
+				if (play(moves[random.nextInt(count)]))
+					return (side == color) ? 1.0 : 0.0;
+			}
+			return score(model, color);
+		}
+
+		/**
+		 * Plays a move on the worker's model.
+		 * @param move packed move
+		 * @return true if the move captured the flag
+		 */
+		private boolean play(int move)
+		{
+			boolean flag = PieceCode.typeOrdinal(model.getSquare(MoveGenerator.to(move))) == FLAG;
+			model.makeMove(move);
+			return flag;
+		}
+
+		/**
+		 * Adds the result of an iteration to a node and its ancestors.
+		 * @param node last node of the iteration
+		 * @param result reward for {@link #color}
+		 */
+		private void backpropagate(Node node, double result)
+		{
+			for (Node n = node; n != null; n = n.parent)
+			{
+				n.visits++;
+				n.reward += (n.mover == color) ? result : 1.0 - result;
+			}
+		}
+	}
+}
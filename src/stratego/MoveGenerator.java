@@ -0,0 +1,182 @@
+package stratego;
+
+import java.util.Arrays;
+
+import stratego.Piece.PieceType;
+
+/**
+ * MoveGenerator lists every legal move for one side of a
+ * {@link StrategoModel} directly from the model's {@link PieceCode} squares.
+ * </p> Moves are packed into an int (see {@link #encode(int, int)}) and
+ * written into a caller supplied buffer, so generating moves does not
+ * allocate and can be repeated as often as a search needs.
+ * </p> Rules applied (the same as {@link Piece#isMoveValid} together with
+ * {@link Piece#whoWins} and the no-jumping rule):
+ * 		-only moveable pieces of the side move
+ * 		-pieces move one square horizontally or vertically
+ * 		-the scout slides any number of empty squares, stopping at the first
+ * 			piece (which it may attack) or lake
+ * 		-a move may not end on a lake or on a piece of the same color
+ */
+public final class MoveGenerator
+{
+	/** Upper bound on the number of legal moves for one side. */
+	public static final int MAX_MOVES = 256;
+
+	private static final int[] ROW_STEP = { -1, 1, 0, 0 };
+	private static final int[] COL_STEP = { 0, 0, -1, 1 };
+
+	// RAYS[square][direction] lists the squares reachable from square in that
+	// direction, nearest first, ending at the board edge or before a lake
+	private static final int[][][] RAYS = buildRays();
+
+	private static final int SCOUT = PieceType.SCOUT.ordinal();
+
+	/**
+	 * Not instantiable.
+	 */
+	private MoveGenerator() {}
+
+	/**
+	 * Precomputes the rays from every square in every direction.
+	 * @return rays indexed by square then direction
+	 */
+	private static int[][][] buildRays()
+	{
+		int[][][] rays = new int[StrategoModel.SQUARES][ROW_STEP.length][];
+		int[] buffer = new int[Math.max(StrategoModel.ROWS, StrategoModel.COLUMNS)];
+
+		for (int square = 0; square < StrategoModel.SQUARES; square++)
+		{
+			for (int dir = 0; dir < ROW_STEP.length; dir++)
+			{
+				int length = 0;
+				int row = square / StrategoModel.COLUMNS + ROW_STEP[dir];
+				int col = square % StrategoModel.COLUMNS + COL_STEP[dir];
+
+				while (row >= 0 && row < StrategoModel.ROWS && col >= 0 && col < StrategoModel.COLUMNS)
+				{
+					int target = StrategoModel.squareIndex(row, col);
+					if (StrategoModel.isLake(target))
+						break;
+					buffer[length++] = target;
+					row += ROW_STEP[dir];
+					col += COL_STEP[dir];
+				}
+				rays[square][dir] = Arrays.copyOf(buffer, length);
+			}
+		}
+		return rays;
+	}
+
+	/**
+	 * Packs a move into an int.
+	 * @param from source square index
+	 * @param to destination square index
+	 * @return packed move
+	 */
+	public static int encode(int from, int to)
+	{
+		return from << 8 | to;
+	}
+
+	/**
+	 * Gets the source square index of a packed move.
+	 * @param move packed move
+	 * @return source square index
+	 */
+	public static int from(int move)
+	{
+		return move >>> 8;
+	}
+
+	/**
+	 * Gets the destination square index of a packed move.
+	 * @param move packed move
+	 * @return destination square index
+	 */
+	public static int to(int move)
+	{
+		return move & 0xFF;
+	}
+
+	/**
+	 * Writes every legal move for a side into the buffer.
+	 * @param model position to generate moves for
+	 * @param color side to move, {@link Piece#BLUE} or {@link Piece#RED}
+	 * @param moves buffer of at least {@link #MAX_MOVES} entries
+	 * @return number of moves written
+	 */
+	public static int generate(StrategoModel model, int color, int[] moves)
+	{
+		int count = 0;
+		for (int from = 0; from < StrategoModel.SQUARES; from++)
+		{
+			byte code = model.getSquare(from);
+			if (PieceCode.color(code) != color || !PieceCode.type(code).isMoveable())
+				continue;
+
+			boolean scout = PieceCode.typeOrdinal(code) == SCOUT;
+			int[][] rays = RAYS[from];
+			for (int dir = 0; dir < rays.length; dir++)
+			{
+				int[] ray = rays[dir];
+				for (int i = 0; i < ray.length; i++)
+				{
+					int to = ray[i];
+					byte target = model.getSquare(to);
+					if (target == PieceCode.EMPTY)
+					{
+						moves[count++] = encode(from, to);
+						if (!scout)
+							break;
+					}
+					else
+					{
+						if (PieceCode.color(target) != color && PieceCode.color(target) != Piece.NONE)
+							moves[count++] = encode(from, to); // attack
+						break;
+					}
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Indicates if a single move is legal for the piece on the source square.
+	 * Equivalent to searching the output of
+	 * {@link #generate(StrategoModel, int, int[])} for the move.
+	 * @param model position
+	 * @param from source square index
+	 * @param to destination square index
+	 * @return true if the move is legal, false otherwise
+	 */
+	public static boolean isLegal(StrategoModel model, int from, int to)
+	{
+		if (from < 0 || from >= StrategoModel.SQUARES || to < 0 || to >= StrategoModel.SQUARES)
+			return false;
+
+		byte code = model.getSquare(from);
+		int color = PieceCode.color(code);
+		if (color == Piece.NONE || !PieceCode.type(code).isMoveable())
+			return false;
+
+		boolean scout = PieceCode.typeOrdinal(code) == SCOUT;
+		int[][] rays = RAYS[from];
+		for (int dir = 0; dir < rays.length; dir++)
+		{
+			int[] ray = rays[dir];
+			for (int i = 0; i < ray.length && (scout || i == 0); i++)
+			{
+				byte target = model.getSquare(ray[i]);
+				if (ray[i] == to)
+					return target == PieceCode.EMPTY
+							|| (PieceCode.color(target) != color && PieceCode.color(target) != Piece.NONE);
+				if (target != PieceCode.EMPTY)
+					break;
+			}
+		}
+		return false;
+	}
+}
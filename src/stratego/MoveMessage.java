@@ -0,0 +1,132 @@
+package stratego;
+
+import java.io.Serializable;
+
+/**
+ * MoveMessage communicates one whole move during 'battle-mode': the source
+ * and destination squares, the pieces involved and the outcome of any
+ * battle. The same message goes over the network to the other player and
+ * to the model's observers, so a turn is exactly one message.
+ * </p> Notes:
+ * 		-a move to an empty square has an {@link Piece.PieceType#EMPTY}
+ * 			defender and result 1
+ * 		-the attacker and defender are the pieces before the move, so a
+ * 			battle reveals both ranks
+ */
+public class MoveMessage implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+
+	private final int from;
+	private final int to;
+	private final Piece attacker;
+	private final Piece defender;
+	private final int result;
+
+	/**
+	 * MoveMessage constructor.
+	 * @param from source square index, row * {@link StrategoModel#COLUMNS} + col
+	 * @param to destination square index
+	 * @param attacker moving piece
+	 * @param defender piece on the destination before the move
+	 * @param result 0 both removed, 1 attacker remains, 2 defender remains
+	 */
+	public MoveMessage(int from, int to, Piece attacker, Piece defender, int result)
+	{
+		this.from = from;
+		this.to = to;
+		this.attacker = attacker;
+		this.defender = defender;
+		this.result = result;
+	}
+
+	/**
+	 * Gets the source square index.
+	 * @return source square
+	 */
+	public int getFrom()
+	{
+		return from;
+	}
+
+	/**
+	 * Gets the destination square index.
+	 * @return destination square
+	 */
+	public int getTo()
+	{
+		return to;
+	}
+
+	/**
+	 * Gets the source row.
+	 * @return source row
+	 */
+	public int getSrcRow()
+	{
+		return from / StrategoModel.COLUMNS;
+	}
+
+	/**
+	 * Gets the source column.
+	 * @return source column
+	 */
+	public int getSrcCol()
+	{
+		return from % StrategoModel.COLUMNS;
+	}
+
+	/**
+	 * Gets the destination row.
+	 * @return destination row
+	 */
+	public int getDstRow()
+	{
+		return to / StrategoModel.COLUMNS;
+	}
+
+	/**
+	 * Gets the destination column.
+	 * @return destination column
+	 */
+	public int getDstCol()
+	{
+		return to % StrategoModel.COLUMNS;
+	}
+
+	/**
+	 * Gets the moving piece.
+	 * @return attacker
+	 */
+	public Piece getAttacker()
+	{
+		return attacker;
+	}
+
+	/**
+	 * Gets the piece on the destination before the move.
+	 * @return defender, {@link Piece.PieceType#EMPTY} for a plain move
+	 */
+	public Piece getDefender()
+	{
+		return defender;
+	}
+
+	/**
+	 * Gets the outcome of the move.
+	 * @return 0 both removed, 1 attacker remains, 2 defender remains
+	 */
+	public int getResult()
+	{
+		return result;
+	}
+
+	/**
+	 * Indicates if the move was an attack on a piece.
+	 * @return true if the destination was occupied
+	 */
+	public boolean isBattle()
+	{
+		return defender != null && defender.color() != Piece.NONE;
+	}
+}
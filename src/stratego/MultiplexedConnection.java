@@ -0,0 +1,202 @@
+package stratego;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This class carries the game and chat channels of {@link StrategoNetwork}
+ * over one socket.
+ *
+ * <p>Frames are sent and received whole, each on the channel given by
+ * {@link WireProtocol#channel(Object)}. No thread of its own is used: a
+ * sender that finds the socket idle writes every queued frame, and a
+ * receiver that finds nobody reading reads frames for both channels until
+ * one arrives for its own.</p>
+ * <p>Notes:</p>
+ * <ul>
+ *   <li>queued frames are written alternating between the channels, so a
+ *       burst of chat delays a move by one chat frame at most</li>
+ *   <li>frames are flushed once the queues are empty</li>
+ *   <li>after a read or write fails, every later receive or send fails the
+ *       same way</li>
+ * </ul>
+ */
+final class MultiplexedConnection {
+
+    private static final int CHANNELS = 2;
+
+    private final DataInputStream in;
+    private final DataOutputStream out;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition received = lock.newCondition();
+    private final List<ArrayDeque<Object>> inbox = new ArrayList<ArrayDeque<Object>>(CHANNELS);
+    private final List<ArrayDeque<byte[]>> outbox = new ArrayList<ArrayDeque<byte[]>>(CHANNELS);
+    private boolean reading; // a receiver is reading for both channels
+    private boolean writing; // a sender is writing for both channels
+    private IOException readFailure;
+    private IOException writeFailure;
+
+    /**
+     * Constructor.
+     *
+     * @param in - input of a socket past its handshake
+     * @param out - output of the same socket
+     */
+    MultiplexedConnection(DataInputStream in, DataOutputStream out) {
+        this.in = in;
+        this.out = out;
+        for(int channel = 0; channel < CHANNELS; channel++) {
+            inbox.add(new ArrayDeque<Object>());
+            outbox.add(new ArrayDeque<byte[]>());
+        }
+    }
+
+    /**
+     * <ul><b><i>send</i></b></ul>
+     * <ul><ul><p><code>void send (Object message) </code></p></ul>
+     *
+     * Queues a message on its channel. If no other sender is writing, this
+     * one writes until both queues are empty.
+     *
+     * @param message - the message to send
+     * @throws IOException if this or an earlier write failed
+     */
+    void send(Object message) throws IOException {
+        byte[] frame = WireProtocol.encode(message);
+        lock.lock();
+        try {
+            if(writeFailure != null) {
+                throw writeFailure;
+            }
+            outbox.get(WireProtocol.channel(message)).add(frame);
+            if(writing) {
+                return;
+            }
+            writing = true;
+        }finally {
+            lock.unlock();
+        }
+        drain();
+    }
+
+    /**
+     * Writes queued frames, one per channel in turn, and flushes when both
+     * queues are empty.
+     *
+     * @throws IOException if a write fails
+     */
+    private void drain() throws IOException {
+        int channel = WireProtocol.GAME_CHANNEL;
+        boolean flushed = true;
+        while(true) {
+            byte[] frame;
+            lock.lock();
+            try {
+                frame = outbox.get(channel).poll();
+                if(frame == null) {
+                    channel = 1 - channel;
+                    frame = outbox.get(channel).poll();
+                }
+                if(frame == null && flushed) {
+                    writing = false;
+                    return;
+                }
+            }finally {
+                lock.unlock();
+            }
+
+            try {
+                if(frame == null) {
+                    out.flush();
+                    flushed = true;
+                }else {
+                    out.write(frame);
+                    flushed = false;
+                    channel = 1 - channel;
+                }
+            }catch(IOException e) {
+                lock.lock();
+                try {
+                    writeFailure = e;
+                    writing = false;
+                    outbox.get(0).clear();
+                    outbox.get(1).clear();
+                }finally {
+                    lock.unlock();
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * <ul><b><i>receive</i></b></ul>
+     * <ul><ul><p><code>Object receive (int channel) </code></p></ul>
+     *
+     * Gets the next message on a channel, waiting for it if needed.
+     *
+     * @param channel - {@link WireProtocol#GAME_CHANNEL} or
+     *                  {@link WireProtocol#CHAT_CHANNEL}
+     * @return the message
+     * @throws IOException if this or an earlier read failed
+     */
+    Object receive(int channel) throws IOException {
+        lock.lock();
+        try {
+            while(true) {
+                Object message = inbox.get(channel).poll();
+                if(message != null) {
+                    return message;
+                }
+                if(readFailure != null) {
+                    throw readFailure;
+                }
+                if(!reading) {
+                    break;
+                }
+                received.awaitUninterruptibly();
+            }
+            reading = true;
+        }finally {
+            lock.unlock();
+        }
+
+        while(true) {
+            Object message = null;
+            IOException failure = null;
+            try {
+                message = WireProtocol.read(in);
+            }catch(IOException e) {
+                failure = e;
+            }
+
+            lock.lock();
+            try {
+                if(failure != null) {
+                    readFailure = failure;
+                    reading = false;
+                    received.signalAll();
+                    throw failure;
+                }
+                int messageChannel = WireProtocol.channel(message);
+                if(messageChannel == channel) {
+                    // let a waiting receiver take over reading
+                    reading = false;
+                    received.signalAll();
+                    return message;
+                }
+                inbox.get(messageChannel).add(message);
+                received.signalAll();
+            }finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -16,6 +16,10 @@ import java.io.Serializable;
  *		-the spy is defeated in any other case
  *		-the bomb defeats any piece that attacks it, except the miner
  *		-the miner defuses the bomb (removing it from the board)
+ * </p> There is one shared, immutable instance of each type and color, got
+ * with {@link #of(PieceType, int)}. The model, the network messages and
+ * deserialization all use the shared instances, so moving pieces does not
+ * allocate. Pieces made with the constructor can still have their color set.
  * 
  * @author Caroline O'Neill
  *
@@ -31,14 +35,52 @@ public class Piece implements Serializable
 	
 	private int color = NONE;
 	public final PieceType type;
+	private final transient boolean shared;
+	
+	// shared instances, indexed by PieceCode.encode(type, color)
+	private static final Piece[] SHARED = new Piece[PieceCode.REVEALED];
+	static
+	{
+		for (PieceType type : PieceType.values())
+		{
+			for (int color = NONE; color <= RED; color++)
+			{
+				Piece piece = new Piece(type, true);
+				piece.color = color;
+				SHARED[PieceCode.encode(type, color)] = piece;
+			}
+		}
+	}
 	
 	/**
 	 * Piece constructor.
 	 * @param type piece type
 	 */
 	public Piece(PieceType type)
+	{
+		this(type, false);
+	}
+	
+	/**
+	 * Piece constructor.
+	 * @param type piece type
+	 * @param shared true for the instances returned by {@link #of}
+	 */
+	private Piece(PieceType type, boolean shared)
 	{
 		this.type = type;
+		this.shared = shared;
+	}
+	
+	/**
+	 * Gets the shared instance of a piece type and color.
+	 * @param type piece type
+	 * @param color {@link Piece#BLUE}, {@link Piece#RED}, or {@link Piece#NONE}
+	 * @return immutable piece
+	 */
+	public static Piece of(PieceType type, int color)
+	{
+		return SHARED[PieceCode.encode(type, color)];
 	}
 	
 	/**
@@ -64,7 +106,11 @@ public class Piece implements Serializable
 		
 		BOMB(false, 0),
 		SPY(true, 0),
-		FLAG(false, 0);
+		FLAG(false, 0),
+		
+		// an opponent piece whose type the server has not revealed, see
+		// GameServer; it may move, and is never part of a battle
+		UNKNOWN(true, -3);
 		
 		private boolean moveable;
 		private int level;
@@ -173,20 +219,33 @@ public class Piece implements Serializable
 		if (attacker.color() == defender.color())
 			return -1;
 		
-		if (defender.type == PieceType.BOMB)
-			if (attacker.type == PieceType.MINER)
+		return battle(attacker.type, defender.type);
+	}
+	
+	/**
+	 * Resolves a battle between two piece types of opposing colors, applying
+	 * the bomb, miner and spy rules before comparing levels. An empty
+	 * defender always loses (a plain move).
+	 * @param attacker moving piece type
+	 * @param defender piece type on the destination square
+	 * @return if 0 both removed, if 1 attacker remains, if 2 defender remains
+	 */
+	public static int battle(PieceType attacker, PieceType defender)
+	{
+		if (defender == PieceType.BOMB)
+			if (attacker == PieceType.MINER)
 				return 1;
 			else
 				return 2;
 		
-		if (attacker.type == PieceType.SPY && defender.type == PieceType.MARSHAL)
+		if (attacker == PieceType.SPY && defender == PieceType.MARSHAL)
 			return 1;
 				
-		if (attacker.level() == defender.level())
+		if (attacker.level == defender.level)
 			return 0;
-		else if (attacker.level() > defender.level())
+		else if (attacker.level > defender.level)
 			return 1;
-		else // attacker.level() < defender.level()
+		else // attacker.level < defender.level
 			return 2;
 	}
 	
@@ -221,9 +280,13 @@ public class Piece implements Serializable
 	 * Sets the piece color. No color set if color is not red, blue, or none.
 	 * @param color {@link Piece#BLUE}, {@link Piece#RED}, or {@link Piece#NONE}
 	 * @return true is color is set, false otherwise.
+	 * @throws UnsupportedOperationException if this is a shared instance
 	 */
 	public boolean setColor(int color)
 	{
+		if (shared)
+			throw new UnsupportedOperationException("shared pieces are immutable");
+		
 		if (color == Piece.NONE
 				|| color == Piece.BLUE
 				|| color == Piece.RED) 
@@ -234,6 +297,40 @@ public class Piece implements Serializable
 		return false;	
 	}
 	
+	/**
+	 * Two pieces are equal if they have the same {@link PieceType} and color.
+	 * Shared instances are equal only to themselves, but pieces made with the
+	 * constructor can equal a shared instance.
+	 */
+	@Override
+	public boolean equals(Object obj)
+	{
+		if (this == obj)
+			return true;
+		if (!(obj instanceof Piece))
+			return false;
+		Piece other = (Piece) obj;
+		return type == other.type && color == other.color;
+	}
+	
+	/**
+	 * Hash code consistent with {@link #equals(Object)}.
+	 */
+	@Override
+	public int hashCode()
+	{
+		return PieceCode.encode(type, color);
+	}
+	
+	/**
+	 * Replaces a deserialized piece with the shared instance.
+	 * @return shared piece of the same type and color
+	 */
+	private Object readResolve()
+	{
+		return of(type, color);
+	}
+	
 	/**
 	 * Gives a string representation of the Piece (its level).
 	 */
@@ -0,0 +1,127 @@
+package stratego;
+
+import stratego.Piece.PieceType;
+
+/**
+ * PieceCode packs the contents of a single board square into one byte so
+ * the {@link StrategoModel} can keep the board as a flat <code>byte[]</code>
+ * instead of a grid of {@link Piece} objects.
+ * </p> Layout of a square code:
+ * 		-bits 0-3: {@link PieceType} ordinal
+ * 		-bits 4-5: color ({@link Piece#NONE}, {@link Piece#BLUE},
+ * 			{@link Piece#RED})
+ * 		-bit 6: set once the piece's identity has been revealed to the
+ * 			opponent (by a battle or a scout's multi-square move)
+ * </p> An empty square is always code 0 and a lake is always code 1, so
+ * occupancy checks do not need to decode the square.
+ */
+public final class PieceCode
+{
+	public static final byte EMPTY = 0; // PieceType.EMPTY, no color
+	public static final byte LAKE = 1; // PieceType.LAKE, no color
+	public static final int REVEALED = 0x40;
+	
+	/** Number of distinct square codes, for tables indexed by code. */
+	public static final int CODES = 0x80;
+
+	private static final int TYPE_MASK = 0x0F;
+	private static final int COLOR_SHIFT = 4;
+	private static final int COLOR_MASK = 0x03;
+
+	private static final PieceType[] TYPES = PieceType.values();
+
+	/**
+	 * Not instantiable.
+	 */
+	private PieceCode() {}
+
+	/**
+	 * Packs a piece type and color into a square code. A null type is
+	 * treated as {@link PieceType#EMPTY}.
+	 * @param type piece type
+	 * @param color {@link Piece#BLUE}, {@link Piece#RED}, or {@link Piece#NONE}
+	 * @return square code
+	 */
+	public static byte encode(PieceType type, int color)
+	{
+		int ordinal = (type == null) ? 0 : type.ordinal();
+		return (byte) (ordinal | (color & COLOR_MASK) << COLOR_SHIFT);
+	}
+
+	/**
+	 * Packs a {@link Piece} into a square code. A null piece is treated as
+	 * an empty square.
+	 * @param piece piece to encode
+	 * @return square code
+	 */
+	public static byte encode(Piece piece)
+	{
+		if (piece == null)
+			return EMPTY;
+		return encode(piece.type, piece.color());
+	}
+
+	/**
+	 * Gets the {@link PieceType} of a square code.
+	 * @param code square code
+	 * @return piece type
+	 */
+	public static PieceType type(byte code)
+	{
+		return TYPES[code & TYPE_MASK];
+	}
+
+	/**
+	 * Gets the {@link PieceType} ordinal of a square code without looking up
+	 * the enum constant.
+	 * @param code square code
+	 * @return piece type ordinal
+	 */
+	public static int typeOrdinal(byte code)
+	{
+		return code & TYPE_MASK;
+	}
+
+	/**
+	 * Gets the color of a square code.
+	 * @param code square code
+	 * @return {@link Piece#BLUE}, {@link Piece#RED}, or {@link Piece#NONE}
+	 */
+	public static int color(byte code)
+	{
+		return (code >> COLOR_SHIFT) & COLOR_MASK;
+	}
+
+	/**
+	 * Indicates if the piece described by a square code has been revealed.
+	 * @param code square code
+	 * @return true if revealed, false otherwise
+	 */
+	public static boolean isRevealed(byte code)
+	{
+		return (code & REVEALED) != 0;
+	}
+
+	/**
+	 * Marks the piece described by a square code as revealed. Empty squares
+	 * and lakes are returned unchanged.
+	 * @param code square code
+	 * @return square code with the revealed bit set
+	 */
+	public static byte reveal(byte code)
+	{
+		if (color(code) == Piece.NONE)
+			return code;
+		return (byte) (code | REVEALED);
+	}
+
+	/**
+	 * Gets the shared {@link Piece} equivalent to a square code.
+	 * @param code square code
+	 * @return piece, see {@link Piece#of}
+	 */
+	public static Piece toPiece(byte code)
+	{
+		return Piece.of(type(code), color(code));
+	}
+}
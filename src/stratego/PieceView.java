@@ -47,6 +47,7 @@ public class PieceView extends VBox {
             PieceType.LIEUTENANT, PieceType.CAPTAIN, PieceType.MAJOR, PieceType.COLONEL, 
             PieceType.GENERAL, PieceType.MARSHAL};
     private static final int PIECETYPE_OFFSET = 2; // the offset between the index of PieceType.LAKE and pieceIndex of lake 
+    private static Background[] rankBackgrounds; // by piece index, loaded once and shared by every square
     private Color color;
     private int pieceIndex;
     private Color borderColor;
@@ -307,11 +308,7 @@ public class PieceView extends VBox {
         }
         
         if(isVisible && pieceIndex >= 0 && pieceIndex < RANK_IMAGES.length) {
-            String imagePath = RANK_IMAGES[pieceIndex];
-            BackgroundImage bgi = new BackgroundImage(new Image(imagePath, SIZE, SIZE, true, true), 
-                    BackgroundRepeat.NO_REPEAT, BackgroundRepeat.NO_REPEAT, BackgroundPosition.DEFAULT, BackgroundSize.DEFAULT);
-            bg = new Background(bgi);
-            
+            bg = getRankBackground(pieceIndex);
         } else {
             BackgroundFill bgfill = new BackgroundFill(color, CornerRadii.EMPTY, Insets.EMPTY);
             bg = new Background(bgfill);
@@ -319,7 +316,29 @@ public class PieceView extends VBox {
         this.setBackground(bg);
     }
     
-    
+    /**
+     * <ul><b><i>getRankBackground</i></b></ul>
+     * <ul><ul><p><code>private Background getRankBackground (int pieceIndex) </code></p></ul>
+     *
+     * Gets the background showing a piece's rank image. Each image is loaded the
+     * first time it is shown, then shared, so updating a square does not load it
+     * again.
+     *
+     * @param pieceIndex - the index of the piece, 0 to 11
+     * @return the background
+     */
+    private Background getRankBackground(int pieceIndex) {
+        if(rankBackgrounds == null) {
+            rankBackgrounds = new Background[RANK_IMAGES.length];
+        }
+        if(rankBackgrounds[pieceIndex] == null) {
+            BackgroundImage bgi = new BackgroundImage(new Image(RANK_IMAGES[pieceIndex], SIZE, SIZE, true, true), 
+                    BackgroundRepeat.NO_REPEAT, BackgroundRepeat.NO_REPEAT, BackgroundPosition.DEFAULT, BackgroundSize.DEFAULT);
+            rankBackgrounds[pieceIndex] = new Background(bgi);
+        }
+        return rankBackgrounds[pieceIndex];
+    }
+        
     /**
      * <ul><b><i>setSquareBorder</i></b></ul>
      * <ul><ul><p><code>public void setSquareBorder (Color borderColor, int borderWidth) </code></p></ul>
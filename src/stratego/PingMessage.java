@@ -0,0 +1,68 @@
+package stratego;
+
+import java.io.Serializable;
+
+/**
+ * PingMessage checks that the other end of a connection is still there and
+ * measures how long a message takes to get there and back.
+ * </p> Notes:
+ * 		-the other end answers a ping with a reply holding the same stamp,
+ * 			and the round trip is the time since the stamp
+ * 		-pings travel on the game channel but are not game messages: they
+ * 			are answered by whoever reads the connection and never handed
+ * 			on, and a {@link GameServer} neither logs nor counts them
+ */
+public class PingMessage implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+
+	private final long stamp;
+	private final boolean reply;
+
+	/**
+	 * PingMessage constructor, for a ping.
+	 * @param stamp {@link System#nanoTime()} of the sender when sent
+	 */
+	public PingMessage(long stamp)
+	{
+		this(stamp, false);
+	}
+
+	/**
+	 * PingMessage constructor.
+	 * @param stamp {@link System#nanoTime()} of the sender of the ping
+	 * @param reply true for the answer to a ping
+	 */
+	public PingMessage(long stamp, boolean reply)
+	{
+		this.stamp = stamp;
+		this.reply = reply;
+	}
+
+	/**
+	 * Gets the stamp of the ping.
+	 * @return {@link System#nanoTime()} of the ping's sender when sent
+	 */
+	public long getStamp()
+	{
+		return stamp;
+	}
+
+	/**
+	 * Indicates if this answers a ping.
+	 * @return true for a reply
+	 */
+	public boolean isReply()
+	{
+		return reply;
+	}
+
+	/**
+	 * Makes the answer to this ping.
+	 * @return reply with the same stamp
+	 */
+	public PingMessage reply()
+	{
+		return new PingMessage(stamp, true);
+	}
+}
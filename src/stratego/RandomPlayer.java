@@ -0,0 +1,41 @@
+package stratego;
+
+import java.util.SplittableRandom;
+
+/**
+ * RandomPlayer is a {@link ComputerPlayer} that plays a uniformly random
+ * legal move. It is a baseline for other players and keeps
+ * {@link SelfPlay} runs fast when testing rule changes.
+ */
+public class RandomPlayer implements ComputerPlayer
+{
+	private final SplittableRandom random;
+	private final int[] moves = new int[MoveGenerator.MAX_MOVES];
+
+	/**
+	 * Constructor.
+	 * @param random source of randomness, used only by this player
+	 */
+	public RandomPlayer(SplittableRandom random)
+	{
+		this.random = random;
+	}
+
+	/**
+	 * Picks a random legal move. The time budget is ignored.
+	 */
+	@Override
+	public int chooseMove(StrategoModel model, int color, long budgetMillis)
+	{
+		int count = MoveGenerator.generate(model, color, moves);
+		if (count == 0)
+			return -1;
+		return moves[random.nextInt(count)];
+	}
+
+	/**
+	 * Nothing to stop.
+	 */
+	@Override
+	public void shutdown() {}
+}
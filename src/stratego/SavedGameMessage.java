@@ -0,0 +1,37 @@
+package stratego;
+
+import java.io.Serializable;
+
+/**
+ * SavedGameMessage is sent by each player resuming a saved game in play,
+ * before any move, so both know they resumed the same game.
+ * </p> Notes:
+ * 		-it holds the {@link StrategoModel#getHash()} of the position the
+ * 			player restored from its {@link GameSnapshot}
+ * 		-a player whose hash differs from the other player's, or who gets
+ * 			any other message first, does not resume the game
+ */
+public class SavedGameMessage implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+
+	private final long hash;
+
+	/**
+	 * SavedGameMessage constructor.
+	 * @param hash hash of the restored position
+	 */
+	public SavedGameMessage(long hash)
+	{
+		this.hash = hash;
+	}
+
+	/**
+	 * Gets the hash of the position the sender restored.
+	 * @return position hash, see {@link StrategoModel#getHash()}
+	 */
+	public long getHash()
+	{
+		return hash;
+	}
+}
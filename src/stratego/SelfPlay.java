@@ -0,0 +1,336 @@
+package stratego;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import stratego.Piece.PieceType;
+
+/**
+ * SelfPlay plays complete games between two {@link ComputerPlayer} without
+ * a view or network, for tuning players and testing rule changes.
+ * </p> Notes:
+ * 		-setups are made by {@link StrategoController#randomSetup} and
+ * 			completed by {@link StrategoController#completeSetup}, the same
+ * 			path as a player's setup in the view
+ * 		-moves are played with {@link StrategoModel#makeMove(int)}, so battles
+ * 			follow {@link Piece#battle}
+ * 		-a game is won by capturing the flag or when the other side has no
+ * 			legal move (or plays an illegal one), and drawn after the ply limit
+ * 		-one game runs per thread at a time; each thread makes its own
+ * 			players and reuses them for all of its games
+ */
+public class SelfPlay
+{
+	public static final int DEFAULT_MAX_PLIES = 3000;
+
+	private static final int FLAG = PieceType.FLAG.ordinal();
+
+	/**
+	 * Makes a player for one thread of a run.
+	 */
+	public interface PlayerFactory
+	{
+		/**
+		 * Makes a player.
+		 * @param random source of randomness for the player
+		 * @return player, used by one thread only
+		 */
+		ComputerPlayer create(SplittableRandom random);
+	}
+
+	private final PlayerFactory red;
+	private final PlayerFactory blue;
+	private final long budgetMillis;
+	private final int maxPlies;
+	private final int threads;
+
+	/**
+	 * Constructor.
+	 * @param red makes the red players
+	 * @param blue makes the blue players
+	 * @param budgetMillis time allowed per move
+	 * @param maxPlies plies after which a game is a draw
+	 * @param threads number of games played at once (at least 1)
+	 */
+	public SelfPlay(PlayerFactory red, PlayerFactory blue, long budgetMillis, int maxPlies, int threads)
+	{
+		this.red = red;
+		this.blue = blue;
+		this.budgetMillis = budgetMillis;
+		this.maxPlies = maxPlies;
+		this.threads = Math.max(1, threads);
+	}
+
+	/**
+	 * Plays a number of games.
+	 * @param games number of games
+	 * @param seed seed for the setups and the players' randomness
+	 * @return totals of the run
+	 */
+	public Result run(int games, long seed)
+	{
+		AtomicInteger started = new AtomicInteger();
+		LongAdder redWins = new LongAdder();
+		LongAdder blueWins = new LongAdder();
+		LongAdder draws = new LongAdder();
+		LongAdder plies = new LongAdder();
+		SplittableRandom seeds = new SplittableRandom(seed);
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		long start = System.nanoTime();
+		for (int t = 0; t < threads; t++)
+		{
+			SplittableRandom random = seeds.split();
+			futures.add(pool.submit(() ->
+			{
+				ComputerPlayer redPlayer = red.create(random.split());
+				ComputerPlayer bluePlayer = blue.create(random.split());
+				int[] gamePlies = new int[1];
+				try
+				{
+					while (started.getAndIncrement() < games)
+					{
+						int winner = playGame(redPlayer, bluePlayer, budgetMillis, maxPlies, random, gamePlies);
+						if (winner == Piece.RED)
+							redWins.increment();
+						else if (winner == Piece.BLUE)
+							blueWins.increment();
+						else
+							draws.increment();
+						plies.add(gamePlies[0]);
+					}
+				}
+				finally
+				{
+					redPlayer.shutdown();
+					bluePlayer.shutdown();
+				}
+			}));
+		}
+		pool.shutdown();
+
+		for (Future<?> future : futures)
+		{
+			try
+			{
+				future.get();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				pool.shutdownNow();
+				break;
+			}
+			catch (ExecutionException e)
+			{
+				throw new IllegalStateException("self-play game failed", e.getCause());
+			}
+		}
+		return new Result(redWins.intValue(), blueWins.intValue(), draws.intValue(), plies.sum(),
+				System.nanoTime() - start);
+	}
+
+	/**
+	 * Plays one game from a random setup.
+	 * @param redPlayer red player
+	 * @param bluePlayer blue player
+	 * @param budgetMillis time allowed per move
+	 * @param maxPlies plies after which the game is a draw
+	 * @param random source of randomness for the setups
+	 * @param plies receives the number of plies played in element 0
+	 * @return {@link Piece#RED} or {@link Piece#BLUE} for the winner,
+	 * {@link Piece#NONE} for a draw
+	 */
+	public static int playGame(ComputerPlayer redPlayer, ComputerPlayer bluePlayer, long budgetMillis,
+			int maxPlies, SplittableRandom random, int[] plies)
+	{
+		StrategoController setup = new StrategoController(Runnable::run);
+		setup.randomSetup(Piece.RED, random);
+		setup.randomSetup(Piece.BLUE, random);
+
+		StrategoModel model = new StrategoModel();
+		model.setBoard(setup.completeSetup(Piece.RED), Piece.RED, false);
+		model.setBoard(setup.completeSetup(Piece.BLUE), Piece.BLUE, false);
+		model.setSideToMove(Piece.RED);
+
+		BeliefTracker redBeliefs = new BeliefTracker(Piece.RED);
+		BeliefTracker blueBeliefs = new BeliefTracker(Piece.BLUE);
+		redBeliefs.reset(model);
+		blueBeliefs.reset(model);
+		redPlayer.setBeliefs(redBeliefs);
+		bluePlayer.setBeliefs(blueBeliefs);
+
+		int winner = Piece.NONE;
+		int ply = 0;
+		while (ply < maxPlies)
+		{
+			int side = model.getSideToMove();
+			int other = (side == Piece.RED) ? Piece.BLUE : Piece.RED;
+			ComputerPlayer player = (side == Piece.RED) ? redPlayer : bluePlayer;
+
+			int move = player.chooseMove(model, side, budgetMillis);
+			int from = MoveGenerator.from(move);
+			int to = MoveGenerator.to(move);
+			if (move == -1 || !MoveGenerator.isLegal(model, from, to)
+					|| PieceCode.color(model.getSquare(from)) != side)
+			{
+				winner = other;
+				break;
+			}
+
+			byte attacker = model.getSquare(from);
+			byte defender = model.getSquare(to);
+			int result = model.makeMove(move);
+			redBeliefs.onMove(from, to, attacker, defender, result);
+			blueBeliefs.onMove(from, to, attacker, defender, result);
+			ply++;
+
+			if (PieceCode.typeOrdinal(defender) == FLAG)
+			{
+				winner = side;
+				break;
+			}
+		}
+		plies[0] = ply;
+		return winner;
+	}
+
+	/**
+	 * Totals of a run.
+	 */
+	public static final class Result
+	{
+		private final int redWins;
+		private final int blueWins;
+		private final int draws;
+		private final long plies;
+		private final long nanos;
+
+		/**
+		 * Constructor.
+		 * @param redWins games won by red
+		 * @param blueWins games won by blue
+		 * @param draws games drawn
+		 * @param plies plies over all games
+		 * @param nanos wall time of the run
+		 */
+		Result(int redWins, int blueWins, int draws, long plies, long nanos)
+		{
+			this.redWins = redWins;
+			this.blueWins = blueWins;
+			this.draws = draws;
+			this.plies = plies;
+			this.nanos = nanos;
+		}
+
+		/**
+		 * Gets the number of games played.
+		 * @return games
+		 */
+		public int getGames()
+		{
+			return redWins + blueWins + draws;
+		}
+
+		/**
+		 * Gets the number of games won by red.
+		 * @return red wins
+		 */
+		public int getRedWins()
+		{
+			return redWins;
+		}
+
+		/**
+		 * Gets the number of games won by blue.
+		 * @return blue wins
+		 */
+		public int getBlueWins()
+		{
+			return blueWins;
+		}
+
+		/**
+		 * Gets the number of drawn games.
+		 * @return draws
+		 */
+		public int getDraws()
+		{
+			return draws;
+		}
+
+		/**
+		 * Gets the average game length.
+		 * @return plies per game
+		 */
+		public double getAveragePlies()
+		{
+			return (getGames() == 0) ? 0.0 : (double) plies / getGames();
+		}
+
+		/**
+		 * Gets the throughput of the run.
+		 * @return games per second of wall time
+		 */
+		public double getGamesPerSecond()
+		{
+			return (nanos == 0) ? 0.0 : getGames() * 1e9 / nanos;
+		}
+
+		@Override
+		public String toString()
+		{
+			int games = Math.max(1, getGames());
+			return String.format("games: %d (%.1f games/sec), average plies: %.1f%n"
+					+ "red wins: %.1f%%, blue wins: %.1f%%, draws: %.1f%%",
+					getGames(), getGamesPerSecond(), getAveragePlies(),
+					100.0 * redWins / games, 100.0 * blueWins / games, 100.0 * draws / games);
+		}
+	}
+
+	/**
+	 * Gets a player factory by name.
+	 * @param name "random", "alphabeta" or "mcts"
+	 * @return factory making single threaded players
+	 */
+	private static PlayerFactory factory(String name)
+	{
+		switch (name)
+		{
+			case "random":
+				return random -> new RandomPlayer(random);
+			case "alphabeta":
+				return random -> new AlphaBetaPlayer(1, 16);
+			case "mcts":
+				return random -> new MonteCarloPlayer(1);
+			default:
+				throw new IllegalArgumentException("unknown player: " + name);
+		}
+	}
+
+	/**
+	 * Runs self-play games from the command line and prints the totals.
+	 * <p> Arguments: <code>[games] [redPlayer] [bluePlayer] [budgetMillis]
+	 * [maxPlies]</code>, players being random, alphabeta or mcts.
+	 * @param args command line arguments
+	 */
+	public static void main(String[] args)
+	{
+		int games = (args.length > 0) ? Integer.parseInt(args[0]) : 1000;
+		PlayerFactory red = factory((args.length > 1) ? args[1] : "random");
+		PlayerFactory blue = factory((args.length > 2) ? args[2] : "random");
+		long budget = (args.length > 3) ? Long.parseLong(args[3]) : 10;
+		int maxPlies = (args.length > 4) ? Integer.parseInt(args[4]) : DEFAULT_MAX_PLIES;
+
+		SelfPlay selfPlay = new SelfPlay(red, blue, budget, maxPlies, Runtime.getRuntime().availableProcessors());
+		System.out.println(selfPlay.run(games, System.nanoTime()));
+	}
+}
@@ -1,10 +1,14 @@
 package stratego;
 
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Map;
-import java.util.Map.Entry;
+import java.util.Observer;
+import java.util.Queue;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 import javafx.application.Platform;
 import javafx.scene.control.Label;
@@ -23,31 +27,83 @@ import stratego.Piece.PieceType;
  * </p> Note:
  * 		-game is over when the opponent flag or all moveable pieces are captured
  * 		-pieces may not 'jump' over each other or lakes
+ * 		-messages read from the network are applied to the model on the
+ * 			executor passed to the constructor (the JavaFX application thread
+ * 			by default), several at a time when they arrive together
+ * 		-each connection is read by one long-lived loop for the game and
+ * 			one for the chat, never a thread per turn
+ * 		-a saved game in play is only restored once the other player has
+ * 			resumed the same position, see {@link SavedGameMessage}
  * 
  * @author Caroline O'Neill
  * 
  */
 public class StrategoController 
 {
+	// blocking network reads run here, a virtual thread per read loop so
+	// idle or slow peers cost no platform threads; each connection has one
+	// loop for the game and one for the chat, for its whole life
+	private static final ExecutorService LISTENERS = Executors.newVirtualThreadPerTaskExecutor();
+	
 	private StrategoModel model;
 	private StrategoNetwork network;
 	
 	private PieceType[][] blueInitialSetup;
 	private PieceType[][] redInitialSetup;
-	private HashMap<PieceType, Integer> blueAvailible; // piece : count 
-	private HashMap<PieceType, Integer> redAvailible; // piece :  count
+	private int[] blueAvailible; // count by PieceType ordinal
+	private int[] redAvailible; // count by PieceType ordinal
 	
 	private AtomicBoolean chatListening;
+	private final AtomicBoolean gameListening;
+	private final Executor updateExecutor;
+	private final boolean batchUpdates;
+	private final Queue<Runnable> pendingUpdates;
+	private final AtomicBoolean drainScheduled;
+	
+	private GameSnapshot resuming; // saved game the next receive loop resumes, or null
+	private Consumer<String> resumeRefused;
+	private boolean moveInFlight; // refereed move sent and not yet played, update thread only
 	
 	/**
 	 * Constructor.
-	 * <p> Constructs {@link StrategoModel} and bulids maps of availible 
-	 * blue/red pieces.
+	 * <p> Constructs {@link StrategoModel} and bulids counts of availible 
+	 * blue/red pieces. Model updates from the network run on the JavaFX
+	 * application thread.
 	 * 
 	 * @author Caroline O'Neill
 	 */
 	public StrategoController()
 	{
+		this(Platform::runLater);
+	}
+	
+	/**
+	 * Constructor.
+	 * <p> Constructs {@link StrategoModel} and bulids counts of availible 
+	 * blue/red pieces.
+	 * @param updateExecutor runs model updates for messages read from the
+	 * network, e.g. a single thread for a controller without a view
+	 */
+	public StrategoController(Executor updateExecutor)
+	{
+		this(updateExecutor, true);
+	}
+	
+	/**
+	 * Constructor.
+	 * <p> Constructs {@link StrategoModel} and bulids counts of availible 
+	 * blue/red pieces.
+	 * @param updateExecutor runs model updates for messages read from the
+	 * network, e.g. a single thread for a controller without a view
+	 * @param batchUpdates true to run the updates of messages read close
+	 * together in one task on the executor, false for a task per message
+	 */
+	public StrategoController(Executor updateExecutor, boolean batchUpdates)
+	{
+		this.updateExecutor = updateExecutor;
+		this.batchUpdates = batchUpdates;
+		pendingUpdates = new ConcurrentLinkedQueue<Runnable>();
+		drainScheduled = new AtomicBoolean(false);
 		model = new StrategoModel();
 		
 		network = null;
@@ -55,17 +111,15 @@ public class StrategoController
 		blueInitialSetup = new PieceType[4][10];
 		redInitialSetup = new PieceType[4][10];
 		
-		blueAvailible = new HashMap<PieceType, Integer>();
-		redAvailible = new HashMap<PieceType, Integer>();
-		
 		resetAvailible(Piece.BLUE);
 		resetAvailible(Piece.RED);
 		
 		chatListening = new AtomicBoolean(true);
+		gameListening = new AtomicBoolean(false);
 	}
 	
 	/**
-	 * Reset HasMaps of piecees availible for placement to include all 40
+	 * Reset counts of piecees availible for placement to include all 40
 	 * pieces.
 	 * @param color color of piece set reseting
 	 * 
@@ -74,35 +128,9 @@ public class StrategoController
 	private void resetAvailible(int color)
 	{
 		if (color == Piece.BLUE) 
-		{
-			blueAvailible.put(PieceType.MARSHAL, 1);
-			blueAvailible.put(PieceType.GENERAL, 1);
-			blueAvailible.put(PieceType.COLONEL, 2);
-			blueAvailible.put(PieceType.MAJOR, 3);
-			blueAvailible.put(PieceType.CAPTAIN, 4);
-			blueAvailible.put(PieceType.LIEUTENANT, 4);
-			blueAvailible.put(PieceType.SERGEANT, 4);
-			blueAvailible.put(PieceType.MINER, 5);
-			blueAvailible.put(PieceType.SCOUT, 8);
-			blueAvailible.put(PieceType.BOMB, 6);
-			blueAvailible.put(PieceType.SPY, 1);
-			blueAvailible.put(PieceType.FLAG, 1);
-		}
+			blueAvailible = StrategoModel.initialCounts();
 		else if (color == Piece.RED) 
-		{
-			redAvailible.put(PieceType.MARSHAL, 1);
-			redAvailible.put(PieceType.GENERAL, 1);
-			redAvailible.put(PieceType.COLONEL, 2);
-			redAvailible.put(PieceType.MAJOR, 3);
-			redAvailible.put(PieceType.CAPTAIN, 4);
-			redAvailible.put(PieceType.LIEUTENANT, 4);
-			redAvailible.put(PieceType.SERGEANT, 4);
-			redAvailible.put(PieceType.MINER, 5);
-			redAvailible.put(PieceType.SCOUT, 8);
-			redAvailible.put(PieceType.BOMB, 6);
-			redAvailible.put(PieceType.SPY, 1);
-			redAvailible.put(PieceType.FLAG, 1);
-		}
+			redAvailible = StrategoModel.initialCounts();
 	}
 	
 	/**
@@ -118,8 +146,37 @@ public class StrategoController
 	public boolean buildNetwork(boolean isServer, String server, int port)
     {
 		network = new StrategoNetwork(isServer, server, port);
+		gameListening.set(false); // a new connection gets its own receive loop
+    	return network.getStartError();
+    }
+
+	/**
+     * Build a connection to the lobby of a {@link GameServer} as a
+     * {@link StrategoNetwork}, waiting until the server pairs this player
+     * with another of a similar rating.
+     * @param server the server to connect to
+     * @param port the port to connect to
+     * @param name the player name ratings are kept under
+     * @return start error
+     */
+	public boolean buildNetwork(String server, int port, String name)
+    {
+		network = new StrategoNetwork(server, port, name);
+		gameListening.set(false); // a new connection gets its own receive loop
     	return network.getStartError();
     }
+
+	/**
+     * Gets the color this player was given when the network connected. A
+     * peer server is always red and its client blue, while a
+     * {@link GameServer} may give a client either color.
+     * @return {@link Piece#RED} or {@link Piece#BLUE}, {@link Piece#NONE}
+     * with no network
+     */
+	public int getNetworkColor()
+    {
+    	return (network == null) ? Piece.NONE : network.getColor();
+    }
 	
 	/**
      * Gets the error message associated with starting up the game network.
@@ -164,18 +221,19 @@ public class StrategoController
     	chatListening.set(true);
     	System.out.println("initiating chat");
     	System.out.println("chatListening: " + chatListening.get());
-		Thread chatRecvThread = new Thread(() -> 
+		final StrategoNetwork connection = network;
+		LISTENERS.execute(() -> 
     	{
     		while(chatListening.get())
     		{
     			System.out.println("initiate chat while loop");
-        		ChatMessage chatMessage = network.readChatMessage();
+        		ChatMessage chatMessage = connection.readChatMessage();
         		if (chatMessage == null) { return; }
         		System.out.println("chat message recieved");
         		final String chatText = chatMessage.getMessage();
         		final int color = chatMessage.getColor();
         		
-        		Platform.runLater(() -> 
+        		dispatch(() -> 
         		{
         			// appending to chatDisplay pushed until later in the main thread
         			String colorString = (color == 1) ? "BLUE" : "RED ";
@@ -186,7 +244,6 @@ public class StrategoController
     		}
 
     	});
-		chatRecvThread.start();
     }
     
     /**
@@ -203,137 +260,166 @@ public class StrategoController
     }
     
     /**
-     * Prepares client to recieve other Player's first message (board setup),
-     * then passes off responsibility to the 
-     * {@link StrategoController#setBoard(int)} method.
+     * Sends a null {@link SinglePositionMessage} to the opponent to trigger
+     * a user requested game over on their end.
      * 
      * @author Caroline O'Neill
      */
-    public void initiateSetupListening()
+    public void writeGameOverMsg()
+    {
+    	System.out.println("sent game over message");
+    	network.writeMessage(new SinglePositionMessage(-1, -1, null));
+    }
+    
+    /**
+     * Starts the one receive loop of the game connection. It reads the other
+     * player's board setup, or its {@link SavedGameMessage} when resuming
+     * (see {@link #resumeGame}), then every {@link MoveMessage} until a game
+     * over {@link SinglePositionMessage} or the connection closes, and hands
+     * each message to the model on the update executor. Calling it again
+     * while the loop runs does nothing.
+     */
+    public void initiateGameListening()
     {
-    	Thread recvSetupThread = new Thread(() -> 
+    	if (!gameListening.compareAndSet(false, true))
+    		return;
+    	final StrategoNetwork connection = network;
+    	final GameSnapshot saved = resuming;
+    	final Consumer<String> refused = resumeRefused;
+    	resuming = null;
+    	resumeRefused = null;
+    	LISTENERS.execute(() -> 
     	{
-    		Object recvMessage = network.readStartupMessage();
-    		if (recvMessage == null) { return; }
-    		
-    		// recieved a null message to for user requested game over
-    		if (recvMessage instanceof SinglePositionMessage)
+    		Object recvMessage = connection.readStartupMessage();
+    		if (saved != null)
     		{
-    			SinglePositionMessage msg = (SinglePositionMessage) recvMessage;
-        		final int row1 = msg.getRow();
-        		final int col1 = msg.getCol();
-    			// game over message from other user
-            	if (row1 == -1 && col1 == -1)
-            	{
-            		System.out.println("recieved game over message 1");
-            		Platform.runLater(() -> 
-            		{
-            			System.out.println("recieved game over message 2");
-            			model.setPosition(row1, col1, null);
-            		});
-            		return;
-            	}
-    		} 
-    		// recieved a BoardSetupMessage
-    		else if (recvMessage instanceof BoardSetupMessage)
+    			// both players restored the same position, or neither goes on
+    			String reason = null;
+    			if (recvMessage instanceof SavedGameMessage)
+    			{
+    				if (((SavedGameMessage) recvMessage).getHash() != restoredHash(saved))
+    					reason = "the other player saved a different position.";
+    			}
+    			else if (recvMessage == null)
+    				reason = "the connection closed.";
+    			else
+    				reason = "the other player did not resume it.";
+    			if (reason != null)
+    			{
+    				connection.closeConnection();
+    				final String why = reason;
+    				dispatch(() -> refused.accept(why));
+    				return;
+    			}
+    			dispatch(() -> model.restore(saved));
+    			recvMessage = connection.readMessage();
+    		}
+    		else if (recvMessage instanceof SavedGameMessage)
+    		{
+    			// the other player resumes a saved game this player did not
+    			connection.closeConnection();
+    			dispatch(() -> model.setPosition(-1, -1, null));
+    			return;
+    		}
+    		
+    		if (recvMessage instanceof BoardSetupMessage)
     		{
     			BoardSetupMessage msg = (BoardSetupMessage) recvMessage;
     			PieceType[][] otherInitialSetup =  msg.getInitialSetup();
             	int color = msg.getColor();
             	
+            	// copied as sent: a refereed game sends only PieceType.UNKNOWN
+            	PieceType[][] initialSetup = (color == Piece.BLUE) ? blueInitialSetup : redInitialSetup;
             	for (int row = 0; row < 4; row++)
-        			for (int col = 0; col < 10; col++)
-        				addToSetup(row, col, otherInitialSetup[row][col], color);
+            		System.arraycopy(otherInitialSetup[row], 0, initialSetup[row], 0, 10);
             	
-        		Platform.runLater(() -> 
-        		{
-        			// model/view update pushed until later in the main thread
-                	setOtherPlayerBoard(color);
-        		});
+        		// model/view update pushed until later in the main thread
+            	dispatch(() -> setOtherPlayerBoard(color));
+            	recvMessage = connection.readMessage();
     		}
     		
+    		while (recvMessage instanceof MoveMessage)
+    		{
+    			final MoveMessage move = (MoveMessage) recvMessage;
+    			if (isOwnMove(move))
+    			{
+    				dispatch(() -> 
+    				{
+    					moveInFlight = false;
+    					model.playMove(move);
+    				});
+    			}
+    			else
+    				dispatch(() -> model.playMove(move));
+    			recvMessage = connection.readMessage();
+    		}
     		
+    		// game over message from other user, or a closed connection
+    		if (recvMessage instanceof SinglePositionMessage)
+    		{
+    			SinglePositionMessage msg = (SinglePositionMessage) recvMessage;
+    			final int row1 = msg.getRow();
+    			final int col1 = msg.getCol();
+    			final Piece piece1 = msg.getPiece();
+    			System.out.println("recieved game over message");
+    			dispatch(() -> model.setPosition(row1, col1, piece1));
+    		}
     	});
-    	recvSetupThread.start();
     }
     
     /**
-     * Sends a null {@link SinglePositionMessage} to the opponent to trigger
-     * a user requested game over on their end.
-     * 
-     * @author Caroline O'Neill
+     * Queues a model update for a message read from the network. With
+     * batching, updates read while earlier ones wait for the update executor
+     * join them, so a burst of messages costs one
+     * {@link Platform#runLater(Runnable)}.
+     * @param update model update
      */
-    public void writeGameOverMsg()
+    private void dispatch(Runnable update)
     {
-    	System.out.println("sent game over message");
-    	network.writeMessage(new SinglePositionMessage(-1, -1, null));
+    	if (!batchUpdates)
+    	{
+    		updateExecutor.execute(update);
+    		return;
+    	}
+    	pendingUpdates.add(update);
+    	if (drainScheduled.compareAndSet(false, true))
+    		updateExecutor.execute(this::drainUpdates);
     }
     
     /**
-     * Sets up {@link StrategoController} to listen for three incoming 
-     * {@link SinglePositionMessage}.
-     * 
-     * @author Caroline O'Neill
+     * Runs every queued model update, in the order the messages were read.
      */
-    public void initiateTurnListening()
+    private void drainUpdates()
     {
-    	Thread recvSetupThread = new Thread(() -> 
-    	{
-    		SinglePositionMessage recvMsg1 = network.readMessage();
-    		if (recvMsg1 == null) { return; }
-    		final int row1 = recvMsg1.getRow();
-    		final int col1 = recvMsg1.getCol();
-    		final Piece piece1 = recvMsg1.getPiece();
-    		final Piece rp1 = recvMsg1.getPieceToRemovePlace();
-        	final boolean removing1 = recvMsg1.isRemoved();
-        	
-        	// game over message from other user
-        	if (row1 == -1 && col1 == -1)
-        	{
-        		System.out.println("recieved game over message 1");
-        		Platform.runLater(() -> 
-        		{
-        			System.out.println("recieved game over message 2");
-        			model.setPosition(row1, col1, piece1);
-        		});
-        		return;
-        	}
-    		        	
-    		SinglePositionMessage recvMsg2 = network.readMessage();
-    		if (recvMsg2 == null) { return; }
-    		final int row2 = recvMsg2.getRow();
-    		final int col2 = recvMsg2.getCol();
-    		final Piece piece2 = recvMsg2.getPiece();
-    		final Piece rp2 = recvMsg2.getPieceToRemovePlace();
-        	final boolean removing2 = recvMsg2.isRemoved();
-        	
-    		SinglePositionMessage recvMsg3 = network.readMessage();
-    		if (recvMsg3 == null) { return; }
-    		final int row3 = recvMsg3.getRow();
-    		final int col3 = recvMsg3.getCol();
-    		final Piece piece3 = recvMsg3.getPiece();
-    		final Piece rp3 = recvMsg3.getPieceToRemovePlace();
-        	final boolean removing3 = recvMsg3.isRemoved();
-    		
-    		Platform.runLater(() -> 
-    		{
-    			// model/view update pushed until later in the main thread
-    			removeAddPiece(rp1, removing1);
-            	model.setPosition(row1, col1, piece1);
-            	removeAddPiece(rp2, removing2);
-            	model.setPosition(row2, col2, piece2);
-            	removeAddPiece(rp3, removing3);
-            	model.setPosition(row3, col3, piece3);
-    		});
-    	});
-    	recvSetupThread.start();
+    	// cleared first, so an update queued while draining is never stranded
+    	drainScheduled.set(false);
+    	Runnable update;
+    	while ((update = pendingUpdates.poll()) != null)
+    		update.run();
     }
+    
+	/**
+	 * Indicates if a move read from the network was made by this player,
+	 * which happens only in a refereed game.
+	 * @param move move read
+	 * @return true if the moving piece is this player's
+	 */
+	private boolean isOwnMove(MoveMessage move)
+	{
+		return move.getAttacker() != null && move.getAttacker().color() == network.getColor();
+	}
 	
 	/**
 	 * Moves a piece from current position to a new specified position. Piece is
 	 * only moved if the move follows in-game logic. If an opponent piece
 	 * occupies the destination, the source piece "attacks" the destination
-	 * piece.
+	 * piece. The move is sent to the other player as one {@link MoveMessage}
+	 * and played on the model with {@link StrategoModel#playMove}.
+	 * </p> In a refereed game ({@link StrategoNetwork#isRefereed()}) the
+	 * opponent's pieces are not known here, so the move is only sent; the
+	 * model plays it when the server sends it back resolved (see
+	 * {@link #initiateGameListening()}), and no other move is accepted until
+	 * then.
 	 * @param srcRow source row location
 	 * @param srcCol source column location
 	 * @param dstRow destination row location
@@ -351,51 +437,25 @@ public class StrategoController
 		Piece dstPiece = model.getPosition(dstRow, dstCol);
 		int winner = Piece.whoWins(srcPiece, dstPiece);
 		
-		if (!Piece.isMoveValid(srcRow, srcCol, dstRow, dstCol, srcPiece.type) || winner == -1)
+		// covers Piece.isMoveValid, same color targets and scouts jumping pieces/lakes
+		if (winner == -1 || !MoveGenerator.isLegal(model, StrategoModel.squareIndex(srcRow, srcCol),
+				StrategoModel.squareIndex(dstRow, dstCol)))
 			return false;
 			
-		// does move skip over any other pieces/lakes (only applicable to scout)
-		if (srcPiece.type == PieceType.SCOUT && doesMoveJump(srcRow, srcCol, dstRow, dstCol))
-			return false;
-			
-		// move is valid (srcPiece is not empty or a lake)
-		// 3 total messages sent locally to update
-		model.removePosition(srcRow, srcCol); // 1st locally
-		model.setPosition(dstRow, dstCol, srcPiece); // 2nd locally
-		
-		// 3 total messages sent over network to update
-		network.writeMessage(new SinglePositionMessage(srcRow, srcCol, new Piece(PieceType.EMPTY), srcPiece, true)); // 1st over network
-		network.writeMessage(new SinglePositionMessage(dstRow, dstCol, srcPiece, dstPiece, true)); // 2nd over network
-		
-		if (winner == 0) // both removed
-		{
-			model.removePiece(srcPiece);
-			model.removePiece(dstPiece);
-			model.removePosition(dstRow, dstCol); // 3rd locally
-			
-			network.writeMessage(new SinglePositionMessage(dstRow, dstCol, new Piece(PieceType.EMPTY), dstPiece, true)); // 3rd over network
-		}
-		else if (winner == 1) // attacker remains, defender removed
-		{
-			model.removePiece(dstPiece);
-			model.setPosition(dstRow, dstCol, srcPiece); // unnecessary, but need consistent number of messages sent // 3rd locally
-			
-			network.writeMessage(new SinglePositionMessage(dstRow, dstCol, srcPiece, srcPiece, false)); // 3rd over network
-		}
-		else if (winner == 2) // defender remains, attacker removed
-		{
-			model.removePiece(srcPiece);
-			model.setPosition(dstRow, dstCol, dstPiece); // 3rd locally
-			
-			network.writeMessage(new SinglePositionMessage(dstRow, dstCol, dstPiece, dstPiece, false)); // 3rd over network
-		}
-		else // winner == -1
+		// move is valid (srcPiece is not empty or a lake), one message to
+		// the other player and one batched update of the model
+		MoveMessage move = new MoveMessage(StrategoModel.squareIndex(srcRow, srcCol),
+				StrategoModel.squareIndex(dstRow, dstCol), srcPiece, dstPiece, winner);
+		if (network.isRefereed())
 		{
-			// unnecessary, but need consistent number of messages sent
-			model.setPosition(srcRow, srcCol, srcPiece); // 3rd locally
-			network.writeMessage(new SinglePositionMessage(srcRow, srcCol, srcPiece)); // 3rd over network
+			if (moveInFlight)
+				return false;
+			moveInFlight = true;
+			network.writeMessage(move);
+			return true;
 		}
-		initiateTurnListening();
+		network.writeMessage(move);
+		model.playMove(move);
 		return true;
 	}
 	
@@ -428,46 +488,6 @@ public class StrategoController
 		}
 	}	
 	
-	/**
-	 * Determines if a given moves jumps other pieces or lakes. Assumes
-	 * movement is entirely vertical or entirely horizontal.
-	 * @param srcRow source row location
-	 * @param srcCol source column location
-	 * @param dstRow destination row location
-	 * @param dstCol destination column location
-	 * @return true if move includes a jump, false otherwise
-	 * 
-	 * @author Caroline O'Neill
-	 */
-	private boolean doesMoveJump(int srcRow, int srcCol, int dstRow, int dstCol)
-	{
-		// moves horizontally
-		if (srcRow == dstRow)
-		{
-			int diff = Math.abs(srcCol - dstCol);
-			int start = Integer.min(srcCol, dstCol);
-						
-			for (int c = start + 1; c < start + diff; c++)
-			{
-				if (model.getPosition(dstRow, c).type != PieceType.EMPTY)
-					return true;	
-			}
-		}
-		// moves vertically
-		else // srcCol == col
-		{
-			int diff = Math.abs(srcRow - dstRow);
-			int start = Integer.min(srcRow, dstRow);
-						
-			for (int r = start + 1; r < start + diff; r++)
-			{
-				if (model.getPosition(r, dstCol).type != PieceType.EMPTY)
-					return true;	
-			}
-		}
-		return false;
-	}
-	
 	/**
 	 * Gets the {@link Piece} at the indicated position
 	 * @param row row of position
@@ -481,6 +501,18 @@ public class StrategoController
 		return model.getPosition(row, col);
 	}
 	
+	/**
+	 * Writes every legal move for a color in the current position into the
+	 * buffer. See {@link MoveGenerator}.
+	 * @param color color to generate moves for
+	 * @param moves buffer of at least {@link MoveGenerator#MAX_MOVES} entries
+	 * @return number of moves written
+	 */
+	public int legalMoves(int color, int[] moves)
+	{
+		return MoveGenerator.generate(model, color, moves);
+	}
+	
 	/**
 	 * Adds Piece to initial setup for that color at the indicated position.
 	 * @param row row placement in setup
@@ -495,7 +527,7 @@ public class StrategoController
 	public boolean addToSetup(int row, int col, PieceType pieceType, int color)
 	{
 		PieceType[][] initialSetup;
-		HashMap<PieceType, Integer> availible;
+		int[] availible;
 		if (color == Piece.BLUE)
 		{
 			initialSetup = blueInitialSetup;
@@ -513,20 +545,14 @@ public class StrategoController
 		PieceType currPlaced = initialSetup[row][col];
 		
 		// any of pieceType availible?
-		if (availible.get(pieceType) < 1)
+		if (availible[pieceType.ordinal()] < 1)
 			return false;
 		
-		if (currPlaced == null) // new placement
-		{
-			availible.put(pieceType, availible.get(pieceType) - 1);	
-			initialSetup[row][col] = pieceType;
-		}
-		else // replacing a piece placement
-		{
-			availible.put(initialSetup[row][col], availible.get(pieceType) + 1);
-			availible.put(pieceType, availible.get(pieceType) - 1);
-			initialSetup[row][col] = pieceType;
-		}
+		if (currPlaced != null) // replacing a piece placement
+			availible[currPlaced.ordinal()]++;
+		
+		availible[pieceType.ordinal()]--;
+		initialSetup[row][col] = pieceType;
 		return true;
 	}
 	
@@ -538,12 +564,7 @@ public class StrategoController
 	 */
 	public void setBoard(int color)
 	{
-		PieceType[][] initialSetup = null;
-		fillRemaining(color);
-		if (color == Piece.BLUE)
-			initialSetup = blueInitialSetup;
-		else if (color == Piece.RED)
-			initialSetup = redInitialSetup;
+		PieceType[][] initialSetup = completeSetup(color);
 		
 		model.setBoard(initialSetup, color, true);
 		
@@ -551,6 +572,60 @@ public class StrategoController
 		network.writeStartupMessage(setupMessage);
 	}
 	
+	/**
+	 * Fills the empty slots of a color's initial setup (see
+	 * {@link #fillRemaining(int)}) without touching the model or network.
+	 * @param color color to setup
+	 * @return the completed setup grid
+	 */
+	public PieceType[][] completeSetup(int color)
+	{
+		fillRemaining(color);
+		return (color == Piece.BLUE) ? blueInitialSetup : redInitialSetup;
+	}
+	
+	/**
+	 * Places the flag on a random square of a color's back row and shuffles
+	 * the rest of the pieces still availible over the empty slots of its
+	 * initial setup.
+	 * @param color color to setup
+	 * @param random source of randomness
+	 */
+	public void randomSetup(int color, SplittableRandom random)
+	{
+		PieceType[][] initialSetup = (color == Piece.BLUE) ? blueInitialSetup : redInitialSetup;
+		
+		// setup row 0 is blue's back row, row 3 is red's (see StrategoModel#setBoard)
+		int backRow = (color == Piece.BLUE) ? 0 : 3;
+		if (checkAvailable(PieceType.FLAG, color) > 0)
+		{
+			int flagCol = random.nextInt(10);
+			if (initialSetup[backRow][flagCol] == null)
+				addToSetup(backRow, flagCol, PieceType.FLAG, color);
+		}
+		
+		PieceType[] pieces = new PieceType[40];
+		int count = 0;
+		for (PieceType type : PieceType.values())
+			for (int i = checkAvailable(type, color); i > 0; i--)
+				pieces[count++] = type;
+		
+		// Fisher-Yates shuffle
+		for (int i = count - 1; i > 0; i--)
+		{
+			int j = random.nextInt(i + 1);
+			PieceType swap = pieces[i];
+			pieces[i] = pieces[j];
+			pieces[j] = swap;
+		}
+		
+		int next = 0;
+		for (int row = 0; row < 4; row++)
+			for (int col = 0; col < 10; col++)
+				if (initialSetup[row][col] == null && next < count)
+					addToSetup(row, col, pieces[next++], color);
+	}
+	
 	/**
 	 * Takes an initial setup grid and fills in the board. Does not notify
 	 * observers.
@@ -579,7 +654,7 @@ public class StrategoController
 	private void fillRemaining(int color)
 	{
 		PieceType[][] initialSetup;
-		HashMap<PieceType, Integer> availible;
+		int[] availible;
 		if (color == Piece.BLUE)
 		{
 			initialSetup = blueInitialSetup;
@@ -592,15 +667,7 @@ public class StrategoController
 			availible = redAvailible;
 		}
 		
-		Iterator<Map.Entry<PieceType, Integer>> it = availible.entrySet().iterator();
-		
-		Map.Entry<PieceType, Integer> entry = null;
-		
-		if (it.hasNext())
-			entry = it.next();
-		else
-			return;
-		
+		int type = 0;
 		for (int r = 0; r < 4; r++)
 		{
 			for (int c = 0; c < 10; c++)
@@ -609,16 +676,13 @@ public class StrategoController
 				if (initialSetup[r][c] == null)
 				{
 					// max. number of piece type has already been placed
-					while (entry.getValue() < 1)
-					{
-						it.remove();
-						if (it.hasNext())
-							entry = it.next();
-						else
-							return;
-					}
-					initialSetup[r][c] = entry.getKey();
-					availible.put(entry.getKey(), entry.getValue() - 1);
+					while (type < availible.length && availible[type] < 1)
+						type++;
+					if (type == availible.length)
+						break;
+					
+					initialSetup[r][c] = PieceType.values()[type];
+					availible[type]--;
 				}
 			}
 		}
@@ -627,60 +691,48 @@ public class StrategoController
 	}
 	
 	/**
-	 * Gets the current game winner. In the case of no winner yet, 
-	 * {@value Piece#NONE} is returned.
-	 * @return {@value Piece#NONE} if no winner yet, {@value Piece#BLUE} if
-	 * blue/client wins, {@value Piece#RED} if red/server wins.
-	 * 
-	 * @author Caroline O'Neill
+	 * Resumes a saved game in play with the other player, who resumes it
+	 * too. The hash of the saved position is sent now; once the receive
+	 * loop reads a matching one from the other player, the model takes the
+	 * snapshot's position and notifies observers once, see
+	 * {@link StrategoModel#restore}. Call before
+	 * {@link #initiateGameListening()}.
+	 * @param snapshot saved game
+	 * @param refused given the reason, on the update executor, if the other
+	 * player resumed another position or did not resume; the connection
+	 * is closed by then
 	 */
-	public int winner()
+	public void resumeGame(GameSnapshot snapshot, Consumer<String> refused)
 	{
-		System.out.println("red: " + model.getRedPieces());
-		System.out.println("blue: " + model.getBluePieces());
-		if (model.getBluePieces().get(PieceType.FLAG) < 1)
-			return Piece.RED;
-		
-		else if (model.getRedPieces().get(PieceType.FLAG) < 1)
-			return Piece.BLUE;
-		
-		else if (!stillMoveablePieces(Piece.BLUE))
-			return Piece.RED;
-		
-		else if (!stillMoveablePieces(Piece.RED))
-			return Piece.BLUE;
-		
-		else
-			return Piece.NONE;
+		resuming = snapshot;
+		resumeRefused = refused;
+		network.writeMessage(new SavedGameMessage(restoredHash(snapshot)));
 	}
 	
 	/**
-	 * Iterates through the pieces on the board and indicates if there are still
-	 * at least one moveable piece in the color passed. Game is over when either
-	 * flag is captured or either team loses all its moveable pieces.
-	 * @param color color of pieces to check
-	 * @return true if there are still moveable pieces, false otherwise
+	 * Gets the hash of a saved game's position as a model restores it.
+	 * @param snapshot saved game
+	 * @return position hash, see {@link StrategoModel#getHash()}
+	 */
+	private static long restoredHash(GameSnapshot snapshot)
+	{
+		StrategoModel restored = new StrategoModel();
+		restored.restore(snapshot);
+		return restored.getHash();
+	}
+
+	/**
+	 * Gets the current game winner. In the case of no winner yet, 
+	 * {@value Piece#NONE} is returned. A {@link GameServer} rates its
+	 * players by the same rule, {@link StrategoModel#winner()}.
+	 * @return {@value Piece#NONE} if no winner yet, {@value Piece#BLUE} if
+	 * blue/client wins, {@value Piece#RED} if red/server wins.
 	 * 
 	 * @author Caroline O'Neill
 	 */
-	private boolean stillMoveablePieces(int color)
+	public int winner()
 	{
-		HashMap<PieceType, Integer> pieces = null;
-		if (color == Piece.BLUE)
-			pieces = model.getBluePieces();
-		else if (color == Piece.RED)
-			pieces = model.getRedPieces();
-		else
-			return false;
-		
-		Iterator<Entry<PieceType, Integer>> it = pieces.entrySet().iterator();
-		while(it.hasNext()) 
-		{
-			Entry<PieceType, Integer> entry = it.next();
-			if (entry.getKey().isMoveable() && entry.getValue() > 0)
-				return true;
-		}
-		return false;
+		return model.winner();
 	}
 	
 	/**
@@ -699,25 +751,50 @@ public class StrategoController
 	public int checkAvailable(PieceType pt, Color color) {
         int count = 0;
         if(color == Color.BLUE) {
-            count = blueAvailible.get(pt);
+            count = blueAvailible[pt.ordinal()];
         }else if (color == Color.RED) {
-            count = redAvailible.get(pt);
+            count = redAvailible[pt.ordinal()];
         }
         return count;
     }
+	/**
+	 * Gets the number of pieces of a type still availible to place during
+	 * setup.
+	 * @param pieceType piece type to query
+	 * @param color {@value Piece#BLUE} or {@value Piece#RED}
+	 * @return count of pieces left to place
+	 */
+	public int checkAvailable(PieceType pieceType, int color)
+	{
+		if (pieceType == null || (color != Piece.BLUE && color != Piece.RED))
+			return 0;
+		int[] availible = (color == Piece.BLUE) ? blueAvailible : redAvailible;
+		return availible[pieceType.ordinal()];
+	}
+	
     /**
      * <ul><b><i>setModelObserver</i></b></ul>
-     * <ul><ul><p><code>public void setModelObserver (StrategoView view) </code></p></ul>
+     * <ul><ul><p><code>public void setModelObserver (Observer view) </code></p></ul>
      *
-     * Adds a {@link StrategoView} as an observer of the {@link StrategoModel}.
+     * Adds an observer, such as the {@link StrategoView} or a
+     * {@link ComputerOpponent}, to the {@link StrategoModel}.
      *
-     * @param view - the <code>StrategoView</code> to observer the <code>StrategoModel</code>
+     * @param view - the <code>Observer</code> to observer the <code>StrategoModel</code>
      * 
      * @author Kristopher Rangel
      */
-    public void setModelObserver(StrategoView view) 
+    public void setModelObserver(Observer view) 
     {
         model.addObserver(view);
     }
+    
+	/**
+	 * Gets the model, for players that search the current position.
+	 * @return model
+	 */
+	StrategoModel getModel()
+	{
+		return model;
+	}
 	
 }
@@ -11,6 +11,15 @@ import stratego.Piece.PieceType;
  * </p> Notes:
  * 		-top/blue is the client
  * 		-top/red is the server
+ * 		-the board is stored as one {@link PieceCode} byte per square, indexed
+ * 			row * {@link #COLUMNS} + col. {@link #getPosition(int, int)} and
+ * 			{@link #setPosition(int, int, Piece)} translate to and from
+ * 			{@link Piece} for existing callers.
+ * 		-{@link #makeMove(int)} and {@link #unmakeMove()} apply and take back
+ * 			moves without notifying observers, for search and analysis.
+ * 		-{@link #getHash()} is a 64-bit Zobrist hash of the square codes
+ * 			(including whether each piece is revealed) and the side to move,
+ * 			updated on every square write.
  * 
  * @author Caroline O'Neill
  *
@@ -19,60 +28,167 @@ public class StrategoModel extends Observable
 {
 	public static final int COLUMNS = 10;
 	public static final int ROWS = 10;
+	public static final int SQUARES = ROWS * COLUMNS;
 	
-	private Piece[][] grid; // grid[row][col]
-	private HashMap<PieceType, Integer> bluePieces; // piece : count 
-	private HashMap<PieceType, Integer> redPieces; // piece :  count
+	// bit i set if square i is a lake (all lake squares have index < 64)
+	public static final long LAKE_MASK = 1L << 42 | 1L << 43 | 1L << 46 | 1L << 47
+			| 1L << 52 | 1L << 53 | 1L << 56 | 1L << 57;
+	
+	// Zobrist keys, ZOBRIST[square * PieceCode.CODES + code], fixed seed so
+	// hashes are stable between runs (empty squares hash to 0)
+	private static final long[] ZOBRIST = new long[SQUARES * PieceCode.CODES];
+	private static final long ZOBRIST_BLUE_TO_MOVE;
+	static
+	{
+		long seed = 0x537472617465A6FL;
+		for (int i = 0; i < ZOBRIST.length; i++)
+		{
+			seed += 0x9E3779B97F4A7C15L;
+			if (i % PieceCode.CODES != PieceCode.EMPTY)
+				ZOBRIST[i] = mix(seed);
+		}
+		ZOBRIST_BLUE_TO_MOVE = mix(seed + 0x9E3779B97F4A7C15L);
+	}
+	
+	// pieces in each army at the start of a game, indexed by PieceType ordinal
+	private static final int TYPES = PieceType.values().length;
+	private static final int COLORS = Piece.RED + 1;
+	private static final int[] INITIAL_COUNTS = new int[TYPES];
+	private static final int INITIAL_MOVABLE;
+	static
+	{
+		INITIAL_COUNTS[PieceType.MARSHAL.ordinal()] = 1;
+		INITIAL_COUNTS[PieceType.GENERAL.ordinal()] = 1;
+		INITIAL_COUNTS[PieceType.COLONEL.ordinal()] = 2;
+		INITIAL_COUNTS[PieceType.MAJOR.ordinal()] = 3;
+		INITIAL_COUNTS[PieceType.CAPTAIN.ordinal()] = 4;
+		INITIAL_COUNTS[PieceType.LIEUTENANT.ordinal()] = 4;
+		INITIAL_COUNTS[PieceType.SERGEANT.ordinal()] = 4;
+		INITIAL_COUNTS[PieceType.MINER.ordinal()] = 5;
+		INITIAL_COUNTS[PieceType.SCOUT.ordinal()] = 8;
+		INITIAL_COUNTS[PieceType.BOMB.ordinal()] = 6;
+		INITIAL_COUNTS[PieceType.SPY.ordinal()] = 1;
+		INITIAL_COUNTS[PieceType.FLAG.ordinal()] = 1;
+		
+		int movable = 0;
+		for (PieceType type : PieceType.values())
+		{
+			if (type.isMoveable())
+				movable += INITIAL_COUNTS[type.ordinal()];
+		}
+		INITIAL_MOVABLE = movable;
+	}
+	
+	private final byte[] board; // board[row * COLUMNS + col]
+	private long hash;
+	// pieces still on the board, indexed by color then PieceType ordinal
+	private final int[][] pieceCounts;
+	private final int[] movableCounts; // indexed by color
+	
+	private int sideToMove; // Piece.RED or Piece.BLUE
+	
+	// undo stack for makeMove/unmakeMove, one packed record per move:
+	// bits 0-7 from, 8-15 to, 16-23 from code, 24-31 to code,
+	// 32-33 battle result, 34-35 side to move before the move
+	private static final int INITIAL_UNDO_CAPACITY = 256;
+	private long[] undoStack;
+	private long[] hashHistory; // hash before each recorded move
+	private int undoSize;
 	
 	/**
 	 * StrategoModel constructor. Sets an empty board and initializes the
-	 * maps of all pieces on the board.
+	 * counts of all pieces on the board.
 	 * @author Caroline O'Neill
 	 */
 	public StrategoModel()
 	{
-		grid = new Piece[ROWS][COLUMNS];
+		board = new byte[SQUARES]; // all PieceCode.EMPTY
 	
-		for (int r = 0; r < ROWS; r++)
+		for (int i = 0; i < SQUARES; i++)
 		{
-			for (int c = 0; c < COLUMNS; c++)
-			{
-				if ((r == 4 || r == 5) && (c == 2 || c == 3 || c == 6 || c == 7))
-					grid[r][c] = new Piece(PieceType.LAKE);
-				else
-					grid[r][c] = new Piece(PieceType.EMPTY);
-			}
+			if (isLake(i))
+				put(i, PieceCode.LAKE);
 		}
 		
-		bluePieces = new HashMap<PieceType, Integer>();
-		bluePieces.put(PieceType.MARSHAL, 1);
-		bluePieces.put(PieceType.GENERAL, 1);
-		bluePieces.put(PieceType.COLONEL, 2);
-		bluePieces.put(PieceType.MAJOR, 3);
-		bluePieces.put(PieceType.CAPTAIN, 4);
-		bluePieces.put(PieceType.LIEUTENANT, 4);
-		bluePieces.put(PieceType.SERGEANT, 4);
-		bluePieces.put(PieceType.MINER, 5);
-		bluePieces.put(PieceType.SCOUT, 8);
-		bluePieces.put(PieceType.BOMB, 6);
-		bluePieces.put(PieceType.SPY, 1);
-		bluePieces.put(PieceType.FLAG, 1);
-		
-		redPieces = new HashMap<PieceType, Integer>();
-		redPieces.put(PieceType.MARSHAL, 1);
-		redPieces.put(PieceType.GENERAL, 1);
-		redPieces.put(PieceType.COLONEL, 2);
-		redPieces.put(PieceType.MAJOR, 3);
-		redPieces.put(PieceType.CAPTAIN, 4);
-		redPieces.put(PieceType.LIEUTENANT, 4);
-		redPieces.put(PieceType.SERGEANT, 4);
-		redPieces.put(PieceType.MINER, 5);
-		redPieces.put(PieceType.SCOUT, 8);
-		redPieces.put(PieceType.BOMB, 6);
-		redPieces.put(PieceType.SPY, 1);
-		redPieces.put(PieceType.FLAG, 1);
+		pieceCounts = new int[COLORS][];
+		pieceCounts[Piece.BLUE] = INITIAL_COUNTS.clone();
+		pieceCounts[Piece.RED] = INITIAL_COUNTS.clone();
+		movableCounts = new int[COLORS];
+		movableCounts[Piece.BLUE] = INITIAL_MOVABLE;
+		movableCounts[Piece.RED] = INITIAL_MOVABLE;
+		
+		sideToMove = Piece.RED; // server moves first
+		undoStack = new long[INITIAL_UNDO_CAPACITY];
+		hashHistory = new long[INITIAL_UNDO_CAPACITY];
+		undoSize = 0;
+	}
+	
+	/**
+	 * Copy constructor. Copies the board, piece counts, side to move and hash
+	 * of another model, but not its observers or undo stack, so search
+	 * threads can each work on their own copy.
+	 * @param other model to copy
+	 */
+	public StrategoModel(StrategoModel other)
+	{
+		board = other.board.clone();
+		hash = other.hash;
+		pieceCounts = new int[COLORS][];
+		pieceCounts[Piece.BLUE] = other.pieceCounts[Piece.BLUE].clone();
+		pieceCounts[Piece.RED] = other.pieceCounts[Piece.RED].clone();
+		movableCounts = other.movableCounts.clone();
+		sideToMove = other.sideToMove;
+		undoStack = new long[INITIAL_UNDO_CAPACITY];
+		hashHistory = new long[INITIAL_UNDO_CAPACITY];
+		undoSize = 0;
 	}
 	
+	/**
+	 * Makes this model a copy of another, the same as the copy constructor
+	 * but reusing this model's arrays. Observers are kept and not notified;
+	 * the undo stack is cleared.
+	 * @param other model to copy
+	 */
+	public void copyFrom(StrategoModel other)
+	{
+		System.arraycopy(other.board, 0, board, 0, SQUARES);
+		hash = other.hash;
+		System.arraycopy(other.pieceCounts[Piece.BLUE], 0, pieceCounts[Piece.BLUE], 0, TYPES);
+		System.arraycopy(other.pieceCounts[Piece.RED], 0, pieceCounts[Piece.RED], 0, TYPES);
+		System.arraycopy(other.movableCounts, 0, movableCounts, 0, COLORS);
+		sideToMove = other.sideToMove;
+		undoSize = 0;
+	}
+
+	/**
+	 * Makes this model the position of a saved game and notifies observers
+	 * once, with the snapshot, so a view redraws the whole board in one
+	 * pass rather than a square at a time. The undo stack is cleared.
+	 * @param snapshot saved game, see {@link GameSnapshot}
+	 */
+	public void restore(GameSnapshot snapshot)
+	{
+		for (int i = 0; i < SQUARES; i++)
+			put(i, snapshot.getSquare(i));
+		for (int color = Piece.BLUE; color <= Piece.RED; color++)
+		{
+			movableCounts[color] = 0;
+			for (PieceType type : PieceType.values())
+			{
+				int count = snapshot.getPieceCount(color, type);
+				pieceCounts[color][type.ordinal()] = count;
+				if (type.isMoveable())
+					movableCounts[color] += count;
+			}
+		}
+		if (!snapshot.isSetup())
+			setSideToMove(snapshot.getSideToMove());
+		undoSize = 0;
+
+		setChanged();
+		notifyObservers(snapshot);
+	}
+
 	/**
 	 * Replaces the position indicated with a {@link Piece#EMPTY} and returns
 	 * the previous {@link Piece}. {@link Piece#LAKE} is returned if the 
@@ -86,66 +202,48 @@ public class StrategoModel extends Observable
 	 */
 	public Piece removePosition(int row, int col)
 	{
-		Piece piece = grid[row][col];
+		int index = squareIndex(row, col);
+		byte code = board[index];
 		
-		if (piece.type != PieceType.LAKE)
+		if (PieceCode.type(code) != PieceType.LAKE)
 		{
-			Piece emptyPiece = new Piece(PieceType.EMPTY); 
-			grid[row][col] = emptyPiece;
+			put(index, PieceCode.EMPTY);
 		
 			// notify observers with SinglePositionMessage
-			SinglePositionMessage message = new SinglePositionMessage(row, col, emptyPiece);
+			SinglePositionMessage message = new SinglePositionMessage(row, col, Piece.of(PieceType.EMPTY, Piece.NONE));
 			setChanged();
 			notifyObservers(message);
 		}
 		
-		return piece;
+		return PieceCode.toPiece(code);
 	}
 	
 	/**
-	 * Removes piece from red or blue pieces map. If the piece color is 
+	 * Removes piece from red or blue piece counts. If the piece color is 
 	 * {@link Piece#NONE}, then no action is taken and it returns false.
 	 * @param piece piece removed
-	 * @return true is blue or red piece is removed from the maps, false
+	 * @return true is blue or red piece is removed from the counts, false
 	 * otherwise
 	 * 
 	 * @author Caroline O'Neill
 	 */
 	public boolean removePiece(Piece piece)
 	{
-		if (piece.color() == Piece.BLUE)
-			bluePieces.put(piece.type, bluePieces.get(piece.type) - 1);
-		
-		else if (piece.color() == Piece.RED)
-			redPieces.put(piece.type, redPieces.get(piece.type) - 1);
-		
-		else
-			return false;
-		
-		return true;
+		return count(piece.color(), piece.type, -1);
 	}
 	
 	/**
-	 * Adds piece to red or blue pieces map. If the piece color is 
+	 * Adds piece to red or blue piece counts. If the piece color is 
 	 * {@link Piece#NONE}, then no action is taken and it returns false.
 	 * @param piece piece added
-	 * @return true is blue or red piece is added to the maps, false
+	 * @return true is blue or red piece is added to the counts, false
 	 * otherwise
 	 * 
 	 * @author Caroline O'Neill
 	 */
 	public boolean addPiece(Piece piece)
 	{
-		if (piece.color() == Piece.BLUE)
-			bluePieces.put(piece.type, bluePieces.get(piece.type) + 1);
-		
-		else if (piece.color() == Piece.RED)
-			redPieces.put(piece.type, redPieces.get(piece.type) + 1);
-		
-		else
-			return false;
-		
-		return true;
+		return count(piece.color(), piece.type, 1);
 	}
 	
 	/**
@@ -160,7 +258,7 @@ public class StrategoModel extends Observable
 	public void setPosition(int row, int col, Piece piece)
 	{
 		if (row >= 0 && col >= 0) // excludes end game message
-			grid[row][col] = piece;
+			put(squareIndex(row, col), PieceCode.encode(piece));
 		
 		// notify observers with SinglePositionMessage
 		SinglePositionMessage message = new SinglePositionMessage(row, col, piece);
@@ -178,7 +276,61 @@ public class StrategoModel extends Observable
 	 */
 	public Piece getPosition(int row, int col)
 	{
-		return grid[row][col];
+		return PieceCode.toPiece(board[squareIndex(row, col)]);
+	}
+	
+	/**
+	 * Gets the {@link PieceCode} of a square without building a {@link Piece}.
+	 * @param index square index, row * {@link #COLUMNS} + col
+	 * @return square code
+	 */
+	public byte getSquare(int index)
+	{
+		return board[index];
+	}
+	
+	/**
+	 * Sets the {@link PieceCode} of a square. Unlike
+	 * {@link #setPosition(int, int, Piece)} observers are not notified and
+	 * the piece counts are not changed.
+	 * @param index square index, row * {@link #COLUMNS} + col
+	 * @param code square code
+	 */
+	public void setSquare(int index, byte code)
+	{
+		put(index, code);
+	}
+	
+	/**
+	 * Gets the {@link PieceCode} at the indicated position.
+	 * @param row row of position
+	 * @param col column of position
+	 * @return square code
+	 */
+	public byte getSquare(int row, int col)
+	{
+		return board[squareIndex(row, col)];
+	}
+	
+	/**
+	 * Converts a row and column into a square index.
+	 * @param row row of position
+	 * @param col column of position
+	 * @return row * {@link #COLUMNS} + col
+	 */
+	public static int squareIndex(int row, int col)
+	{
+		return row * COLUMNS + col;
+	}
+	
+	/**
+	 * Indicates if the square is one of the lakes, using {@link #LAKE_MASK}.
+	 * @param index square index
+	 * @return true if a lake, false otherwise
+	 */
+	public static boolean isLake(int index)
+	{
+		return index < 64 && (LAKE_MASK >>> index & 1L) != 0;
 	}
 	
 	/**
@@ -201,11 +353,7 @@ public class StrategoModel extends Observable
 		for (int row = startRow; row < startRow + 4; row++)
 		{
 			for (int col = 0; col < 10; col++)
-			{
-				Piece newPiece = new Piece(setupGrid[row - startRow][col]);
-				newPiece.setColor(color);
-				grid[row][col] = newPiece;
-			}
+				put(squareIndex(row, col), PieceCode.encode(setupGrid[row - startRow][col], color));
 		}
 		if (notify)
 		{
@@ -217,25 +365,385 @@ public class StrategoModel extends Observable
 	}
 
 	/**
-	 * Gets the HashMap of red pieces still on the board.
+	 * Gets a HashMap of red pieces still on the board.
+	 * </p> Notes:
+	 * 		-the map is a new copy of the counts, so changing it does not
+	 * 			change the model
+	 * 		-prefer {@link #getPieceCount(int, PieceType)} where allocation
+	 * 			matters
 	 * @return red pieces
 	 * 
 	 * @author Caroline O'Neill
 	 */
 	public HashMap<PieceType, Integer> getRedPieces()
 	{
-		return redPieces;
+		return countMap(Piece.RED);
 	}
 	
 	/**
-	 * Gets the HashMap of blue pieces still on the board.
+	 * Gets a HashMap of blue pieces still on the board. The map is a new
+	 * copy of the counts, see {@link #getRedPieces()}.
 	 * @return blue pieces
 	 * 
 	 * @author Caroline O'Neill
 	 */
 	public HashMap<PieceType, Integer> getBluePieces()
 	{
-		return bluePieces;
+		return countMap(Piece.BLUE);
+	}
+	
+	/**
+	 * Gets the number of pieces of each type in an army at the start of a
+	 * game.
+	 * @return new array of counts indexed by PieceType ordinal
+	 */
+	static int[] initialCounts()
+	{
+		return INITIAL_COUNTS.clone();
+	}
+	
+	/**
+	 * Gets the number of pieces of a type and color still on the board.
+	 * @param color {@link Piece#BLUE} or {@link Piece#RED}
+	 * @param type piece type
+	 * @return count, 0 for any other color
+	 */
+	public int getPieceCount(int color, PieceType type)
+	{
+		if (color != Piece.BLUE && color != Piece.RED)
+			return 0;
+		return pieceCounts[color][type.ordinal()];
+	}
+	
+	/**
+	 * Gets the number of moveable pieces ({@link PieceType#isMoveable()}) of
+	 * a color still on the board.
+	 * @param color {@link Piece#BLUE} or {@link Piece#RED}
+	 * @return count, 0 for any other color
+	 */
+	public int getMovableCount(int color)
+	{
+		if (color != Piece.BLUE && color != Piece.RED)
+			return 0;
+		return movableCounts[color];
+	}
+	
+	/**
+	 * Gets the winner of the game so far: a color wins when the other has
+	 * lost its flag or every moveable piece. Counts start from a full army
+	 * and drop only for pieces removed, so this also holds for a model
+	 * whose opponent pieces are {@link PieceType#UNKNOWN}.
+	 * @return {@link Piece#RED} or {@link Piece#BLUE}, or {@link Piece#NONE}
+	 * if there is no winner yet
+	 */
+	public int winner()
+	{
+		if (getPieceCount(Piece.BLUE, PieceType.FLAG) < 1)
+			return Piece.RED;
+		else if (getPieceCount(Piece.RED, PieceType.FLAG) < 1)
+			return Piece.BLUE;
+		// game is also over when either team loses all its moveable pieces
+		else if (getMovableCount(Piece.BLUE) < 1)
+			return Piece.RED;
+		else if (getMovableCount(Piece.RED) < 1)
+			return Piece.BLUE;
+		return Piece.NONE;
+	}
+	
+	/**
+	 * Gets the color whose turn it is in positions built with
+	 * {@link #makeMove(int)}.
+	 * @return {@link Piece#RED} or {@link Piece#BLUE}
+	 */
+	public int getSideToMove()
+	{
+		return sideToMove;
+	}
+	
+	/**
+	 * Sets the color whose turn it is.
+	 * @param color {@link Piece#RED} or {@link Piece#BLUE}
+	 */
+	public void setSideToMove(int color)
+	{
+		if ((color == Piece.BLUE) != (sideToMove == Piece.BLUE))
+			hash ^= ZOBRIST_BLUE_TO_MOVE;
+		sideToMove = color;
+	}
+	
+	/**
+	 * Applies a move produced by {@link MoveGenerator}, resolving any battle
+	 * with {@link Piece#battle(PieceType, PieceType)} and updating the piece
+	 * counts. Pieces that survive a battle, and scouts that move more than
+	 * one square, are marked revealed. The move is recorded so
+	 * {@link #unmakeMove()} can take it back.
+	 * </p> Observers are not notified and the move is not checked for
+	 * legality, so it should come from {@link MoveGenerator}.
+	 * @param move packed move, see {@link MoveGenerator#encode(int, int)}
+	 * @return if 0 both removed, if 1 attacker remains (always for a move to
+	 * an empty square), if 2 defender remains
+	 */
+	public int makeMove(int move)
+	{
+		int from = MoveGenerator.from(move);
+		int to = MoveGenerator.to(move);
+		byte attacker = board[from];
+		byte defender = board[to];
+		
+		int result = 1;
+		if (defender != PieceCode.EMPTY)
+			result = Piece.battle(PieceCode.type(attacker), PieceCode.type(defender));
+		
+		apply(from, to, attacker, defender, result);
+		return result;
+	}
+	
+	/**
+	 * Plays a move of the game, mine or the opponent's, and notifies
+	 * observers once with the {@link MoveMessage}. The squares, piece counts,
+	 * revealed pieces and side to move change as for {@link #makeMove(int)},
+	 * but the pieces and battle outcome are taken from the message.
+	 * @param move move to play
+	 */
+	public void playMove(MoveMessage move)
+	{
+		int from = move.getFrom();
+		int to = move.getTo();
+		apply(from, to, messageCode(board[from], move.getAttacker()),
+				messageCode(board[to], move.getDefender()), move.getResult());
+		
+		setChanged();
+		notifyObservers(move);
+	}
+	
+	/**
+	 * Gets the square code of a piece named in a {@link MoveMessage}, keeping
+	 * the revealed bit of the square it is on.
+	 * @param code current code of the square
+	 * @param piece piece from the message, or null to keep the square's piece
+	 * @return square code
+	 */
+	private static byte messageCode(byte code, Piece piece)
+	{
+		if (piece == null)
+			return code;
+		return (byte) (PieceCode.encode(piece) | (code & PieceCode.REVEALED));
+	}
+	
+	/**
+	 * Records a move on the undo stack and updates the board, counts and
+	 * side to move.
+	 * @param from source square index
+	 * @param to destination square index
+	 * @param attacker code of the moving piece
+	 * @param defender code of the destination square
+	 * @param result 0 both removed, 1 attacker remains, 2 defender remains
+	 */
+	private void apply(int from, int to, byte attacker, byte defender, int result)
+	{
+		if (undoSize == undoStack.length)
+		{
+			undoStack = Arrays.copyOf(undoStack, undoSize * 2);
+			hashHistory = Arrays.copyOf(hashHistory, undoSize * 2);
+		}
+		hashHistory[undoSize] = hash;
+		undoStack[undoSize++] = from
+				| (long) to << 8
+				| (long) (attacker & 0xFF) << 16
+				| (long) (defender & 0xFF) << 24
+				| (long) result << 32
+				| (long) sideToMove << 34;
+		
+		put(from, PieceCode.EMPTY);
+		if (result == 0) // both removed
+		{
+			put(to, PieceCode.EMPTY);
+			adjustCount(attacker, -1);
+			adjustCount(defender, -1);
+		}
+		else if (result == 1) // attacker remains
+		{
+			boolean scoutSlide = Math.abs(from - to) != 1 && Math.abs(from - to) != COLUMNS;
+			if (defender != PieceCode.EMPTY || scoutSlide)
+				put(to, PieceCode.reveal(attacker));
+			else
+				put(to, attacker);
+			if (defender != PieceCode.EMPTY)
+				adjustCount(defender, -1);
+		}
+		else // result == 2, defender remains
+		{
+			put(to, PieceCode.reveal(defender));
+			adjustCount(attacker, -1);
+		}
+		
+		setSideToMove((PieceCode.color(attacker) == Piece.RED) ? Piece.BLUE : Piece.RED);
+	}
+	
+	/**
+	 * Takes back the last move applied with {@link #makeMove(int)}, restoring
+	 * both squares, the piece counts and the side to move.
+	 * @return the packed move taken back, or -1 if there is none
+	 */
+	public int unmakeMove()
+	{
+		if (undoSize == 0)
+			return -1;
+		
+		long record = undoStack[--undoSize];
+		int from = (int) (record & 0xFF);
+		int to = (int) (record >>> 8 & 0xFF);
+		byte attacker = (byte) (record >>> 16);
+		byte defender = (byte) (record >>> 24);
+		int result = (int) (record >>> 32 & 0x3);
+		
+		put(from, attacker);
+		put(to, defender);
+		if (result == 0)
+		{
+			adjustCount(attacker, 1);
+			adjustCount(defender, 1);
+		}
+		else if (result == 1)
+		{
+			if (defender != PieceCode.EMPTY)
+				adjustCount(defender, 1);
+		}
+		else
+		{
+			adjustCount(attacker, 1);
+		}
+		
+		setSideToMove((int) (record >>> 34 & 0x3));
+		return MoveGenerator.encode(from, to);
+	}
+	
+	/**
+	 * Gets the Zobrist hash of the position: square contents, which pieces
+	 * are revealed and the side to move.
+	 * @return 64-bit position hash
+	 */
+	public long getHash()
+	{
+		return hash;
+	}
+	
+	/**
+	 * Counts how many earlier positions on the {@link #makeMove(int)} stack
+	 * have the same hash as the current position.
+	 * @return number of repetitions of the current position
+	 */
+	public int getRepetitions()
+	{
+		int count = 0;
+		for (int i = undoSize - 1; i >= 0; i--)
+		{
+			if (hashHistory[i] == hash)
+				count++;
+		}
+		return count;
+	}
+	
+	/**
+	 * Marks the piece at the indicated position as revealed (its identity is
+	 * known to the opponent). Empty squares and lakes are unchanged.
+	 * @param row row of position
+	 * @param col column of position
+	 */
+	public void setRevealed(int row, int col)
+	{
+		int index = squareIndex(row, col);
+		put(index, PieceCode.reveal(board[index]));
+	}
+	
+	/**
+	 * Indicates if the piece at the indicated position has been revealed.
+	 * @param row row of position
+	 * @param col column of position
+	 * @return true if revealed, false otherwise
+	 */
+	public boolean isRevealed(int row, int col)
+	{
+		return PieceCode.isRevealed(board[squareIndex(row, col)]);
+	}
+	
+	/**
+	 * Gets the number of moves that {@link #unmakeMove()} can take back.
+	 * @return undo stack depth
+	 */
+	public int getUndoDepth()
+	{
+		return undoSize;
+	}
+	
+	/**
+	 * Writes a square code, keeping the Zobrist hash up to date. Every change
+	 * to the board goes through here.
+	 * @param index square index
+	 * @param code new square code
+	 */
+	private void put(int index, byte code)
+	{
+		int base = index * PieceCode.CODES;
+		hash ^= ZOBRIST[base + (board[index] & 0xFF)] ^ ZOBRIST[base + (code & 0xFF)];
+		board[index] = code;
+	}
+	
+	/**
+	 * SplitMix64 finalizer, used to generate the Zobrist keys.
+	 * @param z input
+	 * @return mixed 64-bit value
+	 */
+	private static long mix(long z)
+	{
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+	
+	/**
+	 * Adds delta to the count of the piece described by a square code.
+	 * @param code square code of the piece
+	 * @param delta change in count
+	 */
+	private void adjustCount(byte code, int delta)
+	{
+		count(PieceCode.color(code), PieceCode.type(code), delta);
+	}
+	
+	/**
+	 * Adds delta to the count of a piece type and color, and to the
+	 * moveable count if the type is moveable.
+	 * @param color piece color
+	 * @param type piece type
+	 * @param delta change in count
+	 * @return true if the color is blue or red, false otherwise
+	 */
+	private boolean count(int color, PieceType type, int delta)
+	{
+		if (color != Piece.BLUE && color != Piece.RED)
+			return false;
+		
+		pieceCounts[color][type.ordinal()] += delta;
+		if (type.isMoveable())
+			movableCounts[color] += delta;
+		return true;
+	}
+	
+	/**
+	 * Copies the counts of one color into a map of the army's piece types.
+	 * @param color {@link Piece#BLUE} or {@link Piece#RED}
+	 * @return piece : count
+	 */
+	private HashMap<PieceType, Integer> countMap(int color)
+	{
+		HashMap<PieceType, Integer> pieces = new HashMap<PieceType, Integer>();
+		for (PieceType type : PieceType.values())
+		{
+			if (INITIAL_COUNTS[type.ordinal()] > 0)
+				pieces.put(type, pieceCounts[color][type.ordinal()]);
+		}
+		return pieces;
 	}
 	
 	/**
@@ -247,7 +755,10 @@ public class StrategoModel extends Observable
 	{
 		for (int r = 0; r < ROWS; r++)
 		{
-			System.out.println(Arrays.toString(grid[r]));
+			Piece[] row = new Piece[COLUMNS];
+			for (int c = 0; c < COLUMNS; c++)
+				row[c] = getPosition(r, c);
+			System.out.println(Arrays.toString(row));
 		}
 	}
 
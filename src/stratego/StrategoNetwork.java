@@ -1,12 +1,18 @@
 package stratego;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.net.ProtocolException;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * This class encapsulates the network functions of the Stratego program.
@@ -16,6 +22,27 @@ import java.net.SocketException;
  * connected server or client, and closing the network connection.</p>
  * <p>Additionally error information can be retrieved in the by invoking the
  * {@link #getErrorMessage()} method.</p>
+ * <p>Messages are sent in the binary format of {@link WireProtocol}. A
+ * connection whose peer sends a malformed frame is closed. A client can
+ * connect to another player's server or to a {@link GameServer}; either way
+ * the server decides the color the client plays, see {@link #getColor()}.</p>
+ * <p>By default a client carries the game and the chat on one socket with a
+ * {@link MultiplexedConnection}; it can open a second socket for the chat
+ * instead. A server accepts either.</p>
+ * <p>A client of a {@link GameServer} whose connection fails reconnects
+ * and resumes its game, for up to {@value #RESUME_MILLIS} milliseconds,
+ * before a read or write reports the failure. The server sends the game
+ * messages the client had not received yet, and the client sends again
+ * those of its own the server had not received. Chat sent while the
+ * connection was down may be lost.</p>
+ * <p>Once its game channel is first read, a connection sends a
+ * {@link PingMessage} on its game socket every {@value #HEARTBEAT_MILLIS}
+ * milliseconds. Reading the game
+ * channel answers pings from the other end and records the round trip of
+ * replies in {@link #getLatency()}; neither is returned to the caller. A
+ * ping unanswered for {@value #STALL_MILLIS} milliseconds while the game
+ * channel is being read marks the connection stalled, and a client of a
+ * {@link GameServer} then drops the socket and resumes on a new one.</p>
  * 
  * @author Kristopher Rangel
  * @author Caroline O'Neill
@@ -24,21 +51,51 @@ import java.net.SocketException;
 
 public class StrategoNetwork {
 
+    public static final long RESUME_MILLIS = GameServer.DEFAULT_GRACE_MILLIS;
+
+    private static final SecureRandom TOKENS = new SecureRandom();
+    private static final long RESUME_RETRY_MILLIS = 500;
+    public static final long HEARTBEAT_MILLIS = 1000;
+    public static final long STALL_MILLIS = 5000;
+
     private Socket connection;
     private Socket chatConnection;
     
-    private ObjectOutputStream output;
-    private ObjectInputStream input;
-    private ObjectOutputStream chatOutput;
-    private ObjectInputStream chatInput;
+    private DataOutputStream output;
+    private DataInputStream input;
+    private DataOutputStream chatOutput;
+    private DataInputStream chatInput;
+    private MultiplexedConnection shared; // game and chat on one socket, null with a chat socket
     
+    private int color; // color this end plays, decided by the server
+    private boolean refereed; // the server resolves moves and hides the opponent's pieces
+    private long chatToken; // ties a client's chat socket to its game socket
+    private long game; // id spectators watch the game with, 0 if it can not be watched
     private boolean startedWithoutError; // true if connection started without error
+    private volatile boolean closed; // closed on purpose, never resumed
+    
+    // resuming a client of a game server
+    private String host;
+    private int port;
+    private boolean sharedSocket;
+    private final Object resumeLock = new Object(); // one resume at a time
+    private final Object writeLock = new Object(); // game writes and the switch to a resumed socket
+    private volatile int generation; // resumed connections so far
+    private int received; // game messages read, guarded by resumeLock
+    private final ArrayList<Object> sent = new ArrayList<Object>(); // game messages written, guarded by writeLock
+    
+    // liveness
+    private final LatencyStats latency = new LatencyStats();
+    private volatile long pingSentAt; // System.nanoTime() of the oldest ping not answered, 0 if none
+    private volatile boolean gameReading; // a thread is reading the game channel
+    private final AtomicBoolean heartbeating = new AtomicBoolean(); // heartbeat thread started
     private String errorMessage; // error message associated with the last error occurring
     
     /**
      * Constructor.
      * <p>This constructor starts a server connections or client connection as
-     * appropriate on the given port.
+     * appropriate on the given port. A client carries the chat on its game
+     * socket.
      * 
      * @param isServer - whether a server connection should be established
      *                   <li>if True, a server connection will be established
@@ -51,13 +108,62 @@ public class StrategoNetwork {
      * 
      */
     public StrategoNetwork(boolean isServer, String server, int port) {
+        this(isServer, server, port, true);
+    }
+    
+    /**
+     * Constructor.
+     * <p>This constructor starts a server connections or client connection as
+     * appropriate on the given port.
+     * 
+     * @param isServer - whether a server connection should be established
+     *                   <li>if True, a server connection will be established
+     *                   <li>if False, a client connection will be established
+     * @param server - the hostname
+     * @param port - the port number
+     * @param sharedSocket - for a client, true to carry the chat on the game
+     *                       socket, false to open a second socket for it
+     */
+    public StrategoNetwork(boolean isServer, String server, int port, boolean sharedSocket) {
+        this(isServer, server, port, sharedSocket, null);
+    }
+    
+    /**
+     * Constructor.
+     * <p>This constructor joins the lobby of a {@link GameServer}, which
+     * pairs players by rating, and waits until it is paired. The chat is
+     * carried on the game socket.
+     * 
+     * @param server - the hostname
+     * @param port - the port number
+     * @param name - the player name ratings are kept under
+     */
+    public StrategoNetwork(String server, int port, String name) {
+        this(false, server, port, true, name);
+    }
+    
+    /**
+     * Constructor.
+     * 
+     * @param isServer - whether a server connection should be established
+     * @param server - the hostname
+     * @param port - the port number
+     * @param sharedSocket - for a client, true to carry the chat on the game
+     *                       socket
+     * @param name - for a client, the player name to join the lobby with,
+     *               or null to be paired with the next player
+     */
+    private StrategoNetwork(boolean isServer, String server, int port, boolean sharedSocket, String name) {
         
         if(isServer) {
             startedWithoutError = startServer(port);
         }else {
-            startedWithoutError = startClient(server, port);
-            System.out.println("about to start client chat");
-            startClientChat(server, port);
+            startedWithoutError = startClient(server, port, sharedSocket, name);
+            // a chat socket without a game socket would be accepted as the game connection
+            if(startedWithoutError && !sharedSocket) {
+                System.out.println("about to start client chat");
+                startClientChat(server, port);
+            }
         }
     }
     
@@ -83,17 +189,41 @@ public class StrategoNetwork {
             connection = serverSocket.accept();
             System.out.println("accepted first connection");
             
-            output = new ObjectOutputStream(connection.getOutputStream());
-            input = new ObjectInputStream(connection.getInputStream());
+            output = openOutput(connection);
+            input = openInput(connection);
+            
+            long token = newToken();
+            JoinMessage join = expect(input, JoinMessage.class);
+            if(join.isChat()) {
+                throw new ProtocolException("chat socket without a game socket");
+            }
+            write(output, new WelcomeMessage(Piece.BLUE, token, false));
+            
+            if(join.isShared()) {
+                shared = new MultiplexedConnection(input, output);
+                serverSocket.close();
+                color = Piece.RED;
+                return true;
+            }
             
             chatConnection = serverSocket.accept();
             System.out.println("accepted second connection");
             
-            chatOutput = new ObjectOutputStream(chatConnection.getOutputStream());
-            chatInput = new ObjectInputStream(chatConnection.getInputStream());
+            chatOutput = openOutput(chatConnection);
+            chatInput = openInput(chatConnection);
+            JoinMessage chatJoin = expect(chatInput, JoinMessage.class);
+            if(!chatJoin.isChat() || chatJoin.getToken() != token) {
+                throw new ProtocolException("chat socket of another player");
+            }
             
             serverSocket.close();
+            color = Piece.RED; // the server plays red and moves first
  
+        }catch(ProtocolException e) {
+            hasNoException = false;
+            closeQuietly(connection);
+            closeQuietly(chatConnection);
+            errorMessage = "Client does not use this version of Stratego: " + e.getMessage();
         }catch(IOException e) {
             hasNoException = false;
             errorMessage = "IOException occurred while trying to establish server.";
@@ -104,7 +234,7 @@ public class StrategoNetwork {
 
     /**
      * <ul><b><i>startClient</i></b></ul>
-     * <ul><ul><p><code>private boolean startClient (String server, int port) </code></p></ul>
+     * <ul><ul><p><code>private boolean startClient (String server, int port, boolean sharedSocket, String name) </code></p></ul>
      *
      * Creates a client connection and attempts to connect to the specified server.
      *
@@ -114,20 +244,40 @@ public class StrategoNetwork {
      *
      * @param server - the host name, or null for the loopback address.
      * @param port - the port number
+     * @param sharedSocket - true to carry the chat on this socket too
+     * @param name - player name to wait in the lobby with, or null
      * @return true if no exception, false otherwise
      * 
      * @author Kristopher Rangel
      * @author Caroline O'Neill
      * 
      */
-    private boolean startClient(String server, int port) {
+    private boolean startClient(String server, int port, boolean sharedSocket, String name) {
         boolean hasNoException = true;
+        this.host = server;
+        this.port = port;
+        this.sharedSocket = sharedSocket;
         try {
             connection = new Socket(server, port);
             System.out.println("started client game");
-            output = new ObjectOutputStream(connection.getOutputStream());
-            input = new ObjectInputStream(connection.getInputStream());
+            output = openOutput(connection);
+            input = openInput(connection);
             System.out.println("created game input/output streams");
+            
+            int role = sharedSocket ? JoinMessage.SHARED : JoinMessage.GAME;
+            write(output, (name == null) ? new JoinMessage(role, 0) : new JoinMessage(role, name));
+            WelcomeMessage welcome = expect(input, WelcomeMessage.class);
+            color = welcome.getColor();
+            chatToken = welcome.getToken();
+            refereed = welcome.isRefereed();
+            game = welcome.getGame();
+            if(sharedSocket) {
+                shared = new MultiplexedConnection(input, output);
+            }
+        }catch(ProtocolException e) {
+            hasNoException = false;
+            closeQuietly(connection);
+            errorMessage = "Server does not use this version of Stratego: " + e.getMessage();
         }catch(IOException e) {
             hasNoException = false;
             errorMessage = "IOException occurred while trying to establish connection to server.";
@@ -153,9 +303,14 @@ public class StrategoNetwork {
         try {
             chatConnection = new Socket(server, port);
             System.out.println("started client chat");
-            chatOutput = new ObjectOutputStream(chatConnection.getOutputStream());
-            chatInput = new ObjectInputStream(chatConnection.getInputStream());
+            chatOutput = openOutput(chatConnection);
+            chatInput = openInput(chatConnection);
+            write(chatOutput, new JoinMessage(JoinMessage.CHAT, chatToken));
             System.out.println("created game input/output streams");
+        }catch(ProtocolException e) {
+            hasNoException = false;
+            closeQuietly(chatConnection);
+            errorMessage = "Server does not use this version of Stratego: " + e.getMessage();
         }catch(IOException e) {
             hasNoException = false;
             errorMessage = "IOException occurred while trying to establish connection to server.";
@@ -164,11 +319,85 @@ public class StrategoNetwork {
         return hasNoException;
     }
     
+    /**
+     * <ul><b><i>openOutput</i></b></ul>
+     * <ul><ul><p><code>private DataOutputStream openOutput (Socket socket) </code></p></ul>
+     *
+     * Turns off Nagle's algorithm for the socket, since frames are small and
+     * sent one at a time, and writes the {@link WireProtocol} handshake.
+     *
+     * @param socket - a newly connected socket
+     * @return buffered output stream of the socket
+     * @throws IOException if the handshake can not be written
+     */
+    private DataOutputStream openOutput(Socket socket) throws IOException {
+        socket.setTcpNoDelay(true);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        WireProtocol.writeHandshake(out);
+        return out;
+    }
+    
+    /**
+     * <ul><b><i>openInput</i></b></ul>
+     * <ul><ul><p><code>private DataInputStream openInput (Socket socket) </code></p></ul>
+     *
+     * Reads and checks the peer's {@link WireProtocol} handshake.
+     *
+     * @param socket - a newly connected socket
+     * @return buffered input stream of the socket
+     * @throws ProtocolException if the peer uses another protocol version
+     * @throws IOException if the handshake can not be read
+     */
+    private DataInputStream openInput(Socket socket) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        WireProtocol.readHandshake(in);
+        return in;
+    }
+    
+    /**
+     * <ul><b><i>expect</i></b></ul>
+     * <ul><ul><p><code>private &lt;T&gt; T expect (DataInputStream in, Class&lt;T&gt; type) </code></p></ul>
+     *
+     * Reads one message that must be of the given type, while starting a
+     * connection.
+     *
+     * @param in - the stream to read from
+     * @param type - the message class expected
+     * @return the message
+     * @throws ProtocolException if another message is read
+     * @throws IOException if the read fails
+     */
+    private <T> T expect(DataInputStream in, Class<T> type) throws IOException {
+        Object message = WireProtocol.read(in);
+        if(!type.isInstance(message)) {
+            throw new ProtocolException("expected " + type.getSimpleName());
+        }
+        return type.cast(message);
+    }
+    
+    /**
+     * <ul><b><i>newToken</i></b></ul>
+     * <ul><ul><p><code>static long newToken () </code></p></ul>
+     *
+     * Makes an unguessable, non-zero token for a {@link WelcomeMessage}.
+     *
+     * @return token
+     */
+    static long newToken() {
+        long token;
+        do {
+            token = TOKENS.nextLong();
+        }while(token == 0);
+        return token;
+    }
+    
     /**
      * <ul><b><i>closeConnection</i></b></ul>
      * <ul><ul><p><code>public boolean closeConnection () </code></p></ul>
      *
-     * Closes the connection created by this class.
+     * Closes the connection created by this class. A client of a
+     * {@link GameServer} first sends the game over message, so the other
+     * player is not kept waiting for this one to resume.
      * 
      * <p>If an exception occurred or an attempt was made to close a
      * null connection, false is returned. In the event false is returned, 
@@ -180,6 +409,15 @@ public class StrategoNetwork {
      */
     public boolean closeConnection() {
         boolean hasNoException = true;
+        if(refereed && !closed) {
+            // without it the server would wait for this player to resume
+            try {
+                write(output, new SinglePositionMessage(-1, -1, null));
+            }catch(IOException e) {
+                // the server ends the game once it stops waiting
+            }
+        }
+        closed = true;
         try { 
             
             if(connection != null)
@@ -202,6 +440,8 @@ public class StrategoNetwork {
      * <p>If an exception occurred or an attempt was made to close a
      * null connection, false is returned. In the event false is returned, 
      * the error message can be retrieved by invoking {@link #getErrorMessage()}.
+     * A chat carried on the game socket is closed with {@link #closeConnection()}
+     * and nothing is done here.
      * 
      * @return true if no exception, false otherwise
      * 
@@ -211,6 +451,9 @@ public class StrategoNetwork {
     public boolean closeChatConnection() 
     {
         boolean hasNoException = true;
+        if(shared != null) {
+            return hasNoException;
+        }
         try 
         {    
             if(chatConnection != null)
@@ -247,7 +490,7 @@ public class StrategoNetwork {
         boolean hasNoException = true;
         errorMessage = "No error occurred";
         try {
-            output.writeObject(message);
+            send(message);
         }catch(IOException e) {
             hasNoException = false;
             errorMessage = "IOException occured while writing message.";
@@ -279,15 +522,16 @@ public class StrategoNetwork {
         Object message = null;
         errorMessage = "No error occurred.";
         try {
-            message = input.readObject();
+            message = receive(WireProtocol.GAME_CHANNEL);
             errorMessage = "No error message.";
         } catch(SocketException | EOFException e) {
             errorMessage = "Connection Closed.";
             closeConnection();
+        }catch(ProtocolException e) {
+            errorMessage = "Malformed message: " + e.getMessage();
+            closeConnection();
         }catch(IOException e) {
             errorMessage = "IOException occured while trying to read message.";
-        }catch(ClassNotFoundException e) {
-            errorMessage = "ClassNotFoundException occured while trying to read message.";
         }
         return message;
     }
@@ -311,7 +555,57 @@ public class StrategoNetwork {
         boolean hasNoException = true;
         errorMessage = "No error occurred";
         try {
-            output.writeObject(message);
+            send(message);
+        }catch(IOException e) {
+            hasNoException = false;
+            errorMessage = "IOException occured while writing message.";
+        }
+        return hasNoException;
+    }
+    
+    /**
+     * <ul><b><i>writeMessage</i></b></ul>
+     * <ul><ul><p><code>public boolean writeMessage (MoveMessage message) </code></p></ul>
+     *
+     * Writes a {@link MoveMessage} to the output buffer of this connection.
+     *
+     * <p>If an exception occurred while trying to write the message,
+     * false is returned. In the event false is returned, 
+     * the error message can be retrieved by invoking {@link #getErrorMessage()}.
+     *
+     * @param message - the {@link MoveMessage} to transmit
+     * @return true if no exception, false otherwise
+     */
+    public boolean writeMessage(MoveMessage message) {
+        boolean hasNoException = true;
+        errorMessage = "No error occurred";
+        try {
+            send(message);
+        }catch(IOException e) {
+            hasNoException = false;
+            errorMessage = "IOException occured while writing message.";
+        }
+        return hasNoException;
+    }
+    
+    /**
+     * <ul><b><i>writeMessage</i></b></ul>
+     * <ul><ul><p><code>public boolean writeMessage (SavedGameMessage message) </code></p></ul>
+     *
+     * Writes a {@link SavedGameMessage} to the output buffer of this connection.
+     *
+     * <p>If an exception occurred while trying to write the message,
+     * false is returned. In the event false is returned, 
+     * the error message can be retrieved by invoking {@link #getErrorMessage()}.
+     *
+     * @param message - the {@link SavedGameMessage} to transmit
+     * @return true if no exception, false otherwise
+     */
+    public boolean writeMessage(SavedGameMessage message) {
+        boolean hasNoException = true;
+        errorMessage = "No error occurred";
+        try {
+            send(message);
         }catch(IOException e) {
             hasNoException = false;
             errorMessage = "IOException occured while writing message.";
@@ -321,32 +615,40 @@ public class StrategoNetwork {
     
     /**
      * <ul><b><i>readMessage</i></b></ul>
-     * <ul><ul><p><code>public SinglePositionMessage readMessage () </code></p></ul>
+     * <ul><ul><p><code>public Object readMessage () </code></p></ul>
      *
-     * Reads a {@link SinglePositionMessage} from the input buffer of this connection.
+     * Reads a {@link MoveMessage}, or the game over {@link SinglePositionMessage},
+     * from the input buffer of this connection.
      * 
      * <p>If an exception occurred while trying to read the message, null will be returned.
      * In that event, the error message can be retrieved by invoking {@link #getErrorMessage()}.
      *
-     * @return - the read {@link SinglePositionMessage} object
+     * @return - the read {@link MoveMessage} or {@link SinglePositionMessage} object
      * 
      * @author Kristopher Rangel
      * @author Caroline O'Neill
      */
-    public SinglePositionMessage readMessage() {
-        SinglePositionMessage message = null;
+    public Object readMessage() {
+        Object message = null;
         errorMessage = "No error occurred.";
         try {
-            message = (SinglePositionMessage) input.readObject();
-            errorMessage = "No error message.";
+            Object received = receive(WireProtocol.GAME_CHANNEL);
+            if(received instanceof MoveMessage || received instanceof SinglePositionMessage) {
+                message = received;
+                errorMessage = "No error message.";
+            }else {
+                errorMessage = "Unexpected message: " + received.getClass().getSimpleName();
+                closeConnection();
+            }
         } catch(SocketException | EOFException e) {
             errorMessage = "Connection Closed.";
             closeConnection();
+        }catch(ProtocolException e) {
+            errorMessage = "Malformed message: " + e.getMessage();
+            closeConnection();
         }catch(IOException e) {
             errorMessage = "IOException occured while trying to read message.";
             e.printStackTrace();
-        }catch(ClassNotFoundException e) {
-            errorMessage = "ClassNotFoundException occured while trying to read message.";
         }
         return message;
     }
@@ -368,7 +670,7 @@ public class StrategoNetwork {
         boolean hasNoException = true;
         errorMessage = "No error occurred";
         try {
-            chatOutput.writeObject(message);
+            send(message);
         }catch(IOException e) {
             hasNoException = false;
             errorMessage = "IOException occured while writing message.";
@@ -391,20 +693,323 @@ public class StrategoNetwork {
         ChatMessage message = null;
         errorMessage = "No error occurred.";
         try {
-            message = (ChatMessage) chatInput.readObject();
-            errorMessage = "No error message.";
+            Object received = receive(WireProtocol.CHAT_CHANNEL);
+            if(received instanceof ChatMessage) {
+                message = (ChatMessage) received;
+                errorMessage = "No error message.";
+            }else {
+                errorMessage = "Unexpected message: " + received.getClass().getSimpleName();
+                closeChatConnection();
+            }
         } catch(SocketException | EOFException e) {
             errorMessage = "Connection Closed.";
             closeChatConnection();
+        }catch(ProtocolException e) {
+            errorMessage = "Malformed message: " + e.getMessage();
+            closeChatConnection();
         }catch(IOException e) {
             errorMessage = "IOException occured while trying to read message.";
             e.printStackTrace();
-        }catch(ClassNotFoundException e) {
-            errorMessage = "ClassNotFoundException occured while trying to read message.";
         }
         return message;
     }
     
+    /**
+     * <ul><b><i>write</i></b></ul>
+     * <ul><ul><p><code>private void write (DataOutputStream out, Object message) </code></p></ul>
+     *
+     * Writes one message as a {@link WireProtocol} frame, on the shared
+     * socket if there is one. Writes to the same stream from different
+     * threads do not interleave.
+     *
+     * @param out - the stream to write to
+     * @param message - the message to write
+     * @throws IOException if the write fails
+     */
+    private void write(DataOutputStream out, Object message) throws IOException {
+        if(shared != null) {
+            shared.send(message);
+            return;
+        }
+        synchronized(out) {
+            WireProtocol.write(out, message);
+        }
+    }
+    
+    /**
+     * <ul><b><i>send</i></b></ul>
+     * <ul><ul><p><code>private void send (Object message) </code></p></ul>
+     *
+     * Writes one message on its channel. A game message to a
+     * {@link GameServer} is kept so it can be sent again after a resume,
+     * and a failed write only closes the socket: the reading thread then
+     * resumes, see {@link #receive(int)}.
+     *
+     * @param message - the message to write
+     * @throws IOException if the write fails and can not be resumed
+     */
+    private void send(Object message) throws IOException {
+        boolean game = WireProtocol.channel(message) == WireProtocol.GAME_CHANNEL;
+        Socket failed;
+        synchronized(writeLock) {
+            if(game && refereed) {
+                sent.add(message);
+            }
+            try {
+                write(game ? output : chatOutput, message);
+                return;
+            }catch(IOException e) {
+                // chat is not sent again
+                if(!game || !refereed || closed) {
+                    throw e;
+                }
+                failed = connection;
+            }
+        }
+        closeQuietly(failed); // the reading thread sees it fail and resumes
+    }
+    
+    /**
+     * <ul><b><i>receive</i></b></ul>
+     * <ul><ul><p><code>private Object receive (int channel) </code></p></ul>
+     *
+     * Reads the next message of a channel, from the shared socket or from
+     * the channel's own socket. If the read fails while connected to a
+     * {@link GameServer}, the game is resumed on a new connection and read
+     * from there.
+     *
+     * @param channel - {@link WireProtocol#GAME_CHANNEL} or {@link WireProtocol#CHAT_CHANNEL}
+     * @return the message
+     * @throws IOException if the read fails and can not be resumed
+     */
+    private Object receive(int channel) throws IOException {
+        while(true) {
+            int used;
+            DataInputStream in;
+            MultiplexedConnection via;
+            synchronized(resumeLock) {
+                used = generation;
+                in = (channel == WireProtocol.GAME_CHANNEL) ? input : chatInput;
+                via = shared;
+            }
+            Object message;
+            boolean game = channel == WireProtocol.GAME_CHANNEL;
+            if(game && heartbeating.compareAndSet(false, true)) {
+                Thread.ofVirtual().name("network-heartbeat").start(this::heartbeat);
+            }
+            try {
+                gameReading |= game;
+                message = (via != null) ? via.receive(channel) : WireProtocol.read(in);
+            }catch(ProtocolException e) {
+                throw e;
+            }catch(IOException e) {
+                if(!resume(used)) {
+                    throw e;
+                }
+                continue;
+            }finally {
+                if(game) {
+                    gameReading = false;
+                }
+            }
+            if(message instanceof PingMessage) {
+                answer((PingMessage) message);
+                continue;
+            }
+            if(channel == WireProtocol.CHAT_CHANNEL) {
+                return message;
+            }
+            synchronized(resumeLock) {
+                if(used == generation) {
+                    received++;
+                    return message;
+                }
+            }
+            // read from a connection since replaced, the server sends it again
+        }
+    }
+    
+    /**
+     * <ul><b><i>answer</i></b></ul>
+     * <ul><ul><p><code>private void answer (PingMessage ping) </code></p></ul>
+     *
+     * Answers a ping from the other end, or records the round trip of a
+     * reply to this end's ping.
+     *
+     * @param ping - the ping or reply read
+     */
+    private void answer(PingMessage ping) {
+        if(ping.isReply()) {
+            pingSentAt = 0;
+            latency.record(System.nanoTime() - ping.getStamp());
+            return;
+        }
+        try {
+            synchronized(writeLock) {
+                write(output, ping.reply());
+            }
+        }catch(IOException e) {
+            // the next read fails too
+        }
+    }
+    
+    /**
+     * <ul><b><i>heartbeat</i></b></ul>
+     * <ul><ul><p><code>private void heartbeat () </code></p></ul>
+     *
+     * Sends a ping every {@value #HEARTBEAT_MILLIS} milliseconds until the
+     * connection is closed, from the first read of the game channel. A stalled connection to a {@link GameServer}
+     * is dropped, so the reading thread resumes the game.
+     */
+    private void heartbeat() {
+        while(!closed) {
+            try {
+                Thread.sleep(HEARTBEAT_MILLIS);
+            }catch(InterruptedException e) {
+                return;
+            }
+            if(isStalled()) {
+                pingSentAt = 0;
+                if(refereed && !closed) {
+                    Socket stalled;
+                    synchronized(writeLock) {
+                        stalled = connection;
+                    }
+                    closeQuietly(stalled);
+                }
+                continue;
+            }
+            long now = System.nanoTime();
+            if(pingSentAt == 0) {
+                pingSentAt = now;
+            }
+            try {
+                synchronized(writeLock) {
+                    write(output, new PingMessage(now));
+                }
+            }catch(IOException e) {
+                // the reading thread sees the failure
+            }
+        }
+    }
+    
+    /**
+     * <ul><b><i>resume</i></b></ul>
+     * <ul><ul><p><code>private boolean resume (int failed) </code></p></ul>
+     *
+     * Reconnects to the {@link GameServer} after a connection failed,
+     * retrying for up to {@value #RESUME_MILLIS} milliseconds. Threads that
+     * saw the same failure wait for the first one to resume.
+     *
+     * @param failed - the generation of the connection that failed
+     * @return true if a new connection is in place
+     */
+    private boolean resume(int failed) {
+        synchronized(resumeLock) {
+            if(failed != generation) {
+                return !closed;
+            }
+            if(!refereed || closed) {
+                return false;
+            }
+            closeQuietly(connection);
+            closeQuietly(chatConnection);
+            long deadline = System.nanoTime() + RESUME_MILLIS * 1000000L;
+            while(!closed) {
+                try {
+                    reconnect();
+                    return true;
+                }catch(EOFException | ProtocolException e) {
+                    return false; // the server has ended the game
+                }catch(IOException e) {
+                    // not reachable yet
+                }
+                if(System.nanoTime() - deadline >= 0) {
+                    return false;
+                }
+                try {
+                    Thread.sleep(RESUME_RETRY_MILLIS);
+                }catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return false;
+        }
+    }
+    
+    /**
+     * <ul><b><i>reconnect</i></b></ul>
+     * <ul><ul><p><code>private void reconnect () </code></p></ul>
+     *
+     * Opens new sockets for this player's game, sends again the game
+     * messages the server did not receive, and switches to the new sockets.
+     * Called holding the resume lock.
+     *
+     * @throws ProtocolException if the server does not resume the game
+     * @throws IOException if the server can not be reached
+     */
+    private void reconnect() throws IOException {
+        Socket socket = new Socket(host, port);
+        Socket chatSocket = null;
+        try {
+            DataOutputStream out = openOutput(socket);
+            DataInputStream in = openInput(socket);
+            WireProtocol.write(out, new JoinMessage(sharedSocket ? JoinMessage.SHARED : JoinMessage.GAME,
+                    chatToken, received));
+            WelcomeMessage welcome = expect(in, WelcomeMessage.class);
+            DataOutputStream chatOut = null;
+            DataInputStream chatIn = null;
+            if(!sharedSocket) {
+                chatSocket = new Socket(host, port);
+                chatOut = openOutput(chatSocket);
+                chatIn = openInput(chatSocket);
+                WireProtocol.write(chatOut, new JoinMessage(JoinMessage.CHAT, chatToken));
+            }
+            
+            synchronized(writeLock) {
+                if(welcome.getReceived() > sent.size()) {
+                    throw new ProtocolException("server received more than was sent");
+                }
+                for(int i = welcome.getReceived(); i < sent.size(); i++) {
+                    out.write(WireProtocol.encode(sent.get(i)));
+                }
+                out.flush();
+                connection = socket;
+                output = out;
+                input = in;
+                chatConnection = chatSocket;
+                chatOutput = chatOut;
+                chatInput = chatIn;
+                shared = sharedSocket ? new MultiplexedConnection(in, out) : null;
+                generation++;
+            }
+        }catch(IOException e) {
+            closeQuietly(socket);
+            closeQuietly(chatSocket);
+            throw e;
+        }
+    }
+    
+    /**
+     * <ul><b><i>closeQuietly</i></b></ul>
+     * <ul><ul><p><code>private static void closeQuietly (Socket socket) </code></p></ul>
+     *
+     * Closes a socket, ignoring errors and null.
+     *
+     * @param socket - the socket to close
+     */
+    private static void closeQuietly(Socket socket) {
+        if(socket == null) {
+            return;
+        }
+        try {
+            socket.close();
+        }catch(IOException e) {
+            // already closed
+        }
+    }
+    
     /**
      * <ul><b><i>getStartError</i></b></ul>
      * <ul><ul><p><code>public boolean getStartError () </code></p></ul>
@@ -417,6 +1022,69 @@ public class StrategoNetwork {
      */
     public boolean getStartError() { return !startedWithoutError; }
     
+    /**
+     * <ul><b><i>getColor</i></b></ul>
+     * <ul><ul><p><code>public int getColor () </code></p></ul>
+     *
+     * Returns the color this end of the connection plays. A server always
+     * plays red; a client plays the color given by the server, which is
+     * blue unless the server is a {@link GameServer}.
+     *
+     * @return {@link Piece#RED} or {@link Piece#BLUE}, or {@link Piece#NONE}
+     *         if the connection did not start
+     */
+    public int getColor() { return color; }
+    
+    /**
+     * <ul><b><i>isRefereed</i></b></ul>
+     * <ul><ul><p><code>public boolean isRefereed () </code></p></ul>
+     *
+     * Returns whether the server referees the game. A {@link GameServer}
+     * resolves each move and echoes it back as a {@link MoveMessage}, and
+     * sends the opponent's pieces as {@link Piece.PieceType#UNKNOWN} until
+     * they are revealed. In a game between two players each resolves its
+     * own moves.
+     *
+     * @return true if connected to a {@link GameServer}
+     */
+    public boolean isRefereed() { return refereed; }
+    
+    /**
+     * <ul><b><i>getGameId</i></b></ul>
+     * <ul><ul><p><code>public long getGameId () </code></p></ul>
+     *
+     * Returns the id spectators join a {@link GameServer} with to watch this
+     * game, as a {@link JoinMessage#WATCH} socket.
+     *
+     * @return the game id, or 0 if the game can not be watched
+     */
+    public long getGameId() { return game; }
+    
+    /**
+     * <ul><b><i>getLatency</i></b></ul>
+     * <ul><ul><p><code>public LatencyStats getLatency () </code></p></ul>
+     *
+     * Returns the round trip times of this connection's pings. The
+     * statistics are updated while the game channel is read.
+     *
+     * @return the rolling round trip statistics
+     */
+    public LatencyStats getLatency() { return latency; }
+    
+    /**
+     * <ul><b><i>isStalled</i></b></ul>
+     * <ul><ul><p><code>public boolean isStalled () </code></p></ul>
+     *
+     * Returns whether a ping has gone unanswered for
+     * {@value #STALL_MILLIS} milliseconds while the game channel is read.
+     *
+     * @return true if the other end seems to have stopped answering
+     */
+    public boolean isStalled() {
+        long sent = pingSentAt;
+        return gameReading && sent != 0 && System.nanoTime() - sent > STALL_MILLIS * 1000000L;
+    }
+    
     /**
      * <ul><b><i>getErrorMessage</i></b></ul>
      * <ul><ul><p><code>public String getErrorMessage () </code></p></ul>
@@ -11,7 +11,9 @@ import javafx.geometry.*;
  * This class serves as the Stage for the new game menu dialog box.
  * 
  * <p>This class presents options for the user to select whether to create a game
- * as a Server or Client, as well as enter the Server and Port number to connect to.</p>
+ * as a Server or Client, or to join the lobby of a {@link GameServer} to be paired
+ * by rating, as well as enter the Server and Port number to connect to and the
+ * player name for the lobby.</p>
  * 
  * <p>User selections can be retrieved via accessor methods included.</p>
  * 
@@ -27,8 +29,11 @@ public class StrategoNewGameMenu extends Stage{
     private Scene scene;
     private RadioButton serverRB;
     private RadioButton clientRB;
+    private RadioButton lobbyRB;
+    private CheckBox computerCB;
     private TextField serverTF;
     private TextField portTF;
+    private TextField nameTF;
     private boolean hitOK;
     
     /**
@@ -54,7 +59,8 @@ public class StrategoNewGameMenu extends Stage{
      * Sets up the 'Create:' row of the Network Setup options.
      * 
      * <p>These elements are added to in an HBox for uniformity of display. The elements
-     * include a Label and two toggle options: Server and Client.</p>
+     * include a Label, three toggle options: Server, Client and Lobby, and a check
+     * box to play the server against a {@link ComputerOpponent}.</p>
      *
      * @return - the <code>HBox</code> containing the elements of the 'Create' row of options
      * 
@@ -68,8 +74,15 @@ public class StrategoNewGameMenu extends Stage{
         serverRB.setSelected(true);
         clientRB = new RadioButton("Client");
         clientRB.setToggleGroup(createTG);
+        lobbyRB = new RadioButton("Lobby");
+        lobbyRB.setToggleGroup(createTG);
         
-        HBox row = new HBox(createLabel, serverRB, clientRB);
+        computerCB = new CheckBox("vs. Computer");
+        computerCB.setOnAction(e -> { if(computerCB.isSelected()) { serverRB.setSelected(true); } });
+        clientRB.setOnAction(e -> { computerCB.setSelected(false); });
+        lobbyRB.setOnAction(e -> { computerCB.setSelected(false); });
+        
+        HBox row = new HBox(createLabel, serverRB, clientRB, lobbyRB, computerCB);
         row.setSpacing(PADDING);
         return row;
     }
@@ -81,7 +94,8 @@ public class StrategoNewGameMenu extends Stage{
      * Sets up the elements on the scene.
      * 
      * <p>The basic structure of the scene is a {@link VBox} with four rows. Each row is a
-     * {@link HBox} that contains all elements on that row.</p>
+     * {@link HBox} that contains all elements on that row. The player name is only
+     * used for the lobby.</p>
      * 
      * <p>The default server is {@value #DEFAULT_SERVER} and the default port is {@value #DEFAULT_PORT}.</p>
      *
@@ -100,6 +114,13 @@ public class StrategoNewGameMenu extends Stage{
         HBox row2 = new HBox(serverLabel, serverTF, portLabel, portTF);
         row2.setSpacing(PADDING);
         
+        // name row
+        Label nameLabel = new Label("Name");
+        nameTF = new TextField();
+        
+        HBox nameRow = new HBox(nameLabel, nameTF);
+        nameRow.setSpacing(PADDING);
+        
         
         // row4 (button row)
         Button okay = new Button("OK");
@@ -112,12 +133,13 @@ public class StrategoNewGameMenu extends Stage{
   
         
         // Adding rows to Vbox
-        VBox box = new VBox(row1, row2, row3);;
+        VBox box = new VBox(row1, row2, nameRow, row3);;
         
         // Setting padding for Vbox
         Insets boxInsets = new Insets(PADDING);
         VBox.setMargin(row1, boxInsets);
         VBox.setMargin(row2, boxInsets);
+        VBox.setMargin(nameRow, boxInsets);
         VBox.setMargin(row3, boxInsets);
         box.setSpacing(PADDING);
         
@@ -140,6 +162,44 @@ public class StrategoNewGameMenu extends Stage{
         return serverRB.isSelected();
     }    
     
+    /**
+     * <ul><b><i>getLobbySelection</i></b></ul>
+     * <ul><ul><p><code>public boolean getLobbySelection () </code></p></ul>
+     *
+     * Getter for whether the user chose to wait in the lobby of a {@link GameServer}
+     * to be paired by rating.
+     *
+     * @return <li><code>True</code> if 'Lobby' was selected,<li><code>False</code> otherwise
+     */
+    public boolean getLobbySelection() {
+        return lobbyRB.isSelected();
+    }
+    
+    /**
+     * <ul><b><i>getPlayerName</i></b></ul>
+     * <ul><ul><p><code>public String getPlayerName () </code></p></ul>
+     *
+     * Gets the user-entered player name, which the lobby keeps ratings under.
+     *
+     * @return - the <code>String</code> value the user entered into the name text box, trimmed
+     */
+    public String getPlayerName() {
+        return nameTF.getText().trim();
+    }
+    
+    /**
+     * <ul><b><i>getComputerOpponentSelection</i></b></ul>
+     * <ul><ul><p><code>public boolean getComputerOpponentSelection () </code></p></ul>
+     *
+     * Getter for whether the user chose to play against the computer. The computer
+     * joins as the client, so this is only true together with 'Server'.
+     *
+     * @return <li><code>True</code> if 'vs. Computer' was checked,<li><code>False</code> otherwise
+     */
+    public boolean getComputerOpponentSelection() {
+        return computerCB.isSelected();
+    }
+    
     /**
      * <ul><b><i>getServer</i></b></ul>
      * <ul><ul><p><code>public String getServer () </code></p></ul>
@@ -4,6 +4,16 @@ import java.util.Observable;
 import java.util.Observer;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.charset.StandardCharsets;
 
 import javafx.application.Application;
 import javafx.application.Platform;
@@ -18,6 +28,7 @@ import javafx.scene.input.KeyCode;
 import javafx.scene.text.Font;
 import javafx.scene.layout.*;
 import javafx.scene.paint.Color;
+import javafx.stage.FileChooser;
 import javafx.stage.Screen;
 import javafx.stage.Stage;
 import stratego.Piece.PieceType;
@@ -29,6 +40,18 @@ import javafx.beans.InvalidationListener;
  * <p>This class is an {@link Observer} of the {@link StrategoModel} class.
  * </p>
  * 
+ * <p>A game recorded in a {@link GameArchive} can be replayed from the File menu,
+ * with both armies shown. A {@link GameReplay} steps and seeks through the game;
+ * the board is redrawn at most once per pass of the UI thread, and only the
+ * squares that changed, so scrubbing or playing through a game never queues a
+ * redraw per ply.</p>
+ * 
+ * <p>A game in progress is saved as a {@link GameSnapshot} when the window closes,
+ * and can be resumed from the File menu. A game saved during setup starts a new
+ * game with the placed pieces and the time left on the setup clock; a game saved
+ * in play reconnects to the same opponent, who resumes it too, and goes on from
+ * the saved position once both players are found to have saved the same one.</p>
+ * 
  * @author Kristopher Rangel
  *
  */
@@ -85,6 +108,9 @@ public class StrategoView extends Application implements Observer {
     private Button setupDone;
     private static ArrayList<Label> countLabels;
     private static ArrayList<PieceView> pieces; // pieces for setup
+    private CheckMenuItem showHints;
+    private BeliefTracker beliefs; // what this player knows about the opponent's pieces
+    private final int HINT_TYPES = 3; // most likely piece types listed in a hint
     
     // Chat style
     private String chatStyle =                   
@@ -113,7 +139,23 @@ public class StrategoView extends Application implements Observer {
     private static boolean isServer;
     private boolean recvOtherSetup = false;
     private boolean sentSetup = false;
-    private int msgRecvCount = 0;
+    
+    // Replay
+    private final long REPLAY_PLY_MILLIS = 50; // between plies while playing
+    private volatile GameReplay replay;
+    private volatile Object replayPlayer; // token of the thread playing the replay, null if paused
+    private HBox replayBar;
+    private Slider replaySlider;
+    private boolean replayUpdatingSlider; // the slider is being moved to the replay's ply
+    private Label replayPly;
+    private Button replayPlay;
+    private final AtomicBoolean replayRedrawPending = new AtomicBoolean();
+    private final byte[] replaySquares = new byte[StrategoModel.SQUARES]; // position to draw
+    private final byte[] replayShown = new byte[StrategoModel.SQUARES]; // position drawn
+    
+    // Saved game
+    private final Path SAVE_FILE = Paths.get(System.getProperty("user.home"), "stratego.save");
+    private final int MIN_RESUME_TIME = 5000; // least setup time a resumed game is given
     
     /**
      * <ul><b><i>start</i></b></ul>
@@ -195,7 +237,9 @@ public class StrategoView extends Application implements Observer {
         
         recvOtherSetup = false;
         sentSetup = false;
-        msgRecvCount = 0;
+        beliefs = null;
+        replay = null;
+        replayPlayer = null;
         
         playerColor = Color.RED;
         controller = new StrategoController();
@@ -233,12 +277,15 @@ public class StrategoView extends Application implements Observer {
      * <ul><b><i>stop</i></b></ul>
      * <ul><ul><p><code>public void stop () </code></p></ul>
      *
-     * Performs final actions upon application close.
+     * Performs final actions upon application close, saving the game in progress
+     * if there is one.
      * 
      * @author Kristopher Rangel
      *
      */
     public void stop() {
+        saveGame();
+        
     	// cleanup
         controller.closeNetwork();
         
@@ -377,15 +424,21 @@ public class StrategoView extends Application implements Observer {
         
         Menu fileMenu = new Menu("File");
         newGame = new MenuItem("New Game");
-        newGame.setOnAction(e -> { getNewGameOptions(); });
+        newGame.setOnAction(e -> { getNewGameOptions(null); });
         MenuItem endGame = new MenuItem("End Game");
         endGame.setOnAction(e -> { gameOver(Piece.NONE, true); }); 
-        fileMenu.getItems().addAll(newGame, endGame);
+        MenuItem resumeGame = new MenuItem("Resume Saved Game...");
+        resumeGame.setOnAction(e -> { resumeGame(); });
+        MenuItem replayGame = new MenuItem("Replay Game...");
+        replayGame.setOnAction(e -> { openReplay(); });
+        fileMenu.getItems().addAll(newGame, endGame, resumeGame, replayGame);
         
         Menu optionsMenu = new Menu("Options");
         MenuItem chatColors = new MenuItem("Chat Colors...");
         chatColors.setOnAction(e -> { setChatColors(); });
-        optionsMenu.getItems().add(chatColors);
+        showHints = new CheckMenuItem("Show Hints");
+        showHints.setOnAction(e -> { updateHints(); });
+        optionsMenu.getItems().addAll(chatColors, showHints);
         
         menuBar.getMenus().addAll(fileMenu, optionsMenu);
     }
@@ -597,19 +650,21 @@ public class StrategoView extends Application implements Observer {
     
     /**
      * <ul><b><i>startTimer</i></b></ul>
-     * <ul><ul><p><code>private void startTimer () </code></p></ul>
+     * <ul><ul><p><code>private void startTimer (int time) </code></p></ul>
      *
      * Starts the timer.
      * 
      * <p>Intitializes a {@link Timer} objects and adds a listener to
      * update the timer in the UI appropriately.
      *
+     * @param time - the setup time in milliseconds
+     * 
      * @author Kristopher Rangel
      */
-    private void startTimer() {
+    private void startTimer(int time) {
         clockFace.setVisible(true);
         setupDone.setVisible(true);
-        timer = new Timer(DEFAULT_TIME);
+        timer = new Timer(time);
         // adding listener for change in timer to update the timer display
         timer.getTime().addListener(new InvalidationListener() {
             @Override
@@ -643,14 +698,20 @@ public class StrategoView extends Application implements Observer {
     }
     /**
      * <ul><b><i>getNewGameOptions</i></b></ul>
-     * <ul><ul><p><code>private void getNewGameOptions () </code></p></ul>
+     * <ul><ul><p><code>private void getNewGameOptions (GameSnapshot saved) </code></p></ul>
      *
      * This method launches a dialog box that allows the user
-     * to enter Network Setup options. Invokes {@link #startNewGame} method.
+     * to enter Network Setup options. Starts a {@link ComputerOpponent} if the
+     * user chose to play against the computer. Invokes {@link #startNewGame} method.
+     * 
+     * <p>A saved game in play can only go on over a direct connection, as the same
+     * color, with an opponent who resumes it too.</p>
      *
+     * @param saved - the saved game to resume, or null for a new game
+     * 
      * @author Kristopher Rangel
      */
-    private void getNewGameOptions() {
+    private void getNewGameOptions(GameSnapshot saved) {
         StrategoNewGameMenu newGameMenu = new StrategoNewGameMenu();
         newGameMenu.setX(stage.getX());
         newGameMenu.setY(stage.getY());
@@ -662,7 +723,24 @@ public class StrategoView extends Application implements Observer {
             String server = newGameMenu.getServer();
             int port = newGameMenu.getPort();
             boolean isServer = newGameMenu.getCreateModeSelection();
+            String name = newGameMenu.getLobbySelection() ? newGameMenu.getPlayerName() : null;
+            if(name != null && (name.isEmpty()
+                    || name.getBytes(StandardCharsets.UTF_8).length > JoinMessage.MAX_NAME_BYTES)) {
+                showAlert(AlertType.ERROR, "Enter a player name of 1 to " + JoinMessage.MAX_NAME_BYTES + " characters for the lobby.");
+                return;
+            }
+            if(saved != null && !saved.isSetup() && (name != null || newGameMenu.getComputerOpponentSelection()
+                    || isServer != (saved.getColor() == Piece.RED))) {
+                showAlert(AlertType.ERROR, "A game in play resumes over a direct connection with the same opponent, "
+                        + "who resumes it too. Connect as the " + ((saved.getColor() == Piece.RED) ? "server." : "client."));
+                return;
+            }
             if(ENABLE_CONSOLE_DEBUG) { System.out.println("isServer = " + isServer);}
+            if(isServer && newGameMenu.getComputerOpponentSelection()) {
+                // the computer connects as the client while this player waits as the server
+                ComputerOpponent opponent = new ComputerOpponent(new MonteCarloPlayer(), ComputerOpponent.DEFAULT_BUDGET_MILLIS);
+                Thread.ofVirtual().name("computer-opponent-connect").start(() -> opponent.start(false, "localhost", port));
+            }
             if(isServer) {
                 playerColor = Color.RED;
                 colorInt = Piece.RED;
@@ -676,33 +754,50 @@ public class StrategoView extends Application implements Observer {
                 System.out.println("port " + port);
             }
             
-            startNewGame(server, port, isServer);
+            startNewGame(server, port, isServer, name, saved);
         }
     }
 
     /**
      * <ul><b><i>startNewGame</i></b></ul>
-     * <ul><ul><p><code>private void startNewGame (String server, int port) </code></p></ul>
+     * <ul><ul><p><code>private void startNewGame (String server, int port, boolean isServer, String name, GameSnapshot saved) </code></p></ul>
      *
      * This function starts a new game with the options selected by the user.
+     * Joining the lobby always makes a new connection, since the lobby pairs
+     * players anew for each game.
+     * 
+     * <p>Once connected, a saved game in play is restored to the model when the
+     * other player has resumed the same position, and the board follows in
+     * {@link #update}; a game saved during setup starts setup with the saved pieces
+     * placed and the time that was left.</p>
      *
      * @param server - the hostname of the server
      * @param port - the port number
+     * @param isServer - whether to wait for a client as the server
+     * @param name - the player name to join the lobby with, or null
+     * @param saved - the saved game to resume, or null
      *
      * @author Kristopher Rangel
      * @author Caroline O'Neill
      */
-    private void startNewGame(String server, int port, boolean isServer) 
+    private void startNewGame(String server, int port, boolean isServer, String name, GameSnapshot saved) 
     {   boolean hasConnectionError = false;
         
         // if settings are different than previous network connection
-        if(!(this.server.equals(server) && this.port == port && StrategoView.isServer == isServer)) {
+        if(name != null || !(this.server.equals(server) && this.port == port && StrategoView.isServer == isServer)) {
             // if previous connection exists, close it
             controller.closeNetwork();
             this.server = server;
             this.port = port;
             StrategoView.isServer = isServer;
-            hasConnectionError = controller.buildNetwork(isServer, server, port);
+            hasConnectionError = (name == null) ? controller.buildNetwork(isServer, server, port)
+                    : controller.buildNetwork(server, port, name);
+            if(!hasConnectionError) {
+                // a game server decides which color its clients play
+                colorInt = controller.getNetworkColor();
+                playerColor = (colorInt == Piece.RED) ? Color.RED : Color.BLUE;
+                StrategoView.isServer = colorInt == Piece.RED;
+            }
         }
 
         if(hasConnectionError) 
@@ -713,18 +808,29 @@ public class StrategoView extends Application implements Observer {
         else 
     	{
             newGame.setDisable(true);
-        	if (isServer) 
+        	if (StrategoView.isServer) 
         		stage.setTitle("Stratego (Server)");
         	else 
         		stage.setTitle("Stratego (Client)");
         	
         	inputEnabled = true;
-        	controller.initiateSetupListening();
+        	beliefs = new BeliefTracker(colorInt);
+        	if(saved != null && !saved.isSetup()) {
+        	    // restored once the other player has resumed the same position, see update()
+        	    board.setDisable(true);
+        	    controller.resumeGame(saved, this::refuseResume);
+        	}
+        	controller.initiateGameListening();
         	//call continuous listening method in controller
             controller.initiateChatListening(chatDisplay);
         }
+        
+        if(saved != null) {
+            if(!saved.isSetup()) { return; }
+            deleteSave();
+        }
 
-        startTimer();
+        startTimer((saved == null) ? DEFAULT_TIME : Math.max(saved.getTimeLeft(), MIN_RESUME_TIME));
         setupEnabled = true;
         changePieceBoxColor(playerColor);
 
@@ -732,8 +838,382 @@ public class StrategoView extends Application implements Observer {
             PieceView pv = (PieceView) board.getChildren().get(i);
             pv.setDropEnabled(true);
         }
+        if(saved != null) { placeSetup(saved); }
     }  
     
+    /**
+     * <ul><b><i>resumeGame</i></b></ul>
+     * <ul><ul><p><code>private void resumeGame () </code></p></ul>
+     *
+     * Reads the game saved when the window last closed and asks the user how to
+     * connect to go on with it.
+     */
+    private void resumeGame() {
+        if(newGame.isDisable()) {
+            showAlert(AlertType.ERROR, "End the game before resuming one.");
+            return;
+        }
+        GameSnapshot saved;
+        try {
+            saved = GameSnapshot.read(SAVE_FILE);
+        }catch(NoSuchFileException e) {
+            showAlert(AlertType.INFORMATION, "There is no saved game.");
+            return;
+        }catch(IOException e) {
+            showAlert(AlertType.ERROR, "Could not read the saved game: " + e.getMessage());
+            return;
+        }
+        getNewGameOptions(saved);
+    }
+    
+    /**
+     * <ul><b><i>saveGame</i></b></ul>
+     * <ul><ul><p><code>private void saveGame () </code></p></ul>
+     *
+     * Saves the game in progress, if there is one, as a {@link GameSnapshot}: during
+     * setup the pieces placed so far and the time left, otherwise the model.
+     */
+    private void saveGame() {
+        if(replay != null || !newGame.isDisable()) { return; } // no game in progress
+        GameSnapshot snapshot;
+        if(setupEnabled) {
+            int timeLeft = (timer != null) ? timer.getTimeLeft() : DEFAULT_TIME;
+            snapshot = new GameSnapshot(setupPosition(), colorInt, true, timeLeft);
+        }else {
+            snapshot = new GameSnapshot(controller.getModel(), colorInt, false, 0);
+        }
+        try {
+            snapshot.write(SAVE_FILE);
+        }catch(IOException e) {
+            System.out.println("Could not save the game: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * <ul><b><i>setupPosition</i></b></ul>
+     * <ul><ul><p><code>private StrategoModel setupPosition () </code></p></ul>
+     *
+     * Gets the pieces this player has placed during setup, in model coordinates.
+     *
+     * @return a model holding only the placed pieces
+     */
+    private StrategoModel setupPosition() {
+        StrategoModel setup = new StrategoModel();
+        for(int row = SETUP_START_ROW; row < BOARD_SIZE; row++) {
+            for(int col = 0; col < BOARD_SIZE; col++) {
+                PieceView pv = (PieceView) board.getChildren().get(row * BOARD_SIZE + col);
+                if(pv.getPieceType() != PieceType.EMPTY) {
+                    int square = StrategoModel.squareIndex(translate(row), translate(col));
+                    setup.setSquare(square, PieceCode.encode(pv.getPieceType(), colorInt));
+                }
+            }
+        }
+        return setup;
+    }
+    
+    /**
+     * <ul><b><i>placeSetup</i></b></ul>
+     * <ul><ul><p><code>private void placeSetup (GameSnapshot saved) </code></p></ul>
+     *
+     * Places the pieces of a game saved during setup on this player's rows, in one
+     * pass, taking them out of the 'pieces tray' as a drop would. The pieces keep
+     * their places on screen even if this player now has the other color.
+     *
+     * @param saved - the saved game
+     */
+    private void placeSetup(GameSnapshot saved) {
+        int savedColor = saved.getColor();
+        for(int row = SETUP_START_ROW; row < BOARD_SIZE; row++) {
+            for(int col = 0; col < BOARD_SIZE; col++) {
+                int square = StrategoModel.squareIndex(translate(row, savedColor), translate(col, savedColor));
+                byte code = saved.getSquare(square);
+                if(PieceCode.color(code) != savedColor) { continue; }
+                
+                PieceView pv = (PieceView) board.getChildren().get(row * BOARD_SIZE + col);
+                PieceType type = PieceCode.type(code);
+                pv.update(Piece.of(type, colorInt));
+                updateLabels(pv.convertPieceTypeToIndex(type), -1);
+            }
+        }
+    }
+    
+    /**
+     * <ul><b><i>resumePlay</i></b></ul>
+     * <ul><ul><p><code>private void resumePlay (GameSnapshot saved) </code></p></ul>
+     *
+     * Redraws the whole board from the restored model in one pass and goes on with
+     * the game from the saved position.
+     *
+     * @param saved - the saved game the model was restored from
+     */
+    private void resumePlay(GameSnapshot saved) {
+        deleteSave();
+        for(int row = 0; row < BOARD_SIZE; row++) {
+            for(int col = 0; col < BOARD_SIZE; col++) {
+                updatePosition(row, col, controller.getPosition(row, col));
+            }
+        }
+        for(Label l : countLabels) { l.setText("0"); }
+        changePieceBoxColor(playerColor);
+        piecesBox.setDisable(true);
+        hideTimer();
+        
+        setupEnabled = false;
+        sentSetup = true;
+        recvOtherSetup = true;
+        inputEnabled = saved.getSideToMove() == colorInt;
+        board.setDisable(!inputEnabled);
+        updateHints();
+    }
+    
+    /**
+     * <ul><b><i>refuseResume</i></b></ul>
+     * <ul><ul><p><code>private void refuseResume (String reason) </code></p></ul>
+     *
+     * Ends a resumed game the other player did not resume with the same position.
+     * The saved game is kept, so it can be resumed again.
+     *
+     * @param reason - why the game was not resumed
+     */
+    private void refuseResume(String reason) {
+        showAlert(AlertType.ERROR, "The saved game can not be resumed: " + reason);
+        server = ""; // the connection is closed, so the next game makes a new one
+        reInit();
+    }
+    
+    /**
+     * <ul><b><i>deleteSave</i></b></ul>
+     * <ul><ul><p><code>private void deleteSave () </code></p></ul>
+     *
+     * Deletes the saved game once it is resumed, so it is saved again only if it is
+     * still going on when the window closes.
+     */
+    private void deleteSave() {
+        try {
+            Files.deleteIfExists(SAVE_FILE);
+        }catch(IOException e) {
+            if(ENABLE_CONSOLE_DEBUG) { System.out.println("Could not delete the saved game."); }
+        }
+    }
+    
+    /**
+     * <ul><b><i>openReplay</i></b></ul>
+     * <ul><ul><p><code>private void openReplay () </code></p></ul>
+     *
+     * Asks the user for a {@link GameArchive} and a game in it, then replays that game.
+     * The game is chosen by its number in the archive or by the id its
+     * {@link GameServer} gave it.
+     */
+    private void openReplay() {
+        if(newGame.isDisable()) {
+            showAlert(AlertType.ERROR, "End the game before replaying one.");
+            return;
+        }
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle("Open Game Archive");
+        File file = chooser.showOpenDialog(stage);
+        if(file == null) { return; }
+        
+        GameArchive archive;
+        try {
+            archive = new GameArchive(file.toPath());
+        }catch(IOException e) {
+            showAlert(AlertType.ERROR, "Could not open the game archive: " + e.getMessage());
+            return;
+        }
+        int games = archive.getGameCount();
+        if(games == 0) {
+            showAlert(AlertType.ERROR, "The game archive holds no games.");
+            return;
+        }
+        
+        TextInputDialog dialog = new TextInputDialog("1");
+        dialog.setTitle("Replay Game");
+        dialog.setHeaderText(null);
+        dialog.setContentText("Game (1 to " + games + ") or game id:");
+        dialog.setX(stage.getX());
+        dialog.setY(stage.getY());
+        Optional<String> answer = dialog.showAndWait();
+        if(!answer.isPresent()) { return; }
+        int game = -1;
+        try {
+            long number = Long.parseLong(answer.get().trim());
+            game = (number >= 1 && number <= games) ? (int) (number - 1) : archive.find(number);
+        }catch(NumberFormatException e) {
+            // not a game
+        }
+        if(game < 0) {
+            showAlert(AlertType.ERROR, "There is no such game in the archive.");
+            return;
+        }
+        startReplay(new GameReplay(archive, game));
+    }
+    
+    /**
+     * <ul><b><i>startReplay</i></b></ul>
+     * <ul><ul><p><code>private void startReplay (GameReplay gameReplay) </code></p></ul>
+     *
+     * Shows a replay on the board, seen from red's side, with the replay controls
+     * below it. The board takes no input until the replay is closed.
+     *
+     * @param gameReplay - the replay to show
+     */
+    private void startReplay(GameReplay gameReplay) {
+        replay = gameReplay;
+        newGame.setDisable(true);
+        piecesBox.setDisable(true);
+        stage.setTitle("Stratego (Replay)");
+        board.getChildren().iterator().forEachRemaining(e -> {
+            PieceView pv = (PieceView) e;
+            pv.setDragEnabled(false);
+            pv.setDropEnabled(false);
+        });
+        Arrays.fill(replayShown, (byte) -1); // not a square code, so every square is drawn
+        
+        Button first = new Button("|<");
+        first.setOnAction(e -> { pauseReplay(); replay.seek(0); requestReplayRedraw(); });
+        Button back = new Button("<");
+        back.setOnAction(e -> { pauseReplay(); replay.backward(); requestReplayRedraw(); });
+        replayPlay = new Button("Play");
+        replayPlay.setOnAction(e -> { toggleReplayPlay(); });
+        Button next = new Button(">");
+        next.setOnAction(e -> { pauseReplay(); replay.forward(); requestReplayRedraw(); });
+        Button last = new Button(">|");
+        last.setOnAction(e -> { pauseReplay(); replay.seek(replay.getPlyCount()); requestReplayRedraw(); });
+        
+        replaySlider = new Slider(0, gameReplay.getPlyCount(), 0);
+        replaySlider.valueProperty().addListener((observable, oldValue, newValue) -> {
+            if(replayUpdatingSlider) { return; }
+            // dragged by the user
+            pauseReplay();
+            replay.seek((int) Math.round(newValue.doubleValue()));
+            requestReplayRedraw();
+        });
+        HBox.setHgrow(replaySlider, Priority.ALWAYS);
+        replayPly = new Label();
+        Button close = new Button("Close Replay");
+        close.setOnAction(e -> { closeReplay(); });
+        
+        replayBar = new HBox(HGAP_PADDING, first, back, replayPlay, next, last, replaySlider, replayPly, close);
+        replayBar.setAlignment(Pos.CENTER_LEFT);
+        replayBar.setPadding(new Insets(INSETS_PADDING, INSETS_PADDING, INSETS_PADDING, INSETS_PADDING));
+        window.setBottom(replayBar);
+        requestReplayRedraw();
+    }
+    
+    /**
+     * <ul><b><i>toggleReplayPlay</i></b></ul>
+     * <ul><ul><p><code>private void toggleReplayPlay () </code></p></ul>
+     *
+     * Plays the replay forwards from a thread of its own, one ply every
+     * {@value #REPLAY_PLY_MILLIS} milliseconds, or pauses it. A replay at its end
+     * plays from the start.
+     */
+    private void toggleReplayPlay() {
+        if(replayPlayer != null) {
+            pauseReplay();
+            requestReplayRedraw();
+            return;
+        }
+        GameReplay playing = replay;
+        if(playing.getPly() == playing.getPlyCount()) {
+            playing.seek(0);
+        }
+        Object token = new Object();
+        replayPlayer = token;
+        Thread.ofVirtual().name("replay-player").start(() -> {
+            while(replayPlayer == token && replay == playing && playing.forward()) {
+                requestReplayRedraw();
+                try {
+                    Thread.sleep(REPLAY_PLY_MILLIS);
+                }catch(InterruptedException e) {
+                    break;
+                }
+            }
+            if(replayPlayer == token) {
+                replayPlayer = null;
+            }
+            requestReplayRedraw();
+        });
+        requestReplayRedraw();
+    }
+    
+    /**
+     * <ul><b><i>pauseReplay</i></b></ul>
+     * <ul><ul><p><code>private void pauseReplay () </code></p></ul>
+     *
+     * Stops the replay playing, if it is.
+     */
+    private void pauseReplay() {
+        replayPlayer = null;
+    }
+    
+    /**
+     * <ul><b><i>closeReplay</i></b></ul>
+     * <ul><ul><p><code>private void closeReplay () </code></p></ul>
+     *
+     * Ends the replay and sets the window up for a new game.
+     */
+    private void closeReplay() {
+        pauseReplay();
+        replay = null;
+        reInit();
+    }
+    
+    /**
+     * <ul><b><i>requestReplayRedraw</i></b></ul>
+     * <ul><ul><p><code>private void requestReplayRedraw () </code></p></ul>
+     *
+     * Asks for the replay to be redrawn. May be called from any thread, any number
+     * of times: a redraw is queued on the UI thread only if none is queued already,
+     * and draws wherever the replay is by then.
+     */
+    private void requestReplayRedraw() {
+        if(replayRedrawPending.compareAndSet(false, true)) {
+            Platform.runLater(this::redrawReplay);
+        }
+    }
+    
+    /**
+     * <ul><b><i>redrawReplay</i></b></ul>
+     * <ul><ul><p><code>private void redrawReplay () </code></p></ul>
+     *
+     * Draws the replay's position, updating only the squares that changed since the
+     * last redraw, and the controls.
+     */
+    private void redrawReplay() {
+        replayRedrawPending.set(false);
+        GameReplay shown = replay;
+        if(shown == null) { return; }
+        int ply = shown.copySquares(replaySquares);
+        
+        for(int square = 0; square < StrategoModel.SQUARES; square++) {
+            if(replaySquares[square] == replayShown[square]) { continue; }
+            replayShown[square] = replaySquares[square];
+            int row = translate(square / BOARD_SIZE, Piece.RED);
+            int col = translate(square % BOARD_SIZE, Piece.RED);
+            PieceView pv = (PieceView) board.getChildren().get(row * BOARD_SIZE + col);
+            Piece p = PieceCode.toPiece(replaySquares[square]);
+            pv.setIsVisible(true); // both armies are shown
+            pv.update(p);
+            Color c = Color.BLACK;
+            if(p.color() == Piece.BLUE) { c = Color.BLUE; }
+            else if(p.color() == Piece.RED) { c = Color.RED; }
+            pv.setBorderColor(c);
+            pv.saveBorderColor(c);
+        }
+        
+        replayUpdatingSlider = true;
+        replaySlider.setValue(ply);
+        replayUpdatingSlider = false;
+        String text = "Ply " + ply + " / " + shown.getPlyCount();
+        int winner = shown.winner();
+        if(winner == Piece.RED) { text += ", red won"; }
+        else if(winner == Piece.BLUE) { text += ", blue won"; }
+        replayPly.setText(text);
+        replayPlay.setText((replayPlayer != null) ? "Pause" : "Play");
+    }
+    
     /**
      * Shows an alert of the given type with the message passed.
      * 
@@ -905,9 +1385,7 @@ public class StrategoView extends Application implements Observer {
 				int r = row + modelStartRow;
 				int c = col;
 
-				Piece p = new Piece(initialSetup[row][col]);
-				p.setColor(color);
-				updatePosition(r, c, p);
+				updatePosition(r, c, Piece.of(initialSetup[row][col], color));
 			}
 		}
     }
@@ -948,6 +1426,41 @@ public class StrategoView extends Application implements Observer {
         return result;
     }
     
+    /**
+     * <ul><b><i>updateHints</i></b></ul>
+     * <ul><ul><p><code>private void updateHints () </code></p></ul>
+     *
+     * Sets a tooltip on every opponent piece listing its most likely piece types
+     * according to the {@link BeliefTracker}, or removes the tooltips if
+     * 'Show Hints' is not checked.
+     */
+    private void updateHints() {
+        if(beliefs == null) { return; }
+        boolean enabled = showHints.isSelected();
+        PieceType[] types = PieceType.values();
+        double[] probabilities = new double[types.length];
+        
+        for(int square = 0; square < StrategoModel.SQUARES; square++) {
+            int row = translate(square / BOARD_SIZE);
+            int col = translate(square % BOARD_SIZE);
+            PieceView pv = (PieceView) board.getChildren().get(row * BOARD_SIZE + col);
+            beliefs.probabilities(square, probabilities);
+            
+            // listing the most likely types, highest first
+            String hint = "";
+            for(int i = 0; enabled && i < HINT_TYPES; i++) {
+                int best = 0;
+                for(int t = 1; t < types.length; t++) {
+                    if(probabilities[t] > probabilities[best]) { best = t; }
+                }
+                if(probabilities[best] <= 0) { break; }
+                hint += String.format("%s %.0f%%%n", types[best], probabilities[best] * 100);
+                probabilities[best] = 0;
+            }
+            pv.getLabel().setTooltip(hint.isEmpty() ? null : new Tooltip(hint.trim()));
+        }
+    }
+    
     /**
      * <ul><b><i>setOpponentDropable</i></b></ul>
      * <ul><ul><p><code>private void setOpponentDropable (boolean isDropable) </code></p></ul>
@@ -986,6 +1499,8 @@ public class StrategoView extends Application implements Observer {
             setBoardEnable();    
         }
         
+        if(beliefs != null) { beliefs.update(o, arg); }
+        
         if(arg instanceof BoardSetupMessage && setupEnabled) 
         {	
             PieceType[][] initialSetup = ((BoardSetupMessage) arg).getInitialSetup();
@@ -1014,6 +1529,7 @@ public class StrategoView extends Application implements Observer {
                 hideTimer();
             	setupEnabled = false;
                 setOpponentDropable(true);
+                updateHints();
             	if (isServer)
             	{
             		// enable server board
@@ -1024,7 +1540,6 @@ public class StrategoView extends Application implements Observer {
             	{
             		inputEnabled = false;
             		board.setDisable(true); // should already be disabled?
-            		controller.initiateTurnListening();
             	}
             }
             if(ENABLE_CONSOLE_DEBUG) { System.out.println("setup disabled"); }
@@ -1044,20 +1559,27 @@ public class StrategoView extends Application implements Observer {
         	}
         	
         	updatePosition(row, col, p);
-        	msgRecvCount++;
         }
-        
-        // switching player turns
-        if (msgRecvCount == 3)
+        else if (arg instanceof GameSnapshot)
+        {
+            resumePlay((GameSnapshot) arg);
+        }
+        // switching player turns after a move by either player
+        else if (arg instanceof MoveMessage)
         {
-            if(ENABLE_CONSOLE_DEBUG) { System.out.println("MSG COUNT == 3"); }
-        	msgRecvCount = 0;
+            MoveMessage move = (MoveMessage) arg;
+            if(ENABLE_CONSOLE_DEBUG) { System.out.println("MOVE " + move.getFrom() + " " + move.getTo()); }
+            updatePosition(move.getSrcRow(), move.getSrcCol(),
+                    controller.getPosition(move.getSrcRow(), move.getSrcCol()));
+            updatePosition(move.getDstRow(), move.getDstCol(),
+                    controller.getPosition(move.getDstRow(), move.getDstCol()));
+            
         	// switch board enabled/disabled
         	if (inputEnabled == true)
         	{
         		board.setDisable(true);
         		inputEnabled = false;
-        		// initiateTurnListening is invoked in MovePiece
+        		// the opponent's move arrives on the game receive loop
         	}
         	else
         	{
@@ -1065,6 +1587,8 @@ public class StrategoView extends Application implements Observer {
         		inputEnabled = true;
         	}
         	
+        	updateHints();
+        	
         	if(ENABLE_CONSOLE_DEBUG) { System.out.println("CHECKING GAME OVER");}
             //check if game is over
             int winner = controller.winner();
@@ -16,7 +16,7 @@ public class Timer extends Thread {
     private Thread thread;
     private final AtomicBoolean running;
     private SimpleStringProperty clock;
-    private int time; // in milliseconds
+    private volatile int time; // in milliseconds, counted down by the timer thread
     private final int GRADIENT = 50; // timer update period
     
     /**
@@ -100,6 +100,17 @@ public class Timer extends Thread {
      */
     public SimpleStringProperty getTime() { return this.clock; }
     
+    /**
+     * <ul><b><i>getTimeLeft</i></b></ul>
+     * <ul><ul><p><code>public int getTimeLeft () </code></p></ul>
+     *
+     * Returns the time left on the timer, so it can be saved and started again
+     * with {@link #Timer(int)}.
+     *
+     * @return - the time left in milliseconds, never below zero
+     */
+    public int getTimeLeft() { return Math.max(time, 0); }
+    
     /**
      * <ul><b><i>run</i></b></ul>
      * <ul><ul><p><code>public void run () </code></p></ul>
@@ -0,0 +1,167 @@
+package stratego;
+
+import java.util.Arrays;
+
+/**
+ * TranspositionTable is a fixed-size cache of search results keyed by the
+ * {@link StrategoModel#getHash()} position hash. One table can be shared by
+ * any number of search threads without locking.
+ * </p> Notes:
+ * 		-entries live in a single <code>long[]</code>, two longs per entry and
+ * 			two entries per bucket
+ * 		-each entry stores (hash ^ data, data); a probe only accepts an entry
+ * 			whose first long XORs back to the probed hash, so an entry torn by
+ * 			two threads writing at once is simply treated as a miss
+ * 		-the first entry of a bucket is depth-preferred (only replaced by an
+ * 			equal or deeper search of any position, or by the same position),
+ * 			the second is always replaced
+ * </p> Data layout of an entry (see the static accessors):
+ * 		-bits 0-15: best move ({@link MoveGenerator#encode(int, int)})
+ * 		-bits 16-23: search depth
+ * 		-bits 24-25: bound type ({@link #EXACT}, {@link #LOWER_BOUND},
+ * 			{@link #UPPER_BOUND})
+ * 		-bit 26: set on every stored entry, so a probe result of 0 is a miss
+ * 		-bits 32-63: score
+ */
+public final class TranspositionTable
+{
+	public static final int EXACT = 0; // score is exact
+	public static final int LOWER_BOUND = 1; // score failed high
+	public static final int UPPER_BOUND = 2; // score failed low
+
+	/** Probe result for a position that is not in the table. */
+	public static final long MISS = 0L;
+
+	private static final int LONGS_PER_ENTRY = 2;
+	private static final int ENTRIES_PER_BUCKET = 2;
+	private static final int LONGS_PER_BUCKET = LONGS_PER_ENTRY * ENTRIES_PER_BUCKET;
+	private static final long VALID = 1L << 26;
+
+	private final long[] table;
+	private final int bucketMask;
+
+	/**
+	 * Constructor. The number of buckets is the largest power of two that
+	 * fits in the requested size.
+	 * @param sizeMegabytes table size in megabytes (at least 1)
+	 */
+	public TranspositionTable(int sizeMegabytes)
+	{
+		long bytes = Math.max(1, sizeMegabytes) * 1024L * 1024L;
+		long buckets = Long.highestOneBit(bytes / (LONGS_PER_BUCKET * Long.BYTES));
+		buckets = Math.min(buckets, Integer.highestOneBit(Integer.MAX_VALUE / LONGS_PER_BUCKET));
+		table = new long[(int) buckets * LONGS_PER_BUCKET];
+		bucketMask = (int) buckets - 1;
+	}
+
+	/**
+	 * Looks up a position.
+	 * @param hash position hash
+	 * @return entry data, or {@link #MISS}
+	 */
+	public long probe(long hash)
+	{
+		int base = bucket(hash);
+		for (int i = base; i < base + LONGS_PER_BUCKET; i += LONGS_PER_ENTRY)
+		{
+			long data = table[i + 1];
+			if (data != MISS && (table[i] ^ data) == hash)
+				return data;
+		}
+		return MISS;
+	}
+
+	/**
+	 * Stores a search result, using depth-preferred replacement for the first
+	 * entry of the bucket and always-replace for the second.
+	 * @param hash position hash
+	 * @param depth remaining search depth of the result (0-255)
+	 * @param score score of the position for the side to move
+	 * @param bound {@link #EXACT}, {@link #LOWER_BOUND} or {@link #UPPER_BOUND}
+	 * @param move best move found, or 0 if none
+	 */
+	public void store(long hash, int depth, int score, int bound, int move)
+	{
+		long data = (move & 0xFFFFL)
+				| (long) (Math.min(depth, 0xFF) & 0xFF) << 16
+				| (long) (bound & 0x3) << 24
+				| VALID
+				| (long) score << 32;
+
+		int slot = bucket(hash);
+		long storedData = table[slot + 1];
+		boolean samePosition = (table[slot] ^ storedData) == hash;
+		if (!samePosition && storedData != MISS && depth(storedData) > depth)
+			slot += LONGS_PER_ENTRY; // keep the deeper entry, use the second
+
+		table[slot] = hash ^ data;
+		table[slot + 1] = data;
+	}
+
+	/**
+	 * Empties the table.
+	 */
+	public void clear()
+	{
+		Arrays.fill(table, 0L);
+	}
+
+	/**
+	 * Gets the number of entries the table can hold.
+	 * @return capacity in entries
+	 */
+	public int capacity()
+	{
+		return table.length / LONGS_PER_ENTRY;
+	}
+
+	/**
+	 * Gets the best move of an entry.
+	 * @param data entry data from {@link #probe(long)}
+	 * @return packed move, or 0 if none was stored
+	 */
+	public static int move(long data)
+	{
+		return (int) (data & 0xFFFF);
+	}
+
+	/**
+	 * Gets the search depth of an entry.
+	 * @param data entry data from {@link #probe(long)}
+	 * @return depth
+	 */
+	public static int depth(long data)
+	{
+		return (int) (data >>> 16 & 0xFF);
+	}
+
+	/**
+	 * Gets the bound type of an entry.
+	 * @param data entry data from {@link #probe(long)}
+	 * @return {@link #EXACT}, {@link #LOWER_BOUND} or {@link #UPPER_BOUND}
+	 */
+	public static int bound(long data)
+	{
+		return (int) (data >>> 24 & 0x3);
+	}
+
+	/**
+	 * Gets the score of an entry.
+	 * @param data entry data from {@link #probe(long)}
+	 * @return score for the side to move
+	 */
+	public static int score(long data)
+	{
+		return (int) (data >>> 32);
+	}
+
+	/**
+	 * Maps a hash onto the first long of its bucket.
+	 * @param hash position hash
+	 * @return index into the table
+	 */
+	private int bucket(long hash)
+	{
+		return ((int) (hash ^ hash >>> 32) & bucketMask) * LONGS_PER_BUCKET;
+	}
+}
@@ -0,0 +1,121 @@
+package stratego;
+
+import java.io.Serializable;
+
+/**
+ * WelcomeMessage answers the {@link JoinMessage} of a client's game socket
+ * with the color the client plays and the token its chat socket joins with.
+ * Red moves first.
+ * </p> Notes:
+ * 		-a refereed game is one hosted by a {@link GameServer}: the server
+ * 			resolves every move and sends the opponent's pieces as
+ * 			{@link Piece.PieceType#UNKNOWN} until they are revealed
+ * 		-in a game between two players neither is the referee, and each
+ * 			resolves its own moves
+ * 		-a welcome answering a resumed {@link JoinMessage} says how many
+ * 			game messages the server has received from the client, so the
+ * 			client can send again the ones lost with the connection
+ * 		-the game id is what spectators join with to watch the game; a
+ * 			spectator is welcomed with {@link Piece#NONE} for its color
+ */
+public class WelcomeMessage implements Serializable
+{
+	private static final long serialVersionUID = 4L;
+
+	private final int color;
+	private final long token;
+	private final boolean refereed;
+	private final int received;
+	private final long game;
+
+	/**
+	 * WelcomeMessage constructor.
+	 * @param color {@link Piece#BLUE} or {@link Piece#RED}
+	 * @param token token for the client's chat socket
+	 * @param refereed true if the server resolves the moves
+	 */
+	public WelcomeMessage(int color, long token, boolean refereed)
+	{
+		this(color, token, refereed, 0);
+	}
+
+	/**
+	 * WelcomeMessage constructor.
+	 * @param color {@link Piece#BLUE} or {@link Piece#RED}
+	 * @param token token for the client's chat socket
+	 * @param refereed true if the server resolves the moves
+	 * @param received game messages the server has received from the
+	 * client, for a resumed connection
+	 */
+	public WelcomeMessage(int color, long token, boolean refereed, int received)
+	{
+		this(color, token, refereed, received, 0);
+	}
+
+	/**
+	 * WelcomeMessage constructor.
+	 * @param color {@link Piece#BLUE} or {@link Piece#RED}, or
+	 * {@link Piece#NONE} for a spectator
+	 * @param token token for the client's chat socket
+	 * @param refereed true if the server resolves the moves
+	 * @param received game messages the server has received from the
+	 * client, for a resumed connection
+	 * @param game id spectators watch the game with, 0 if it can not be
+	 * watched
+	 */
+	public WelcomeMessage(int color, long token, boolean refereed, int received, long game)
+	{
+		this.color = color;
+		this.token = token;
+		this.refereed = refereed;
+		this.received = received;
+		this.game = game;
+	}
+
+	/**
+	 * Gets the color the client plays.
+	 * @return {@link Piece#BLUE} or {@link Piece#RED}, or {@link Piece#NONE}
+	 * for a spectator
+	 */
+	public int getColor()
+	{
+		return color;
+	}
+
+	/**
+	 * Gets the token for the client's chat socket.
+	 * @return token
+	 */
+	public long getToken()
+	{
+		return token;
+	}
+
+	/**
+	 * Indicates if the server resolves the moves of the game.
+	 * @return true for a game hosted by a {@link GameServer}
+	 */
+	public boolean isRefereed()
+	{
+		return refereed;
+	}
+
+	/**
+	 * Gets the number of game messages the server has received from the
+	 * client.
+	 * @return count, 0 for a new connection
+	 */
+	public int getReceived()
+	{
+		return received;
+	}
+
+	/**
+	 * Gets the id spectators watch the game with.
+	 * @return game id, 0 if the game can not be watched
+	 */
+	public long getGame()
+	{
+		return game;
+	}
+}
@@ -0,0 +1,580 @@
+package stratego;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.charset.StandardCharsets;
+
+import stratego.Piece.PieceType;
+
+/**
+ * This class defines the binary format used by {@link StrategoNetwork} to
+ * send {@link MoveMessage}, {@link SinglePositionMessage},
+ * {@link BoardSetupMessage}, {@link ChatMessage}, {@link PingMessage} and
+ * {@link SavedGameMessage} objects, and by {@link GameServer}.
+ *
+ * <p>Each connection starts with a handshake of a two byte magic number and a
+ * one byte protocol version, written by both sides. A connection whose peer
+ * sends a different magic number or version is refused. The client then
+ * sends a {@link JoinMessage} on each socket; the game socket is answered
+ * with a {@link WelcomeMessage}. A client may carry the game and the chat
+ * on one shared socket instead of two.</p>
+ *
+ * <p>After the handshake every message is one frame: an unsigned two byte
+ * length, then that many bytes holding a one byte frame type and the
+ * payload. The frame type tags the channel of a frame on a shared socket:
+ * chat frames are on the chat channel, all others on the game channel.</p>
+ * <ul>
+ *   <li>move: source square, destination square, attacker, defender,
+ *       battle result. A frame is 8 bytes.</li>
+ *   <li>position: square (255 for the game over message), piece,
+ *       remove/place piece, flags (bit 0: removing). A frame is 7 bytes.
+ *       Only the game over message is sent this way.</li>
+ *   <li>setup: color, then the 40 setup slots row by row as type ordinals,
+ *       two per byte. A null slot is sent as {@link PieceType#EMPTY}.</li>
+ *   <li>chat: color, then the text in UTF-8.</li>
+ *   <li>join: 0 for the game socket, 1 for the chat socket, 2 for a
+ *       shared socket or 3 for a spectator, an eight byte token (the game
+ *       id for a spectator), a four byte count of game messages received
+ *       (for a resumed connection), then the player name in UTF-8, empty
+ *       unless the socket joins the lobby.</li>
+ *   <li>welcome: color (0 for a spectator), an eight byte token, flags
+ *       (bit 0: the server referees the game), a four byte count of game
+ *       messages the server has received (for a resumed connection), then
+ *       the eight byte game id spectators join with.</li>
+ *   <li>ping: flags (bit 0: the reply to a ping), then the eight byte
+ *       stamp of the ping. A frame is 12 bytes.</li>
+ *   <li>saved game: the eight byte hash of the restored position. A frame
+ *       is 11 bytes.</li>
+ * </ul>
+ * <p>Squares are <code>row * 10 + col</code>. Pieces are sent as
+ * {@link PieceCode} values, the type in the low nibble, or 128 for null.</p>
+ *
+ * <p>Frames are checked completely while decoding, so a malformed or
+ * hostile frame gives a {@link ProtocolException} and never an object in an
+ * invalid state.</p>
+ */
+public final class WireProtocol {
+
+    public static final int MAGIC = 0x5354; // "ST"
+    public static final int VERSION = 10;
+
+    public static final int GAME_CHANNEL = 0;
+    public static final int CHAT_CHANNEL = 1;
+
+    public static final int MAX_FRAME_LENGTH = 0xFFFF;
+
+    static final byte POSITION = 1;
+    static final byte SETUP = 2;
+    static final byte CHAT = 3;
+    static final byte MOVE = 4;
+    static final byte JOIN = 5;
+    static final byte WELCOME = 6;
+    static final byte PING = 7;
+    static final byte SAVED = 8;
+
+    private static final int GAME_OVER_SQUARE = 0xFF;
+    private static final int NO_PIECE = 0x80;
+    private static final int REMOVING = 0x01;
+
+    private static final int MOVE_LENGTH = 6;
+    private static final int SESSION_LENGTH = 14;
+    private static final int WELCOME_LENGTH = 23;
+    private static final int REFEREED = 0x01;
+    private static final int PING_LENGTH = 10;
+    private static final int REPLY = 0x01;
+    private static final int SAVED_LENGTH = 9;
+    private static final int POSITION_LENGTH = 5;
+    private static final int SETUP_ROWS = 4;
+    private static final int SETUP_COLUMNS = 10;
+    private static final int SETUP_LENGTH = 2 + SETUP_ROWS * SETUP_COLUMNS / 2;
+
+    private static final PieceType[] TYPES = PieceType.values();
+
+    /**
+     * Not instantiable.
+     */
+    private WireProtocol() {}
+
+    /**
+     * <ul><b><i>writeHandshake</i></b></ul>
+     * <ul><ul><p><code>public static void writeHandshake (DataOutputStream out) </code></p></ul>
+     *
+     * Writes the magic number and protocol version and flushes the stream.
+     *
+     * @param out - the stream of a new connection
+     * @throws IOException if the write fails
+     */
+    public static void writeHandshake(DataOutputStream out) throws IOException {
+        out.writeShort(MAGIC);
+        out.writeByte(VERSION);
+        out.flush();
+    }
+
+    /**
+     * <ul><b><i>readHandshake</i></b></ul>
+     * <ul><ul><p><code>public static void readHandshake (DataInputStream in) </code></p></ul>
+     *
+     * Reads the peer's magic number and protocol version.
+     *
+     * @param in - the stream of a new connection
+     * @throws ProtocolException if the peer does not speak this version
+     * @throws IOException if the read fails
+     */
+    public static void readHandshake(DataInputStream in) throws IOException {
+        checkHandshake(in.readUnsignedShort(), in.readUnsignedByte());
+    }
+
+    /**
+     * <ul><b><i>handshake</i></b></ul>
+     * <ul><ul><p><code>public static byte[] handshake () </code></p></ul>
+     *
+     * Gets the bytes of the handshake, for writers without a stream.
+     *
+     * @return magic number and protocol version
+     */
+    public static byte[] handshake() {
+        return new byte[] { (byte) (MAGIC >>> 8), (byte) MAGIC, (byte) VERSION };
+    }
+
+    /**
+     * <ul><b><i>checkHandshake</i></b></ul>
+     * <ul><ul><p><code>public static void checkHandshake (int magic, int version) </code></p></ul>
+     *
+     * Checks the peer's magic number and protocol version.
+     *
+     * @param magic - the unsigned two byte magic number read
+     * @param version - the unsigned one byte version read
+     * @throws ProtocolException if the peer does not speak this version
+     */
+    public static void checkHandshake(int magic, int version) throws ProtocolException {
+        if(magic != MAGIC) {
+            throw new ProtocolException("not a Stratego connection");
+        }
+        if(version != VERSION) {
+            throw new ProtocolException("unsupported protocol version " + version);
+        }
+    }
+
+    /**
+     * <ul><b><i>channel</i></b></ul>
+     * <ul><ul><p><code>public static int channel (Object message) </code></p></ul>
+     *
+     * Gets the channel a message travels on.
+     *
+     * @param message - a message
+     * @return {@link #CHAT_CHANNEL} for a {@link ChatMessage},
+     *         {@link #GAME_CHANNEL} otherwise
+     */
+    public static int channel(Object message) {
+        return (message instanceof ChatMessage) ? CHAT_CHANNEL : GAME_CHANNEL;
+    }
+
+    /**
+     * <ul><b><i>write</i></b></ul>
+     * <ul><ul><p><code>public static void write (DataOutputStream out, Object message) </code></p></ul>
+     *
+     * Writes one message as a frame and flushes the stream.
+     *
+     * @param out - the stream to write to
+     * @param message - a {@link MoveMessage}, {@link SinglePositionMessage},
+     *                  {@link BoardSetupMessage}, {@link JoinMessage},
+     *                  {@link WelcomeMessage}, {@link PingMessage},
+     *                  {@link SavedGameMessage} or {@link ChatMessage}
+     * @throws IOException if the write fails
+     */
+    public static void write(DataOutputStream out, Object message) throws IOException {
+        out.write(encode(message));
+        out.flush();
+    }
+
+    /**
+     * <ul><b><i>read</i></b></ul>
+     * <ul><ul><p><code>public static Object read (DataInputStream in) </code></p></ul>
+     *
+     * Reads one frame and decodes it.
+     *
+     * @param in - the stream to read from
+     * @return the message
+     * @throws ProtocolException if the frame is malformed
+     * @throws IOException if the read fails or the stream ends
+     */
+    public static Object read(DataInputStream in) throws IOException {
+        int length = in.readUnsignedShort();
+        byte[] frame = new byte[length];
+        in.readFully(frame);
+        return decode(frame, 0, length);
+    }
+
+    /**
+     * <ul><b><i>encode</i></b></ul>
+     * <ul><ul><p><code>public static byte[] encode (Object message) </code></p></ul>
+     *
+     * Encodes one message as a complete frame, length included.
+     *
+     * @param message - a {@link MoveMessage}, {@link SinglePositionMessage},
+     *                  {@link BoardSetupMessage}, {@link JoinMessage},
+     *                  {@link WelcomeMessage}, {@link PingMessage},
+     *                  {@link SavedGameMessage} or {@link ChatMessage}
+     * @return the frame
+     * @throws IllegalArgumentException if the message can not be sent
+     */
+    public static byte[] encode(Object message) {
+        if(message instanceof MoveMessage) {
+            MoveMessage msg = (MoveMessage) message;
+            byte[] frame = frame(MOVE, MOVE_LENGTH);
+            frame[3] = (byte) square(msg.getSrcRow(), msg.getSrcCol());
+            frame[4] = (byte) square(msg.getDstRow(), msg.getDstCol());
+            frame[5] = (byte) pieceCode(msg.getAttacker());
+            frame[6] = (byte) pieceCode(msg.getDefender());
+            frame[7] = (byte) msg.getResult();
+            return frame;
+        }else if(message instanceof SinglePositionMessage) {
+            SinglePositionMessage msg = (SinglePositionMessage) message;
+            byte[] frame = frame(POSITION, POSITION_LENGTH);
+            frame[3] = (byte) square(msg.getRow(), msg.getCol());
+            frame[4] = (byte) pieceCode(msg.getPiece());
+            frame[5] = (byte) pieceCode(msg.getPieceToRemovePlace());
+            frame[6] = (byte) (msg.isRemoved() ? REMOVING : 0);
+            return frame;
+        }else if(message instanceof BoardSetupMessage) {
+            BoardSetupMessage msg = (BoardSetupMessage) message;
+            PieceType[][] setup = msg.getInitialSetup();
+            if(setup == null || setup.length != SETUP_ROWS) {
+                throw new IllegalArgumentException("setup must have " + SETUP_ROWS + " rows");
+            }
+            byte[] frame = frame(SETUP, SETUP_LENGTH);
+            frame[3] = (byte) msg.getColor();
+            for(int row = 0; row < SETUP_ROWS; row++) {
+                if(setup[row] == null || setup[row].length != SETUP_COLUMNS) {
+                    throw new IllegalArgumentException("setup must have " + SETUP_COLUMNS + " columns");
+                }
+                for(int col = 0; col < SETUP_COLUMNS; col++) {
+                    int slot = row * SETUP_COLUMNS + col;
+                    int ordinal = (setup[row][col] == null) ? 0 : setup[row][col].ordinal();
+                    frame[4 + slot / 2] |= (byte) (ordinal << (slot % 2 == 0 ? 4 : 0));
+                }
+            }
+            return frame;
+        }else if(message instanceof JoinMessage) {
+            JoinMessage msg = (JoinMessage) message;
+            byte[] name = (msg.getName() == null) ? new byte[0] : msg.getName().getBytes(StandardCharsets.UTF_8);
+            if(name.length > JoinMessage.MAX_NAME_BYTES) {
+                throw new IllegalArgumentException("name too long: " + name.length + " bytes");
+            }
+            byte[] frame = frame(JOIN, SESSION_LENGTH + name.length);
+            frame[3] = (byte) msg.getRole();
+            putLong(frame, 4, msg.getToken());
+            putInt(frame, 12, msg.getReceived());
+            System.arraycopy(name, 0, frame, 2 + SESSION_LENGTH, name.length);
+            return frame;
+        }else if(message instanceof WelcomeMessage) {
+            WelcomeMessage msg = (WelcomeMessage) message;
+            byte[] frame = frame(WELCOME, WELCOME_LENGTH);
+            frame[3] = (byte) msg.getColor();
+            putLong(frame, 4, msg.getToken());
+            frame[12] = (byte) (msg.isRefereed() ? REFEREED : 0);
+            putInt(frame, 13, msg.getReceived());
+            putLong(frame, 17, msg.getGame());
+            return frame;
+        }else if(message instanceof PingMessage) {
+            PingMessage msg = (PingMessage) message;
+            byte[] frame = frame(PING, PING_LENGTH);
+            frame[3] = (byte) (msg.isReply() ? REPLY : 0);
+            putLong(frame, 4, msg.getStamp());
+            return frame;
+        }else if(message instanceof SavedGameMessage) {
+            byte[] frame = frame(SAVED, SAVED_LENGTH);
+            putLong(frame, 3, ((SavedGameMessage) message).getHash());
+            return frame;
+        }else if(message instanceof ChatMessage) {
+            ChatMessage msg = (ChatMessage) message;
+            String text = (msg.getMessage() == null) ? "" : msg.getMessage();
+            byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+            byte[] frame = frame(CHAT, 2 + utf8.length);
+            frame[3] = (byte) msg.getColor();
+            System.arraycopy(utf8, 0, frame, 4, utf8.length);
+            return frame;
+        }
+        throw new IllegalArgumentException("not a Stratego message: " + message);
+    }
+
+    /**
+     * <ul><b><i>decode</i></b></ul>
+     * <ul><ul><p><code>public static Object decode (byte[] buffer, int offset, int length) </code></p></ul>
+     *
+     * Decodes the body of one frame, the bytes after the length.
+     *
+     * @param buffer - bytes holding the frame body
+     * @param offset - index of the frame type
+     * @param length - length of the frame body
+     * @return the message
+     * @throws ProtocolException if the frame is malformed
+     */
+    public static Object decode(byte[] buffer, int offset, int length) throws ProtocolException {
+        if(length < 1) {
+            throw new ProtocolException("empty frame");
+        }
+        int type = buffer[offset];
+        int payload = offset + 1;
+        int payloadLength = length - 1;
+
+        switch(type) {
+        case MOVE:
+            expectLength(payloadLength, MOVE_LENGTH - 1, "move");
+            int from = buffer[payload] & 0xFF;
+            int to = buffer[payload + 1] & 0xFF;
+            int result = buffer[payload + 4] & 0xFF;
+            if(from >= StrategoModel.SQUARES || to >= StrategoModel.SQUARES || from == to) {
+                throw new ProtocolException("bad move " + from + " to " + to);
+            }
+            if(result > 2) {
+                throw new ProtocolException("bad battle result " + result);
+            }
+            return new MoveMessage(from, to, piece(buffer[payload + 2]), piece(buffer[payload + 3]), result);
+
+        case POSITION:
+            expectLength(payloadLength, POSITION_LENGTH - 1, "position");
+            int square = buffer[payload] & 0xFF;
+            int flags = buffer[payload + 3] & 0xFF;
+            if((flags & ~REMOVING) != 0) {
+                throw new ProtocolException("bad position flags " + flags);
+            }
+            Piece piece = piece(buffer[payload + 1]);
+            Piece removePlace = piece(buffer[payload + 2]);
+            if(square == GAME_OVER_SQUARE) {
+                return new SinglePositionMessage(-1, -1, piece, removePlace, flags == REMOVING);
+            }
+            if(square >= StrategoModel.SQUARES) {
+                throw new ProtocolException("bad square " + square);
+            }
+            return new SinglePositionMessage(square / StrategoModel.COLUMNS, square % StrategoModel.COLUMNS,
+                    piece, removePlace, flags == REMOVING);
+
+        case SETUP:
+            expectLength(payloadLength, SETUP_LENGTH - 1, "setup");
+            int setupColor = color(buffer[payload]);
+            PieceType[][] setup = new PieceType[SETUP_ROWS][SETUP_COLUMNS];
+            for(int slot = 0; slot < SETUP_ROWS * SETUP_COLUMNS; slot++) {
+                int packed = buffer[payload + 1 + slot / 2] & 0xFF;
+                int ordinal = (slot % 2 == 0) ? packed >>> 4 : packed & 0x0F;
+                if(ordinal >= TYPES.length) {
+                    throw new ProtocolException("bad piece type " + ordinal);
+                }
+                setup[slot / SETUP_COLUMNS][slot % SETUP_COLUMNS] = (ordinal == 0) ? null : TYPES[ordinal];
+            }
+            return new BoardSetupMessage(setupColor, setup);
+
+        case CHAT:
+            if(payloadLength < 1) {
+                throw new ProtocolException("short chat frame");
+            }
+            int chatColor = color(buffer[payload]);
+            String text = new String(buffer, payload + 1, payloadLength - 1, StandardCharsets.UTF_8);
+            return new ChatMessage(text, chatColor);
+
+        case JOIN:
+            int nameLength = payloadLength - (SESSION_LENGTH - 1);
+            if(nameLength < 0 || nameLength > JoinMessage.MAX_NAME_BYTES) {
+                throw new ProtocolException("bad join frame length " + payloadLength);
+            }
+            int role = buffer[payload];
+            if(role != JoinMessage.GAME && role != JoinMessage.CHAT && role != JoinMessage.SHARED
+                    && role != JoinMessage.WATCH) {
+                throw new ProtocolException("bad join role " + role);
+            }
+            int joinReceived = getInt(buffer, payload + 9);
+            if(joinReceived < 0) {
+                throw new ProtocolException("bad join count " + joinReceived);
+            }
+            long joinToken = getLong(buffer, payload + 1);
+            if(nameLength == 0) {
+                return new JoinMessage(role, joinToken, joinReceived);
+            }
+            if((role != JoinMessage.GAME && role != JoinMessage.SHARED) || joinToken != 0 || joinReceived != 0) {
+                throw new ProtocolException("name on a join that is not for the lobby");
+            }
+            return new JoinMessage(role, new String(buffer, payload + SESSION_LENGTH - 1, nameLength, StandardCharsets.UTF_8));
+
+        case WELCOME:
+            expectLength(payloadLength, WELCOME_LENGTH - 1, "welcome");
+            int welcomeFlags = buffer[payload + 9] & 0xFF;
+            if((welcomeFlags & ~REFEREED) != 0) {
+                throw new ProtocolException("bad welcome flags " + welcomeFlags);
+            }
+            int welcomeReceived = getInt(buffer, payload + 10);
+            if(welcomeReceived < 0) {
+                throw new ProtocolException("bad welcome count " + welcomeReceived);
+            }
+            int welcomeColor = (buffer[payload] == Piece.NONE) ? Piece.NONE : color(buffer[payload]);
+            return new WelcomeMessage(welcomeColor, getLong(buffer, payload + 1),
+                    welcomeFlags == REFEREED, welcomeReceived, getLong(buffer, payload + 14));
+
+        case PING:
+            expectLength(payloadLength, PING_LENGTH - 1, "ping");
+            int pingFlags = buffer[payload] & 0xFF;
+            if((pingFlags & ~REPLY) != 0) {
+                throw new ProtocolException("bad ping flags " + pingFlags);
+            }
+            return new PingMessage(getLong(buffer, payload + 1), pingFlags == REPLY);
+
+        case SAVED:
+            expectLength(payloadLength, SAVED_LENGTH - 1, "saved game");
+            return new SavedGameMessage(getLong(buffer, payload));
+
+        default:
+            throw new ProtocolException("unknown frame type " + type);
+        }
+    }
+
+    /**
+     * Allocates a frame and fills in its length and type.
+     *
+     * @param type - frame type
+     * @param bodyLength - length of the type and payload
+     * @return frame with an empty payload
+     */
+    private static byte[] frame(byte type, int bodyLength) {
+        if(bodyLength > MAX_FRAME_LENGTH) {
+            throw new IllegalArgumentException("message too long: " + bodyLength + " bytes");
+        }
+        byte[] frame = new byte[2 + bodyLength];
+        frame[0] = (byte) (bodyLength >>> 8);
+        frame[1] = (byte) bodyLength;
+        frame[2] = type;
+        return frame;
+    }
+
+    /**
+     * Writes a big-endian long.
+     *
+     * @param buffer - destination
+     * @param offset - index of the first byte
+     * @param value - value to write
+     */
+    private static void putLong(byte[] buffer, int offset, long value) {
+        for(int i = 7; i >= 0; i--) {
+            buffer[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    /**
+     * Writes a big-endian int.
+     *
+     * @param buffer - destination
+     * @param offset - index of the first byte
+     * @param value - value to write
+     */
+    private static void putInt(byte[] buffer, int offset, int value) {
+        for(int i = 3; i >= 0; i--) {
+            buffer[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    /**
+     * Reads a big-endian int.
+     *
+     * @param buffer - source
+     * @param offset - index of the first byte
+     * @return value read
+     */
+    private static int getInt(byte[] buffer, int offset) {
+        int value = 0;
+        for(int i = 0; i < 4; i++) {
+            value = value << 8 | (buffer[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    /**
+     * Reads a big-endian long.
+     *
+     * @param buffer - source
+     * @param offset - index of the first byte
+     * @return value read
+     */
+    private static long getLong(byte[] buffer, int offset) {
+        long value = 0;
+        for(int i = 0; i < 8; i++) {
+            value = value << 8 | (buffer[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    /**
+     * Gets the square index sent for a position.
+     *
+     * @param row - row of the position, -1 for game over
+     * @param col - column of the position, -1 for game over
+     * @return square index
+     */
+    private static int square(int row, int col) {
+        if(row == -1 && col == -1) {
+            return GAME_OVER_SQUARE;
+        }
+        if(row < 0 || row >= StrategoModel.ROWS || col < 0 || col >= StrategoModel.COLUMNS) {
+            throw new IllegalArgumentException("position off the board: " + row + ", " + col);
+        }
+        return row * StrategoModel.COLUMNS + col;
+    }
+
+    /**
+     * Gets the byte sent for a piece.
+     *
+     * @param piece - piece, may be null
+     * @return square code of the piece, or {@link #NO_PIECE}
+     */
+    private static int pieceCode(Piece piece) {
+        return (piece == null) ? NO_PIECE : PieceCode.encode(piece) & 0xFF;
+    }
+
+    /**
+     * Decodes a piece byte to the shared {@link Piece}.
+     *
+     * @param code - byte read
+     * @return piece, or null
+     * @throws ProtocolException if the byte is not a piece
+     */
+    private static Piece piece(byte code) throws ProtocolException {
+        int value = code & 0xFF;
+        if(value == NO_PIECE) {
+            return null;
+        }
+        if((value & ~0x3F) != 0 || PieceCode.typeOrdinal(code) >= TYPES.length
+                || PieceCode.color(code) > Piece.RED) {
+            throw new ProtocolException("bad piece " + value);
+        }
+        return PieceCode.toPiece(code);
+    }
+
+    /**
+     * Decodes a player color byte.
+     *
+     * @param color - byte read
+     * @return {@link Piece#BLUE} or {@link Piece#RED}
+     * @throws ProtocolException if the byte is not a player color
+     */
+    private static int color(byte color) throws ProtocolException {
+        if(color != Piece.BLUE && color != Piece.RED) {
+            throw new ProtocolException("bad color " + color);
+        }
+        return color;
+    }
+
+    /**
+     * Checks the payload length of a fixed size frame.
+     *
+     * @param actual - payload length read
+     * @param expected - payload length of the frame type
+     * @param name - frame type name for the error message
+     * @throws ProtocolException if the lengths differ
+     */
+    private static void expectLength(int actual, int expected, String name) throws ProtocolException {
+        if(actual != expected) {
+            throw new ProtocolException("bad " + name + " frame length " + actual);
+        }
+    }
+}
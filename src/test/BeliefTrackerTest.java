@@ -0,0 +1,129 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import stratego.BeliefTracker;
+import stratego.BoardSetupMessage;
+import stratego.MoveGenerator;
+import stratego.MoveMessage;
+import stratego.Piece;
+import stratego.Piece.PieceType;
+import stratego.StrategoModel;
+
+public class BeliefTrackerTest {
+
+	private static final double DELTA = 1e-9;
+	private static final Piece EMPTY = Piece.of(PieceType.EMPTY, Piece.NONE);
+
+	/**
+	 * Blue setup: back row bombs and flag first, then the rest in enum order.
+	 */
+	private PieceType[][] blueSetup() {
+		PieceType[] order = { PieceType.FLAG, PieceType.BOMB, PieceType.MARSHAL, PieceType.GENERAL,
+				PieceType.COLONEL, PieceType.MAJOR, PieceType.CAPTAIN, PieceType.LIEUTENANT,
+				PieceType.SERGEANT, PieceType.MINER, PieceType.SCOUT, PieceType.SPY };
+		int[] counts = { 1, 6, 1, 1, 2, 3, 4, 4, 4, 5, 8, 1 };
+		PieceType[][] grid = new PieceType[4][10];
+		int square = 0;
+		for (int i = 0; i < order.length; i++)
+			for (int n = 0; n < counts[i]; n++, square++)
+				grid[square / 10][square % 10] = order[i];
+		return grid;
+	}
+
+	private Piece piece(PieceType type, int color) {
+		Piece piece = new Piece(type);
+		piece.setColor(color);
+		return piece;
+	}
+
+	private double total(BeliefTracker beliefs, int square) {
+		double sum = 0;
+		for (PieceType type : PieceType.values())
+			sum += beliefs.probability(square, type);
+		return sum;
+	}
+
+	@Test
+	public void movedPieceTest() {
+		BeliefTracker beliefs = new BeliefTracker(Piece.RED);
+		beliefs.update(null, new BoardSetupMessage(Piece.BLUE, blueSetup()));
+
+		// hidden blue pieces: a scout at (3, 8) and the flag at (0, 0)
+		assertEquals(beliefs.probability(38, PieceType.BOMB), 6.0 / 40, DELTA);
+		assertEquals(beliefs.probability(0, PieceType.SCOUT), 8.0 / 40, DELTA);
+		assertEquals(total(beliefs, 38), 1.0, DELTA);
+		assertEquals(beliefs.probability(45, PieceType.SCOUT), 0.0, DELTA); // empty square
+
+		// the scout steps forward one square: it moved, but is not revealed
+		beliefs.update(null, new MoveMessage(38, 48, piece(PieceType.SCOUT, Piece.BLUE), EMPTY, 1));
+		assertTrue(beliefs.hasMoved(48));
+		assertFalse(beliefs.isRevealed(48));
+		assertEquals(beliefs.probability(48, PieceType.BOMB), 0.0, DELTA);
+		assertEquals(beliefs.probability(48, PieceType.FLAG), 0.0, DELTA);
+		assertEquals(beliefs.probability(48, PieceType.SCOUT), 8.0 / 33, DELTA);
+		assertEquals(total(beliefs, 48), 1.0, DELTA);
+
+		// unmoved pieces are now more likely to be bombs
+		assertEquals(beliefs.probability(0, PieceType.BOMB), 6.0 / 39, DELTA);
+		assertEquals(total(beliefs, 0), 1.0, DELTA);
+	}
+
+	@Test
+	public void battleRevealTest() {
+		BeliefTracker beliefs = new BeliefTracker(Piece.RED);
+		beliefs.update(null, new BoardSetupMessage(Piece.BLUE, blueSetup()));
+
+		assertEquals(beliefs.getUnknownCount(PieceType.MINER), 5);
+
+		// red general attacks the blue miner at (3, 0) and wins
+		beliefs.update(null, new MoveMessage(40, 30, piece(PieceType.GENERAL, Piece.RED),
+				piece(PieceType.MINER, Piece.BLUE), 1));
+		assertEquals(beliefs.getUnknownCount(PieceType.MINER), 4);
+		assertEquals(beliefs.probability(30, PieceType.MINER), 0.0, DELTA); // red piece now
+
+		// blue scout slides from (3, 8) to (5, 8): revealed as a scout
+		beliefs.update(null, new MoveMessage(38, 58, piece(PieceType.SCOUT, Piece.BLUE), EMPTY, 1));
+		assertTrue(beliefs.isRevealed(58));
+		assertEquals(beliefs.probability(58, PieceType.SCOUT), 1.0, DELTA);
+		assertEquals(beliefs.getUnknownCount(PieceType.SCOUT), 7);
+	}
+
+	@Test
+	public void onMoveTest() {
+		StrategoModel model = new StrategoModel();
+		model.setBoard(blueSetup(), Piece.BLUE, false);
+		BeliefTracker beliefs = new BeliefTracker(Piece.RED);
+		beliefs.reset(model);
+		assertEquals(beliefs.getUnknownCount(PieceType.BOMB), 6);
+
+		// the blue miner at (3, 0) steps forward
+		byte attacker = model.getSquare(30);
+		byte defender = model.getSquare(40);
+		int result = model.makeMove(MoveGenerator.encode(30, 40));
+		beliefs.onMove(30, 40, attacker, defender, result);
+		assertTrue(beliefs.hasMoved(40));
+		assertFalse(beliefs.hasMoved(30));
+		assertEquals(beliefs.probability(40, PieceType.BOMB), 0.0, DELTA);
+		assertEquals(total(beliefs, 40), 1.0, DELTA);
+	}
+
+	@Test
+	public void tooManyPiecesTest() {
+		BeliefTracker beliefs = new BeliefTracker(Piece.RED);
+		BoardSetupMessage setup = new BoardSetupMessage(Piece.BLUE, blueSetup());
+		beliefs.update(null, setup);
+		beliefs.update(null, setup);
+
+		// a third army does not fit on the board
+		assertThrows(IllegalStateException.class, () -> beliefs.update(null, setup));
+		beliefs.clear();
+		beliefs.update(null, setup);
+		assertEquals(total(beliefs, 0), 1.0, DELTA);
+	}
+}
@@ -0,0 +1,201 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+import stratego.BoardSetupMessage;
+import stratego.GameArchive;
+import stratego.GameLog;
+import stratego.MoveGenerator;
+import stratego.MoveMessage;
+import stratego.Piece;
+import stratego.Piece.PieceType;
+import stratego.PieceCode;
+import stratego.SinglePositionMessage;
+import stratego.StrategoController;
+import stratego.StrategoModel;
+import stratego.WireProtocol;
+
+public class GameArchiveTest {
+
+	private static final byte[] GAME_OVER = WireProtocol.encode(new SinglePositionMessage(-1, -1, null));
+
+	/**
+	 * A random game logged as a GameServer would, remembering the hash of
+	 * every position.
+	 */
+	static final class Played {
+		final long id;
+		final StrategoModel model = new StrategoModel();
+		final List<Long> hashes = new ArrayList<Long>();
+		final SplittableRandom random;
+		final int[] moves = new int[MoveGenerator.MAX_MOVES];
+
+		Played(long id, GameLog log, SplittableRandom random) {
+			this.id = id;
+			this.random = random;
+			StrategoController setups = new StrategoController(Runnable::run);
+			for (int color = Piece.BLUE; color <= Piece.RED; color++) {
+				setups.randomSetup(color, random);
+				BoardSetupMessage setup = new BoardSetupMessage(color, setups.completeSetup(color));
+				model.setBoard(setup.getInitialSetup(), color, false);
+				log.append(id, WireProtocol.encode(setup));
+			}
+			hashes.add(model.getHash());
+		}
+
+		// false once the game is over
+		boolean move(GameLog log) {
+			int count = MoveGenerator.generate(model, model.getSideToMove(), moves);
+			if (count == 0 || model.winner() != Piece.NONE)
+				return false;
+			int move = moves[random.nextInt(count)];
+			int from = MoveGenerator.from(move);
+			int to = MoveGenerator.to(move);
+			Piece attacker = PieceCode.toPiece(model.getSquare(from));
+			Piece defender = PieceCode.toPiece(model.getSquare(to));
+			int result = model.makeMove(move);
+			log.append(id, WireProtocol.encode(new MoveMessage(from, to, attacker, defender, result)));
+			hashes.add(model.getHash());
+			return true;
+		}
+
+		// plays on for up to some plies, or until the game is over
+		void play(GameLog log, int plies) {
+			for (int ply = 0; ply < plies; ply++)
+				if (!move(log))
+					return;
+		}
+	}
+
+	@Test
+	public void replayTest() throws IOException {
+		Path log = Files.createTempFile("games", ".log");
+		Path archive = Files.createTempFile("games", ".archive");
+		try {
+			Files.delete(log);
+			SplittableRandom random = new SplittableRandom(11);
+			List<Played> games = new ArrayList<Played>();
+			try (GameLog out = new GameLog(log)) {
+				for (int i = 0; i < 6; i++)
+					games.add(new Played(random.nextLong(), out, random));
+				// interleaved, as a server hosting them at once logs them
+				boolean moved = true;
+				for (int ply = 0; ply < 400 && moved; ply++) {
+					moved = false;
+					for (Played game : games)
+						moved |= game.move(out);
+				}
+				// the last game is still being played when the log ends
+				for (int i = 0; i < games.size() - 1; i++)
+					out.append(games.get(i).id, GAME_OVER);
+				// one that never started is left out
+				out.append(-1L, GAME_OVER);
+			}
+
+			assertEquals(GameArchive.build(log, archive), games.size());
+			GameArchive read = new GameArchive(archive);
+			assertEquals(read.getGameCount(), games.size());
+			assertEquals(read.find(-1L), -1);
+			StrategoModel model = new StrategoModel();
+			for (int i = 0; i < games.size(); i++) {
+				Played played = games.get(i);
+				int game = read.find(played.id);
+				assertTrue(game >= 0);
+				assertEquals(read.getGameId(game), played.id);
+				assertEquals(read.getPlyCount(game), played.hashes.size() - 1);
+				assertEquals(read.getWinner(game), played.model.winner());
+				assertEquals(read.isFinished(game), i < games.size() - 1);
+
+				// any ply, in any order
+				for (int ply = played.hashes.size() - 1; ply >= 0; ply -= 7) {
+					read.replay(game, ply, model);
+					assertEquals(model.getHash(), (long) played.hashes.get(ply));
+				}
+				read.replay(game, read.getPlyCount(game), model);
+				for (PieceType type : PieceType.values())
+					assertEquals(model.getPieceCount(Piece.RED, type), played.model.getPieceCount(Piece.RED, type));
+			}
+			assertThrows(IndexOutOfBoundsException.class, () -> read.replay(0, read.getPlyCount(0) + 1, model));
+			assertThrows(IndexOutOfBoundsException.class, () -> read.getMove(read.getGameCount(), 0));
+
+			// a scan visits every ply of every game in index order
+			long[] visited = new long[2];
+			read.scan(new StrategoModel(), (game, ply, move, result, position) -> {
+				assertEquals(move, read.getMove(game, ply));
+				Played played = null;
+				for (Played p : games)
+					if (p.id == read.getGameId(game))
+						played = p;
+				assertEquals(position.getHash(), (long) played.hashes.get(ply + 1));
+				visited[0]++;
+				visited[1] = game;
+			});
+			long plies = 0;
+			for (Played game : games)
+				plies += game.hashes.size() - 1;
+			assertEquals(visited[0], plies);
+			assertEquals(visited[1], games.size() - 1);
+		} finally {
+			Files.deleteIfExists(log);
+			Files.deleteIfExists(archive);
+		}
+	}
+
+	@Test
+	public void mismatchTest() throws IOException {
+		Path log = Files.createTempFile("games", ".log");
+		Path archive = Files.createTempFile("games", ".archive");
+		try {
+			Files.delete(log);
+			SplittableRandom random = new SplittableRandom(3);
+			StrategoController setups = new StrategoController(Runnable::run);
+			try (GameLog out = new GameLog(log)) {
+				for (int color = Piece.BLUE; color <= Piece.RED; color++) {
+					setups.randomSetup(color, random);
+					out.append(5L, WireProtocol.encode(new BoardSetupMessage(color, setups.completeSetup(color))));
+				}
+				// a move logged with a result the setups do not give
+				Piece empty = Piece.of(PieceType.EMPTY, Piece.NONE);
+				out.append(5L, WireProtocol.encode(new MoveMessage(30, 40, null, empty, 0)));
+			}
+			assertThrows(ProtocolException.class, () -> GameArchive.build(log, archive));
+
+			Files.write(archive, new byte[] { 1, 2, 3 });
+			assertThrows(IOException.class, () -> new GameArchive(archive));
+		} finally {
+			Files.deleteIfExists(log);
+			Files.deleteIfExists(archive);
+		}
+	}
+
+	@Test
+	public void emptyTest() throws IOException {
+		Path log = Files.createTempFile("games", ".log");
+		Path archive = Files.createTempFile("games", ".archive");
+		try {
+			Files.delete(log);
+			new GameLog(log).close();
+			assertEquals(GameArchive.build(log, archive), 0);
+			GameArchive read = new GameArchive(archive);
+			assertEquals(read.getGameCount(), 0);
+			assertEquals(read.find(1L), -1);
+			read.scan(new StrategoModel(), (game, ply, move, result, model) -> assertFalse(true));
+		} finally {
+			Files.deleteIfExists(log);
+			Files.deleteIfExists(archive);
+		}
+	}
+}
@@ -0,0 +1,152 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import stratego.BoardSetupMessage;
+import stratego.GameLog;
+import stratego.MoveMessage;
+import stratego.Piece;
+import stratego.Piece.PieceType;
+import stratego.WireProtocol;
+
+public class GameLogTest {
+
+	private static byte[] move(int from, int to) {
+		Piece scout = Piece.of(PieceType.SCOUT, Piece.RED);
+		Piece empty = Piece.of(PieceType.EMPTY, Piece.NONE);
+		return WireProtocol.encode(new MoveMessage(from, to, scout, empty, 1));
+	}
+
+	@Test
+	public void roundTripTest() throws IOException {
+		Path file = Files.createTempFile("games", ".log");
+		try {
+			Files.delete(file);
+			PieceType[][] setup = new PieceType[4][10];
+			for (PieceType[] row : setup)
+				Arrays.fill(row, PieceType.SERGEANT);
+			try (GameLog log = new GameLog(file)) {
+				log.append(7L, WireProtocol.encode(new BoardSetupMessage(Piece.RED, setup)));
+				log.append(-3L, move(60, 50));
+				log.sync();
+				assertEquals(log.getCommittedCount(), 2L);
+			}
+
+			// reopened, the log is appended to
+			try (GameLog log = new GameLog(file)) {
+				log.append(7L, move(61, 51));
+			}
+
+			List<Long> games = new ArrayList<Long>();
+			List<Object> messages = new ArrayList<Object>();
+			assertEquals(GameLog.read(file, (game, message) -> {
+				games.add(game);
+				messages.add(message);
+			}), 3L);
+			assertEquals(games, List.of(7L, -3L, 7L));
+			BoardSetupMessage read = (BoardSetupMessage) messages.get(0);
+			assertEquals(read.getColor(), Piece.RED);
+			assertEquals(read.getInitialSetup()[3][9], PieceType.SERGEANT);
+			assertEquals(((MoveMessage) messages.get(1)).getTo(), 50);
+			assertEquals(((MoveMessage) messages.get(2)).getFrom(), 61);
+			assertEquals(((MoveMessage) messages.get(2)).getAttacker(), Piece.of(PieceType.SCOUT, Piece.RED));
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	@Test
+	public void groupCommitTest() throws IOException, InterruptedException {
+		Path file = Files.createTempFile("games", ".log");
+		try {
+			Files.delete(file);
+			int threads = 8;
+			int moves = 2000;
+			try (GameLog log = new GameLog(file)) {
+				List<Thread> games = new ArrayList<Thread>();
+				for (int t = 0; t < threads; t++) {
+					long game = t;
+					Thread thread = new Thread(() -> {
+						for (int i = 0; i < moves; i++)
+							log.append(game, move(i % 100, (i + 1) % 100));
+					});
+					games.add(thread);
+					thread.start();
+				}
+				for (Thread thread : games)
+					thread.join();
+				log.sync();
+				assertEquals(log.getCommittedCount(), (long) threads * moves);
+				// the disk is waited for once per batch, not once per record
+				assertTrue(log.getBatchCount() < (long) threads * moves);
+			}
+
+			// each game's records are in the order it appended them
+			int[] next = new int[threads];
+			assertEquals(GameLog.read(file, (game, message) -> {
+				int i = next[(int) (long) game]++;
+				assertEquals(((MoveMessage) message).getFrom(), i % 100);
+			}), (long) threads * moves);
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	@Test
+	public void tornTest() throws IOException {
+		Path file = Files.createTempFile("games", ".log");
+		try {
+			Files.delete(file);
+			try (GameLog log = new GameLog(file)) {
+				log.append(1L, move(60, 50));
+				log.append(1L, move(30, 40));
+			}
+			long whole = Files.size(file);
+
+			// a crash cut the last record short
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+				channel.truncate(whole - 3);
+			}
+			assertEquals(GameLog.read(file, (game, message) -> {}), 1L);
+
+			// and one left garbage where a record would start
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+				channel.write(ByteBuffer.wrap(new byte[] { 0, 0, 0, 20, 1, 2, 3, 4, 5, 6 }), channel.size());
+			}
+			try (GameLog log = new GameLog(file)) {
+				log.append(2L, move(61, 51));
+			}
+			List<Long> games = new ArrayList<Long>();
+			assertEquals(GameLog.read(file, (game, message) -> games.add(game)), 2L);
+			assertEquals(games, List.of(1L, 2L));
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	@Test
+	public void notALogTest() throws IOException {
+		Path file = Files.createTempFile("games", ".log");
+		try {
+			Files.write(file, new byte[] { 'n', 'o', 't', ' ', 'a', ' ', 'l', 'o', 'g' });
+			assertThrows(IOException.class, () -> new GameLog(file));
+			assertThrows(IOException.class, () -> GameLog.read(file, (game, message) -> {}));
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+}
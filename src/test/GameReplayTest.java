@@ -0,0 +1,93 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+import stratego.GameArchive;
+import stratego.GameLog;
+import stratego.GameReplay;
+import stratego.StrategoModel;
+
+public class GameReplayTest {
+
+	private static long hash(byte[] squares) {
+		long hash = 17;
+		for (byte square : squares)
+			hash = hash * 31 + square;
+		return hash;
+	}
+
+	// the replay's position is the archive's at the same ply
+	private static void check(GameReplay replay, byte[] squares, long[] expected) {
+		int ply = replay.copySquares(squares);
+		assertEquals(hash(squares), expected[ply]);
+	}
+
+	@Test
+	public void seekTest() throws IOException {
+		Path log = Files.createTempFile("games", ".log");
+		Path archive = Files.createTempFile("games", ".archive");
+		try {
+			Files.delete(log);
+			try (GameLog out = new GameLog(log)) {
+				new GameArchiveTest.Played(42L, out, new SplittableRandom(5)).play(out, 300);
+			}
+			assertEquals(GameArchive.build(log, archive), 1);
+			GameArchive read = new GameArchive(archive);
+			int plies = read.getPlyCount(0);
+			assertTrue(plies > 2 * GameReplay.KEYFRAME_INTERVAL);
+
+			// the position at every ply, as the archive replays it
+			long[] expected = new long[plies + 1];
+			StrategoModel model = new StrategoModel();
+			byte[] squares = new byte[StrategoModel.SQUARES];
+			for (int ply = 0; ply <= plies; ply++) {
+				read.replay(0, ply, model);
+				for (int i = 0; i < squares.length; i++)
+					squares[i] = model.getSquare(i);
+				expected[ply] = hash(squares);
+			}
+
+			GameReplay replay = new GameReplay(read, 0);
+			assertEquals(replay.getPlyCount(), plies);
+			assertEquals(replay.copySquares(squares), 0);
+			assertEquals(hash(squares), expected[0]);
+			assertFalse(replay.backward());
+
+			// forwards to the end, then back to the start past every keyframe
+			while (replay.forward())
+				check(replay, squares, expected);
+			assertEquals(replay.getPly(), plies);
+			assertEquals(replay.winner(), read.getWinner(0));
+			while (replay.backward())
+				check(replay, squares, expected);
+			assertEquals(replay.getPly(), 0);
+
+			// seeks in any order, each followed by a step back
+			SplittableRandom random = new SplittableRandom(9);
+			for (int i = 0; i < 50; i++) {
+				int target = random.nextInt(plies + 1);
+				replay.seek(target);
+				assertEquals(replay.copySquares(squares), target);
+				assertEquals(hash(squares), expected[target]);
+				if (replay.backward())
+					check(replay, squares, expected);
+			}
+			replay.seek(plies + 10);
+			assertEquals(replay.getPly(), plies);
+			replay.seek(-1);
+			assertEquals(replay.getPly(), 0);
+		} finally {
+			Files.deleteIfExists(log);
+			Files.deleteIfExists(archive);
+		}
+	}
+}
@@ -0,0 +1,486 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import stratego.BoardSetupMessage;
+import stratego.ChatMessage;
+import stratego.GameLog;
+import stratego.GameServer;
+import stratego.JoinMessage;
+import stratego.MoveMessage;
+import stratego.Piece;
+import stratego.Piece.PieceType;
+import stratego.PingMessage;
+import stratego.SinglePositionMessage;
+import stratego.StrategoController;
+import stratego.StrategoNetwork;
+import stratego.WelcomeMessage;
+import stratego.WireProtocol;
+
+public class GameServerTest {
+
+	// scouts across the row facing the lakes, the rest filled in by type
+	private static PieceType[][] setup(int color) {
+		StrategoController setup = new StrategoController(Runnable::run);
+		int front = (color == Piece.RED) ? 0 : 3;
+		for (int col = 0; col < 8; col++)
+			setup.addToSetup(front, col, PieceType.SCOUT, color);
+		return setup.completeSetup(color);
+	}
+
+	@Test
+	public void relayTest() throws IOException, InterruptedException {
+		GameServer server = new GameServer(0);
+		Thread thread = new Thread(server, "game-server");
+		thread.start();
+		try {
+			StrategoNetwork red = new StrategoNetwork(false, "localhost", server.getPort());
+			StrategoNetwork blue = new StrategoNetwork(false, "localhost", server.getPort());
+			assertFalse(red.getStartError());
+			assertFalse(blue.getStartError());
+			assertTrue(red.isRefereed());
+			assertEquals(red.getColor(), Piece.RED);
+			assertEquals(blue.getColor(), Piece.BLUE);
+			assertEquals(server.getSessionCount(), 1);
+
+			// a second pair gets a session of its own
+			StrategoNetwork red2 = new StrategoNetwork(false, "localhost", server.getPort());
+			assertEquals(red2.getColor(), Piece.RED);
+			assertEquals(server.getSessionCount(), 2);
+
+			assertTrue(red.writeStartupMessage(new BoardSetupMessage(Piece.RED, setup(Piece.RED))));
+			assertTrue(blue.writeStartupMessage(new BoardSetupMessage(Piece.BLUE, setup(Piece.BLUE))));
+			assertEquals(((BoardSetupMessage) blue.readStartupMessage()).getColor(), Piece.RED);
+			assertEquals(((BoardSetupMessage) red.readStartupMessage()).getColor(), Piece.BLUE);
+
+			Piece scout = Piece.of(PieceType.SCOUT, Piece.RED);
+			Piece empty = Piece.of(PieceType.EMPTY, Piece.NONE);
+			assertTrue(red.writeMessage(new MoveMessage(60, 50, scout, empty, 1)));
+			MoveMessage move = (MoveMessage) blue.readMessage();
+			assertEquals(move.getFrom(), 60);
+			assertEquals(move.getTo(), 50);
+			assertNull(move.getAttacker());
+			assertSame(((MoveMessage) red.readMessage()).getAttacker(), scout);
+
+			assertTrue(blue.writeChatMessage(new ChatMessage("hello", Piece.BLUE)));
+			assertEquals(red.readChatMessage().getMessage(), "hello");
+
+			// leaving ends the game for the other player
+			red.closeConnection();
+			red.closeChatConnection();
+			SinglePositionMessage over = (SinglePositionMessage) blue.readMessage();
+			assertEquals(over.getRow(), -1);
+			assertEquals(over.getCol(), -1);
+			blue.closeConnection();
+			blue.closeChatConnection();
+			red2.closeConnection();
+			red2.closeChatConnection();
+		} finally {
+			server.stop();
+			thread.join(5000);
+		}
+	}
+
+	@Test
+	public void refereeTest() throws IOException, InterruptedException {
+		GameServer server = new GameServer(0);
+		Thread thread = new Thread(server, "game-server");
+		thread.start();
+		try {
+			StrategoNetwork red = new StrategoNetwork(false, "localhost", server.getPort());
+			StrategoNetwork blue = new StrategoNetwork(false, "localhost", server.getPort());
+			assertTrue(red.writeStartupMessage(new BoardSetupMessage(Piece.RED, setup(Piece.RED))));
+			assertTrue(blue.writeStartupMessage(new BoardSetupMessage(Piece.BLUE, setup(Piece.BLUE))));
+
+			// the opponent's setup arrives with every type hidden
+			PieceType[][] hidden = ((BoardSetupMessage) blue.readStartupMessage()).getInitialSetup();
+			for (PieceType[] row : hidden)
+				for (PieceType type : row)
+					assertEquals(type, PieceType.UNKNOWN);
+			red.readStartupMessage();
+
+			// the pieces sent are ignored; the mover learns the result, the
+			// other player only the squares of a plain move
+			Piece flag = Piece.of(PieceType.FLAG, Piece.RED);
+			Piece empty = Piece.of(PieceType.EMPTY, Piece.NONE);
+			assertTrue(red.writeMessage(new MoveMessage(60, 50, flag, empty, 2)));
+			MoveMessage echo = (MoveMessage) red.readMessage();
+			assertSame(echo.getAttacker(), Piece.of(PieceType.SCOUT, Piece.RED));
+			assertEquals(echo.getResult(), 1);
+			MoveMessage seen = (MoveMessage) blue.readMessage();
+			assertEquals(seen.getFrom(), 60);
+			assertEquals(seen.getTo(), 50);
+			assertNull(seen.getAttacker());
+
+			// a scout sliding is revealed
+			assertTrue(blue.writeMessage(new MoveMessage(30, 40, empty, empty, 1)));
+			blue.readMessage();
+			red.readMessage();
+			assertTrue(red.writeMessage(new MoveMessage(61, 41, empty, empty, 1)));
+			assertSame(((MoveMessage) red.readMessage()).getAttacker(), Piece.of(PieceType.SCOUT, Piece.RED));
+			assertSame(((MoveMessage) blue.readMessage()).getAttacker(), Piece.of(PieceType.SCOUT, Piece.RED));
+
+			// moving the other player's piece ends the game
+			assertTrue(blue.writeMessage(new MoveMessage(41, 51, empty, empty, 1)));
+			SinglePositionMessage over = (SinglePositionMessage) red.readMessage();
+			assertEquals(over.getRow(), -1);
+			red.closeConnection();
+			red.closeChatConnection();
+			blue.closeConnection();
+			blue.closeChatConnection();
+		} finally {
+			server.stop();
+			thread.join(5000);
+		}
+	}
+
+	// a bare client, so the test can break its connection
+	private static final class Client {
+		final Socket socket;
+		final DataOutputStream out;
+		final DataInputStream in;
+		final WelcomeMessage welcome;
+
+		Client(int port, JoinMessage join) throws IOException {
+			socket = new Socket("localhost", port);
+			out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			WireProtocol.writeHandshake(out);
+			WireProtocol.readHandshake(in);
+			WireProtocol.write(out, join);
+			welcome = (WelcomeMessage) WireProtocol.read(in);
+		}
+
+		// fails the connection instead of closing it
+		void reset() throws IOException {
+			socket.setSoLinger(true, 0);
+			socket.close();
+		}
+	}
+
+	@Test
+	public void resumeTest() throws IOException, InterruptedException {
+		GameServer server = new GameServer(0, 1000);
+		Thread thread = new Thread(server, "game-server");
+		thread.start();
+		try {
+			Client red = new Client(server.getPort(), new JoinMessage(JoinMessage.GAME, 0));
+			StrategoNetwork blue = new StrategoNetwork(false, "localhost", server.getPort());
+			assertEquals(red.welcome.getColor(), Piece.RED);
+			WireProtocol.write(red.out, new BoardSetupMessage(Piece.RED, setup(Piece.RED)));
+			assertTrue(blue.writeStartupMessage(new BoardSetupMessage(Piece.BLUE, setup(Piece.BLUE))));
+			blue.readStartupMessage();
+			WireProtocol.read(red.in);
+
+			Piece empty = Piece.of(PieceType.EMPTY, Piece.NONE);
+			WireProtocol.write(red.out, new MoveMessage(60, 50, empty, empty, 1));
+			WireProtocol.read(red.in);
+			blue.readMessage();
+
+			// blue moves while red's connection is down
+			assertTrue(blue.writeMessage(new MoveMessage(30, 40, empty, empty, 1)));
+			blue.readMessage();
+			red.reset();
+			Thread.sleep(100);
+
+			// red has read two frames and sent two; only blue's move is missing
+			Client back = new Client(server.getPort(), new JoinMessage(JoinMessage.GAME, red.welcome.getToken(), 2));
+			assertEquals(back.welcome.getColor(), Piece.RED);
+			assertEquals(back.welcome.getReceived(), 2);
+			MoveMessage missed = (MoveMessage) WireProtocol.read(back.in);
+			assertEquals(missed.getFrom(), 30);
+			assertEquals(missed.getTo(), 40);
+
+			WireProtocol.write(back.out, new MoveMessage(61, 51, empty, empty, 1));
+			assertEquals(((MoveMessage) WireProtocol.read(back.in)).getTo(), 51);
+			assertEquals(((MoveMessage) blue.readMessage()).getTo(), 51);
+
+			// a failure not resumed within the grace period ends the game
+			back.reset();
+			SinglePositionMessage over = (SinglePositionMessage) blue.readMessage();
+			assertEquals(over.getRow(), -1);
+			assertEquals(server.getSessionCount(), 0);
+			blue.closeConnection();
+		} finally {
+			server.stop();
+			thread.join(5000);
+		}
+	}
+
+	@Test
+	public void spectatorTest() throws IOException, InterruptedException {
+		GameServer server = new GameServer(0, GameServer.DEFAULT_GRACE_MILLIS, 300);
+		Thread thread = new Thread(server, "game-server");
+		thread.start();
+		try {
+			StrategoNetwork red = new StrategoNetwork(false, "localhost", server.getPort());
+			StrategoNetwork blue = new StrategoNetwork(false, "localhost", server.getPort());
+			assertEquals(red.getGameId(), blue.getGameId());
+			Client early = new Client(server.getPort(), new JoinMessage(JoinMessage.WATCH, red.getGameId()));
+			assertEquals(early.welcome.getColor(), Piece.NONE);
+			assertEquals(early.welcome.getGame(), red.getGameId());
+
+			long start = System.nanoTime();
+			assertTrue(red.writeStartupMessage(new BoardSetupMessage(Piece.RED, setup(Piece.RED))));
+			assertTrue(blue.writeStartupMessage(new BoardSetupMessage(Piece.BLUE, setup(Piece.BLUE))));
+			blue.readStartupMessage();
+			red.readStartupMessage();
+			Piece empty = Piece.of(PieceType.EMPTY, Piece.NONE);
+			assertTrue(red.writeMessage(new MoveMessage(60, 50, empty, empty, 1)));
+			assertEquals(((MoveMessage) blue.readMessage()).getTo(), 50);
+
+			// neither side's pieces are shown, and only after the delay
+			BoardSetupMessage first = (BoardSetupMessage) WireProtocol.read(early.in);
+			assertTrue(System.nanoTime() - start >= 300 * 1000000L);
+			assertEquals(first.getInitialSetup()[0][0], PieceType.UNKNOWN);
+			BoardSetupMessage second = (BoardSetupMessage) WireProtocol.read(early.in);
+			assertEquals(second.getInitialSetup()[3][9], PieceType.UNKNOWN);
+			assertTrue(first.getColor() != second.getColor());
+			MoveMessage move = (MoveMessage) WireProtocol.read(early.in);
+			assertEquals(move.getFrom(), 60);
+			assertNull(move.getAttacker());
+
+			// a late spectator is sent the game so far
+			Client late = new Client(server.getPort(), new JoinMessage(JoinMessage.WATCH, red.getGameId()));
+			assertTrue(WireProtocol.read(late.in) instanceof BoardSetupMessage);
+			assertTrue(WireProtocol.read(late.in) instanceof BoardSetupMessage);
+			assertEquals(((MoveMessage) WireProtocol.read(late.in)).getTo(), 50);
+
+			red.closeConnection();
+			assertEquals(((SinglePositionMessage) WireProtocol.read(early.in)).getRow(), -1);
+			assertEquals(((SinglePositionMessage) WireProtocol.read(late.in)).getRow(), -1);
+
+			// the broadcast is over, so the game can no longer be watched
+			assertThrows(IOException.class,
+					() -> new Client(server.getPort(), new JoinMessage(JoinMessage.WATCH, red.getGameId())));
+			early.reset();
+			late.reset();
+			blue.closeConnection();
+		} finally {
+			server.stop();
+			thread.join(5000);
+		}
+	}
+
+	@Test
+	public void lobbyTest() throws IOException, InterruptedException {
+		GameServer server = new GameServer(0);
+		Thread thread = new Thread(server, "game-server");
+		thread.start();
+		try {
+			// an anonymous player is not paired with one from the lobby
+			StrategoNetwork anonymous = new StrategoNetwork(false, "localhost", server.getPort());
+			StrategoNetwork[] first = new StrategoNetwork[1];
+			Thread waiting = new Thread(() -> first[0] = new StrategoNetwork("localhost", server.getPort(), "ann"));
+			waiting.start();
+			for (int i = 0; i < 500 && server.getLobbySize() == 0; i++)
+				Thread.sleep(10);
+			assertEquals(server.getLobbySize(), 1);
+			assertEquals(server.getSessionCount(), 1);
+
+			StrategoNetwork bob = new StrategoNetwork("localhost", server.getPort(), "bob");
+			waiting.join(5000);
+			StrategoNetwork ann = first[0];
+			assertFalse(ann.getStartError());
+			assertEquals(ann.getColor(), Piece.RED);
+			assertEquals(bob.getColor(), Piece.BLUE);
+			assertEquals(server.getLobbySize(), 0);
+			assertEquals(server.getSessionCount(), 2);
+
+			assertTrue(ann.writeStartupMessage(new BoardSetupMessage(Piece.RED, setup(Piece.RED))));
+			assertTrue(bob.writeStartupMessage(new BoardSetupMessage(Piece.BLUE, setup(Piece.BLUE))));
+			ann.readStartupMessage();
+			bob.readStartupMessage();
+
+			// leaving forfeits, and the winner gains what the loser loses
+			ann.closeConnection();
+			assertEquals(((SinglePositionMessage) bob.readMessage()).getRow(), -1);
+			for (int i = 0; i < 500 && server.getRating("bob") == 1500; i++)
+				Thread.sleep(10);
+			assertEquals(server.getRating("bob"), 1516);
+			assertEquals(server.getRating("ann"), 1484);
+			bob.closeConnection();
+			anonymous.closeConnection();
+		} finally {
+			server.stop();
+			thread.join(5000);
+		}
+	}
+
+	@Test
+	public void heartbeatTest() throws IOException, InterruptedException {
+		GameServer server = new GameServer(0);
+		Thread thread = new Thread(server, "game-server");
+		thread.start();
+		try {
+			// the server answers a ping on the socket it came from, before joining too
+			Client raw = new Client(server.getPort(), new JoinMessage(JoinMessage.GAME, 0));
+			WireProtocol.write(raw.out, new PingMessage(12345L));
+			PingMessage reply = (PingMessage) WireProtocol.read(raw.in);
+			assertTrue(reply.isReply());
+			assertEquals(reply.getStamp(), 12345L);
+
+			StrategoNetwork blue = new StrategoNetwork(false, "localhost", server.getPort());
+			assertEquals(blue.getColor(), Piece.BLUE);
+			assertEquals(blue.getLatency().getCount(), 0L);
+			WireProtocol.write(raw.out, new BoardSetupMessage(Piece.RED, setup(Piece.RED)));
+			assertTrue(blue.writeStartupMessage(new BoardSetupMessage(Piece.BLUE, setup(Piece.BLUE))));
+			assertEquals(((BoardSetupMessage) blue.readStartupMessage()).getColor(), Piece.RED);
+			WireProtocol.read(raw.in);
+
+			// replies are taken in while blue waits for red's move, and not handed on
+			Object[] read = new Object[1];
+			Thread reader = new Thread(() -> read[0] = blue.readMessage());
+			reader.start();
+			long deadline = System.currentTimeMillis() + 5000;
+			while (blue.getLatency().getCount() == 0 && System.currentTimeMillis() < deadline)
+				Thread.sleep(50);
+			assertTrue(blue.getLatency().getCount() > 0);
+			assertTrue(blue.getLatency().getLastNanos() > 0);
+			assertFalse(blue.isStalled());
+
+			Piece empty = Piece.of(PieceType.EMPTY, Piece.NONE);
+			WireProtocol.write(raw.out, new MoveMessage(60, 50, empty, empty, 1));
+			reader.join(5000);
+			assertEquals(((MoveMessage) read[0]).getTo(), 50);
+			blue.closeConnection();
+		} finally {
+			server.stop();
+			thread.join(5000);
+		}
+	}
+
+	@Test
+	public void logTest() throws IOException, InterruptedException {
+		Path file = Files.createTempFile("games", ".log");
+		Files.delete(file);
+		GameLog log = new GameLog(file);
+		GameServer server = new GameServer(0, GameServer.DEFAULT_GRACE_MILLIS, 0, log);
+		Thread thread = new Thread(server, "game-server");
+		thread.start();
+		try {
+			StrategoNetwork red = new StrategoNetwork(false, "localhost", server.getPort());
+			StrategoNetwork blue = new StrategoNetwork(false, "localhost", server.getPort());
+			assertTrue(red.writeStartupMessage(new BoardSetupMessage(Piece.RED, setup(Piece.RED))));
+			assertTrue(blue.writeStartupMessage(new BoardSetupMessage(Piece.BLUE, setup(Piece.BLUE))));
+			blue.readStartupMessage();
+			red.readStartupMessage();
+			Piece empty = Piece.of(PieceType.EMPTY, Piece.NONE);
+			assertTrue(red.writeMessage(new MoveMessage(60, 50, empty, empty, 1)));
+			red.readMessage();
+			blue.readMessage();
+			blue.closeConnection();
+			assertEquals(((SinglePositionMessage) red.readMessage()).getRow(), -1);
+			red.closeConnection();
+		} finally {
+			server.stop();
+			thread.join(5000);
+			log.close();
+		}
+
+		// the log has the setups as sent, the move as resolved and the end
+		try {
+			List<Object> messages = new ArrayList<Object>();
+			List<Long> games = new ArrayList<Long>();
+			assertEquals(GameLog.read(file, (game, message) -> {
+				games.add(game);
+				messages.add(message);
+			}), 4L);
+			assertEquals(games.get(0), games.get(3));
+			// the players set up at once, so either setup may come first
+			BoardSetupMessage first = (BoardSetupMessage) messages.get(0);
+			BoardSetupMessage second = (BoardSetupMessage) messages.get(1);
+			assertEquals(first.getColor() + second.getColor(), Piece.BLUE + Piece.RED);
+			BoardSetupMessage red = (first.getColor() == Piece.RED) ? first : second;
+			BoardSetupMessage blue = (first.getColor() == Piece.RED) ? second : first;
+			assertEquals(red.getInitialSetup()[0][0], PieceType.SCOUT);
+			assertEquals(blue.getInitialSetup()[3][0], PieceType.SCOUT);
+			MoveMessage move = (MoveMessage) messages.get(2);
+			assertEquals(move.getTo(), 50);
+			assertSame(move.getAttacker(), Piece.of(PieceType.SCOUT, Piece.RED));
+			assertEquals(((SinglePositionMessage) messages.get(3)).getRow(), -1);
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	@Test
+	public void setupCheckTest() throws IOException, InterruptedException {
+		GameServer server = new GameServer(0);
+		Thread thread = new Thread(server, "game-server");
+		thread.start();
+		try {
+			StrategoNetwork red = new StrategoNetwork(false, "localhost", server.getPort());
+			StrategoNetwork blue = new StrategoNetwork(false, "localhost", server.getPort());
+
+			// two flags and no spy is not an army
+			PieceType[][] cheat = setup(Piece.BLUE);
+			for (PieceType[] row : cheat)
+				for (int col = 0; col < row.length; col++)
+					if (row[col] == PieceType.SPY)
+						row[col] = PieceType.FLAG;
+			assertTrue(blue.writeStartupMessage(new BoardSetupMessage(Piece.BLUE, cheat)));
+			SinglePositionMessage over = (SinglePositionMessage) red.readMessage();
+			assertEquals(over.getRow(), -1);
+			red.closeConnection();
+			red.closeChatConnection();
+			blue.closeConnection();
+			blue.closeChatConnection();
+		} finally {
+			server.stop();
+			thread.join(5000);
+		}
+	}
+
+	@Test
+	public void chatSocketTest() throws IOException, InterruptedException {
+		GameServer server = new GameServer(0);
+		Thread thread = new Thread(server, "game-server");
+		thread.start();
+		try {
+			// one player with a chat socket of its own, one sharing its game socket
+			StrategoNetwork red = new StrategoNetwork(false, "localhost", server.getPort(), false);
+			StrategoNetwork blue = new StrategoNetwork(false, "localhost", server.getPort(), true);
+			assertEquals(red.getColor(), Piece.RED);
+			assertEquals(blue.getColor(), Piece.BLUE);
+
+			// chat sent before the setup does not hold it up, and arrives in order
+			for (int i = 0; i < 100; i++)
+				assertTrue(red.writeChatMessage(new ChatMessage("chat " + i, Piece.RED)));
+			assertTrue(red.writeStartupMessage(new BoardSetupMessage(Piece.RED, setup(Piece.RED))));
+			assertEquals(((BoardSetupMessage) blue.readStartupMessage()).getColor(), Piece.RED);
+			for (int i = 0; i < 100; i++)
+				assertEquals(blue.readChatMessage().getMessage(), "chat " + i);
+
+			assertTrue(blue.writeChatMessage(new ChatMessage("hi", Piece.BLUE)));
+			assertEquals(red.readChatMessage().getMessage(), "hi");
+
+			blue.closeConnection();
+			SinglePositionMessage over = (SinglePositionMessage) red.readMessage();
+			assertEquals(over.getRow(), -1);
+			red.closeConnection();
+			red.closeChatConnection();
+		} finally {
+			server.stop();
+			thread.join(5000);
+		}
+	}
+}
@@ -0,0 +1,143 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+import stratego.GameSnapshot;
+import stratego.MoveGenerator;
+import stratego.Piece;
+import stratego.Piece.PieceType;
+import stratego.PieceCode;
+import stratego.StrategoController;
+import stratego.StrategoModel;
+
+public class GameSnapshotTest {
+
+	// a random game played some plies in, with pieces taken and revealed
+	private static StrategoModel played(SplittableRandom random, int plies) {
+		StrategoModel model = new StrategoModel();
+		StrategoController setups = new StrategoController(Runnable::run);
+		for (int color = Piece.BLUE; color <= Piece.RED; color++) {
+			setups.randomSetup(color, random);
+			model.setBoard(setups.completeSetup(color), color, false);
+		}
+		int[] moves = new int[MoveGenerator.MAX_MOVES];
+		for (int ply = 0; ply < plies && model.winner() == Piece.NONE; ply++) {
+			int count = MoveGenerator.generate(model, model.getSideToMove(), moves);
+			if (count == 0)
+				break;
+			model.makeMove(moves[random.nextInt(count)]);
+		}
+		return model;
+	}
+
+	@Test
+	public void roundTripTest() throws IOException {
+		Path file = Files.createTempFile("game", ".save");
+		try {
+			StrategoModel game = played(new SplittableRandom(7), 150);
+			int revealed = 0;
+			for (int i = 0; i < StrategoModel.SQUARES; i++)
+				if (PieceCode.isRevealed(game.getSquare(i)))
+					revealed++;
+			assertTrue(revealed > 0);
+
+			new GameSnapshot(game, Piece.BLUE, false, 0).write(file);
+			assertEquals(Files.size(file), (long) GameSnapshot.LENGTH);
+			GameSnapshot read = GameSnapshot.read(file);
+			assertEquals(read.getColor(), Piece.BLUE);
+			assertFalse(read.isSetup());
+			assertEquals(read.getSideToMove(), game.getSideToMove());
+
+			// restored in one notification, with the snapshot
+			StrategoModel model = new StrategoModel();
+			List<Object> notified = new ArrayList<Object>();
+			model.addObserver((o, arg) -> notified.add(arg));
+			model.restore(read);
+			assertEquals(notified.size(), 1);
+			assertSame(notified.get(0), read);
+
+			assertEquals(model.getHash(), game.getHash());
+			for (int i = 0; i < StrategoModel.SQUARES; i++)
+				assertEquals(model.getSquare(i), game.getSquare(i));
+			for (int color = Piece.BLUE; color <= Piece.RED; color++) {
+				assertEquals(model.getMovableCount(color), game.getMovableCount(color));
+				for (PieceType type : PieceType.values())
+					assertEquals(model.getPieceCount(color, type), game.getPieceCount(color, type));
+			}
+			assertEquals(model.winner(), game.winner());
+			assertEquals(model.getUndoDepth(), 0);
+
+			// and plays on as the saved game does
+			int[] moves = new int[MoveGenerator.MAX_MOVES];
+			int count = MoveGenerator.generate(game, game.getSideToMove(), moves);
+			assertEquals(MoveGenerator.generate(model, model.getSideToMove(), new int[MoveGenerator.MAX_MOVES]), count);
+			if (count > 0) {
+				game.makeMove(moves[0]);
+				model.makeMove(moves[0]);
+				assertEquals(model.getHash(), game.getHash());
+			}
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	@Test
+	public void setupTest() throws IOException {
+		Path file = Files.createTempFile("game", ".save");
+		try {
+			// three pieces placed with 75 seconds left on the clock
+			StrategoModel placed = new StrategoModel();
+			placed.setSquare(90, PieceCode.encode(PieceType.FLAG, Piece.RED));
+			placed.setSquare(80, PieceCode.encode(PieceType.BOMB, Piece.RED));
+			placed.setSquare(61, PieceCode.encode(PieceType.SCOUT, Piece.RED));
+			new GameSnapshot(placed, Piece.RED, true, 75000).write(file);
+
+			GameSnapshot read = GameSnapshot.read(file);
+			assertTrue(read.isSetup());
+			assertEquals(read.getSideToMove(), Piece.NONE);
+			assertEquals(read.getTimeLeft(), 75000);
+			assertEquals(PieceCode.type(read.getSquare(90)), PieceType.FLAG);
+			assertEquals(PieceCode.color(read.getSquare(61)), Piece.RED);
+			assertEquals(read.getSquare(70), PieceCode.EMPTY);
+			assertEquals(read.getSquare(42), PieceCode.LAKE);
+			assertFalse(read.isRevealed(90));
+
+			// written again over the old one
+			new GameSnapshot(placed, Piece.RED, true, 60000).write(file);
+			assertEquals(GameSnapshot.read(file).getTimeLeft(), 60000);
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	@Test
+	public void damagedTest() throws IOException {
+		Path file = Files.createTempFile("game", ".save");
+		try {
+			new GameSnapshot(played(new SplittableRandom(2), 40), Piece.RED, false, 0).write(file);
+			byte[] bytes = Files.readAllBytes(file);
+
+			bytes[50] ^= 1;
+			Files.write(file, bytes);
+			assertThrows(IOException.class, () -> GameSnapshot.read(file));
+
+			Files.write(file, new byte[] { 1, 2, 3 });
+			assertThrows(IOException.class, () -> GameSnapshot.read(file));
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+}
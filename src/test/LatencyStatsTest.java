@@ -0,0 +1,43 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+import stratego.LatencyStats;
+
+public class LatencyStatsTest {
+
+	@Test
+	public void emptyTest() {
+		LatencyStats stats = new LatencyStats();
+		assertEquals(stats.getCount(), 0L);
+		assertEquals(stats.getLastNanos(), -1L);
+		assertEquals(stats.getMeanNanos(), -1L);
+		assertEquals(stats.getMinNanos(), -1L);
+		assertEquals(stats.getMaxNanos(), -1L);
+		assertEquals(stats.toString(), "rtt unknown");
+	}
+
+	@Test
+	public void windowTest() {
+		LatencyStats stats = new LatencyStats();
+		stats.record(300);
+		stats.record(100);
+		stats.record(200);
+		assertEquals(stats.getCount(), 3L);
+		assertEquals(stats.getLastNanos(), 200L);
+		assertEquals(stats.getMeanNanos(), 200L);
+		assertEquals(stats.getMinNanos(), 100L);
+		assertEquals(stats.getMaxNanos(), 300L);
+
+		// the oldest round trips fall out of the window
+		for (int i = 0; i < LatencyStats.WINDOW; i++)
+			stats.record(1000 + i);
+		assertEquals(stats.getCount(), 3L + LatencyStats.WINDOW);
+		assertEquals(stats.getLastNanos(), 1000L + LatencyStats.WINDOW - 1);
+		assertEquals(stats.getMinNanos(), 1000L);
+		assertEquals(stats.getMaxNanos(), 1000L + LatencyStats.WINDOW - 1);
+		assertEquals(stats.getMeanNanos(), 1000L + (LatencyStats.WINDOW - 1) / 2);
+	}
+}
@@ -0,0 +1,98 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+import stratego.Matchmaker;
+
+public class MatchmakerTest {
+
+	private static final long SECOND = 1000000000L;
+
+	@Test
+	public void closestTest() {
+		Matchmaker<String> lobby = new Matchmaker<String>();
+		assertNull(lobby.add("a", 1500, 0));
+		assertNull(lobby.add("b", 1800, 0));
+		assertNull(lobby.add("c", 1380, 0));
+		assertEquals(lobby.size(), 3);
+
+		// within the gap of both a and c, closer to a
+		assertEquals(lobby.add("d", 1460, 0), "a");
+		assertEquals(lobby.size(), 2);
+		assertNull(lobby.add("e", 1650, 0));
+	}
+
+	@Test
+	public void wideningTest() {
+		Matchmaker<String> lobby = new Matchmaker<String>(100, 25, 400);
+		assertNull(lobby.add("a", 1500, 0));
+		assertNull(lobby.add("b", 1650, SECOND));
+
+		List<String> pairs = new ArrayList<String>();
+		lobby.match(SECOND, (red, blue) -> pairs.add(red + blue));
+		assertTrue(pairs.isEmpty());
+
+		// a accepts 150 after two seconds, and waited longer so is first
+		lobby.match(2 * SECOND, (red, blue) -> pairs.add(red + blue));
+		assertEquals(pairs.size(), 1);
+		assertEquals(pairs.get(0), "ab");
+		assertEquals(lobby.size(), 0);
+	}
+
+	@Test
+	public void sameBucketTest() {
+		// no gap on joining, so the two in the 1600-1624 bucket wait
+		Matchmaker<String> lobby = new Matchmaker<String>(0, 100, 400);
+		assertNull(lobby.add("older", 1624, 0));
+		assertNull(lobby.add("newer", 1600, 0));
+
+		// a second later every gap is 100: the older is 124 away, the newer 100
+		assertEquals(lobby.add("a", 1500, SECOND), "newer");
+		assertEquals(lobby.size(), 1);
+	}
+
+	@Test
+	public void removeTest() {
+		Matchmaker<String> lobby = new Matchmaker<String>();
+		assertNull(lobby.add("a", 1500, 0));
+		assertTrue(lobby.remove("a"));
+		assertTrue(!lobby.remove("a"));
+		assertNull(lobby.add("b", 1500, 0));
+		assertEquals(lobby.size(), 1);
+		assertEquals(lobby.add("c", 1510, 0), "b");
+	}
+
+	@Test
+	public void manyTest() {
+		Matchmaker<Integer> lobby = new Matchmaker<Integer>();
+		SplittableRandom random = new SplittableRandom(5);
+		int[] ratings = new int[20000];
+		int paired = 0;
+		for (int i = 0; i < ratings.length; i++) {
+			ratings[i] = 800 + random.nextInt(1600);
+			Integer opponent = lobby.add(i, ratings[i], 0);
+			if (opponent != null) {
+				assertTrue(Math.abs(ratings[opponent] - ratings[i]) <= Matchmaker.DEFAULT_GAP);
+				paired += 2;
+			}
+		}
+		assertEquals(lobby.size(), ratings.length - paired);
+
+		// once every gap is as wide as it gets, pairs are within it
+		int waiting = lobby.size();
+		List<int[]> pairs = new ArrayList<int[]>();
+		lobby.match(3600 * SECOND, (red, blue) -> pairs.add(new int[] { red, blue }));
+		assertTrue(!pairs.isEmpty());
+		for (int[] pair : pairs)
+			assertTrue(Math.abs(ratings[pair[0]] - ratings[pair[1]]) <= Matchmaker.DEFAULT_MAX_GAP);
+		assertEquals(lobby.size(), waiting - 2 * pairs.size());
+	}
+}
@@ -0,0 +1,49 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+import stratego.MonteCarloPlayer;
+import stratego.MoveGenerator;
+import stratego.Piece;
+import stratego.Piece.PieceType;
+import stratego.StrategoModel;
+
+public class MonteCarloPlayerTest {
+
+	@Test
+	public void capturesRevealedFlagTest() {
+		StrategoModel model = new StrategoModel();
+		Piece redScout = new Piece(PieceType.SCOUT);
+		redScout.setColor(Piece.RED);
+		Piece blueFlag = new Piece(PieceType.FLAG);
+		blueFlag.setColor(Piece.BLUE);
+		Piece blueMarshal = new Piece(PieceType.MARSHAL);
+		blueMarshal.setColor(Piece.BLUE);
+		model.setPosition(9, 0, redScout);
+		model.setPosition(0, 0, blueFlag);
+		model.setPosition(0, 9, blueMarshal);
+		model.setRevealed(0, 0);
+		model.setRevealed(0, 9);
+
+		MonteCarloPlayer player = new MonteCarloPlayer(2);
+		assertEquals(player.chooseMove(model, Piece.RED, 200), MoveGenerator.encode(90, 0));
+		player.shutdown();
+		// the model passed in is not changed
+		assertEquals(model.getPosition(9, 0), redScout);
+		assertEquals(model.getPosition(0, 0), blueFlag);
+	}
+
+	@Test
+	public void noLegalMoveTest() {
+		StrategoModel model = new StrategoModel();
+		Piece redBomb = new Piece(PieceType.BOMB);
+		redBomb.setColor(Piece.RED);
+		model.setPosition(9, 0, redBomb);
+
+		MonteCarloPlayer player = new MonteCarloPlayer(1);
+		assertEquals(player.chooseMove(model, Piece.RED, 50), -1);
+		player.shutdown();
+	}
+}
@@ -0,0 +1,70 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import stratego.MoveGenerator;
+import stratego.Piece;
+import stratego.Piece.PieceType;
+import stratego.StrategoModel;
+
+public class MoveGeneratorTest {
+	
+	private static Piece piece(PieceType type, int color) {
+		Piece piece = new Piece(type);
+		piece.setColor(color);
+		return piece;
+	}
+	
+	private static boolean contains(int[] moves, int count, int from, int to) {
+		for (int i = 0; i < count; i++)
+			if (moves[i] == MoveGenerator.encode(from, to))
+				return true;
+		return false;
+	}
+
+	@Test
+	public void encodeTest() {
+		int move = MoveGenerator.encode(63, 99);
+		assertEquals(MoveGenerator.from(move), 63);
+		assertEquals(MoveGenerator.to(move), 99);
+	}
+	@Test
+	public void singleStepTest() {
+		StrategoModel model = new StrategoModel();
+		model.setPosition(0, 0, piece(PieceType.GENERAL, Piece.RED));
+		model.setPosition(0, 1, piece(PieceType.BOMB, Piece.RED));
+		model.setPosition(1, 0, piece(PieceType.SCOUT, Piece.BLUE));
+		
+		int[] moves = new int[MoveGenerator.MAX_MOVES];
+		int count = MoveGenerator.generate(model, Piece.RED, moves);
+		// general attacks the scout, the bomb does not move, (0, 1) is blocked
+		assertEquals(count, 1);
+		assertTrue(contains(moves, count, 0, 10));
+		assertTrue(MoveGenerator.isLegal(model, 0, 10));
+		assertFalse(MoveGenerator.isLegal(model, 0, 1));
+		assertFalse(MoveGenerator.isLegal(model, 1, 11));
+	}
+	@Test
+	public void scoutSlideTest() {
+		StrategoModel model = new StrategoModel();
+		// scout below the left lake
+		model.setPosition(6, 2, piece(PieceType.SCOUT, Piece.RED));
+		model.setPosition(6, 6, piece(PieceType.MARSHAL, Piece.BLUE));
+		
+		int[] moves = new int[MoveGenerator.MAX_MOVES];
+		int count = MoveGenerator.generate(model, Piece.RED, moves);
+		// up: lake, down: 3 squares, left: 2 squares, right: 3 empty + attack
+		assertEquals(count, 9);
+		assertTrue(contains(moves, count, 62, 92));
+		assertTrue(contains(moves, count, 62, 66));
+		assertFalse(contains(moves, count, 62, 67));
+		assertFalse(contains(moves, count, 62, 52));
+		assertFalse(MoveGenerator.isLegal(model, 62, 32));
+		assertFalse(MoveGenerator.isLegal(model, 62, 67));
+		assertTrue(MoveGenerator.isLegal(model, 62, 60));
+	}
+}
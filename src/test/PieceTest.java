@@ -2,8 +2,16 @@ package test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
 import org.junit.jupiter.api.Test;
 
 import stratego.Piece;
@@ -159,4 +167,26 @@ public class PieceTest {
 		assertEquals(piece13.level(), 0);
 		assertEquals(piece14.level(), 0);
 	}
+	
+	@Test
+	public void sharedPieceTest() throws IOException, ClassNotFoundException {
+		Piece redScout = Piece.of(PieceType.SCOUT, Piece.RED);
+		assertSame(redScout, Piece.of(PieceType.SCOUT, Piece.RED));
+		assertEquals(redScout.color(), Piece.RED);
+		assertEquals(redScout.type, PieceType.SCOUT);
+		assertThrows(UnsupportedOperationException.class, () -> redScout.setColor(Piece.BLUE));
+		
+		Piece piece = new Piece(PieceType.SCOUT);
+		piece.setColor(Piece.RED);
+		assertEquals(piece, redScout);
+		
+		// deserialized pieces are the shared instances
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(piece);
+		}
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+			assertSame(in.readObject(), redScout);
+		}
+	}
 }
@@ -0,0 +1,47 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+import stratego.Piece;
+import stratego.RandomPlayer;
+import stratego.SelfPlay;
+
+public class SelfPlayTest {
+
+	@Test
+	public void runTotalsTest() {
+		SelfPlay selfPlay = new SelfPlay(RandomPlayer::new, RandomPlayer::new, 0, SelfPlay.DEFAULT_MAX_PLIES, 2);
+		SelfPlay.Result result = selfPlay.run(20, 42);
+		assertEquals(result.getGames(), 20);
+		assertEquals(result.getRedWins() + result.getBlueWins() + result.getDraws(), 20);
+		assertTrue(result.getAveragePlies() > 0);
+		assertTrue(result.getGamesPerSecond() > 0);
+	}
+
+	@Test
+	public void sameSeedTest() {
+		int[] plies1 = new int[1];
+		int[] plies2 = new int[1];
+		int winner1 = SelfPlay.playGame(new RandomPlayer(new SplittableRandom(1)), new RandomPlayer(new SplittableRandom(2)),
+				0, SelfPlay.DEFAULT_MAX_PLIES, new SplittableRandom(3), plies1);
+		int winner2 = SelfPlay.playGame(new RandomPlayer(new SplittableRandom(1)), new RandomPlayer(new SplittableRandom(2)),
+				0, SelfPlay.DEFAULT_MAX_PLIES, new SplittableRandom(3), plies2);
+		assertEquals(winner1, winner2);
+		assertEquals(plies1[0], plies2[0]);
+		assertTrue(winner1 == Piece.RED || winner1 == Piece.BLUE || winner1 == Piece.NONE);
+	}
+
+	@Test
+	public void plyLimitTest() {
+		int[] plies = new int[1];
+		int winner = SelfPlay.playGame(new RandomPlayer(new SplittableRandom(1)), new RandomPlayer(new SplittableRandom(2)),
+				0, 10, new SplittableRandom(3), plies);
+		assertEquals(winner, Piece.NONE);
+		assertEquals(plies[0], 10);
+	}
+}
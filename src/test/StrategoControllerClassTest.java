@@ -4,12 +4,26 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.jupiter.api.Test;
 
 import javafx.scene.paint.Color;
+import stratego.BoardSetupMessage;
+import stratego.GameServer;
+import stratego.GameSnapshot;
+import stratego.MoveGenerator;
+import stratego.MoveMessage;
 import stratego.Piece;
+import stratego.SinglePositionMessage;
 import stratego.StrategoController;
 import stratego.StrategoModel;
 import stratego.StrategoView;
@@ -146,4 +160,142 @@ public class StrategoControllerClassTest {
 		assertFalse(strategoController.movePiece(4, 2, 4, 3));
 		
 	}
+
+	@Test
+	public void gameListeningTest() throws IOException, InterruptedException {
+		GameServer server = new GameServer(0);
+		Thread thread = new Thread(server, "game-server");
+		thread.start();
+		try {
+			// blue's updates wait for its listener, which ends once it has read the
+			// move and the game over, so everything read queues up
+			AtomicInteger batches = new AtomicInteger();
+			CountDownLatch drained = new CountDownLatch(1);
+			StrategoController red = new StrategoController(Runnable::run);
+			StrategoController blue = new StrategoController(drain -> {
+				batches.incrementAndGet();
+				Thread listener = Thread.currentThread();
+				new Thread(() -> {
+					try {
+						listener.join();
+					} catch (InterruptedException e) {
+						return;
+					}
+					drain.run();
+					drained.countDown();
+				}).start();
+			});
+			assertFalse(red.buildNetwork(false, "localhost", server.getPort()));
+			assertFalse(blue.buildNetwork(false, "localhost", server.getPort()));
+			blue.initiateGameListening();
+			blue.initiateGameListening(); // already running
+
+			SplittableRandom random = new SplittableRandom(17);
+			red.randomSetup(Piece.RED, random);
+			red.setBoard(Piece.RED);
+			blue.randomSetup(Piece.BLUE, random);
+			blue.setBoard(Piece.BLUE);
+			// the server takes no move until it has both setups
+			red.initiateGameListening();
+			for (int i = 0; i < 500 && red.getPosition(0, 0).color() != Piece.BLUE; i++)
+				Thread.sleep(10);
+			List<Object> seen = new ArrayList<Object>();
+			blue.setModelObserver((o, arg) -> seen.add(arg));
+
+			int[] moves = new int[MoveGenerator.MAX_MOVES];
+			assertTrue(red.legalMoves(Piece.RED, moves) > 0);
+			int from = MoveGenerator.from(moves[0]);
+			int to = MoveGenerator.to(moves[0]);
+			assertTrue(red.movePiece(from / 10, from % 10, to / 10, to % 10));
+			red.writeGameOverMsg();
+
+			assertTrue(drained.await(5, TimeUnit.SECONDS));
+			assertEquals(batches.get(), 1);
+			assertEquals(seen.size(), 3);
+			assertTrue(seen.get(0) instanceof BoardSetupMessage);
+			assertEquals(((MoveMessage) seen.get(1)).getFrom(), from);
+			assertTrue(seen.get(2) instanceof SinglePositionMessage);
+			assertEquals(blue.getPosition(to / 10, to % 10).color(), Piece.RED);
+
+			red.closeNetwork();
+			blue.closeNetwork();
+		} finally {
+			server.stop();
+			thread.join(5000);
+		}
+	}
+
+	// connects two players directly and resumes a saved game on each, giving
+	// each one's restored snapshot or the reason it was refused
+	private static Object[] resume(GameSnapshot red, GameSnapshot blue) throws IOException, InterruptedException {
+		int port;
+		try (ServerSocket free = new ServerSocket(0)) {
+			port = free.getLocalPort();
+		}
+		Object[] outcome = new Object[2];
+		CountDownLatch done = new CountDownLatch(2);
+		StrategoController server = new StrategoController(Runnable::run);
+		StrategoController client = new StrategoController(Runnable::run);
+		server.setModelObserver((o, arg) -> {
+			outcome[0] = arg;
+			done.countDown();
+		});
+		client.setModelObserver((o, arg) -> {
+			outcome[1] = arg;
+			done.countDown();
+		});
+
+		Thread accepting = new Thread(() -> server.buildNetwork(true, "localhost", port));
+		accepting.start();
+		boolean error = true;
+		for (int i = 0; i < 500 && error; i++) {
+			error = client.buildNetwork(false, "localhost", port);
+			if (error)
+				Thread.sleep(10);
+		}
+		accepting.join(5000);
+		assertFalse(error);
+
+		server.resumeGame(red, reason -> {
+			outcome[0] = reason;
+			done.countDown();
+		});
+		client.resumeGame(blue, reason -> {
+			outcome[1] = reason;
+			done.countDown();
+		});
+		server.initiateGameListening();
+		client.initiateGameListening();
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		server.closeNetwork();
+		client.closeNetwork();
+		return outcome;
+	}
+
+	@Test
+	public void resumeTest() throws IOException, InterruptedException {
+		StrategoModel game = new StrategoModel();
+		StrategoController setups = new StrategoController(Runnable::run);
+		SplittableRandom random = new SplittableRandom(29);
+		for (int color = Piece.BLUE; color <= Piece.RED; color++) {
+			setups.randomSetup(color, random);
+			game.setBoard(setups.completeSetup(color), color, false);
+		}
+		game.setSideToMove(Piece.RED);
+		GameSnapshot red = new GameSnapshot(game, Piece.RED, false, 0);
+		GameSnapshot blue = new GameSnapshot(game, Piece.BLUE, false, 0);
+
+		// the same position on both sides goes on from there
+		Object[] outcome = resume(red, blue);
+		assertEquals(outcome[0], red);
+		assertEquals(outcome[1], blue);
+
+		// blue saved a move later, so neither side goes on
+		int[] moves = new int[MoveGenerator.MAX_MOVES];
+		assertTrue(MoveGenerator.generate(game, Piece.RED, moves) > 0);
+		game.makeMove(moves[0]);
+		outcome = resume(red, new GameSnapshot(game, Piece.BLUE, false, 0));
+		assertTrue(outcome[0] instanceof String);
+		assertTrue(outcome[1] instanceof String);
+	}
 }
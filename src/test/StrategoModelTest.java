@@ -2,11 +2,17 @@ package test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import org.junit.jupiter.api.Test;
 import stratego.Piece;
+import stratego.MoveGenerator;
+import stratego.MoveMessage;
 import stratego.Piece.PieceType;
+import stratego.PieceCode;
 import stratego.StrategoModel;
 
 	public class StrategoModelTest {
@@ -109,4 +115,128 @@ import stratego.StrategoModel;
 			assertTrue(model.addPiece(piece3));
 			
 		}
+		@Test
+		public void squareCodeTest() {
+			StrategoModel model = new StrategoModel();
+			assertEquals(model.getSquare(4, 2), PieceCode.LAKE);
+			assertEquals(model.getSquare(5, 7), PieceCode.LAKE);
+			assertEquals(model.getSquare(4, 4), PieceCode.EMPTY);
+			assertTrue(StrategoModel.isLake(StrategoModel.squareIndex(4, 6)));
+			assertFalse(StrategoModel.isLake(StrategoModel.squareIndex(6, 6)));
+			
+			Piece bluePiece = new Piece(PieceType.SCOUT);
+			bluePiece.setColor(Piece.BLUE);
+			model.setPosition(0, 9, bluePiece);
+			byte code = model.getSquare(9);
+			assertEquals(PieceCode.type(code), PieceType.SCOUT);
+			assertEquals(PieceCode.color(code), Piece.BLUE);
+			assertEquals(model.removePosition(0, 9), bluePiece);
+			assertEquals(model.getSquare(0, 9), PieceCode.EMPTY);
+			assertEquals(model.removePosition(4, 2).type, PieceType.LAKE);
+			assertEquals(model.getSquare(4, 2), PieceCode.LAKE);
+		}
+		@Test
+		public void makeUnmakeMoveTest() {
+			StrategoModel model = new StrategoModel();
+			Piece redMiner = new Piece(PieceType.MINER);
+			redMiner.setColor(Piece.RED);
+			Piece blueBomb = new Piece(PieceType.BOMB);
+			blueBomb.setColor(Piece.BLUE);
+			model.setPosition(6, 0, redMiner);
+			model.setPosition(5, 0, blueBomb);
+			byte minerCode = model.getSquare(6, 0);
+			byte bombCode = model.getSquare(5, 0);
+			
+			// miner defuses the bomb
+			assertEquals(model.makeMove(MoveGenerator.encode(60, 50)), 1);
+			assertEquals(model.getSquare(60), PieceCode.EMPTY);
+			assertEquals(model.getSquare(50), PieceCode.reveal(minerCode));
+			assertEquals(model.getBluePieces().get(PieceType.BOMB).intValue(), 5);
+			assertEquals(model.getSideToMove(), Piece.BLUE);
+			
+			// plain move
+			assertEquals(model.makeMove(MoveGenerator.encode(50, 40)), 1);
+			assertEquals(model.getUndoDepth(), 2);
+			
+			assertEquals(model.unmakeMove(), MoveGenerator.encode(50, 40));
+			assertEquals(model.unmakeMove(), MoveGenerator.encode(60, 50));
+			assertEquals(model.unmakeMove(), -1);
+			assertEquals(model.getSquare(60), minerCode);
+			assertEquals(model.getSquare(50), bombCode);
+			assertEquals(model.getBluePieces().get(PieceType.BOMB).intValue(), 6);
+			assertEquals(model.getSideToMove(), Piece.RED);
+		}
+		@Test
+		public void playMoveTest() {
+			StrategoModel model = new StrategoModel();
+			Piece redGeneral = Piece.of(PieceType.GENERAL, Piece.RED);
+			Piece blueMarshal = Piece.of(PieceType.MARSHAL, Piece.BLUE);
+			model.setPosition(6, 0, redGeneral);
+			model.setPosition(5, 0, blueMarshal);
+			
+			List<Object> notified = new ArrayList<Object>();
+			model.addObserver((o, arg) -> notified.add(arg));
+			MoveMessage move = new MoveMessage(60, 50, redGeneral, blueMarshal, 2);
+			model.playMove(move);
+			
+			// one notification, the defender stays and is revealed
+			assertEquals(notified.size(), 1);
+			assertTrue(notified.get(0) == move);
+			assertEquals(model.getPosition(6, 0).type, PieceType.EMPTY);
+			assertEquals(model.getPosition(5, 0), blueMarshal);
+			assertTrue(model.isRevealed(5, 0));
+			assertEquals(model.getPieceCount(Piece.RED, PieceType.GENERAL), 0);
+			assertEquals(model.getSideToMove(), Piece.BLUE);
+		}
+		@Test
+		public void pieceCountTest() {
+			StrategoModel model = new StrategoModel();
+			assertEquals(model.getPieceCount(Piece.RED, PieceType.SCOUT), 8);
+			assertEquals(model.getMovableCount(Piece.RED), 33);
+			assertEquals(model.getMovableCount(Piece.NONE), 0);
+			
+			Piece redScout = new Piece(PieceType.SCOUT);
+			redScout.setColor(Piece.RED);
+			Piece redBomb = new Piece(PieceType.BOMB);
+			redBomb.setColor(Piece.RED);
+			assertTrue(model.removePiece(redScout));
+			assertTrue(model.removePiece(redBomb));
+			assertFalse(model.removePiece(new Piece(PieceType.EMPTY)));
+			assertEquals(model.getPieceCount(Piece.RED, PieceType.SCOUT), 7);
+			assertEquals(model.getMovableCount(Piece.RED), 32);
+			assertEquals(model.getMovableCount(Piece.BLUE), 33);
+			
+			// the map is a copy of the counts
+			model.getRedPieces().put(PieceType.SCOUT, 0);
+			assertEquals(model.getPieceCount(Piece.RED, PieceType.SCOUT), 7);
+			
+			StrategoModel copy = new StrategoModel(model);
+			assertEquals(copy.getMovableCount(Piece.RED), 32);
+			assertEquals(copy.getPieceCount(Piece.RED, PieceType.BOMB), 5);
+		}
+		@Test
+		public void hashTest() {
+			StrategoModel model = new StrategoModel();
+			long emptyHash = model.getHash();
+			Piece redScout = new Piece(PieceType.SCOUT);
+			redScout.setColor(Piece.RED);
+			model.setPosition(9, 0, redScout);
+			assertNotEquals(model.getHash(), emptyHash);
+			long startHash = model.getHash();
+			
+			// the same position reached another way hashes the same
+			model.makeMove(MoveGenerator.encode(90, 60));
+			StrategoModel other = new StrategoModel();
+			other.setPosition(6, 0, redScout);
+			other.setRevealed(6, 0); // scout slide reveals the scout
+			other.setSideToMove(Piece.BLUE);
+			assertEquals(model.getHash(), other.getHash());
+			assertTrue(model.isRevealed(6, 0));
+			
+			model.unmakeMove();
+			assertEquals(model.getHash(), startHash);
+			model.removePosition(9, 0);
+			assertEquals(model.getHash(), emptyHash);
+			assertEquals(model.getRepetitions(), 0);
+		}
 }
@@ -0,0 +1,72 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import stratego.AlphaBetaPlayer;
+import stratego.MoveGenerator;
+import stratego.Piece;
+import stratego.Piece.PieceType;
+import stratego.StrategoModel;
+import stratego.TranspositionTable;
+
+public class TranspositionTableTest {
+	
+	@Test
+	public void storeProbeTest() {
+		TranspositionTable table = new TranspositionTable(1);
+		assertTrue(table.capacity() > 0);
+		assertEquals(table.probe(12345L), TranspositionTable.MISS);
+		
+		int move = MoveGenerator.encode(61, 51);
+		table.store(12345L, 7, -250, TranspositionTable.LOWER_BOUND, move);
+		long data = table.probe(12345L);
+		assertEquals(TranspositionTable.move(data), move);
+		assertEquals(TranspositionTable.depth(data), 7);
+		assertEquals(TranspositionTable.score(data), -250);
+		assertEquals(TranspositionTable.bound(data), TranspositionTable.LOWER_BOUND);
+		
+		table.clear();
+		assertEquals(table.probe(12345L), TranspositionTable.MISS);
+	}
+	@Test
+	public void depthPreferredTest() {
+		TranspositionTable table = new TranspositionTable(1);
+		long buckets = table.capacity() / 2;
+		long deep = 5L;
+		long shallow = deep + buckets; // same bucket, different position
+		long other = deep + 2 * buckets;
+		
+		table.store(deep, 9, 1, TranspositionTable.EXACT, 0);
+		table.store(shallow, 2, 2, TranspositionTable.EXACT, 0);
+		// the deep entry survives, the shallow one takes the second slot
+		assertEquals(TranspositionTable.score(table.probe(deep)), 1);
+		assertEquals(TranspositionTable.score(table.probe(shallow)), 2);
+		
+		table.store(other, 3, 3, TranspositionTable.EXACT, 0);
+		assertEquals(TranspositionTable.score(table.probe(deep)), 1);
+		assertEquals(table.probe(shallow), TranspositionTable.MISS);
+		assertEquals(TranspositionTable.score(table.probe(other)), 3);
+	}
+	@Test
+	public void searchCapturesFlagTest() {
+		StrategoModel model = new StrategoModel();
+		Piece redScout = new Piece(PieceType.SCOUT);
+		redScout.setColor(Piece.RED);
+		Piece blueFlag = new Piece(PieceType.FLAG);
+		blueFlag.setColor(Piece.BLUE);
+		Piece blueMarshal = new Piece(PieceType.MARSHAL);
+		blueMarshal.setColor(Piece.BLUE);
+		model.setPosition(9, 0, redScout);
+		model.setPosition(0, 0, blueFlag);
+		model.setPosition(0, 9, blueMarshal);
+		
+		AlphaBetaPlayer player = new AlphaBetaPlayer(2, 1);
+		assertEquals(player.chooseMove(model, Piece.RED, 100), MoveGenerator.encode(90, 0));
+		player.shutdown();
+		// the model passed in is not changed
+		assertEquals(model.getPosition(9, 0), redScout);
+	}
+}
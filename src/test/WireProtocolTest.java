@@ -0,0 +1,182 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ProtocolException;
+
+import org.junit.jupiter.api.Test;
+
+import stratego.BoardSetupMessage;
+import stratego.ChatMessage;
+import stratego.JoinMessage;
+import stratego.MoveMessage;
+import stratego.Piece;
+import stratego.Piece.PieceType;
+import stratego.PingMessage;
+import stratego.SavedGameMessage;
+import stratego.SinglePositionMessage;
+import stratego.WelcomeMessage;
+import stratego.WireProtocol;
+
+public class WireProtocolTest {
+
+	private Object roundTrip(Object message) throws ProtocolException {
+		byte[] frame = WireProtocol.encode(message);
+		assertEquals(((frame[0] & 0xFF) << 8 | (frame[1] & 0xFF)) + 2, frame.length);
+		return WireProtocol.decode(frame, 2, frame.length - 2);
+	}
+
+	@Test
+	public void moveTest() throws ProtocolException {
+		Piece redScout = Piece.of(PieceType.SCOUT, Piece.RED);
+		Piece blueBomb = Piece.of(PieceType.BOMB, Piece.BLUE);
+		assertEquals(WireProtocol.encode(new MoveMessage(90, 10, redScout, blueBomb, 2)).length, 8);
+
+		MoveMessage msg = (MoveMessage) roundTrip(new MoveMessage(90, 10, redScout, blueBomb, 2));
+		assertEquals(msg.getFrom(), 90);
+		assertEquals(msg.getTo(), 10);
+		assertSame(msg.getAttacker(), redScout);
+		assertSame(msg.getDefender(), blueBomb);
+		assertEquals(msg.getResult(), 2);
+
+		// bad result, move off the board
+		assertThrows(ProtocolException.class, () -> WireProtocol.decode(new byte[] { 4, 90, 80, 0x2A, 0, 3 }, 0, 6));
+		assertThrows(ProtocolException.class, () -> WireProtocol.decode(new byte[] { 4, 90, 100, 0x2A, 0, 1 }, 0, 6));
+	}
+
+	@Test
+	public void positionTest() throws ProtocolException {
+		Piece redScout = Piece.of(PieceType.SCOUT, Piece.RED);
+		Piece blueBomb = Piece.of(PieceType.BOMB, Piece.BLUE);
+		assertEquals(WireProtocol.encode(new SinglePositionMessage(4, 8, redScout, blueBomb, true)).length, 7);
+
+		SinglePositionMessage msg = (SinglePositionMessage) roundTrip(
+				new SinglePositionMessage(4, 8, redScout, blueBomb, true));
+		assertEquals(msg.getRow(), 4);
+		assertEquals(msg.getCol(), 8);
+		assertSame(msg.getPiece(), redScout);
+		assertSame(msg.getPieceToRemovePlace(), blueBomb);
+		assertTrue(msg.isRemoved());
+
+		// game over message
+		msg = (SinglePositionMessage) roundTrip(new SinglePositionMessage(-1, -1, null));
+		assertEquals(msg.getRow(), -1);
+		assertEquals(msg.getCol(), -1);
+		assertNull(msg.getPiece());
+		assertNull(msg.getPieceToRemovePlace());
+	}
+
+	@Test
+	public void setupAndChatTest() throws ProtocolException {
+		PieceType[][] setup = new PieceType[4][10];
+		for (int i = 0; i < 40; i++)
+			setup[i / 10][i % 10] = PieceType.values()[2 + i % 12];
+		setup[3][9] = null;
+		BoardSetupMessage msg = (BoardSetupMessage) roundTrip(new BoardSetupMessage(Piece.BLUE, setup));
+		assertEquals(msg.getColor(), Piece.BLUE);
+		for (int i = 0; i < 40; i++)
+			assertEquals(msg.getInitialSetup()[i / 10][i % 10], setup[i / 10][i % 10]);
+
+		ChatMessage chat = (ChatMessage) roundTrip(new ChatMessage("good game \u2713", Piece.RED));
+		assertEquals(chat.getMessage(), "good game \u2713");
+		assertEquals(chat.getColor(), Piece.RED);
+	}
+
+	@Test
+	public void joinAndWelcomeTest() throws ProtocolException {
+		WelcomeMessage hosted = (WelcomeMessage) roundTrip(new WelcomeMessage(Piece.RED, -42L, true));
+		assertEquals(hosted.getColor(), Piece.RED);
+		assertEquals(hosted.getToken(), -42L);
+		assertTrue(hosted.isRefereed());
+		assertFalse(((WelcomeMessage) roundTrip(new WelcomeMessage(Piece.BLUE, 7L, false))).isRefereed());
+		assertEquals(hosted.getReceived(), 0);
+		assertEquals(((WelcomeMessage) roundTrip(new WelcomeMessage(Piece.BLUE, 7L, true, 300))).getReceived(), 300);
+
+		JoinMessage resume = (JoinMessage) roundTrip(new JoinMessage(JoinMessage.SHARED, -42L, 70000));
+		assertTrue(resume.isResume());
+		assertTrue(resume.isShared());
+		assertEquals(resume.getToken(), -42L);
+		assertEquals(resume.getReceived(), 70000);
+		assertFalse(((JoinMessage) roundTrip(new JoinMessage(JoinMessage.GAME, 0))).isResume());
+
+		WelcomeMessage spectator = (WelcomeMessage) roundTrip(new WelcomeMessage(Piece.NONE, 0, true, 0, -9L));
+		assertEquals(spectator.getColor(), Piece.NONE);
+		assertEquals(spectator.getGame(), -9L);
+		JoinMessage watch = (JoinMessage) roundTrip(new JoinMessage(JoinMessage.WATCH, -9L));
+		assertTrue(watch.isWatch());
+		assertFalse(watch.isResume());
+		assertEquals(watch.getToken(), -9L);
+
+		JoinMessage lobby = (JoinMessage) roundTrip(new JoinMessage(JoinMessage.SHARED, "Ann \u00e9"));
+		assertTrue(lobby.isLobby());
+		assertFalse(lobby.isResume());
+		assertEquals(lobby.getName(), "Ann \u00e9");
+		assertFalse(resume.isLobby());
+		// a name is only for joining the lobby
+		byte[] named = WireProtocol.encode(new JoinMessage(JoinMessage.CHAT, "x"));
+		assertThrows(ProtocolException.class, () -> WireProtocol.decode(named, 2, named.length - 2));
+
+		// a flag this version does not know
+		byte[] frame = WireProtocol.encode(new WelcomeMessage(Piece.RED, 1L, false));
+		frame[12] = 0x02;
+		assertThrows(ProtocolException.class, () -> WireProtocol.decode(frame, 2, frame.length - 2));
+	}
+
+	@Test
+	public void pingTest() throws ProtocolException {
+		PingMessage ping = (PingMessage) roundTrip(new PingMessage(Long.MIN_VALUE + 3));
+		assertFalse(ping.isReply());
+		assertEquals(ping.getStamp(), Long.MIN_VALUE + 3);
+		PingMessage reply = (PingMessage) roundTrip(ping.reply());
+		assertTrue(reply.isReply());
+		assertEquals(reply.getStamp(), ping.getStamp());
+		assertEquals(WireProtocol.channel(reply), WireProtocol.GAME_CHANNEL);
+
+		byte[] frame = WireProtocol.encode(ping);
+		frame[3] = 0x04;
+		assertThrows(ProtocolException.class, () -> WireProtocol.decode(frame, 2, frame.length - 2));
+	}
+
+	@Test
+	public void savedGameTest() throws ProtocolException {
+		SavedGameMessage saved = (SavedGameMessage) roundTrip(new SavedGameMessage(0x8123456789ABCDEFL));
+		assertEquals(saved.getHash(), 0x8123456789ABCDEFL);
+		assertEquals(WireProtocol.channel(saved), WireProtocol.GAME_CHANNEL);
+
+		byte[] frame = WireProtocol.encode(saved);
+		assertEquals(frame.length, 11);
+		assertThrows(ProtocolException.class, () -> WireProtocol.decode(frame, 2, frame.length - 3));
+	}
+
+	@Test
+	public void malformedTest() {
+		// unknown type, short position, bad square, bad piece, bad color
+		assertThrows(ProtocolException.class, () -> WireProtocol.decode(new byte[] { 9 }, 0, 1));
+		assertThrows(ProtocolException.class, () -> WireProtocol.decode(new byte[] { 1, 0, 0 }, 0, 3));
+		assertThrows(ProtocolException.class, () -> WireProtocol.decode(new byte[] { 1, 100, 0, 0, 0 }, 0, 5));
+		assertThrows(ProtocolException.class, () -> WireProtocol.decode(new byte[] { 1, 0, 0x3F, 0, 0 }, 0, 5));
+		assertThrows(ProtocolException.class, () -> WireProtocol.decode(new byte[] { 3, 0 }, 0, 2));
+	}
+
+	@Test
+	public void handshakeTest() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		WireProtocol.writeHandshake(new DataOutputStream(bytes));
+		WireProtocol.readHandshake(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+		byte[] otherVersion = bytes.toByteArray();
+		otherVersion[2]++;
+		assertThrows(ProtocolException.class, () -> WireProtocol.readHandshake(
+				new DataInputStream(new ByteArrayInputStream(otherVersion))));
+	}
+}